@@ -2,6 +2,8 @@ package cc.blynk.integration;
 
 import cc.blynk.server.Holder;
 import cc.blynk.server.core.BlockingIOProcessor;
+import cc.blynk.server.core.dao.PinStateStorage;
+import cc.blynk.server.core.dao.ProfileIndex;
 import cc.blynk.server.notifications.mail.MailWrapper;
 import cc.blynk.server.notifications.push.GCMWrapper;
 import cc.blynk.server.notifications.sms.SMSWrapper;
@@ -17,14 +19,18 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.mockito.Mock;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileAttribute;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.mock;
 
@@ -124,9 +130,28 @@ public abstract class BaseTest {
         }
         String resourcesPath = Paths.get(uri).toAbsolutePath().toString();
         System.out.println("Resource path : " + resourcesPath);
+        cleanServerState(Paths.get(resourcesPath));
         return resourcesPath;
     }
 
+    /**
+     * Resource folders are shared by all tests, while server stores pin values and profiles index
+     * next to profiles on close. Those are removed, so every test starts with profiles only.
+     */
+    private static void cleanServerState(Path dataFolder) {
+        try {
+            Files.deleteIfExists(dataFolder.resolve(ProfileIndex.INDEX_FILE_NAME));
+            Path pinState = dataFolder.resolve(PinStateStorage.PIN_STATE_FOLDER);
+            if (Files.exists(pinState)) {
+                try (Stream<Path> files = Files.walk(pinState)) {
+                    files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to clean data folder.", e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public static List<String> consumeJsonPinValues(String response) {
         return JsonParser.readAny(response, List.class);
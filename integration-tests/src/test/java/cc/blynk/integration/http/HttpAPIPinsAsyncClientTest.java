@@ -4,6 +4,10 @@ import cc.blynk.integration.BaseTest;
 import cc.blynk.server.Holder;
 import cc.blynk.server.api.http.HttpAPIServer;
 import cc.blynk.server.core.BaseServer;
+import cc.blynk.server.core.dao.TokenValue;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
 import cc.blynk.utils.properties.GCMProperties;
 import cc.blynk.utils.properties.MailProperties;
 import cc.blynk.utils.properties.SmsProperties;
@@ -17,9 +21,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -184,4 +193,58 @@ public class HttpAPIPinsAsyncClientTest extends BaseTest {
         assertEquals("Wrong pin format.", response.getResponseBody());
     }
 
+    @Test
+    public void testGetPinDataStreamed() throws Exception {
+        TokenValue tokenValue = localHolder.tokenManager.getUserByToken("4ae3851817194e2596cf1b7103603ef8");
+        ReportingStorage storage = localHolder.reportingDao.storage;
+        for (int i = 0; i < 5000; i++) {
+            storage.append(tokenValue.user.name, tokenValue.dashId, tokenValue.deviceId, 'v', (byte) 112, GraphType.MINUTE, i, i * 1000L);
+        }
+        storage.flush();
+
+        try {
+            Future<Response> f = httpclient.prepareGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/data/v112").execute();
+            Response response = f.get();
+            assertEquals(200, response.getStatusCode());
+            assertEquals("chunked", response.getHeader("transfer-encoding"));
+            assertEquals("application/gzip", response.getContentType());
+            List<String> lines = gunzipLines(response.getResponseBodyAsBytes());
+            assertEquals(5000, lines.size());
+            assertEquals("0.0,0", lines.get(0));
+            assertEquals("4999.0,4999000", lines.get(4999));
+
+            f = httpclient.prepareGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/data/v112?from=1000000&to=1999999").execute();
+            response = f.get();
+            assertEquals(200, response.getStatusCode());
+            lines = gunzipLines(response.getResponseBodyAsBytes());
+            assertEquals(1000, lines.size());
+            assertEquals("1000.0,1000000", lines.get(0));
+            assertEquals("1999.0,1999000", lines.get(999));
+
+            f = httpclient.prepareGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/data/v112?type=daily").execute();
+            response = f.get();
+            assertEquals(400, response.getStatusCode());
+            assertEquals("No data for pin.", response.getResponseBody());
+
+            f = httpclient.prepareGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/data/v112?type=weekly").execute();
+            response = f.get();
+            assertEquals(400, response.getStatusCode());
+            assertEquals("Wrong history data params.", response.getResponseBody());
+        } finally {
+            storage.delete(tokenValue.user.name, tokenValue.dashId, tokenValue.deviceId, PinType.VIRTUAL, (byte) 112);
+        }
+    }
+
+    private static List<String> gunzipLines(byte[] data) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(data)), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
 }
@@ -25,10 +25,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * The Blynk Project.
@@ -380,6 +383,66 @@ public class HttpAPIPinsTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testBatchPutAndGet() throws Exception {
+        HttpPut request = new HttpPut(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/update");
+        request.setEntity(new StringEntity("[{\"pin\":\"a14\",\"value\":\"110\"},{\"pin\":\"v10\",\"value\":[\"1\",\"2\"]}]",
+                ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpclient.execute(request)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+        }
+
+        HttpGet getRequest = new HttpGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/get?pin=a14&pin=v10&pin=v127");
+
+        try (CloseableHttpResponse response = httpclient.execute(getRequest)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            Map<String, List<String>> values = JsonParser.readAny(consumeText(response), Map.class);
+            assertEquals(3, values.size());
+            assertEquals(Collections.singletonList("110"), values.get("a14"));
+            assertEquals(Arrays.asList("1", "2"), values.get("v10"));
+            assertNull(values.get("v127"));
+        }
+    }
+
+    @Test
+    public void testBatchPutWithWrongPin() throws Exception {
+        HttpPut request = new HttpPut(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/update");
+        request.setEntity(new StringEntity("[{\"pin\":\"a14\",\"value\":\"1\"},{\"pin\":\"x8\",\"value\":\"1\"}]",
+                ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpclient.execute(request)) {
+            assertEquals(400, response.getStatusLine().getStatusCode());
+            assertEquals("Wrong pin format.", consumeText(response));
+        }
+    }
+
+    @Test
+    public void testMultiDeviceBatchPut() throws Exception {
+        HttpPut request = new HttpPut(httpsServerUrl + "batch/update");
+        request.setEntity(new StringEntity("[{\"token\":\"4ae3851817194e2596cf1b7103603ef8\",\"pin\":\"v11\",\"value\":\"7\"}]",
+                ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpclient.execute(request)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+        }
+
+        HttpGet getRequest = new HttpGet(httpsServerUrl + "4ae3851817194e2596cf1b7103603ef8/get/v11");
+
+        try (CloseableHttpResponse response = httpclient.execute(getRequest)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            assertEquals("7", consumeJsonPinValues(response).get(0));
+        }
+
+        request.setEntity(new StringEntity("[{\"token\":\"dsadasddasdasdasdasdasdas\",\"pin\":\"v11\",\"value\":\"7\"}]",
+                ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpclient.execute(request)) {
+            assertEquals(400, response.getStatusLine().getStatusCode());
+            assertEquals("Invalid token.", consumeText(response));
+        }
+    }
+
     //----------------------------NOTIFICATION POST METHODS SECTION
 
     //----------------------------pushes
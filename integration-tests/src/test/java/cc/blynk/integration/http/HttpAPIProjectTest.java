@@ -66,7 +66,7 @@ public class HttpAPIProjectTest extends BaseTest {
         FileManager.migrateOldProfile(user);
 
         Integer dashId = 125564119;
-        dashBoard = user.profile.getDashById(dashId);
+        dashBoard = user.getProfile().getDashById(dashId);
 
         try (CloseableHttpResponse response = httpclient.execute(request)) {
             assertEquals(200, response.getStatusLine().getStatusCode());
@@ -126,8 +126,8 @@ public class HttpsAdminServerTest extends BaseTest {
             User user = JsonParser.readAny(jsonProfile, User.class);
             assertNotNull(user);
             assertEquals(testUser, user.name);
-            assertNotNull(user.profile.dashBoards);
-            assertEquals(5, user.profile.dashBoards.length);
+            assertNotNull(user.getProfile().dashBoards);
+            assertEquals(5, user.getProfile().dashBoards.length);
         }
     }
 
@@ -52,18 +52,20 @@ public class AppProtocolCommandsTest extends IntegrationBase {
     @Mock
     public BufferedReader bufferedReader;
     private BaseServer appServer;
+    private ProfileSaverWorker profileSaverWorker;
 
     @Before
     public void init() throws Exception {
         this.appServer = new AppServer(holder).start();
 
-        ProfileSaverWorker profileSaverWorker = new ProfileSaverWorker(holder.userDao, holder.fileManager, new DBManager(blockingIOProcessor));
+        this.profileSaverWorker = new ProfileSaverWorker(holder.userDao, holder.fileManager, new DBManager(blockingIOProcessor));
         new Thread(profileSaverWorker).start();
     }
 
     @After
     public void shutdown() {
         this.appServer.close();
+        this.profileSaverWorker.close();
     }
 
     @Test
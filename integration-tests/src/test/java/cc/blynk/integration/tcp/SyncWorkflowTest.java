@@ -399,7 +399,7 @@ public class SyncWorkflowTest extends IntegrationBase {
     @Test
     public void testSyncForTimer() throws Exception {
         User user = holder.userDao.users.get(new UserKey("dima@mail.ua", "Blynk"));
-        Widget widget = user.profile.dashBoards[0].findWidgetByPin(0, (byte) 5, PinType.DIGITAL);
+        Widget widget = user.getProfile().dashBoards[0].findWidgetByPin(0, (byte) 5, PinType.DIGITAL);
         Timer timer = (Timer) widget;
         timer.value = b("dw 5 100500");
 
@@ -34,14 +34,14 @@ public class ProjectTokenGenerator {
 
         int count = 300;
 
-        user.profile.dashBoards = new DashBoard[count];
+        user.getProfile().dashBoards = new DashBoard[count];
         for (int i = 1; i <= count; i++) {
             DashBoard dash = new DashBoard();
             dash.id = i;
             dash.boardType = "Generic Board";
             dash.theme = "Blynk";
             dash.isActive = true;
-            user.profile.dashBoards[i - 1] = dash;
+            user.getProfile().dashBoards[i - 1] = dash;
         }
 
         List<String> tokens = new ArrayList<>();
@@ -1,11 +1,14 @@
 package cc.blynk.server;
 
 import cc.blynk.server.core.BlockingIOProcessor;
+import cc.blynk.server.core.LoginAdmission;
 import cc.blynk.server.core.dao.FileManager;
+import cc.blynk.server.core.dao.PinStateStorage;
 import cc.blynk.server.core.dao.ReportingDao;
 import cc.blynk.server.core.dao.SessionDao;
 import cc.blynk.server.core.dao.TokenManager;
 import cc.blynk.server.core.dao.UserDao;
+import cc.blynk.server.core.model.auth.WriteCoalescing;
 import cc.blynk.server.core.processors.EventorProcessor;
 import cc.blynk.server.core.stats.GlobalStats;
 import cc.blynk.server.db.DBManager;
@@ -14,12 +17,16 @@ import cc.blynk.server.notifications.push.GCMWrapper;
 import cc.blynk.server.notifications.sms.SMSWrapper;
 import cc.blynk.server.notifications.twitter.TwitterWrapper;
 import cc.blynk.server.redis.RedisClient;
+import cc.blynk.server.transport.EventLoopSharding;
+import cc.blynk.server.transport.HeartbeatTracker;
 import cc.blynk.server.transport.TransportTypeHolder;
 import cc.blynk.server.workers.ReadingWidgetsWorker;
 import cc.blynk.server.workers.timer.TimerWorker;
 import cc.blynk.utils.FileLoaderUtil;
 import cc.blynk.utils.IPUtils;
 import cc.blynk.utils.ServerProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.asynchttpclient.DefaultAsyncHttpClient;
 import org.asynchttpclient.DefaultAsyncHttpClientConfig;
 
@@ -36,12 +43,16 @@ import static cc.blynk.utils.ReportingUtil.getReportingFolder;
  */
 public class Holder implements Closeable {
 
+    private static final Logger log = LogManager.getLogger(Holder.class);
+
     public final FileManager fileManager;
 
     public final SessionDao sessionDao;
 
     public final UserDao userDao;
 
+    public final PinStateStorage pinStateStorage;
+
     public final TokenManager tokenManager;
 
     public final ReportingDao reportingDao;
@@ -56,6 +67,8 @@ public class Holder implements Closeable {
 
     public final BlockingIOProcessor blockingIOProcessor;
     public final TransportTypeHolder transportTypeHolder;
+    public final HeartbeatTracker heartbeatTracker;
+    public final LoginAdmission loginAdmission;
     public final TwitterWrapper twitterWrapper;
     public final MailWrapper mailWrapper;
     public final GCMWrapper gcmWrapper;
@@ -82,20 +95,33 @@ public class Holder implements Closeable {
         this.redisClient = new RedisClient(new ServerProperties(RedisClient.REDIS_PROPERTIES), region);
 
         String dataFolder = serverProperties.getProperty("data.folder");
-        this.fileManager = new FileManager(dataFolder);
-        this.sessionDao = new SessionDao();
+        this.fileManager = new FileManager(dataFolder,
+                serverProperties.getBoolProperty("profile.binary.format"));
+        long start = System.currentTimeMillis();
         this.userDao = new UserDao(fileManager.deserialize(), this.region);
+        long profilesLoaded = System.currentTimeMillis();
+        this.pinStateStorage = new PinStateStorage(fileManager.getDataDir(), userDao,
+                serverProperties.getIntProperty("pin.state.max.log.size.mb", 64));
+        long pinStateLoaded = System.currentTimeMillis();
         this.blockingIOProcessor = new BlockingIOProcessor(
                 serverProperties.getIntProperty("blocking.processor.thread.pool.limit", 5),
                 serverProperties.getIntProperty("notifications.queue.limit", 10000),
                 FileLoaderUtil.readFileAsString(BlockingIOProcessor.TOKEN_MAIL_BODY)
         );
-        this.tokenManager = new TokenManager(this.userDao.users, blockingIOProcessor, redisClient, currentIp);
+        this.tokenManager = new TokenManager(this.userDao.users, fileManager.getIndexedUsers(),
+                blockingIOProcessor, redisClient, currentIp);
+        long tokensLoaded = System.currentTimeMillis();
         this.stats = new GlobalStats();
-        final String reportingFolder = getReportingFolder(dataFolder);
+        //data folder may be replaced with temp one by file manager
+        final String reportingFolder = getReportingFolder(fileManager.getDataDir().toString());
         this.reportingDao = new ReportingDao(reportingFolder, serverProperties);
 
         this.transportTypeHolder = new TransportTypeHolder(serverProperties);
+        this.sessionDao = new SessionDao(new WriteCoalescing(serverProperties, stats),
+                new EventLoopSharding(transportTypeHolder.workerGroup));
+        this.heartbeatTracker = new HeartbeatTracker(
+                serverProperties.getIntProperty("hard.socket.idle.timeout", 0), stats);
+        this.loginAdmission = new LoginAdmission(serverProperties, stats);
 
         this.asyncHttpClient = new DefaultAsyncHttpClient(new DefaultAsyncHttpClientConfig.Builder()
                 .setUserAgent(null)
@@ -110,8 +136,14 @@ public class Holder implements Closeable {
         this.smsWrapper = new SMSWrapper(smsProperties, asyncHttpClient);
 
         this.eventorProcessor = new EventorProcessor(gcmWrapper, twitterWrapper, blockingIOProcessor, stats);
-        this.dbManager = new DBManager(blockingIOProcessor);
+        this.dbManager = new DBManager(blockingIOProcessor, stats);
+        long timersStart = System.currentTimeMillis();
         this.timerWorker = new TimerWorker(userDao, sessionDao, gcmWrapper);
+        long timersLoaded = System.currentTimeMillis();
+        fileManager.writeProfileIndex(userDao.users.values());
+        log.info("Startup time. Profiles : {} ms. Pin state : {} ms. Tokens : {} ms. Timers : {} ms. Index : {} ms.",
+                profilesLoaded - start, pinStateLoaded - profilesLoaded, tokensLoaded - pinStateLoaded,
+                timersLoaded - timersStart, System.currentTimeMillis() - timersLoaded);
         this.readingWidgetsWorker = new ReadingWidgetsWorker(sessionDao, userDao);
         this.limits = new Limits(props);
     }
@@ -126,20 +158,33 @@ public class Holder implements Closeable {
         this.redisClient = new RedisClient(new ServerProperties(RedisClient.REDIS_PROPERTIES), "real");
 
         String dataFolder = serverProperties.getProperty("data.folder");
-        this.fileManager = new FileManager(dataFolder);
-        this.sessionDao = new SessionDao();
+        this.fileManager = new FileManager(dataFolder,
+                serverProperties.getBoolProperty("profile.binary.format"));
+        long start = System.currentTimeMillis();
         this.userDao = new UserDao(fileManager.deserialize(), this.region);
+        long profilesLoaded = System.currentTimeMillis();
+        this.pinStateStorage = new PinStateStorage(fileManager.getDataDir(), userDao,
+                serverProperties.getIntProperty("pin.state.max.log.size.mb", 64));
+        long pinStateLoaded = System.currentTimeMillis();
         this.blockingIOProcessor = new BlockingIOProcessor(
                 serverProperties.getIntProperty("blocking.processor.thread.pool.limit", 5),
                 serverProperties.getIntProperty("notifications.queue.limit", 10000),
                 FileLoaderUtil.readFileAsString(BlockingIOProcessor.TOKEN_MAIL_BODY)
         );
-        this.tokenManager = new TokenManager(this.userDao.users, blockingIOProcessor, redisClient, currentIp);
+        this.tokenManager = new TokenManager(this.userDao.users, fileManager.getIndexedUsers(),
+                blockingIOProcessor, redisClient, currentIp);
+        long tokensLoaded = System.currentTimeMillis();
         this.stats = new GlobalStats();
-        final String reportingFolder = getReportingFolder(dataFolder);
+        //data folder may be replaced with temp one by file manager
+        final String reportingFolder = getReportingFolder(fileManager.getDataDir().toString());
         this.reportingDao = new ReportingDao(reportingFolder, serverProperties);
 
         this.transportTypeHolder = new TransportTypeHolder(serverProperties);
+        this.sessionDao = new SessionDao(new WriteCoalescing(serverProperties, stats),
+                new EventLoopSharding(transportTypeHolder.workerGroup));
+        this.heartbeatTracker = new HeartbeatTracker(
+                serverProperties.getIntProperty("hard.socket.idle.timeout", 0), stats);
+        this.loginAdmission = new LoginAdmission(serverProperties, stats);
 
         this.twitterWrapper = twitterWrapper;
         this.mailWrapper = mailWrapper;
@@ -154,14 +199,26 @@ public class Holder implements Closeable {
                 .build()
         );
 
-        this.dbManager = new DBManager(blockingIOProcessor);
+        this.dbManager = new DBManager(blockingIOProcessor, stats);
+        long timersStart = System.currentTimeMillis();
         this.timerWorker = new TimerWorker(userDao, sessionDao, gcmWrapper);
+        long timersLoaded = System.currentTimeMillis();
+        fileManager.writeProfileIndex(userDao.users.values());
+        log.info("Startup time. Profiles : {} ms. Pin state : {} ms. Tokens : {} ms. Timers : {} ms. Index : {} ms.",
+                profilesLoaded - start, pinStateLoaded - profilesLoaded, tokensLoaded - pinStateLoaded,
+                timersLoaded - timersStart, System.currentTimeMillis() - timersLoaded);
         this.readingWidgetsWorker = new ReadingWidgetsWorker(sessionDao, userDao);
         this.limits = new Limits(props);
     }
 
     @Override
     public void close() {
+        System.out.println("Stopping PinStateStorage...");
+        this.pinStateStorage.close();
+
+        System.out.println("Writing profiles index...");
+        this.fileManager.writeProfileIndex(userDao.users.values());
+
         this.reportingDao.close();
 
         System.out.println("Stopping BlockingIOProcessor...");
@@ -1,9 +1,10 @@
 package cc.blynk.server.core;
 
+import cc.blynk.server.transport.TransportProfile;
 import cc.blynk.server.transport.TransportTypeHolder;
 import cc.blynk.utils.BlynkByteBufUtil;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
@@ -13,6 +14,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Base server abstraction. Class responsible for Netty EventLoops starting amd port listening.
@@ -27,12 +30,14 @@ public abstract class BaseServer implements Closeable {
 
     protected final int port;
     private final TransportTypeHolder transportTypeHolder;
+    private final TransportProfile profile;
 
-    private ChannelFuture cf;
+    private final List<Channel> serverChannels = new ArrayList<>();
 
-    protected BaseServer(int port, TransportTypeHolder transportTypeHolder) {
+    protected BaseServer(int port, TransportTypeHolder transportTypeHolder, TransportProfile profile) {
         this.port = port;
         this.transportTypeHolder = transportTypeHolder;
+        this.profile = profile;
     }
 
     public BaseServer start() throws Exception {
@@ -57,13 +62,21 @@ public abstract class BaseServer implements Closeable {
                     .option(ChannelOption.ALLOCATOR, BlynkByteBufUtil.ALLOCATOR)
                     .childHandler(getChannelInitializer());
 
-            this.cf = b.bind(port).sync();
+            final boolean epoll = transportTypeHolder.epoll;
+            profile.apply(b, epoll);
+
+            if (!epoll && profile.acceptors > 1) {
+                log.warn("{}.socket.acceptors requires native epoll transport. Using 1 acceptor.", profile.type);
+            }
+            for (int i = 0; i < profile.getAcceptors(epoll); i++) {
+                serverChannels.add(b.bind(port).sync().channel());
+            }
         } catch (Exception e) {
             log.error("Error initializing {}, port {}", getServerName(), port, e);
             throw e;
         }
 
-        log.info("{} server listening at {} port.", getServerName(), port);
+        log.info("{} server listening at {} port. {}", getServerName(), port, profile.describe(transportTypeHolder.epoll));
     }
 
     protected abstract ChannelInitializer<SocketChannel> getChannelInitializer();
@@ -72,6 +85,8 @@ public abstract class BaseServer implements Closeable {
 
     @Override
     public void close() {
-        cf.channel().close();
+        for (Channel channel : serverChannels) {
+            channel.close();
+        }
     }
 }
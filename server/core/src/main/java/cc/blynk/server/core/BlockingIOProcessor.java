@@ -1,7 +1,13 @@
 package cc.blynk.server.core;
 
+import cc.blynk.server.core.model.auth.User;
+import io.netty.channel.Channel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import java.io.Closeable;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +23,8 @@ import java.util.concurrent.TimeUnit;
  */
 public class BlockingIOProcessor implements Closeable {
 
+    private static final Logger log = LogManager.getLogger(BlockingIOProcessor.class);
+
     public static final String TOKEN_MAIL_BODY = "single_token_mail_body.txt";
     private final ThreadPoolExecutor executor;
     public volatile String tokenBody;
@@ -34,6 +42,42 @@ public class BlockingIOProcessor implements Closeable {
         executor.execute(task);
     }
 
+    /**
+     * Profile of user restored from profiles index is read from disk on first access.
+     * So it is read within this pool and processing continues within channel event loop once profile
+     * is available. Channel doesn't read meanwhile, so repeated login doesn't start another load.
+     *
+     * @param onLoaded - executed right away when profile is already loaded, otherwise within event loop.
+     * @param onError - executed when profile can't be read or pool is full.
+     */
+    public void loadProfile(User user, Channel channel, Runnable onLoaded, Runnable onError) {
+        if (user.isProfileLoaded()) {
+            onLoaded.run();
+            return;
+        }
+        channel.config().setAutoRead(false);
+        try {
+            executor.execute(() -> {
+                Runnable next = onLoaded;
+                try {
+                    user.getProfile();
+                } catch (Exception e) {
+                    log.error("Error loading profile of {}.", user.name, e);
+                    next = onError;
+                }
+                final Runnable continuation = next;
+                channel.eventLoop().execute(() -> {
+                    channel.config().setAutoRead(true);
+                    continuation.run();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Blocking IO queue is full. Can't load profile of {}.", user.name);
+            channel.config().setAutoRead(true);
+            onError.run();
+        }
+    }
+
     @Override
     public void close() {
         executor.shutdown();
@@ -0,0 +1,269 @@
+package cc.blynk.server.core;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import cc.blynk.utils.ServerProperties;
+import io.netty.channel.Channel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of logins, so reconnect of all devices after restart or network issue
+ * doesn't saturate event loops with token lookups, session creations and re-registrations.
+ * App and hardware logins have separate token buckets. Login that doesn't get token is put
+ * to bounded pending queue and processed later within its channel event loop. App logins have
+ * priority : pending app logins are processed first and may push out pending hardware logins
+ * when queue is full. Logins that are not processed in time are rejected.
+ * Channel doesn't read while its login is pending, so repeated login can't be queued twice.
+ * With no limits logins are served without any locking.
+ */
+public class LoginAdmission {
+
+    private static final Logger log = LogManager.getLogger(LoginAdmission.class);
+
+    private final TokenBucket appBucket;
+    private final TokenBucket hardBucket;
+    private final int maxPending;
+    private final long maxWaitNanos;
+    private final GlobalStats stats;
+
+    //guarded by this
+    private final ArrayDeque<PendingLogin> appQueue = new ArrayDeque<>();
+    private final ArrayDeque<PendingLogin> hardQueue = new ArrayDeque<>();
+    private boolean drainScheduled;
+
+    public LoginAdmission(ServerProperties props, GlobalStats stats) {
+        this(props.getIntProperty("app.login.rate.limit", 0),
+             props.getIntProperty("hard.login.rate.limit", 0),
+             props.getIntProperty("login.pending.queue.limit", 10000),
+             props.getIntProperty("login.pending.timeout", 10000),
+             stats);
+    }
+
+    /**
+     * @param appRate - app logins per second, 0 for no limit.
+     * @param hardRate - hardware logins per second, 0 for no limit.
+     * @param maxWaitMillis - max time login may wait in pending queue.
+     */
+    public LoginAdmission(int appRate, int hardRate, int maxPending, int maxWaitMillis, GlobalStats stats) {
+        this.appBucket = new TokenBucket(appRate, System.nanoTime());
+        this.hardBucket = new TokenBucket(hardRate, System.nanoTime());
+        this.maxPending = maxPending;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.stats = stats;
+    }
+
+    /**
+     * Runs login right away in case there is free token, otherwise login is queued
+     * and executed later within channel event loop or rejected.
+     *
+     * @param login - login processing, executed within channel event loop.
+     * @param reject - response to client in case login is not admitted. Executed within channel event loop.
+     */
+    public void admit(Channel channel, boolean app, Runnable login, Runnable reject) {
+        admit(channel, app, login, reject, System.nanoTime());
+    }
+
+    void admit(Channel channel, boolean app, Runnable login, Runnable reject, long now) {
+        //app queue is never filled without app limit, hardware waits for apps only when both are limited
+        if (app ? appBucket.rate <= 0 : appBucket.rate <= 0 && hardBucket.rate <= 0) {
+            stats.loginsAccepted.increment();
+            login.run();
+            return;
+        }
+
+        PendingLogin rejected = null;
+        boolean admitted;
+        synchronized (this) {
+            //pending logins are served first, so new login doesn't overtake them.
+            //hardware waits while apps are waiting.
+            admitted = (app ? appQueue.isEmpty() : appQueue.isEmpty() && hardQueue.isEmpty())
+                    && (app ? appBucket : hardBucket).tryAcquire(now);
+
+            if (!admitted) {
+                if (appQueue.size() + hardQueue.size() >= maxPending) {
+                    if (app && !hardQueue.isEmpty()) {
+                        //apps are more important than hardware
+                        rejected = hardQueue.pollLast();
+                        appQueue.add(new PendingLogin(channel, login, reject, now));
+                    } else {
+                        rejected = new PendingLogin(channel, login, reject, now);
+                    }
+                } else {
+                    (app ? appQueue : hardQueue).add(new PendingLogin(channel, login, reject, now));
+                }
+            }
+        }
+
+        if (admitted) {
+            stats.loginsAccepted.increment();
+            login.run();
+            return;
+        }
+
+        if (rejected == null || rejected.channel != channel) {
+            stats.loginsDelayed.increment();
+            channel.config().setAutoRead(false);
+            scheduleDrain(channel, now);
+        }
+        if (rejected != null) {
+            reject(rejected);
+        }
+    }
+
+    private void scheduleDrain(Channel channel, long now) {
+        final long delay;
+        synchronized (this) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            TokenBucket bucket = appQueue.isEmpty() ? hardBucket : appBucket;
+            delay = Math.max(TimeUnit.MILLISECONDS.toNanos(1), bucket.nanosToNextToken(now));
+        }
+        channel.eventLoop().schedule(this::drainPending, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void drainPending() {
+        try {
+            drain(System.nanoTime());
+        } catch (Exception e) {
+            log.error("Error processing pending logins.", e);
+        }
+    }
+
+    void drain(long now) {
+        List<PendingLogin> admitted = new ArrayList<>();
+        List<PendingLogin> expired = new ArrayList<>();
+        Channel next = null;
+        synchronized (this) {
+            drainScheduled = false;
+            poll(appQueue, appBucket, admitted, expired, now);
+            if (appQueue.isEmpty()) {
+                poll(hardQueue, hardBucket, admitted, expired, now);
+            }
+            if (!appQueue.isEmpty()) {
+                next = appQueue.peek().channel;
+            } else if (!hardQueue.isEmpty()) {
+                next = hardQueue.peek().channel;
+            }
+        }
+
+        for (PendingLogin pendingLogin : admitted) {
+            stats.loginsAccepted.increment();
+            pendingLogin.channel.eventLoop().execute(pendingLogin);
+        }
+        for (PendingLogin pendingLogin : expired) {
+            reject(pendingLogin);
+        }
+
+        if (next != null) {
+            scheduleDrain(next, now);
+        }
+    }
+
+    private void poll(ArrayDeque<PendingLogin> queue, TokenBucket bucket,
+                      List<PendingLogin> admitted, List<PendingLogin> expired, long now) {
+        PendingLogin pendingLogin;
+        while ((pendingLogin = queue.peek()) != null) {
+            if (!pendingLogin.channel.isActive()) {
+                //client gave up, token is not needed
+                queue.poll();
+            } else if (now - pendingLogin.enqueuedAt > maxWaitNanos) {
+                expired.add(queue.poll());
+            } else if (bucket.tryAcquire(now)) {
+                admitted.add(queue.poll());
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void reject(PendingLogin pendingLogin) {
+        stats.loginsRejected.increment();
+        pendingLogin.channel.config().setAutoRead(true);
+        if (pendingLogin.channel.isActive()) {
+            pendingLogin.channel.eventLoop().execute(pendingLogin.reject);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return appQueue.size() + hardQueue.size();
+    }
+
+    private static final class PendingLogin implements Runnable {
+
+        final Channel channel;
+        final Runnable login;
+        final Runnable reject;
+        final long enqueuedAt;
+
+        PendingLogin(Channel channel, Runnable login, Runnable reject, long enqueuedAt) {
+            this.channel = channel;
+            this.login = login;
+            this.reject = reject;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            channel.config().setAutoRead(true);
+            try {
+                login.run();
+            } catch (Exception e) {
+                //same as exception within channelRead
+                channel.pipeline().fireExceptionCaught(e);
+            }
+        }
+    }
+
+    /**
+     * Bucket capacity is 1 second of logins. Not thread safe.
+     */
+    private static final class TokenBucket {
+
+        private final int rate;
+        private final double nanosPerToken;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int rate, long now) {
+            this.rate = rate;
+            this.nanosPerToken = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) rate : 0;
+            this.tokens = rate;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(rate, tokens + (now - lastRefill) / nanosPerToken);
+                lastRefill = now;
+            }
+        }
+
+        boolean tryAcquire(long now) {
+            if (rate <= 0) {
+                return true;
+            }
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        long nanosToNextToken(long now) {
+            if (rate <= 0) {
+                return 0;
+            }
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken);
+        }
+    }
+
+}
@@ -1,9 +1,9 @@
 package cc.blynk.server.core.dao;
 
 import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.Profile;
 import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.model.device.Device;
-import cc.blynk.server.core.model.widgets.Widget;
 import cc.blynk.utils.FileUtils;
 import cc.blynk.utils.JsonParser;
 import org.apache.logging.log4j.LogManager;
@@ -14,10 +14,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -45,10 +49,21 @@ public class FileManager {
 
     private static final String DELETED_DATA_DIR_NAME = "deleted";
     private static final String BACKUP_DATA_DIR_NAME = "backup";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
     private Path deletedDataDir;
     private Path backupDataDir;
+    //profiles are written in binary json (smile) when enabled. Reading supports both formats.
+    private final boolean binaryProfiles;
+
+    //users restored from profiles index, till their profile is loaded
+    private final ConcurrentMap<UserKey, ProfileIndex.Entry> indexedUsers = new ConcurrentHashMap<>();
 
     public FileManager(String dataFolder) {
+        this(dataFolder, false);
+    }
+
+    public FileManager(String dataFolder, boolean binaryProfiles) {
+        this.binaryProfiles = binaryProfiles;
         if (dataFolder == null || dataFolder.isEmpty() || dataFolder.equals("/path")) {
             System.out.println("WARNING : '" + dataFolder + "' does not exists. Please specify correct -dataFolder parameter.");
             dataFolder = Paths.get(System.getProperty("java.io.tmpdir"), "blynk").toString();
@@ -70,7 +85,7 @@ public class FileManager {
             this.backupDataDir = createDir(Paths.get(this.dataDir.toString(), BACKUP_DATA_DIR_NAME));
         }
 
-        log.info("Using data dir '{}'", dataDir);
+        log.info("Using data dir '{}'. Profiles format : {}.", dataDir, binaryProfiles ? "smile" : "json");
     }
 
     private static Path createDir(Path dataDir) {
@@ -105,12 +120,26 @@ public class FileManager {
         return FileUtils.move(file, this.deletedDataDir);
     }
 
-    public void overrideUserFile(User user) throws IOException {
+    /**
+     * Writes profile to temp file and moves it over existing one,
+     * so crash during write never leaves truncated profile on disk.
+     *
+     * @return size of written file.
+     */
+    public long overrideUserFile(User user) throws IOException {
         Path path = generateFileName(user.name, user.appName);
+        Path tmp = Paths.get(path.toString() + TEMP_FILE_SUFFIX);
 
-        JsonParser.writeUser(path.toFile(), user);
+        if (binaryProfiles) {
+            JsonParser.writeUserBinary(tmp.toFile(), user);
+        } else {
+            JsonParser.writeUser(tmp.toFile(), user);
+        }
+        long size = Files.size(tmp);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
         removeOldFile(user.name);
+        return size;
     }
 
     private void removeOldFile(String username) {
@@ -124,12 +153,18 @@ public class FileManager {
     }
 
     /**
-     * Loads all user profiles one by one from disk using dataDir as starting point.
+     * Loads all user profiles from disk using dataDir as starting point.
+     * Users which files were not changed since profiles index was written are restored
+     * from index without parsing, their profiles are loaded on first access.
      *
      * @return mapping between username and it's profile.
      */
     public ConcurrentMap<UserKey, User> deserialize() {
         log.debug("Starting reading user DB.");
+        long start = System.currentTimeMillis();
+
+        Map<String, ProfileIndex.Entry> index = ProfileIndex.read(dataDir.resolve(ProfileIndex.INDEX_FILE_NAME));
+        long indexReadTime = System.currentTimeMillis() - start;
 
         final File[] files = dataDir.toFile().listFiles();
 
@@ -137,6 +172,13 @@ public class FileManager {
             ConcurrentMap<UserKey, User> tempUsers = Arrays.stream(files).parallel()
                     .filter(file -> file.isFile() && file.getName().endsWith(".user"))
                     .flatMap(file -> {
+                        ProfileIndex.Entry entry = index.get(file.getName());
+                        if (entry != null && !entry.hasTimers && entry.matches(file.length(), file.lastModified())) {
+                            User user = entry.toUser();
+                            user.setProfileLoader(this::loadProfile);
+                            indexedUsers.put(new UserKey(user), entry);
+                            return Stream.of(user);
+                        }
                         try {
                             User user = JsonParser.parseUserFromFile(file);
                             //todo this is migration code. remove during next deploy.
@@ -150,7 +192,8 @@ public class FileManager {
                     })
                     .collect(Collectors.toConcurrentMap(UserKey::new, identity(), (user1, user2) -> user2));
 
-            log.debug("Reading user DB finished.");
+            log.info("Loaded {} users, {} of them from profiles index. Index read : {} ms. Total : {} ms.",
+                    tempUsers.size(), indexedUsers.size(), indexReadTime, System.currentTimeMillis() - start);
             return tempUsers;
         }
 
@@ -158,8 +201,60 @@ public class FileManager {
         return new ConcurrentHashMap<>();
     }
 
+    private Profile loadProfile(User user) throws IOException {
+        User stored = JsonParser.parseUserFromFile(generateFileName(user.name, user.appName).toFile());
+        migrateOldProfile(stored);
+        indexedUsers.remove(new UserKey(user));
+        return stored.getProfile();
+    }
+
+    /**
+     * @return index entries of users which profile is not loaded yet.
+     */
+    public Map<UserKey, ProfileIndex.Entry> getIndexedUsers() {
+        return indexedUsers;
+    }
+
+    /**
+     * Writes summary of all users, so next startup doesn't need to parse profiles.
+     * Users with not saved changes are skipped, their files will be parsed on next startup.
+     */
+    public void writeProfileIndex(Collection<User> users) {
+        long start = System.currentTimeMillis();
+        List<ProfileIndex.Entry> entries = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (user.isDirty() || user.dashTokens != null && !user.dashTokens.isEmpty()) {
+                continue;
+            }
+            ProfileIndex.Entry indexed = indexedUsers.get(new UserKey(user));
+            if (indexed != null && !user.isProfileLoaded()) {
+                entries.add(ProfileIndex.entry(indexed, user));
+                continue;
+            }
+
+            File file = generateFileName(user.name, user.appName).toFile();
+            long size = file.length();
+            long lastModified = file.lastModified();
+            if (size == 0) {
+                continue;
+            }
+            ProfileIndex.Entry entry = ProfileIndex.entry(file.getName(), size, lastModified, user);
+            //user could be changed while entry was built
+            if (!user.isDirty()) {
+                entries.add(entry);
+            }
+        }
+
+        try {
+            ProfileIndex.write(dataDir.resolve(ProfileIndex.INDEX_FILE_NAME), entries);
+            log.info("Profiles index with {} users written in {} ms.", entries.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Error writing profiles index.", e);
+        }
+    }
+
     public static void migrateOldProfile(User user) {
-        for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (DashBoard dashBoard : user.getProfile().dashBoards) {
             final Integer dashId = dashBoard.id;
             if (user.dashTokens != null) {
                 String token = user.dashTokens.get(dashId);
@@ -176,10 +271,6 @@ public class FileManager {
                     device.status = null;
                 }
             }
-
-            for (Widget widget : dashBoard.widgets) {
-                dashBoard.cleanPinStorage(widget);
-            }
         }
     }
 
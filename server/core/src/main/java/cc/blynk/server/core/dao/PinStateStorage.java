@@ -0,0 +1,355 @@
+package cc.blynk.server.core.dao;
+
+import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.PinStateMap;
+import cc.blynk.server.core.model.PinStorageKey;
+import cc.blynk.server.core.model.Profile;
+import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.model.enums.PinType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists pin values separately from user profiles, so pin update doesn't cause profile rewrite.
+ *
+ * Values changed since last flush are appended to log file "pins_N.log". Once log grows beyond
+ * limit, snapshot of all pin values "pins_N.snapshot" is written and new log is started.
+ * On startup latest snapshot is loaded, log files with same or greater generation are replayed
+ * and new snapshot is written right away, so log never keeps history of previous runs.
+ * Values of users which profile is not loaded yet are kept aside and applied when profile is loaded.
+ *
+ * Record format : name, appName, dashId, deviceId, pinType, pin, value length (-1 for removed pin), value.
+ */
+public class PinStateStorage implements Closeable {
+
+    public static final String PIN_STATE_FOLDER = "pin_state";
+
+    private static final Logger log = LogManager.getLogger(PinStateStorage.class);
+
+    private static final int MAGIC = 0x424C5053;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "pins_";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path folder;
+    private final UserDao userDao;
+    private final long maxLogSize;
+    private long generation;
+    private DataOutputStream out;
+
+    //pin values of users which profile is not loaded yet. dashId -> values
+    private final Map<UserKey, Map<Integer, PinStateMap>> pending = new ConcurrentHashMap<>();
+
+    public PinStateStorage(Path dataDir, UserDao userDao, int maxLogSizeMb) {
+        this.folder = dataDir.resolve(PIN_STATE_FOLDER);
+        this.userDao = userDao;
+        this.maxLogSize = (long) Math.max(1, maxLogSizeMb) * 1024 * 1024;
+        try {
+            Files.createDirectories(folder);
+            restore();
+        } catch (Exception e) {
+            log.error("Error restoring pin state from {}.", folder, e);
+        }
+    }
+
+    private void restore() throws IOException {
+        long start = System.currentTimeMillis();
+
+        migrateProfiles();
+
+        List<Long> snapshots = listGenerations(SNAPSHOT_SUFFIX);
+        long snapshotGeneration = 0;
+        if (snapshots.size() > 0) {
+            snapshotGeneration = snapshots.get(snapshots.size() - 1);
+        }
+
+        int records = 0;
+        if (snapshotGeneration > 0) {
+            records += replay(file(snapshotGeneration, SNAPSHOT_SUFFIX));
+        }
+        List<Long> logs = listGenerations(LOG_SUFFIX);
+        for (long logGeneration : logs) {
+            if (logGeneration >= snapshotGeneration) {
+                records += replay(file(logGeneration, LOG_SUFFIX));
+            }
+        }
+
+        this.generation = snapshotGeneration;
+        if (logs.size() > 0) {
+            this.generation = Math.max(generation, logs.get(logs.size() - 1));
+        }
+
+        for (UserKey userKey : pending.keySet()) {
+            applyOnLoad(userDao.users.get(userKey), pending.get(userKey));
+        }
+
+        snapshot();
+
+        log.info("Restored {} pin values. Time : {} ms.", records, System.currentTimeMillis() - start);
+    }
+
+    //moves pin values stored within profiles of previous versions to pin state storage
+    private void migrateProfiles() {
+        for (User user : userDao.users.values()) {
+            //profiles restored from index were migrated before index was written
+            if (!user.isProfileLoaded()) {
+                continue;
+            }
+            for (DashBoard dash : user.getProfile().dashBoards) {
+                if (dash.pinsStorage != null && dash.pinsStorage.size() > 0) {
+                    for (Map.Entry<PinStorageKey, String> entry : dash.pinsStorage.entrySet()) {
+                        PinStorageKey key = entry.getKey();
+                        dash.pinStates.put(key.deviceId, key.pinType, key.pin, entry.getValue(), false);
+                    }
+                    dash.pinsStorage.clear();
+                    user.markDirty();
+                }
+            }
+        }
+    }
+
+    private Path file(long generation, String suffix) {
+        return folder.resolve(PREFIX + generation + suffix);
+    }
+
+    private List<Long> listGenerations(String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                long fileGeneration = parseGeneration(file, suffix);
+                if (fileGeneration != -1) {
+                    generations.add(fileGeneration);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static long parseGeneration(Path path, String suffix) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(PREFIX) && name.endsWith(suffix)) {
+            try {
+                return Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                //not our file
+            }
+        }
+        return -1;
+    }
+
+    private int replay(Path path) throws IOException {
+        int records = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                log.error("Wrong pin state file format : {}", path);
+                return 0;
+            }
+            while (true) {
+                String name = dis.readUTF();
+                String appName = dis.readUTF();
+                int dashId = dis.readInt();
+                int deviceId = dis.readInt();
+                PinType pinType = PinType.getPinType(dis.readChar());
+                byte pin = dis.readByte();
+                String value = readValue(dis);
+
+                UserKey userKey = new UserKey(name, appName);
+                User user = userDao.users.get(userKey);
+                if (user != null && !user.isProfileLoaded()) {
+                    PinStateMap pinStates = pending.computeIfAbsent(userKey, k -> new HashMap<>())
+                            .computeIfAbsent(dashId, k -> new PinStateMap());
+                    if (value == null) {
+                        pinStates.remove(deviceId, pinType, pin);
+                    } else {
+                        pinStates.put(deviceId, pinType, pin, value, false);
+                    }
+                    records++;
+                    continue;
+                }
+                DashBoard dash = user == null ? null : user.getProfile().getDashById(dashId);
+                if (dash != null) {
+                    if (value == null) {
+                        dash.pinStates.remove(deviceId, pinType, pin);
+                    } else {
+                        dash.restorePinState(deviceId, pin, pinType, value);
+                    }
+                }
+                records++;
+            }
+        } catch (EOFException eof) {
+            //end of file or torn last record. both are fine.
+        }
+        return records;
+    }
+
+    /**
+     * Restores pending values right after profile is loaded.
+     * Values are removed from pending on next snapshot, as till that moment snapshot may still use them.
+     */
+    private static void applyOnLoad(User user, Map<Integer, PinStateMap> userPending) {
+        User.ProfileLoader loader = user.getProfileLoader();
+        user.setProfileLoader(u -> {
+            Profile profile = loader.load(u);
+            for (Map.Entry<Integer, PinStateMap> entry : userPending.entrySet()) {
+                DashBoard dash = profile.getDashById(entry.getKey());
+                if (dash != null) {
+                    entry.getValue().forEach((deviceId, pinType, pin, value) ->
+                            dash.restorePinState(deviceId, pin, pinType, value));
+                }
+            }
+            return profile;
+        });
+    }
+
+    private static String readValue(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void write(DataOutputStream dos, User user, int dashId,
+                              int deviceId, PinType pinType, byte pin, String value) {
+        try {
+            dos.writeUTF(user.name);
+            dos.writeUTF(user.appName);
+            dos.writeInt(dashId);
+            dos.writeInt(deviceId);
+            dos.writeChar(pinType.pintTypeChar);
+            dos.writeByte(pin);
+            if (value == null) {
+                dos.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DataOutputStream open(Path path) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        return dos;
+    }
+
+    /**
+     * Appends values of pins changed since last flush to log.
+     */
+    public synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            UserKey userKey;
+            while ((userKey = userDao.pollPinsDirty()) != null) {
+                User user = userDao.users.get(userKey);
+                //user may be already deleted
+                if (user == null) {
+                    continue;
+                }
+                //cleared before write, so changes made during write are flushed next time
+                user.clearPinsDirty();
+                for (DashBoard dash : user.getProfile().dashBoards) {
+                    dash.pinStates.drainChanged((deviceId, pinType, pin, value) ->
+                            write(out, user, dash.id, deviceId, pinType, pin, value));
+                }
+            }
+            out.flush();
+
+            if (out.size() >= maxLogSize) {
+                snapshot();
+            }
+        } catch (Exception e) {
+            log.error("Error flushing pin state.", e);
+        }
+    }
+
+    /**
+     * Starts new log and writes all pin values to snapshot. Older files are removed only after snapshot is written.
+     */
+    private void snapshot() throws IOException {
+        long newGeneration = generation + 1;
+        DataOutputStream newOut = open(file(newGeneration, LOG_SUFFIX));
+        if (out != null) {
+            out.close();
+        }
+        this.out = newOut;
+        this.generation = newGeneration;
+
+        Path snapshot = file(newGeneration, SNAPSHOT_SUFFIX);
+        Path tmp = folder.resolve(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream dos = open(tmp)) {
+            for (User user : userDao.users.values()) {
+                UserKey userKey = new UserKey(user);
+                if (user.isProfileLoaded()) {
+                    pending.remove(userKey);
+                    for (DashBoard dash : user.getProfile().dashBoards) {
+                        dash.pinStates.forEach((deviceId, pinType, pin, value) ->
+                                write(dos, user, dash.id, deviceId, pinType, pin, value));
+                    }
+                } else {
+                    Map<Integer, PinStateMap> userPending = pending.get(userKey);
+                    if (userPending != null) {
+                        for (Map.Entry<Integer, PinStateMap> entry : userPending.entrySet()) {
+                            entry.getValue().forEach((deviceId, pinType, pin, value) ->
+                                    write(dos, user, entry.getKey(), deviceId, pinType, pin, value));
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                long fileGeneration = Math.max(parseGeneration(file, LOG_SUFFIX), parseGeneration(file, SNAPSHOT_SUFFIX));
+                if (fileGeneration != -1 && fileGeneration < newGeneration) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.error("Error closing pin state log.", e);
+            }
+            out = null;
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package cc.blynk.server.core.dao;
+
+import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.Profile;
+import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.model.device.Device;
+import cc.blynk.server.core.model.widgets.Widget;
+import cc.blynk.server.core.model.widgets.controls.Timer;
+import cc.blynk.server.core.model.widgets.others.eventor.Eventor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact summary of all user files : user fields, device and shared tokens.
+ * Allows to restore users on startup without parsing profiles. Every entry keeps size and
+ * modification time of user file it was built from, so entry is used only while file is not changed.
+ */
+public final class ProfileIndex {
+
+    public static final String INDEX_FILE_NAME = "profiles.index";
+
+    private static final Logger log = LogManager.getLogger(ProfileIndex.class);
+
+    private static final int MAGIC = 0x424C5049;
+    private static final int VERSION = 1;
+
+    private ProfileIndex() {
+    }
+
+    public static final class Entry {
+        public final String fileName;
+        public final long size;
+        public final long lastModified;
+        //users with timers are always parsed on startup, as timers are needed right away
+        public final boolean hasTimers;
+
+        public final String name;
+        public final String appName;
+        public final String region;
+        public final String pass;
+        public final long lastModifiedTs;
+        public final String lastLoggedIP;
+        public final long lastLoggedAt;
+        public final boolean isFacebookUser;
+        public final int energy;
+
+        public final int[] tokenDashIds;
+        public final int[] tokenDeviceIds;
+        public final String[] tokens;
+        public final int[] sharedTokenDashIds;
+        public final String[] sharedTokens;
+
+        Entry(String fileName, long size, long lastModified, boolean hasTimers,
+              String name, String appName, String region, String pass, long lastModifiedTs,
+              String lastLoggedIP, long lastLoggedAt, boolean isFacebookUser, int energy,
+              int[] tokenDashIds, int[] tokenDeviceIds, String[] tokens,
+              int[] sharedTokenDashIds, String[] sharedTokens) {
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hasTimers = hasTimers;
+            this.name = name;
+            this.appName = appName;
+            this.region = region;
+            this.pass = pass;
+            this.lastModifiedTs = lastModifiedTs;
+            this.lastLoggedIP = lastLoggedIP;
+            this.lastLoggedAt = lastLoggedAt;
+            this.isFacebookUser = isFacebookUser;
+            this.energy = energy;
+            this.tokenDashIds = tokenDashIds;
+            this.tokenDeviceIds = tokenDeviceIds;
+            this.tokens = tokens;
+            this.sharedTokenDashIds = sharedTokenDashIds;
+            this.sharedTokens = sharedTokens;
+        }
+
+        /**
+         * @return user without profile.
+         */
+        public User toUser() {
+            User user = new User(name, pass, appName, region, isFacebookUser);
+            user.lastModifiedTs = lastModifiedTs;
+            user.lastLoggedIP = lastLoggedIP;
+            user.lastLoggedAt = lastLoggedAt;
+            user.energy = energy;
+            return user;
+        }
+
+        public boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+
+    /**
+     * Builds entry for user with loaded profile.
+     */
+    public static Entry entry(String fileName, long size, long lastModified, User user) {
+        Profile profile = user.getProfile();
+        List<DashBoard> tokenDashes = new ArrayList<>();
+        List<Device> tokenDevices = new ArrayList<>();
+        List<DashBoard> sharedDashes = new ArrayList<>();
+        boolean hasTimers = false;
+
+        for (DashBoard dash : profile.dashBoards) {
+            if (dash.devices != null) {
+                for (Device device : dash.devices) {
+                    if (device.token != null) {
+                        tokenDashes.add(dash);
+                        tokenDevices.add(device);
+                    }
+                }
+            }
+            if (dash.sharedToken != null) {
+                sharedDashes.add(dash);
+            }
+            for (Widget widget : dash.widgets) {
+                if (widget instanceof Timer || widget instanceof Eventor) {
+                    hasTimers = true;
+                }
+            }
+        }
+
+        int[] tokenDashIds = new int[tokenDevices.size()];
+        int[] tokenDeviceIds = new int[tokenDevices.size()];
+        String[] tokens = new String[tokenDevices.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokenDashIds[i] = tokenDashes.get(i).id;
+            tokenDeviceIds[i] = tokenDevices.get(i).id;
+            tokens[i] = tokenDevices.get(i).token;
+        }
+
+        int[] sharedTokenDashIds = new int[sharedDashes.size()];
+        String[] sharedTokens = new String[sharedDashes.size()];
+        for (int i = 0; i < sharedTokens.length; i++) {
+            sharedTokenDashIds[i] = sharedDashes.get(i).id;
+            sharedTokens[i] = sharedDashes.get(i).sharedToken;
+        }
+
+        return new Entry(fileName, size, lastModified, hasTimers,
+                user.name, user.appName, user.region, user.pass, user.lastModifiedTs,
+                user.lastLoggedIP, user.lastLoggedAt, user.isFacebookUser, user.energy,
+                tokenDashIds, tokenDeviceIds, tokens, sharedTokenDashIds, sharedTokens);
+    }
+
+    /**
+     * Same entry with user fields updated. Used for users which profile is not loaded.
+     */
+    public static Entry entry(Entry entry, User user) {
+        return new Entry(entry.fileName, entry.size, entry.lastModified, entry.hasTimers,
+                user.name, user.appName, user.region, user.pass, user.lastModifiedTs,
+                user.lastLoggedIP, user.lastLoggedAt, user.isFacebookUser, user.energy,
+                entry.tokenDashIds, entry.tokenDeviceIds, entry.tokens,
+                entry.sharedTokenDashIds, entry.sharedTokens);
+    }
+
+    /**
+     * @return entries by user file name. Empty map in case index is missing or broken.
+     */
+    public static Map<String, Entry> read(Path path) {
+        if (Files.notExists(path)) {
+            return Collections.emptyMap();
+        }
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                log.error("Wrong profiles index format : {}", path);
+                return Collections.emptyMap();
+            }
+            int count = dis.readInt();
+            Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                Entry entry = readEntry(dis);
+                entries.put(entry.fileName, entry);
+            }
+            return entries;
+        } catch (IOException e) {
+            log.error("Error reading profiles index {}. Reason : {}", path, e.getMessage());
+        }
+        return Collections.emptyMap();
+    }
+
+    private static Entry readEntry(DataInputStream dis) throws IOException {
+        String fileName = dis.readUTF();
+        long size = dis.readLong();
+        long lastModified = dis.readLong();
+        boolean hasTimers = dis.readBoolean();
+        String name = dis.readUTF();
+        String appName = dis.readUTF();
+        String region = readNullable(dis);
+        String pass = readNullable(dis);
+        long lastModifiedTs = dis.readLong();
+        String lastLoggedIP = readNullable(dis);
+        long lastLoggedAt = dis.readLong();
+        boolean isFacebookUser = dis.readBoolean();
+        int energy = dis.readInt();
+
+        int tokensCount = dis.readInt();
+        int[] tokenDashIds = new int[tokensCount];
+        int[] tokenDeviceIds = new int[tokensCount];
+        String[] tokens = new String[tokensCount];
+        for (int i = 0; i < tokensCount; i++) {
+            tokenDashIds[i] = dis.readInt();
+            tokenDeviceIds[i] = dis.readInt();
+            tokens[i] = dis.readUTF();
+        }
+
+        int sharedTokensCount = dis.readInt();
+        int[] sharedTokenDashIds = new int[sharedTokensCount];
+        String[] sharedTokens = new String[sharedTokensCount];
+        for (int i = 0; i < sharedTokensCount; i++) {
+            sharedTokenDashIds[i] = dis.readInt();
+            sharedTokens[i] = dis.readUTF();
+        }
+
+        return new Entry(fileName, size, lastModified, hasTimers,
+                name, appName, region, pass, lastModifiedTs, lastLoggedIP, lastLoggedAt, isFacebookUser, energy,
+                tokenDashIds, tokenDeviceIds, tokens, sharedTokenDashIds, sharedTokens);
+    }
+
+    /**
+     * Writes index to temp file and moves it over existing one.
+     */
+    public static void write(Path path, List<Entry> entries) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(entries.size());
+            for (Entry entry : entries) {
+                writeEntry(dos, entry);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeEntry(DataOutputStream dos, Entry entry) throws IOException {
+        dos.writeUTF(entry.fileName);
+        dos.writeLong(entry.size);
+        dos.writeLong(entry.lastModified);
+        dos.writeBoolean(entry.hasTimers);
+        dos.writeUTF(entry.name);
+        dos.writeUTF(entry.appName);
+        writeNullable(dos, entry.region);
+        writeNullable(dos, entry.pass);
+        dos.writeLong(entry.lastModifiedTs);
+        writeNullable(dos, entry.lastLoggedIP);
+        dos.writeLong(entry.lastLoggedAt);
+        dos.writeBoolean(entry.isFacebookUser);
+        dos.writeInt(entry.energy);
+
+        dos.writeInt(entry.tokens.length);
+        for (int i = 0; i < entry.tokens.length; i++) {
+            dos.writeInt(entry.tokenDashIds[i]);
+            dos.writeInt(entry.tokenDeviceIds[i]);
+            dos.writeUTF(entry.tokens[i]);
+        }
+
+        dos.writeInt(entry.sharedTokens.length);
+        for (int i = 0; i < entry.sharedTokens.length; i++) {
+            dos.writeInt(entry.sharedTokenDashIds[i]);
+            dos.writeUTF(entry.sharedTokens[i]);
+        }
+    }
+
+    private static String readNullable(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream dos, String value) throws IOException {
+        dos.writeBoolean(value != null);
+        if (value != null) {
+            dos.writeUTF(value);
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import cc.blynk.server.core.protocol.exceptions.IllegalCommandBodyException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -21,11 +22,16 @@ class RegularTokenManager {
 
     private final ConcurrentMap<String, TokenValue> cache;
 
-    public RegularTokenManager(Iterable<User> users) {
+    public RegularTokenManager(Iterable<User> users, Map<UserKey, ProfileIndex.Entry> indexedUsers) {
         this.cache = new ConcurrentHashMap<String, TokenValue>() {{
             for (User user : users) {
-                if (user.profile != null) {
-                    for (DashBoard dashBoard : user.profile.dashBoards) {
+                ProfileIndex.Entry entry = user.isProfileLoaded() ? null : indexedUsers.get(new UserKey(user));
+                if (entry != null) {
+                    for (int i = 0; i < entry.tokens.length; i++) {
+                        put(entry.tokens[i], new TokenValue(user, entry.tokenDashIds[i], entry.tokenDeviceIds[i]));
+                    }
+                } else if (user.getProfile() != null) {
+                    for (DashBoard dashBoard : user.getProfile().dashBoards) {
                         for (Device device : dashBoard.devices) {
                             if (device.token != null) {
                                 put(device.token, new TokenValue(user, dashBoard.id, device.id));
@@ -39,7 +45,7 @@ class RegularTokenManager {
 
     String assignToken(User user, int dashId, int deviceId, String newToken) {
         // Clean old token from cache if exists.
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
         Device device = dash.getDeviceById(deviceId);
 
         String oldToken = deleteDeviceToken(device);
@@ -53,7 +59,7 @@ class RegularTokenManager {
         device.token = newToken;
         cache.put(newToken, new TokenValue(user, dashId, deviceId));
 
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         log.debug("Generated token for user {}, dashId {}, deviceId {} is {}.", user.name, dashId, deviceId, newToken);
 
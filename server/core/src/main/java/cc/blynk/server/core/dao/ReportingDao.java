@@ -1,12 +1,14 @@
 package cc.blynk.server.core.dao;
 
+import cc.blynk.server.core.model.enums.AggregationFunction;
 import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
-import cc.blynk.server.core.protocol.exceptions.NoDataException;
-import cc.blynk.server.core.reporting.GraphPinRequest;
+import cc.blynk.server.core.reporting.ReportingReadProcessor;
 import cc.blynk.server.core.reporting.average.AverageAggregatorProcessor;
 import cc.blynk.server.core.reporting.raw.RawDataProcessor;
-import cc.blynk.utils.FileUtils;
+import cc.blynk.server.core.reporting.storage.ColumnarReportingStorage;
+import cc.blynk.server.core.reporting.storage.FileReportingStorage;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
 import cc.blynk.utils.NumberUtil;
 import cc.blynk.utils.ServerProperties;
 import org.apache.logging.log4j.LogManager;
@@ -15,11 +17,7 @@ import org.apache.logging.log4j.Logger;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
-import static cc.blynk.utils.ReportingUtil.EMPTY_ARRAY;
 import static cc.blynk.utils.StringUtils.DEVICE_SEPARATOR;
 
 /**
@@ -33,24 +31,47 @@ public class ReportingDao implements Closeable {
 
     public final AverageAggregatorProcessor averageAggregator;
     public final RawDataProcessor rawDataProcessor;
-
-    private final String dataFolder;
+    public final ReportingStorage storage;
+    public final ReportingReadProcessor readProcessor;
 
     private final boolean ENABLE_RAW_DB_DATA_STORE;
 
     //for test only
     public ReportingDao(String reportingFolder, AverageAggregatorProcessor averageAggregator, ServerProperties serverProperties) {
         this.averageAggregator = averageAggregator;
-        this.dataFolder = reportingFolder;
         this.ENABLE_RAW_DB_DATA_STORE = serverProperties.getBoolProperty("enable.raw.db.data.store");
-        this.rawDataProcessor = new RawDataProcessor(ENABLE_RAW_DB_DATA_STORE);
+        this.rawDataProcessor = new RawDataProcessor(ENABLE_RAW_DB_DATA_STORE, reportingFolder,
+                serverProperties.getIntProperty("raw.data.buffer.size", 100_000));
+        this.storage = createStorage(reportingFolder, serverProperties);
+        this.readProcessor = createReadProcessor(storage, serverProperties);
     }
 
     public ReportingDao(String reportingFolder , ServerProperties serverProperties) {
-        this.averageAggregator = new AverageAggregatorProcessor(reportingFolder);
-        this.dataFolder = reportingFolder;
+        this.averageAggregator = new AverageAggregatorProcessor(reportingFolder,
+                serverProperties.getBoolProperty("reporting.wal.fsync"));
         this.ENABLE_RAW_DB_DATA_STORE = serverProperties.getBoolProperty("enable.raw.db.data.store");
-        this.rawDataProcessor = new RawDataProcessor(ENABLE_RAW_DB_DATA_STORE);
+        this.rawDataProcessor = new RawDataProcessor(ENABLE_RAW_DB_DATA_STORE, reportingFolder,
+                serverProperties.getIntProperty("raw.data.buffer.size", 100_000));
+        this.storage = createStorage(reportingFolder, serverProperties);
+        this.readProcessor = createReadProcessor(storage, serverProperties);
+    }
+
+    private static ReportingStorage createStorage(String reportingFolder, ServerProperties serverProperties) {
+        if ("columnar".equals(serverProperties.getProperty("reporting.storage.type"))) {
+            try {
+                return new ColumnarReportingStorage(reportingFolder, serverProperties.getBoolProperty("reporting.storage.fsync"));
+            } catch (IOException ioe) {
+                throw new RuntimeException("Error opening reporting segments.", ioe);
+            }
+        }
+        return new FileReportingStorage(reportingFolder);
+    }
+
+    private static ReportingReadProcessor createReadProcessor(ReportingStorage storage, ServerProperties serverProperties) {
+        return new ReportingReadProcessor(storage,
+                serverProperties.getIntProperty("reporting.read.threads", 2),
+                serverProperties.getIntProperty("reporting.read.queue.limit", 1000),
+                serverProperties.getIntProperty("reporting.read.cache.size.mb", 32));
     }
 
     public static String generateFilename(int dashId, int deviceId, char pinType, byte pin, GraphType type) {
@@ -64,14 +85,22 @@ public class ReportingDao implements Closeable {
         }
     }
 
-    public static ByteBuffer getByteBufferFromDisk(String dataFolder, String username, int dashId, int deviceId, PinType pinType, byte pin, int count, GraphType type) {
-        Path userDataFile = Paths.get(dataFolder, username, generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type));
-        if (Files.notExists(userDataFile)) {
-            return null;
+    /**
+     * Average keeps old file name, other aggregates are stored with function suffix. For example
+     * history_1_v1_hourly_max.bin
+     */
+    public static String generateFilename(int dashId, int deviceId, char pinType, byte pin,
+                                          GraphType type, AggregationFunction function) {
+        String filename = generateFilename(dashId, deviceId, pinType, pin, type);
+        if (function.suffix == null) {
+            return filename;
         }
+        return filename.substring(0, filename.length() - 4) + "_" + function.suffix + ".bin";
+    }
 
+    public static ByteBuffer getByteBufferFromDisk(String dataFolder, String username, int dashId, int deviceId, PinType pinType, byte pin, int count, GraphType type) {
         try {
-            return FileUtils.read(userDataFile, count);
+            return FileReportingStorage.read(dataFolder, username, dashId, deviceId, pinType, pin, count, type);
         } catch (IOException ioe) {
             log.error(ioe);
         }
@@ -79,28 +108,22 @@ public class ReportingDao implements Closeable {
         return null;
     }
 
-    private static boolean checkNoData(byte[][] data) {
-        boolean noData = true;
-
-        for (byte[] pinData : data) {
-            noData = noData && pinData.length == 0;
+    public ByteBuffer getByteBufferFromDisk(String username, int dashId, int deviceId, PinType pinType, byte pin, int count, GraphType type) {
+        try {
+            return storage.read(username, dashId, deviceId, pinType, pin, count, type);
+        } catch (IOException ioe) {
+            log.error(ioe);
         }
 
-        return noData;
-    }
-
-    public ByteBuffer getByteBufferFromDisk(String username, int dashId, int deviceId, PinType pinType, byte pin, int count, GraphType type) {
-        return getByteBufferFromDisk(dataFolder, username, dashId, deviceId, pinType, pin, count, type);
+        return null;
     }
 
     public void delete(String username, int dashId, int deviceId, PinType pinType, byte pin) {
         log.debug("Removing {}{} pin data for dashId {}, deviceId {}.", pinType.pintTypeChar, pin, dashId, deviceId);
-        Path userDataMinuteFile = Paths.get(dataFolder, username, formatMinute(dashId, deviceId, pinType.pintTypeChar, pin));
-        Path userDataHourlyFile = Paths.get(dataFolder, username, formatHour(dashId, deviceId, pinType.pintTypeChar, pin));
-        Path userDataDailyFile = Paths.get(dataFolder, username, formatDaily(dashId, deviceId, pinType.pintTypeChar, pin));
-        FileUtils.deleteQuietly(userDataMinuteFile);
-        FileUtils.deleteQuietly(userDataHourlyFile);
-        FileUtils.deleteQuietly(userDataDailyFile);
+        storage.delete(username, dashId, deviceId, pinType, pin);
+        for (GraphType type : GraphType.values()) {
+            readProcessor.invalidate(username, dashId, deviceId, pinType.pintTypeChar, pin, type);
+        }
     }
 
     protected static String formatMinute(int dashId, int deviceId, char pinType, byte pin) {
@@ -133,7 +156,10 @@ public class ReportingDao implements Closeable {
         }
     }
 
-    private void process(String username, int dashId, int deviceId, byte pin, PinType pinType, String value, long ts, double doubleVal) {
+    /**
+     * @param doubleVal already parsed value or NumberUtil.NO_RESULT if value is not a number.
+     */
+    public void process(String username, int dashId, int deviceId, byte pin, PinType pinType, String value, long ts, double doubleVal) {
         if (ENABLE_RAW_DB_DATA_STORE) {
             rawDataProcessor.collect(username, dashId, deviceId, pinType.pintTypeChar, pin, ts, value, doubleVal);
         }
@@ -146,27 +172,36 @@ public class ReportingDao implements Closeable {
         averageAggregator.collect(username, dashId, deviceId, pinType.pintTypeChar, pin, ts, doubleVal);
     }
 
-    public byte[][] getAllFromDisk(String username, GraphPinRequest[] requestedPins) {
-        byte[][] values = new byte[requestedPins.length][];
-
-        for (int i = 0; i < requestedPins.length; i++) {
-            final ByteBuffer byteBuffer = getByteBufferFromDisk(username,
-                    requestedPins[i].dashId, requestedPins[i].deviceId, requestedPins[i].pinType,
-                    requestedPins[i].pin, requestedPins[i].count, requestedPins[i].type);
-            values[i] =  byteBuffer == null ? EMPTY_ARRAY : byteBuffer.array();
-        }
-
-
-        if (checkNoData(values)) {
-            throw new NoDataException();
+    /**
+     * Collects many pins of single device with same timestamp at once.
+     *
+     * @param doubleVals already parsed values or NumberUtil.NO_RESULT for values that are not a number.
+     */
+    public void process(String username, int dashId, int deviceId, PinType[] pinTypes, byte[] pins,
+                        String[] values, long ts, double[] doubleVals) {
+        if (ENABLE_RAW_DB_DATA_STORE) {
+            rawDataProcessor.collect(username, dashId, deviceId, pinTypes, pins, ts, values, doubleVals);
         }
 
-        return values;
+        averageAggregator.collect(username, dashId, deviceId, pinTypes, pins, ts, doubleVals);
     }
 
     @Override
     public void close() {
+        System.out.println("Stopping reporting readers...");
+        this.readProcessor.close();
+
         System.out.println("Stopping aggregator...");
         this.averageAggregator.close();
+
+        System.out.println("Stopping raw data processor...");
+        this.rawDataProcessor.close();
+
+        System.out.println("Stopping reporting storage...");
+        try {
+            this.storage.close();
+        } catch (IOException ioe) {
+            log.error("Error closing reporting storage.", ioe);
+        }
     }
 }
@@ -1,6 +1,8 @@
 package cc.blynk.server.core.dao;
 
 import cc.blynk.server.core.model.auth.Session;
+import cc.blynk.server.core.model.auth.WriteCoalescing;
+import cc.blynk.server.transport.EventLoopSharding;
 import io.netty.channel.EventLoop;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,12 +23,24 @@ public class SessionDao {
 
     public final ConcurrentMap<UserKey, Session> userSession = new ConcurrentHashMap<>();
 
+    public final EventLoopSharding sharding;
+    private final WriteCoalescing writeCoalescing;
+
+    public SessionDao() {
+        this(WriteCoalescing.DISABLED, EventLoopSharding.DISABLED);
+    }
+
+    public SessionDao(WriteCoalescing writeCoalescing, EventLoopSharding sharding) {
+        this.writeCoalescing = writeCoalescing;
+        this.sharding = sharding;
+    }
+
     //threadsafe
     public Session getOrCreateSessionByUser(UserKey key, EventLoop initialEventLoop) {
         Session group = userSession.get(key);
         //only one side came
         if (group == null) {
-            Session value = new Session(initialEventLoop);
+            Session value = new Session(initialEventLoop, writeCoalescing);
             group = userSession.putIfAbsent(key, value);
             if (group == null) {
                 log.trace("Creating unique session for user: {}", key);
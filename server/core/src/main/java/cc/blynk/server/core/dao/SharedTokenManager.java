@@ -5,6 +5,7 @@ import cc.blynk.server.core.model.auth.User;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -19,10 +20,17 @@ class SharedTokenManager {
 
     private static final Logger log = LogManager.getLogger(SharedTokenManager.class);
 
-    public SharedTokenManager(Iterable<User> users) {
+    public SharedTokenManager(Iterable<User> users, Map<UserKey, ProfileIndex.Entry> indexedUsers) {
         this.cache = new ConcurrentHashMap<String, SharedTokenValue>() {{
             for (User user : users) {
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                ProfileIndex.Entry entry = user.isProfileLoaded() ? null : indexedUsers.get(new UserKey(user));
+                if (entry != null) {
+                    for (int i = 0; i < entry.sharedTokens.length; i++) {
+                        put(entry.sharedTokens[i], new SharedTokenValue(user, entry.sharedTokenDashIds[i]));
+                    }
+                    continue;
+                }
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     if (dashBoard.sharedToken != null) {
                         put(dashBoard.sharedToken, new SharedTokenValue(user, dashBoard.id));
                     }
@@ -41,7 +49,7 @@ class SharedTokenManager {
         //assign new token
         dash.sharedToken = newToken;
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         cache.put(newToken, new SharedTokenValue(user, dash.id));
 
@@ -8,6 +8,8 @@ import cc.blynk.server.redis.RedisClient;
 import cc.blynk.utils.TokenGeneratorUtil;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -24,9 +26,17 @@ public class TokenManager {
     private final String currentIp;
 
     public TokenManager(ConcurrentMap<UserKey, User> users, BlockingIOProcessor blockingIOProcessor, RedisClient redisClient, String currentIp) {
+        this(users, Collections.emptyMap(), blockingIOProcessor, redisClient, currentIp);
+    }
+
+    /**
+     * @param indexedUsers - tokens of users which profiles are not loaded yet.
+     */
+    public TokenManager(ConcurrentMap<UserKey, User> users, Map<UserKey, ProfileIndex.Entry> indexedUsers,
+                        BlockingIOProcessor blockingIOProcessor, RedisClient redisClient, String currentIp) {
         Collection<User> allUsers = users.values();
-        this.regularTokenManager = new RegularTokenManager(allUsers);
-        this.sharedTokenManager = new SharedTokenManager(allUsers);
+        this.regularTokenManager = new RegularTokenManager(allUsers, indexedUsers);
+        this.sharedTokenManager = new SharedTokenManager(allUsers, indexedUsers);
         this.blockingIOProcessor = blockingIOProcessor;
         this.redisClient = redisClient;
         this.currentIp = currentIp;
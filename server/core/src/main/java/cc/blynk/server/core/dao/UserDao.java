@@ -2,6 +2,7 @@ package cc.blynk.server.core.dao;
 
 import cc.blynk.server.core.model.AppName;
 import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.Profile;
 import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.model.widgets.Widget;
 import cc.blynk.server.core.model.widgets.others.webhook.WebHook;
@@ -12,6 +13,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
@@ -28,11 +31,18 @@ public class UserDao {
 
     public final ConcurrentMap<UserKey, User> users;
     private final String region;
+    //users changed since last profile saver run
+    private final Queue<UserKey> dirtyUsers = new ConcurrentLinkedQueue<>();
+    //users with pin values changed since last pin state flush
+    private final Queue<UserKey> dirtyPinUsers = new ConcurrentLinkedQueue<>();
 
     public UserDao(ConcurrentMap<UserKey, User> users, String region) {
         //reading DB to RAM.
         this.users = users;
         this.region = region;
+        for (User user : users.values()) {
+            user.trackChanges(dirtyUsers, dirtyPinUsers);
+        }
         log.info("Region : {}", region);
     }
 
@@ -71,12 +81,46 @@ public class UserDao {
 
     public void add(User user) {
         users.put(new UserKey(user), user);
+        track(user);
+    }
+
+    private void track(User user) {
+        user.trackChanges(dirtyUsers, dirtyPinUsers);
+        user.markDirty();
+    }
+
+    /**
+     * @return key of user changed since last save or null if there are no more changes.
+     */
+    public UserKey pollDirty() {
+        return dirtyUsers.poll();
+    }
+
+    /**
+     * @return key of user with pin values changed since last flush or null if there are no more changes.
+     */
+    public UserKey pollPinsDirty() {
+        return dirtyPinUsers.poll();
+    }
+
+    /**
+     * Profiles of users restored from profiles index are read from disk on first login.
+     * Usage stats are built only from loaded profiles, so stats page doesn't read all user files.
+     */
+    private List<Profile> loadedProfiles() {
+        List<Profile> profiles = new ArrayList<>();
+        for (User user : users.values()) {
+            if (user.isProfileLoaded()) {
+                profiles.add(user.getProfile());
+            }
+        }
+        return profiles;
     }
 
     public Map<String, Integer> getBoardsUsage() {
         Map<String, Integer> boards = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 String type = dashBoard.boardType == null ? "Not Selected" : dashBoard.boardType;
                 Integer i = boards.getOrDefault(type, 0);
                 boards.put(type, ++i);
@@ -95,8 +139,8 @@ public class UserDao {
 
     public Map<String, Integer> getWidgetsUsage() {
         Map<String, Integer> widgets = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 if (dashBoard.widgets != null) {
                     for (Widget widget : dashBoard.widgets) {
                         Integer i = widgets.getOrDefault(widget.getClass().getSimpleName(), 0);
@@ -110,8 +154,8 @@ public class UserDao {
 
     public Map<String, Integer> getProjectsPerUser() {
         Map<String, Integer> projectsPerUser = new HashMap<>();
-        for (User user : users.values()) {
-            String key = String.valueOf(user.profile.dashBoards.length);
+        for (Profile profile : loadedProfiles()) {
+            String key = String.valueOf(profile.dashBoards.length);
             Integer i = projectsPerUser.getOrDefault(key, 0);
             projectsPerUser.put(key, ++i);
         }
@@ -120,8 +164,8 @@ public class UserDao {
 
     public Map<String, Integer> getLibraryVersion() {
         Map<String, Integer> data = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 if (dashBoard.hardwareInfo != null && dashBoard.hardwareInfo.version != null) {
                     String key = dashBoard.hardwareInfo.version;
                     Integer i = data.getOrDefault(key, 0);
@@ -134,8 +178,8 @@ public class UserDao {
 
     public Map<String, Integer> getCpuType() {
         Map<String, Integer> data = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 if (dashBoard.hardwareInfo != null && dashBoard.hardwareInfo.cpuType != null) {
                     String key = dashBoard.hardwareInfo.cpuType;
                     Integer i = data.getOrDefault(key, 0);
@@ -148,8 +192,8 @@ public class UserDao {
 
     public Map<String, Integer> getConnectionType() {
         Map<String, Integer> data = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 if (dashBoard.hardwareInfo != null && dashBoard.hardwareInfo.connectionType != null) {
                     String key = dashBoard.hardwareInfo.connectionType;
                     Integer i = data.getOrDefault(key, 0);
@@ -162,8 +206,8 @@ public class UserDao {
 
     public Map<String, Integer> getHardwareBoards() {
         Map<String, Integer> data = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 if (dashBoard.hardwareInfo != null && dashBoard.hardwareInfo.boardType != null) {
                     String key = dashBoard.hardwareInfo.boardType;
                     Integer i = data.getOrDefault(key, 0);
@@ -176,8 +220,8 @@ public class UserDao {
 
     public Map<String, Integer> getFilledSpace() {
         Map<String, Integer> filledSpace = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 int sum = 0;
                 for (Widget widget : dashBoard.widgets) {
                     if (widget.height < 0 || widget.width < 0) {
@@ -197,8 +241,8 @@ public class UserDao {
 
     public Map<String, Integer> getWebHookHosts() {
         Map<String, Integer> data = new HashMap<>();
-        for (User user : users.values()) {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (Profile profile : loadedProfiles()) {
+            for (DashBoard dashBoard : profile.dashBoards) {
                 for (Widget widget : dashBoard.widgets) {
                     if (widget instanceof WebHook) {
                         WebHook webHook = (WebHook) widget;
@@ -244,6 +288,7 @@ public class UserDao {
         log.debug("Adding new facebook user {}. App : {}", userName, appName);
         User newUser = new User(userName, null, appName, region, true);
         users.put(new UserKey(userName, appName), newUser);
+        track(newUser);
         return newUser;
     }
 
@@ -251,6 +296,7 @@ public class UserDao {
         log.debug("Adding new user {}. App : {}", userName, appName);
         User newUser = new User(userName, pass, appName, region, false);
         users.put(new UserKey(userName, appName), newUser);
+        track(newUser);
     }
 
 }
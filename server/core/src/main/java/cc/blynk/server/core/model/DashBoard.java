@@ -3,8 +3,6 @@ package cc.blynk.server.core.model;
 import cc.blynk.server.core.model.device.Device;
 import cc.blynk.server.core.model.device.Tag;
 import cc.blynk.server.core.model.enums.PinType;
-import cc.blynk.server.core.model.widgets.MultiPinWidget;
-import cc.blynk.server.core.model.widgets.OnePinWidget;
 import cc.blynk.server.core.model.widgets.Target;
 import cc.blynk.server.core.model.widgets.Widget;
 import cc.blynk.server.core.model.widgets.notifications.Notification;
@@ -61,9 +59,20 @@ public class DashBoard {
 
     public volatile String sharedToken;
 
+    //pin values of profiles stored before pin state storage was introduced. Only read from old profiles,
+    //PinStateStorage moves them to pinStates on startup, so map is empty for all loaded profiles
     @JsonDeserialize(keyUsing = PinStorageKeyDeserializer.class)
     public Map<PinStorageKey, String> pinsStorage = new HashMap<>();
 
+    //last values of all pins. not part of profile
+    public final transient PinStateMap pinStates = new PinStateMap();
+
+    //"pm" messages per device id built for current widgets array. not part of profile
+    private transient volatile PinModeMessages pinModeMessages;
+
+    //widgets by pin built for current widgets array. not part of profile
+    private transient volatile WidgetPinIndex widgetPinIndex;
+
     public String getName() {
         return name;
     }
@@ -78,21 +87,30 @@ public class DashBoard {
         update(deviceId, pin, type, splitted[2]);
     }
 
+    /**
+     * Pin state map is the source of pin values. Widget value is in-memory copy for app, that gets
+     * into profile file only with structural changes and is overridden from pin state storage on load.
+     */
     public void update(final int deviceId, final byte pin, final PinType type, final String value, final long now) {
-        boolean hasWidget = false;
         for (Widget widget : widgets) {
-            if (widget.updateIfSame(deviceId, pin, type, value)) {
-                hasWidget = true;
-            }
-        }
-        //special case. #237 if no widget - storing without widget.
-        if (!hasWidget) {
-            pinsStorage.put(new PinStorageKey(deviceId, type, pin), value);
+            widget.updateIfSame(deviceId, pin, type, value);
         }
+        //special case. #237 if no widget - value is still stored.
+        pinStates.put(deviceId, type, pin, value);
 
         this.updatedAt = now;
     }
 
+    /**
+     * Applies value loaded from pin state storage. Doesn't mark pin as changed.
+     */
+    public void restorePinState(final int deviceId, final byte pin, final PinType type, final String value) {
+        for (Widget widget : widgets) {
+            widget.updateIfSame(deviceId, pin, type, value);
+        }
+        pinStates.put(deviceId, type, pin, value, false);
+    }
+
     public void update(final int deviceId, final byte pin, final PinType type, final String value) {
         update(deviceId, pin, type, value, System.currentTimeMillis());
     }
@@ -114,12 +132,22 @@ public class DashBoard {
     }
 
     public Widget findWidgetByPin(int deviceId, byte pin, PinType pinType) {
-        for (Widget widget : widgets) {
-            if (widget.isSame(deviceId, pin, pinType)) {
-                return widget;
+        final Widget[] widgets = this.widgets;
+        WidgetPinIndex index = this.widgetPinIndex;
+        if (index == null || index.widgets != widgets) {
+            index = new WidgetPinIndex(widgets);
+            this.widgetPinIndex = index;
+        }
+        return index.get(deviceId, pin, pinType);
+    }
+
+    static int findWidgetIndexByPin(Widget[] widgets, int deviceId, byte pin, PinType pinType) {
+        for (int i = 0; i < widgets.length; i++) {
+            if (widgets[i].isSame(deviceId, pin, pinType)) {
+                return i;
             }
         }
-        return null;
+        return -1;
     }
 
     public WebHook findWebhookByPin(int deviceId, byte pin, PinType pinType) {
@@ -219,7 +247,21 @@ public class DashBoard {
         return null;
     }
 
+    /**
+     * Pin mode message is sent on every hardware login and dash activation, so it is cached
+     * per device until widgets array is replaced or widget is updated in place.
+     */
     public String buildPMMessage(int deviceId) {
+        final Widget[] widgets = this.widgets;
+        PinModeMessages messages = this.pinModeMessages;
+        if (messages == null || messages.widgets != widgets) {
+            messages = new PinModeMessages(widgets);
+            this.pinModeMessages = messages;
+        }
+        return messages.get(deviceId);
+    }
+
+    static String buildPMMessage(Widget[] widgets, int deviceId) {
         StringBuilder sb = new StringBuilder("pm");
         for (Widget widget : widgets) {
             widget.append(sb, deviceId);
@@ -227,6 +269,14 @@ public class DashBoard {
         return sb.toString();
     }
 
+    /**
+     * Should be called when widget is replaced within widgets array.
+     */
+    public void invalidateWidgetsCache() {
+        this.pinModeMessages = null;
+        this.widgetPinIndex = null;
+    }
+
 
     public int energySum() {
         int sum = 0;
@@ -236,22 +286,6 @@ public class DashBoard {
         return sum;
     }
 
-    public void cleanPinStorage(Widget widget) {
-        if (widget instanceof OnePinWidget) {
-            OnePinWidget onePinWidget = (OnePinWidget) widget;
-            pinsStorage.remove(new PinStorageKey(onePinWidget.deviceId, onePinWidget.pinType, onePinWidget.pin));
-        } else if (widget instanceof MultiPinWidget) {
-            MultiPinWidget multiPinWidget = (MultiPinWidget) widget;
-            if (multiPinWidget.pins != null) {
-                for (Pin pin : multiPinWidget.pins) {
-                    if (pin != null) {
-                        pinsStorage.remove(new PinStorageKey(multiPinWidget.deviceId, pin.pinType, pin.pin));
-                    }
-                }
-            }
-        }
-    }
-
     public void updateFields(DashBoard updatedDashboard) {
         this.name = updatedDashboard.name;
         this.isShared = updatedDashboard.isShared;
@@ -270,10 +304,6 @@ public class DashBoard {
 
         this.widgets = updatedDashboard.widgets;
 
-        for (Widget widget : widgets) {
-            cleanPinStorage(widget);
-        }
-
         this.isAppConnectedOn = updatedDashboard.isAppConnectedOn;
         this.updatedAt = System.currentTimeMillis();
     }
@@ -0,0 +1,29 @@
+package cc.blynk.server.core.model;
+
+import cc.blynk.server.core.model.widgets.Widget;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * "pm" messages per device built for specific widgets array.
+ */
+final class PinModeMessages {
+
+    final Widget[] widgets;
+    private final ConcurrentMap<Integer, String> messages = new ConcurrentHashMap<>();
+
+    PinModeMessages(Widget[] widgets) {
+        this.widgets = widgets;
+    }
+
+    String get(int deviceId) {
+        String message = messages.get(deviceId);
+        if (message == null) {
+            message = DashBoard.buildPMMessage(widgets, deviceId);
+            messages.put(deviceId, message);
+        }
+        return message;
+    }
+
+}
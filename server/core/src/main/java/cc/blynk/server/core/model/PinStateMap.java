@@ -0,0 +1,151 @@
+package cc.blynk.server.core.model;
+
+import cc.blynk.server.core.model.enums.PinType;
+
+import java.util.Arrays;
+
+/**
+ * Last values of all pins of dashboard. Not part of profile json, persisted separately
+ * by {@link cc.blynk.server.core.dao.PinStateStorage}, so pin updates don't require profile rewrite.
+ *
+ * Key is packed into long (deviceId, pinType, pin). Keys are kept sorted, so lookup is binary search.
+ * Dashboard usually has few dozens of pins, so insert with array copy is cheap.
+ * Every entry has changed flag, so only values updated since last flush are written to disk.
+ */
+public final class PinStateMap {
+
+    private static final long[] EMPTY_KEYS = {};
+    private static final String[] EMPTY_VALUES = {};
+    private static final boolean[] EMPTY_FLAGS = {};
+
+    private long[] keys = EMPTY_KEYS;
+    private String[] values = EMPTY_VALUES;
+    private boolean[] changed = EMPTY_FLAGS;
+    private int size;
+
+    //keys removed since last flush
+    private long[] removed = EMPTY_KEYS;
+    private int removedSize;
+
+    /**
+     * Receives pin value. Value is null for removed pin.
+     */
+    @FunctionalInterface
+    public interface PinStateConsumer {
+        void accept(int deviceId, PinType pinType, byte pin, String value);
+    }
+
+    public static long key(int deviceId, PinType pinType, byte pin) {
+        return ((long) deviceId << 16) | ((pinType.pintTypeChar & 0xFF) << 8) | (pin & 0xFF);
+    }
+
+    private static int deviceId(long key) {
+        return (int) (key >> 16);
+    }
+
+    private static PinType pinType(long key) {
+        return PinType.getPinType((char) ((key >>> 8) & 0xFF));
+    }
+
+    private static byte pin(long key) {
+        return (byte) key;
+    }
+
+    public void put(int deviceId, PinType pinType, byte pin, String value) {
+        put(deviceId, pinType, pin, value, true);
+    }
+
+    public synchronized void put(int deviceId, PinType pinType, byte pin, String value, boolean markChanged) {
+        long key = key(deviceId, pinType, pin);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            values[index] = value;
+            changed[index] |= markChanged;
+            return;
+        }
+
+        index = -(index + 1);
+        if (size == keys.length) {
+            int newCapacity = Math.max(8, size * 2);
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            changed = Arrays.copyOf(changed, newCapacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        System.arraycopy(changed, index, changed, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        changed[index] = markChanged;
+        size++;
+    }
+
+    public synchronized String get(int deviceId, PinType pinType, byte pin) {
+        int index = Arrays.binarySearch(keys, 0, size, key(deviceId, pinType, pin));
+        return index < 0 ? null : values[index];
+    }
+
+    public synchronized void remove(int deviceId, PinType pinType, byte pin) {
+        long key = key(deviceId, pinType, pin);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Removes all pins of device.
+     */
+    public synchronized void removeDevice(int deviceId) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (deviceId(keys[i]) == deviceId) {
+                removeAt(i);
+            }
+        }
+    }
+
+    private void removeAt(int index) {
+        if (removedSize == removed.length) {
+            removed = Arrays.copyOf(removed, Math.max(4, removedSize * 2));
+        }
+        removed[removedSize++] = keys[index];
+
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        System.arraycopy(changed, index + 1, changed, index, moved);
+        size--;
+        values[size] = null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void forEach(PinStateConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(deviceId(keys[i]), pinType(keys[i]), pin(keys[i]), values[i]);
+        }
+    }
+
+    /**
+     * Visits removed and changed since last call pins and resets changed flags.
+     */
+    public synchronized void drainChanged(PinStateConsumer consumer) {
+        for (int i = 0; i < removedSize; i++) {
+            long key = removed[i];
+            if (Arrays.binarySearch(keys, 0, size, key) < 0) {
+                consumer.accept(deviceId(key), pinType(key), pin(key), null);
+            }
+        }
+        removedSize = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (changed[i]) {
+                changed[i] = false;
+                consumer.accept(deviceId(keys[i]), pinType(keys[i]), pin(keys[i]), values[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package cc.blynk.server.core.model;
+
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.model.widgets.Widget;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Positions of widgets by pin built lazily for specific widgets array,
+ * so pin update doesn't scan all widgets of dashboard. Missing widget is cached as -1.
+ */
+final class WidgetPinIndex {
+
+    final Widget[] widgets;
+    private final ConcurrentMap<Long, Integer> indexes = new ConcurrentHashMap<>();
+
+    WidgetPinIndex(Widget[] widgets) {
+        this.widgets = widgets;
+    }
+
+    Widget get(int deviceId, byte pin, PinType pinType) {
+        Long key = PinStateMap.key(deviceId, pinType, pin);
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = DashBoard.findWidgetIndexByPin(widgets, deviceId, pin, pinType);
+            indexes.put(key, index);
+        }
+        return index < 0 ? null : widgets[index];
+    }
+
+}
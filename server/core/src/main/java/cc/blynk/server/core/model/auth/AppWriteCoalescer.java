@@ -0,0 +1,204 @@
+package cc.blynk.server.core.model.auth;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.CharsetUtil;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
+import static cc.blynk.utils.StringUtils.BODY_SEPARATOR;
+
+/**
+ * Writes messages to session app channels without flush and flushes them in batch.
+ * All app channels of session are registered within session event loop, so state
+ * here is accessed from that event loop only and requires no synchronization.
+ */
+final class AppWriteCoalescer implements Runnable {
+
+    //cmd + msgId + length
+    private static final int HEADER_LENGTH = 5;
+
+    final EventLoop eventLoop;
+    private final Set<Channel> appChannels;
+    private final WriteCoalescing settings;
+    private final GlobalStats stats;
+
+    private int pendingWrites;
+    private boolean flushScheduled;
+    //latest not delivered hardware values per pin for not writable channels
+    private final Map<Channel, Map<String, ByteBuf>> collapsed = new HashMap<>();
+
+    AppWriteCoalescer(EventLoop eventLoop, Set<Channel> appChannels, WriteCoalescing settings) {
+        this.eventLoop = eventLoop;
+        this.appChannels = appChannels;
+        this.settings = settings;
+        this.stats = settings.stats;
+    }
+
+    boolean inEventLoop() {
+        return eventLoop.inEventLoop();
+    }
+
+    /**
+     * Takes ownership of msg.
+     */
+    void write(Set<Channel> targets, ByteBuf msg) {
+        try {
+            for (Channel channel : targets) {
+                writeTo(channel, msg);
+            }
+        } finally {
+            msg.release();
+        }
+        afterWrites();
+    }
+
+    /**
+     * Doesn't take ownership of msg. {@link #afterWrites()} should be called once msg is written to all targets.
+     */
+    void writeTo(Channel channel, ByteBuf msg) {
+        if (channel.eventLoop() != eventLoop) {
+            //channel is not re-registered yet, nothing to coalesce with
+            if (channel.isWritable()) {
+                channel.writeAndFlush(msg.retainedDuplicate(), channel.voidPromise());
+            }
+        } else if (channel.isWritable()) {
+            deliverCollapsed(channel);
+            //each channel gets own indexes, as flush happens after all writes
+            write(channel, msg.retainedDuplicate());
+        } else if (settings.collapseLatest) {
+            collapse(channel, msg);
+        }
+    }
+
+    void afterWrites() {
+        if (pendingWrites >= settings.maxMessages) {
+            run();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    private void write(Channel channel, ByteBuf msg) {
+        channel.write(msg, channel.voidPromise());
+        pendingWrites++;
+        if (stats != null) {
+            stats.appMessagesDelivered.increment();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled || pendingWrites == 0) {
+            return;
+        }
+        flushScheduled = true;
+        if (settings.delayMicros > 0) {
+            eventLoop.schedule(this, settings.delayMicros, TimeUnit.MICROSECONDS);
+        } else {
+            //executed after all reads of current event loop tick are processed
+            eventLoop.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        flushScheduled = false;
+        if (pendingWrites == 0) {
+            return;
+        }
+        for (Channel channel : appChannels) {
+            channel.flush();
+        }
+        pendingWrites = 0;
+        if (stats != null) {
+            stats.appFlushes.increment();
+        }
+    }
+
+    private void collapse(Channel channel, ByteBuf msg) {
+        String key = pinKey(msg);
+        if (key == null) {
+            //not a pin write, dropped as before
+            return;
+        }
+        Map<String, ByteBuf> values = collapsed.get(channel);
+        if (values == null) {
+            values = new LinkedHashMap<>();
+            collapsed.put(channel, values);
+        }
+        ByteBuf prev = values.put(key, msg.retainedDuplicate());
+        if (prev != null) {
+            prev.release();
+            if (stats != null) {
+                stats.appMessagesCollapsed.increment();
+            }
+        }
+    }
+
+    private void deliverCollapsed(Channel channel) {
+        if (collapsed.isEmpty()) {
+            return;
+        }
+        Map<String, ByteBuf> values = collapsed.remove(channel);
+        if (values != null) {
+            for (ByteBuf value : values.values()) {
+                write(channel, value);
+            }
+        }
+    }
+
+    void onWritable(Channel channel) {
+        if (channel.eventLoop() == eventLoop && channel.isWritable()) {
+            deliverCollapsed(channel);
+            run();
+        }
+    }
+
+    void discardAll() {
+        for (Map<String, ByteBuf> values : collapsed.values()) {
+            for (ByteBuf value : values.values()) {
+                value.release();
+            }
+        }
+        collapsed.clear();
+    }
+
+    void discard(Channel channel) {
+        Map<String, ByteBuf> values = collapsed.remove(channel);
+        if (values != null) {
+            for (ByteBuf value : values.values()) {
+                value.release();
+            }
+        }
+    }
+
+    /**
+     * @return "dashId-deviceId\0vw\0pin" for hardware write messages, null for others.
+     */
+    private static String pinKey(ByteBuf msg) {
+        final int start = msg.readerIndex();
+        final int end = msg.writerIndex();
+        if (msg.getUnsignedByte(start) != HARDWARE) {
+            return null;
+        }
+        final int bodyStart = start + HEADER_LENGTH;
+        final int i1 = msg.indexOf(bodyStart, end, (byte) BODY_SEPARATOR);
+        if (i1 == -1 || i1 + 3 > end || msg.getByte(i1 + 2) != 'w') {
+            return null;
+        }
+        final int i2 = msg.indexOf(i1 + 1, end, (byte) BODY_SEPARATOR);
+        final int i3 = i2 == -1 ? -1 : msg.indexOf(i2 + 1, end, (byte) BODY_SEPARATOR);
+        if (i3 == -1) {
+            return null;
+        }
+        return msg.toString(bodyStart, i3 - bodyStart, CharsetUtil.US_ASCII);
+    }
+
+}
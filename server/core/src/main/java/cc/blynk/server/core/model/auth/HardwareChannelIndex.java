@@ -0,0 +1,91 @@
+package cc.blynk.server.core.model.auth;
+
+import cc.blynk.server.core.session.HardwareStateHolder;
+import io.netty.channel.Channel;
+import io.netty.util.collection.IntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static cc.blynk.utils.StateHolderUtil.getHardState;
+
+/**
+ * Immutable lookup of session hardware channels by dashId, dashId + deviceId and token.
+ * Rebuilt on every hardware login/close, so lookups on message path
+ * require no locking, no pipeline scans and no allocations.
+ */
+final class HardwareChannelIndex {
+
+    static final Channel[] EMPTY_CHANNELS = {};
+    static final HardwareChannelIndex EMPTY = new HardwareChannelIndex(
+            new IntObjectHashMap<>(0), new IntObjectHashMap<>(0), new HashMap<>(0));
+
+    private final IntObjectHashMap<Channel[]> byDash;
+    private final IntObjectHashMap<IntObjectHashMap<Channel[]>> byDashAndDevice;
+    private final Map<String, Channel[]> byToken;
+
+    private HardwareChannelIndex(IntObjectHashMap<Channel[]> byDash,
+                                 IntObjectHashMap<IntObjectHashMap<Channel[]>> byDashAndDevice,
+                                 Map<String, Channel[]> byToken) {
+        this.byDash = byDash;
+        this.byDashAndDevice = byDashAndDevice;
+        this.byToken = byToken;
+    }
+
+    static HardwareChannelIndex build(Collection<Channel> channels) {
+        IntObjectHashMap<Channel[]> byDash = new IntObjectHashMap<>();
+        IntObjectHashMap<IntObjectHashMap<Channel[]>> byDashAndDevice = new IntObjectHashMap<>();
+        Map<String, Channel[]> byToken = new HashMap<>();
+
+        for (Channel channel : channels) {
+            HardwareStateHolder state = getHardState(channel);
+            if (state == null) {
+                continue;
+            }
+
+            byDash.put(state.dashId, append(byDash.get(state.dashId), channel));
+
+            IntObjectHashMap<Channel[]> byDevice = byDashAndDevice.get(state.dashId);
+            if (byDevice == null) {
+                byDevice = new IntObjectHashMap<>(4);
+                byDashAndDevice.put(state.dashId, byDevice);
+            }
+            byDevice.put(state.deviceId, append(byDevice.get(state.deviceId), channel));
+
+            if (state.token != null) {
+                byToken.put(state.token, append(byToken.get(state.token), channel));
+            }
+        }
+
+        return new HardwareChannelIndex(byDash, byDashAndDevice, byToken);
+    }
+
+    private static Channel[] append(Channel[] channels, Channel channel) {
+        if (channels == null) {
+            return new Channel[] {channel};
+        }
+        Channel[] result = Arrays.copyOf(channels, channels.length + 1);
+        result[channels.length] = channel;
+        return result;
+    }
+
+    private static Channel[] orEmpty(Channel[] channels) {
+        return channels == null ? EMPTY_CHANNELS : channels;
+    }
+
+    Channel[] get(int dashId) {
+        return orEmpty(byDash.get(dashId));
+    }
+
+    Channel[] get(int dashId, int deviceId) {
+        IntObjectHashMap<Channel[]> byDevice = byDashAndDevice.get(dashId);
+        return byDevice == null ? EMPTY_CHANNELS : orEmpty(byDevice.get(deviceId));
+    }
+
+    Channel[] get(String token) {
+        return orEmpty(byToken.get(token));
+    }
+
+}
@@ -1,9 +1,7 @@
 package cc.blynk.server.core.model.auth;
 
-import cc.blynk.server.core.session.HardwareStateHolder;
-import cc.blynk.server.core.stats.metrics.InstanceLoadMeter;
 import cc.blynk.server.handlers.BaseSimpleChannelInboundHandler;
-import cc.blynk.utils.ArrayUtil;
+import cc.blynk.utils.CoarseClock;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
@@ -12,14 +10,13 @@ import io.netty.util.internal.ConcurrentSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
+import static cc.blynk.utils.BlynkByteBufUtil.makeDeviceMessage;
 import static cc.blynk.utils.BlynkByteBufUtil.makeUTF8StringMessage;
-import static cc.blynk.utils.StateHolderUtil.getHardState;
-import static cc.blynk.utils.StateHolderUtil.isSameDash;
-import static cc.blynk.utils.StateHolderUtil.isSameDashAndDeviceId;
-import static cc.blynk.utils.StringUtils.DEVICE_SEPARATOR;
 import static cc.blynk.utils.StringUtils.prependDashIdAndDeviceId;
 
 /**
@@ -33,95 +30,226 @@ public class Session {
 
     private static final Logger log = LogManager.getLogger(Session.class);
 
-    public final EventLoop initialEventLoop;
+    //changed only when session is moved to another event loop, see migrate()
+    public volatile EventLoop initialEventLoop;
     public final Set<Channel> appChannels = new ConcurrentSet<>();
     public final Set<Channel> hardwareChannels = new ConcurrentSet<>();
 
     private final ChannelFutureListener appRemover = future -> removeAppChannel(future.channel());
     private final ChannelFutureListener hardRemover = future -> removeHardChannel(future.channel());
 
+    //rebuilt on hardware login/close only, read on every message
+    private volatile HardwareChannelIndex hardIndex = HardwareChannelIndex.EMPTY;
+
+    private final WriteCoalescing writeCoalescing;
+    //null when app writes coalescing is disabled
+    private volatile AppWriteCoalescer appWriter;
+
     public Session(EventLoop initialEventLoop) {
+        this(initialEventLoop, WriteCoalescing.DISABLED);
+    }
+
+    public Session(EventLoop initialEventLoop, WriteCoalescing writeCoalescing) {
         this.initialEventLoop = initialEventLoop;
+        this.writeCoalescing = writeCoalescing;
+        this.appWriter = newAppWriter(initialEventLoop);
+    }
+
+    private AppWriteCoalescer newAppWriter(EventLoop eventLoop) {
+        return writeCoalescing.enabled && eventLoop != null
+                ? new AppWriteCoalescer(eventLoop, appChannels, writeCoalescing)
+                : null;
     }
 
     private static int getRequestRate(Set<Channel> channels) {
-        double sum = 0;
+        final long now = CoarseClock.millis();
+        int sum = 0;
         for (Channel c : channels) {
-            BaseSimpleChannelInboundHandler handler = c.pipeline().get(BaseSimpleChannelInboundHandler.class);
+            BaseSimpleChannelInboundHandler<?> handler = BaseSimpleChannelInboundHandler.get(c);
             if (handler != null) {
-                InstanceLoadMeter loadMeter = handler.getQuotaMeter();
-                sum += loadMeter.getOneMinuteRateNoTick();
+                sum += handler.getQuotaMeter().getRate(now);
             }
         }
-        return (int) sum;
+        return sum;
     }
 
     public static boolean needSync(Channel channel, String sharedToken) {
-        BaseSimpleChannelInboundHandler appHandler = channel.pipeline().get(BaseSimpleChannelInboundHandler.class);
+        BaseSimpleChannelInboundHandler<?> appHandler = BaseSimpleChannelInboundHandler.get(channel);
         return appHandler != null && appHandler.state.contains(sharedToken);
     }
 
     public void addAppChannel(Channel appChannel) {
         if (appChannels.add(appChannel)) {
             appChannel.closeFuture().addListener(appRemover);
+            followSessionLoop(appChannel);
         }
     }
 
     public void removeAppChannel(Channel appChannel) {
         if (appChannels.remove(appChannel)) {
             appChannel.closeFuture().removeListener(appRemover);
+            final AppWriteCoalescer appWriter = this.appWriter;
+            if (appWriter != null) {
+                if (appWriter.inEventLoop()) {
+                    appWriter.discard(appChannel);
+                } else {
+                    appWriter.eventLoop.execute(() -> appWriter.discard(appChannel));
+                }
+            }
         }
     }
 
+    /**
+     * Delivers pin values collapsed while app channel was not writable.
+     */
+    public void onAppChannelWritable(Channel appChannel) {
+        final AppWriteCoalescer appWriter = this.appWriter;
+        if (appWriter != null && appWriter.inEventLoop()) {
+            appWriter.onWritable(appChannel);
+        }
+    }
+
+    /**
+     * Hardware state should be already attached to channel via StateHolderUtil.setHardState.
+     */
     public void addHardChannel(Channel hardChannel) {
         if (hardwareChannels.add(hardChannel)) {
             hardChannel.closeFuture().addListener(hardRemover);
+            reindexHardChannels();
+            followSessionLoop(hardChannel);
+        }
+    }
+
+    /**
+     * Login completes within previous session event loop, so channel added right after
+     * migrate() is not seen by it and is moved here. Both run within that loop, so channel is moved once.
+     */
+    private void followSessionLoop(Channel channel) {
+        final EventLoop eventLoop = this.initialEventLoop;
+        if (eventLoop != null && channel.eventLoop() != eventLoop) {
+            reRegister(channel, eventLoop);
         }
     }
 
     public void removeHardChannel(Channel hardChannel) {
         if (hardwareChannels.remove(hardChannel)) {
             hardChannel.closeFuture().removeListener(hardRemover);
+            reindexHardChannels();
         }
     }
 
-    private Set<Channel> filter(int activeDashId, int[] deviceIds) {
-        final Set<Channel> targetChannels = new HashSet<>();
-        for (Channel channel : hardwareChannels) {
-            final HardwareStateHolder hardwareState = getHardState(channel);
-            if (hardwareState != null && hardwareState.dashId == activeDashId &&
-                    (deviceIds.length == 0 || ArrayUtil.contains(deviceIds, hardwareState.deviceId))) {
-                targetChannels.add(channel);
+    private synchronized void reindexHardChannels() {
+        this.hardIndex = HardwareChannelIndex.build(hardwareChannels);
+    }
+
+    public Channel[] getHardChannels(int dashId) {
+        return hardIndex.get(dashId);
+    }
+
+    public Channel[] getHardChannels(int dashId, int deviceId) {
+        return hardIndex.get(dashId, deviceId);
+    }
+
+    public Channel[] getHardChannelsByToken(String token) {
+        return hardIndex.get(token);
+    }
+
+    public boolean sendMessageToHardware(int activeDashId, short cmd, int msgId, String body, int deviceId) {
+        return sendMessageToHardware(hardIndex.get(activeDashId, deviceId), cmd, msgId, body);
+    }
+
+    public boolean sendMessageToHardware(int activeDashId, short cmd, int msgId, String body, int... deviceIds) {
+        final HardwareChannelIndex index = this.hardIndex;
+        if (deviceIds.length == 0) {
+            return sendMessageToHardware(index.get(activeDashId), cmd, msgId, body);
+        }
+        if (deviceIds.length == 1) {
+            return sendMessageToHardware(index.get(activeDashId, deviceIds[0]), cmd, msgId, body);
+        }
+
+        int channelsNum = 0;
+        for (int i = 0; i < deviceIds.length; i++) {
+            if (isFirstOccurrence(deviceIds, i)) {
+                channelsNum += index.get(activeDashId, deviceIds[i]).length;
             }
         }
-        return targetChannels;
-    }
+        if (channelsNum == 0) {
+            return true; // -> no active hardware
+        }
 
-    private Set<Channel> filter(int activeDashId, int deviceId) {
-        final Set<Channel> targetChannels = new HashSet<>();
-        for (Channel channel : hardwareChannels) {
-            if (isSameDashAndDeviceId(channel, activeDashId, deviceId)) {
-                targetChannels.add(channel);
+        final ByteBuf msg = prepare(makeUTF8StringMessage(cmd, msgId, body), channelsNum);
+        for (int i = 0; i < deviceIds.length; i++) {
+            if (isFirstOccurrence(deviceIds, i)) {
+                for (Channel channel : index.get(activeDashId, deviceIds[i])) {
+                    write(channel, msg);
+                }
             }
         }
-        return targetChannels;
+
+        return false; // -> there is active hardware
     }
 
-    public boolean sendMessageToHardware(int activeDashId, short cmd, int msgId, String body, int deviceId) {
-        return hardwareChannels.size() == 0 || sendMessageToHardware(filter(activeDashId, deviceId), cmd, msgId, body);
+    /**
+     * Sends all messages to hardware channels of device with single flush per channel.
+     *
+     * @return true in case there is no active hardware.
+     */
+    public boolean sendMessagesToHardware(int activeDashId, short cmd, int msgId, List<String> bodies, int deviceId) {
+        final Channel[] targetChannels = hardIndex.get(activeDashId, deviceId);
+        if (targetChannels.length == 0) {
+            return true;
+        }
+
+        writeAll(Arrays.asList(targetChannels), cmd, msgId, bodies);
+
+        return false;
     }
 
-    public boolean sendMessageToHardware(int activeDashId, short cmd, int msgId, String body, int... deviceIds) {
-        return hardwareChannels.size() == 0 || sendMessageToHardware(filter(activeDashId, deviceIds), cmd, msgId, body);
+    /**
+     * Every message is encoded once and every channel gets own duplicate of it, single flush per channel.
+     */
+    private static void writeAll(Iterable<Channel> channels, short cmd, int msgId, List<String> bodies) {
+        final ByteBuf[] msgs = new ByteBuf[bodies.size()];
+        try {
+            for (int i = 0; i < msgs.length; i++) {
+                msgs[i] = makeUTF8StringMessage(cmd, msgId, bodies.get(i));
+            }
+            for (Channel channel : channels) {
+                if (channel.isWritable()) {
+                    for (ByteBuf msg : msgs) {
+                        channel.write(msg.retainedDuplicate(), channel.voidPromise());
+                    }
+                    channel.flush();
+                }
+            }
+        } finally {
+            for (ByteBuf msg : msgs) {
+                if (msg != null) {
+                    msg.release();
+                }
+            }
+        }
     }
 
-    private boolean sendMessageToHardware(Set<Channel> targetChannels, short cmd, int msgId, String body) {
-        final int channelsNum = targetChannels.size();
+    private static boolean isFirstOccurrence(int[] values, int index) {
+        for (int i = 0; i < index; i++) {
+            if (values[i] == values[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sendMessageToHardware(Channel[] targetChannels, short cmd, int msgId, String body) {
+        final int channelsNum = targetChannels.length;
         if (channelsNum == 0) {
             return true; // -> no active hardware
         }
 
-        send(targetChannels, channelsNum, cmd, msgId, body);
+        final ByteBuf msg = prepare(makeUTF8StringMessage(cmd, msgId, body), channelsNum);
+        for (Channel channel : targetChannels) {
+            write(channel, msg);
+        }
 
         return false; // -> there is active hardware
     }
@@ -131,21 +259,11 @@ public class Session {
     }
 
     public boolean isHardwareConnected(int dashId, int deviceId) {
-        for (Channel channel : hardwareChannels) {
-            if (isSameDashAndDeviceId(channel, dashId, deviceId)) {
-                return true;
-            }
-        }
-        return false;
+        return hardIndex.get(dashId, deviceId).length > 0;
     }
 
     public boolean isHardwareConnected(int dashId) {
-        for (Channel channel : hardwareChannels) {
-            if (isSameDash(channel, dashId)) {
-                return true;
-            }
-        }
-        return false;
+        return hardIndex.get(dashId).length > 0;
     }
 
     public void sendToApps(short cmd, int msgId, int dashId, int deviceId) {
@@ -154,7 +272,7 @@ public class Session {
             return;
         }
 
-        send(appChannels, targetsNum, cmd, msgId, "" + dashId + DEVICE_SEPARATOR + deviceId);
+        send(appChannels, targetsNum, makeDeviceMessage(cmd, msgId, dashId, deviceId));
     }
 
     public void sendToApps(short cmd, int msgId, int dashId, int deviceId, String body) {
@@ -166,37 +284,103 @@ public class Session {
         send(appChannels, targetsNum, cmd, msgId, prependDashIdAndDeviceId(dashId, deviceId, body));
     }
 
-    private void send(Set<Channel> targets, int targetsNum, short cmd, int msgId, String body) {
-        ByteBuf msg = makeUTF8StringMessage(cmd, msgId, body);
-        if (targetsNum > 1) {
-            msg.retain(targetsNum - 1).markReaderIndex();
+    /**
+     * Sends all messages to apps with single flush per app channel.
+     */
+    public void sendToApps(short cmd, int msgId, int dashId, int deviceId, List<String> bodies) {
+        if (appChannels.size() == 0) {
+            return;
         }
 
-        for (Channel channel : targets) {
-            if (channel.isWritable()) {
-                log.trace("Sending {} to channel {}", body, channel);
-                channel.writeAndFlush(msg, channel.voidPromise());
-            }
-            if (msg.refCnt() > 0) {
-                msg.resetReaderIndex();
+        final AppWriteCoalescer appWriter = this.appWriter;
+        if (appWriter != null && appWriter.inEventLoop()) {
+            for (String body : bodies) {
+                appWriter.write(appChannels, makeUTF8StringMessage(cmd, msgId, prependDashIdAndDeviceId(dashId, deviceId, body)));
             }
+            return;
         }
+
+        final List<String> appBodies = new ArrayList<>(bodies.size());
+        for (String body : bodies) {
+            appBodies.add(prependDashIdAndDeviceId(dashId, deviceId, body));
+        }
+        writeAll(appChannels, cmd, msgId, appBodies);
     }
 
-    public void sendToSharedApps(Channel sendingChannel, String sharedToken, short cmd, int msgId, String body) {
-        final Set<Channel> targetChannels = new HashSet<>();
-        for (Channel channel : appChannels) {
-            if (channel != sendingChannel && channel.isWritable() && needSync(channel, sharedToken)) {
-                targetChannels.add(channel);
-            }
+    /**
+     * Forwards body bytes to apps as is, without decoding it to string and encoding back.
+     */
+    public void sendToApps(short cmd, int msgId, int dashId, int deviceId, ByteBuf body) {
+        final int targetsNum = appChannels.size();
+        if (targetsNum == 0) {
+            return;
         }
 
-        final int channelsNum = targetChannels.size();
-        if (channelsNum == 0) {
+        send(appChannels, targetsNum, makeDeviceMessage(cmd, msgId, dashId, deviceId, body));
+    }
+
+    private void send(Set<Channel> targets, int targetsNum, short cmd, int msgId, String body) {
+        send(targets, targetsNum, makeUTF8StringMessage(cmd, msgId, body));
+    }
+
+    private void send(Set<Channel> targets, int targetsNum, ByteBuf msg) {
+        final AppWriteCoalescer appWriter = this.appWriter;
+        if (appWriter != null && appWriter.inEventLoop()) {
+            appWriter.write(targets, msg);
             return;
         }
 
-        send(targetChannels, channelsNum, cmd, msgId, body);
+        prepare(msg, targetsNum);
+        for (Channel channel : targets) {
+            write(channel, msg);
+        }
+    }
+
+    private static ByteBuf prepare(ByteBuf msg, int targetsNum) {
+        if (targetsNum > 1) {
+            msg.retain(targetsNum - 1).markReaderIndex();
+        }
+        return msg;
+    }
+
+    private static void write(Channel channel, ByteBuf msg) {
+        if (channel.isWritable()) {
+            log.trace("Sending {} to channel {}", msg, channel);
+            channel.writeAndFlush(msg, channel.voidPromise());
+        }
+        if (msg.refCnt() > 0) {
+            msg.resetReaderIndex();
+        }
+    }
+
+    /**
+     * Message is built only when first target is found and every target gets own duplicate of it.
+     */
+    public void sendToSharedApps(Channel sendingChannel, String sharedToken, short cmd, int msgId, String body) {
+        final AppWriteCoalescer appWriter = this.appWriter;
+        final boolean coalesce = appWriter != null && appWriter.inEventLoop();
+        ByteBuf msg = null;
+        try {
+            for (Channel channel : appChannels) {
+                if (channel != sendingChannel && channel.isWritable() && needSync(channel, sharedToken)) {
+                    if (msg == null) {
+                        msg = makeUTF8StringMessage(cmd, msgId, body);
+                    }
+                    if (coalesce) {
+                        appWriter.writeTo(channel, msg);
+                    } else {
+                        channel.writeAndFlush(msg.retainedDuplicate(), channel.voidPromise());
+                    }
+                }
+            }
+        } finally {
+            if (msg != null) {
+                msg.release();
+                if (coalesce) {
+                    appWriter.afterWrites();
+                }
+            }
+        }
     }
 
     public boolean isAppConnected() {
@@ -212,21 +396,65 @@ public class Session {
     }
 
     public void closeHardwareChannelByDeviceId(int dashId, int deviceId) {
-        for (Channel channel : hardwareChannels) {
-            if (isSameDashAndDeviceId(channel, dashId, deviceId)) {
-                channel.close();
-            }
+        for (Channel channel : hardIndex.get(dashId, deviceId)) {
+            channel.close();
         }
     }
 
     public void closeHardwareChannelByDashId(int dashId) {
+        for (Channel channel : hardIndex.get(dashId)) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Moves session with all its channels to another event loop. Channels are re-registered
+     * the same way as on login. Handoff is always done within current session event loop,
+     * new loop is published via volatile field before channels are moved.
+     */
+    public void migrate(EventLoop target) {
+        final EventLoop current = this.initialEventLoop;
+        if (current == target) {
+            return;
+        }
+        if (!current.inEventLoop()) {
+            //session was moved after migration was scheduled
+            current.execute(() -> migrate(target));
+            return;
+        }
+
+        final AppWriteCoalescer appWriter = this.appWriter;
+        if (appWriter != null) {
+            appWriter.run();
+            appWriter.discardAll();
+            this.appWriter = newAppWriter(target);
+        }
+        this.initialEventLoop = target;
+
+        for (Channel channel : appChannels) {
+            reRegister(channel, target);
+        }
         for (Channel channel : hardwareChannels) {
-            if (isSameDash(channel, dashId)) {
-                channel.close();
-            }
+            reRegister(channel, target);
         }
     }
 
+    private static void reRegister(Channel channel, EventLoop target) {
+        if (channel.eventLoop() == target) {
+            return;
+        }
+        channel.deregister().addListener(future -> {
+            if (channel.isOpen()) {
+                target.register(channel).addListener(registerFuture -> {
+                    if (!registerFuture.isSuccess()) {
+                        log.warn("Error moving channel {} to another event loop.", channel, registerFuture.cause());
+                        channel.close();
+                    }
+                });
+            }
+        });
+    }
+
     public void closeAll() {
         hardwareChannels.forEach(io.netty.channel.Channel::close);
         appChannels.forEach(io.netty.channel.Channel::close);
@@ -1,12 +1,18 @@
 package cc.blynk.server.core.model.auth;
 
+import cc.blynk.server.core.dao.UserKey;
 import cc.blynk.server.core.model.AppName;
 import cc.blynk.server.core.model.Profile;
 import cc.blynk.server.core.protocol.exceptions.EnergyLimitException;
+import cc.blynk.server.core.stats.metrics.QuotaMeter;
 import cc.blynk.utils.JsonParser;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * User: ddumanskiy
@@ -16,6 +22,10 @@ import java.util.concurrent.ConcurrentMap;
 public class User {
 
     private static final int INITIAL_ENERGY_AMOUNT = 2000;
+    private static final AtomicIntegerFieldUpdater<User> dirtyUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(User.class, "dirty");
+    private static final AtomicIntegerFieldUpdater<User> pinsDirtyUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(User.class, "pinsDirty");
 
     //todo remove after migration
     public ConcurrentMap<Integer, String> dashTokens;
@@ -33,7 +43,9 @@ public class User {
     public String lastLoggedIP;
     public long lastLoggedAt;
 
-    public Profile profile;
+    //null till first access when user is restored from profiles index, see getProfile()
+    private volatile Profile profile;
+    private transient volatile ProfileLoader profileLoader;
 
     public boolean isFacebookUser;
 
@@ -42,6 +54,17 @@ public class User {
     public transient int emailMessages;
     public transient long emailSentTs;
 
+    //messages of all user connections, updated from event loops of all user channels
+    public final transient QuotaMeter quotaMeter = new QuotaMeter();
+
+    //queues of changed users. set when user is added to UserDao
+    private transient volatile Queue<UserKey> dirtyUsers;
+    private transient volatile Queue<UserKey> dirtyPinUsers;
+    private transient volatile int dirty;
+    private transient volatile int pinsDirty;
+    //time of first change since last save
+    public transient volatile long dirtySince;
+
     public User() {
         this.lastModifiedTs = System.currentTimeMillis();
         this.profile = new Profile();
@@ -64,13 +87,115 @@ public class User {
         return name + "-" + appName;
     }
 
+    /**
+     * Reads profile of user, that was restored without it.
+     */
+    @FunctionalInterface
+    public interface ProfileLoader {
+        Profile load(User user) throws IOException;
+    }
+
+    /**
+     * Profile is loaded on first call when user was restored from profiles index.
+     * Serialization goes via this getter as well, so user is never stored with not loaded profile.
+     */
+    @JsonProperty("profile")
+    public Profile getProfile() {
+        Profile profile = this.profile;
+        if (profile == null) {
+            profile = loadProfile();
+        }
+        return profile;
+    }
+
+    private synchronized Profile loadProfile() {
+        ProfileLoader loader = this.profileLoader;
+        if (profile == null && loader != null) {
+            try {
+                this.profile = loader.load(this);
+                this.profileLoader = null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error loading profile of " + name, e);
+            }
+        }
+        return profile;
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Makes profile load lazily on first access.
+     */
+    public synchronized void setProfileLoader(ProfileLoader profileLoader) {
+        this.profile = null;
+        this.profileLoader = profileLoader;
+    }
+
+    public ProfileLoader getProfileLoader() {
+        return profileLoader;
+    }
+
+    public boolean isProfileLoaded() {
+        return profile != null;
+    }
+
+    public void trackChanges(Queue<UserKey> dirtyUsers, Queue<UserKey> dirtyPinUsers) {
+        this.dirtyUsers = dirtyUsers;
+        this.dirtyPinUsers = dirtyPinUsers;
+    }
+
+    /**
+     * Marks profile as changed, so it is stored on next profile saver run.
+     * Only first change since last save touches the queue, so it is cheap to call on every pin update.
+     */
+    public void markDirty() {
+        Queue<UserKey> dirtyUsers = this.dirtyUsers;
+        if (dirtyUsers != null && dirty == 0 && dirtyUpdater.compareAndSet(this, 0, 1)) {
+            this.dirtySince = System.currentTimeMillis();
+            dirtyUsers.offer(new UserKey(this));
+        }
+    }
+
+    /**
+     * Called by saver right before profile is serialized, so changes made during saving mark user again.
+     */
+    public void clearDirty() {
+        this.dirty = 0;
+    }
+
+    public boolean isDirty() {
+        return dirty != 0;
+    }
+
+    /**
+     * Marks pin values of user as changed. Pin values are stored separately from profile,
+     * so this doesn't cause profile rewrite.
+     */
+    public void markPinsDirty() {
+        Queue<UserKey> dirtyPinUsers = this.dirtyPinUsers;
+        if (dirtyPinUsers != null && pinsDirty == 0 && pinsDirtyUpdater.compareAndSet(this, 0, 1)) {
+            dirtyPinUsers.offer(new UserKey(this));
+        }
+    }
+
+    public void clearPinsDirty() {
+        this.pinsDirty = 0;
+    }
+
+    public void updateLastModifiedTs(long ts) {
+        this.lastModifiedTs = ts;
+        markDirty();
+    }
+
     public void subtractEnergy(int price) {
         if (AppName.BLYNK.equals(appName) && price > energy) {
             throw new EnergyLimitException("Not enough energy.");
         }
         //non-atomic. we are fine with that
         this.energy -= price;
-        this.lastModifiedTs = System.currentTimeMillis();
+        updateLastModifiedTs(System.currentTimeMillis());
     }
 
     public void recycleEnergy(int price) {
@@ -80,7 +205,7 @@ public class User {
     public void purchaseEnergy(int price) {
         //non-atomic. we are fine with that
         this.energy += price;
-        this.lastModifiedTs = System.currentTimeMillis();
+        updateLastModifiedTs(System.currentTimeMillis());
     }
 
     @Override
@@ -0,0 +1,38 @@
+package cc.blynk.server.core.model.auth;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import cc.blynk.utils.ServerProperties;
+
+/**
+ * Settings of app channels write coalescing. When enabled, messages to apps are written
+ * without flush and flushed once per event loop tick (or after delay), or right away
+ * when number of not flushed messages reaches limit.
+ */
+public class WriteCoalescing {
+
+    public static final WriteCoalescing DISABLED = new WriteCoalescing(false, 0, 0, false, null);
+
+    public final boolean enabled;
+    public final int maxMessages;
+    public final long delayMicros;
+    //keep only latest value per pin while app channel is not writable instead of dropping all
+    public final boolean collapseLatest;
+    public final GlobalStats stats;
+
+    public WriteCoalescing(boolean enabled, int maxMessages, long delayMicros, boolean collapseLatest, GlobalStats stats) {
+        this.enabled = enabled;
+        this.maxMessages = maxMessages;
+        this.delayMicros = delayMicros;
+        this.collapseLatest = collapseLatest;
+        this.stats = stats;
+    }
+
+    public WriteCoalescing(ServerProperties props, GlobalStats stats) {
+        this(props.getBoolProperty("app.write.coalescing"),
+             props.getIntProperty("app.write.coalescing.max.messages", 64),
+             props.getLongProperty("app.write.coalescing.delay.micros", 0),
+             props.getBoolProperty("app.write.collapse.latest"),
+             stats);
+    }
+
+}
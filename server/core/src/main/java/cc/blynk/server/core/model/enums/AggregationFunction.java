@@ -0,0 +1,43 @@
+package cc.blynk.server.core.model.enums;
+
+/**
+ * Aggregate of time bucket that is stored for graphs. Average is the default one
+ * and is kept within old reporting files, other ones are stored in own series
+ * by storages that keep them (see ReportingStorage#extraFunctions).
+ */
+public enum AggregationFunction {
+
+    AVG('a', null),
+    MIN('n', "min"),
+    MAX('x', "max"),
+    LAST('l', "last"),
+    COUNT('c', "count");
+
+    public final char function;
+    //part of series name, null for series that keep old naming
+    public final String suffix;
+
+    AggregationFunction(char function, String suffix) {
+        this.function = function;
+        this.suffix = suffix;
+    }
+
+    public static AggregationFunction getByChar(char function) {
+        for (AggregationFunction aggregationFunction : values()) {
+            if (function == aggregationFunction.function) {
+                return aggregationFunction;
+            }
+        }
+        return null;
+    }
+
+    public static AggregationFunction getBySuffix(String suffix) {
+        for (AggregationFunction aggregationFunction : values()) {
+            if (suffix.equals(aggregationFunction.suffix)) {
+                return aggregationFunction;
+            }
+        }
+        return null;
+    }
+
+}
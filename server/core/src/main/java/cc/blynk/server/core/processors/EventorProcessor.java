@@ -49,22 +49,54 @@ public class EventorProcessor {
     }
 
     public void process(Session session, DashBoard dash, int deviceId, byte pin, PinType type, String triggerValue) {
-        Eventor eventor = dash.getWidgetByType(Eventor.class);
-        if (eventor == null || eventor.rules == null) {
-            return;
-        }
-
         double valueParsed;
         try {
             valueParsed = NumberUtil.parseDouble(triggerValue);
-            if (valueParsed == NumberUtil.NO_RESULT) {
-                return;
-            }
         } catch (Exception e) {
             //should never happen. just in case.
             return;
         }
+        process(session, dash, deviceId, pin, type, triggerValue, valueParsed);
+    }
+
+    /**
+     * @param valueParsed already parsed trigger value or NumberUtil.NO_RESULT if value is not a number.
+     */
+    public void process(Session session, DashBoard dash, int deviceId, byte pin, PinType type,
+                        String triggerValue, double valueParsed) {
+        if (valueParsed == NumberUtil.NO_RESULT) {
+            return;
+        }
+
+        Eventor eventor = dash.getWidgetByType(Eventor.class);
+        if (eventor == null || eventor.rules == null) {
+            return;
+        }
+
+        process(session, dash, eventor, deviceId, pin, type, triggerValue, valueParsed);
+    }
+
+    /**
+     * Processes many pins of single device at once, so eventor widget is looked up once per call.
+     *
+     * @param valuesParsed already parsed trigger values or NumberUtil.NO_RESULT for values that are not a number.
+     */
+    public void process(Session session, DashBoard dash, int deviceId, byte[] pins, PinType[] types,
+                        String[] triggerValues, double[] valuesParsed) {
+        Eventor eventor = dash.getWidgetByType(Eventor.class);
+        if (eventor == null || eventor.rules == null) {
+            return;
+        }
+
+        for (int i = 0; i < pins.length; i++) {
+            if (valuesParsed[i] != NumberUtil.NO_RESULT) {
+                process(session, dash, eventor, deviceId, pins[i], types[i], triggerValues[i], valuesParsed[i]);
+            }
+        }
+    }
 
+    private void process(Session session, DashBoard dash, Eventor eventor, int deviceId, byte pin, PinType type,
+                         String triggerValue, double valueParsed) {
         for (Rule rule : eventor.rules) {
             if (rule.isReady(pin, type)) {
                 if (rule.isValid(valueParsed)) {
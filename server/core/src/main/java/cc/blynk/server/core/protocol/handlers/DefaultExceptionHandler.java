@@ -51,7 +51,7 @@ public interface DefaultExceptionHandler {
     default void handleUnexpectedException(ChannelHandlerContext ctx, Throwable cause) {
         if (cause instanceof ReadTimeoutException) {
             log.trace("Channel was inactive for a long period. Closing...");
-            //channel is already closed here by ReadTimeoutHandler
+            //channel is already closed here by ReadTimeoutHandler or HeartbeatHandler
         } else if (cause instanceof DecoderException) {
             if (cause.getCause() instanceof UnsupportedCommandException) {
                 log.debug("Input command is invalid. Closing socket. Reason {}. Address {}", cause.getMessage(), ctx.channel().remoteAddress());
@@ -0,0 +1,27 @@
+package cc.blynk.server.core.protocol.handlers.decoders;
+
+import cc.blynk.server.core.protocol.enums.Command;
+import cc.blynk.server.core.protocol.model.messages.MessageBase;
+import cc.blynk.server.core.protocol.model.messages.common.HardwareByteBufMessage;
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decoder for hardware connections. Hardware command body is not converted to string,
+ * message keeps retained slice of incoming buffer, so body may be forwarded to apps without copying.
+ */
+public class HardwareMessageDecoder extends MessageDecoder {
+
+    public HardwareMessageDecoder(GlobalStats stats) {
+        super(stats);
+    }
+
+    @Override
+    protected MessageBase produce(int messageId, short command, ByteBuf in, int length) {
+        if (command == Command.HARDWARE) {
+            return new HardwareByteBufMessage(messageId, in.readRetainedSlice(length));
+        }
+        return super.produce(messageId, command, in, length);
+    }
+
+}
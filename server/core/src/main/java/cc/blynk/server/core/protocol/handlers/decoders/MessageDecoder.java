@@ -2,6 +2,7 @@ package cc.blynk.server.core.protocol.handlers.decoders;
 
 import cc.blynk.server.core.protocol.enums.Command;
 import cc.blynk.server.core.protocol.model.messages.MessageBase;
+import cc.blynk.server.core.protocol.model.messages.MessageFactory;
 import cc.blynk.server.core.protocol.model.messages.ResponseMessage;
 import cc.blynk.server.core.stats.GlobalStats;
 import io.netty.buffer.ByteBuf;
@@ -13,8 +14,6 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.List;
 
-import static cc.blynk.server.core.protocol.model.messages.MessageFactory.*;
-
 /**
  * Decodes input byte array into java message.
  *
@@ -53,7 +52,7 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 return;
             }
 
-            message = produce(messageId, command, in.readSlice(codeOrLength).toString(CharsetUtil.UTF_8));
+            message = produce(messageId, command, in, codeOrLength);
         }
 
         log.trace("Incoming {}", message);
@@ -63,4 +62,11 @@ public class MessageDecoder extends ByteToMessageDecoder {
         out.add(message);
     }
 
+    /**
+     * Reads message body of given length from buffer.
+     */
+    protected MessageBase produce(int messageId, short command, ByteBuf in, int length) {
+        return MessageFactory.produce(messageId, command, in.readSlice(length).toString(CharsetUtil.UTF_8));
+    }
+
 }
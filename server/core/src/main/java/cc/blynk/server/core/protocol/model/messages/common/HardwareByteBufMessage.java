@@ -0,0 +1,75 @@
+package cc.blynk.server.core.protocol.model.messages.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * Hardware message that keeps original frame body instead of string.
+ * Pin type, pin and value are parsed from bytes only when needed and body is forwarded
+ * to apps as is, without decoding and encoding it again.
+ *
+ * Body is retained slice of decoder buffer, so message has to be released after processing.
+ * That is done by BaseSimpleChannelInboundHandler.
+ */
+public class HardwareByteBufMessage extends HardwareMessage implements ReferenceCounted {
+
+    public final ByteBuf bodyBuf;
+
+    public HardwareByteBufMessage(int messageId, ByteBuf bodyBuf) {
+        super(messageId, bodyBuf.readableBytes());
+        this.bodyBuf = bodyBuf;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] bytes = new byte[bodyBuf.readableBytes()];
+        bodyBuf.getBytes(bodyBuf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    @Override
+    public int refCnt() {
+        return bodyBuf.refCnt();
+    }
+
+    @Override
+    public HardwareByteBufMessage retain() {
+        bodyBuf.retain();
+        return this;
+    }
+
+    @Override
+    public HardwareByteBufMessage retain(int increment) {
+        bodyBuf.retain(increment);
+        return this;
+    }
+
+    @Override
+    public HardwareByteBufMessage touch() {
+        bodyBuf.touch();
+        return this;
+    }
+
+    @Override
+    public HardwareByteBufMessage touch(Object hint) {
+        bodyBuf.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return bodyBuf.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return bodyBuf.release(decrement);
+    }
+
+    @Override
+    public String toString() {
+        String body = bodyBuf.refCnt() > 0 ? bodyBuf.toString(CharsetUtil.UTF_8) : "released";
+        return "HardwareMessage{id=" + id + ", length=" + length + ", body='" + body + "'}";
+    }
+}
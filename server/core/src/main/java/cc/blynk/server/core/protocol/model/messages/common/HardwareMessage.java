@@ -15,6 +15,10 @@ public class HardwareMessage extends StringMessage {
         super(messageId, HARDWARE, body.length(), body);
     }
 
+    protected HardwareMessage(int messageId, int length) {
+        super(messageId, HARDWARE, length, null);
+    }
+
     @Override
     public String toString() {
         return "HardwareMessage{" + super.toString() + "}";
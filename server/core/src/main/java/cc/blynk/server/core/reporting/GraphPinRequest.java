@@ -1,5 +1,6 @@
 package cc.blynk.server.core.reporting;
 
+import cc.blynk.server.core.model.enums.AggregationFunction;
 import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
 
@@ -22,4 +23,6 @@ public abstract class GraphPinRequest {
 
     public GraphType type;
 
+    public AggregationFunction function = AggregationFunction.AVG;
+
 }
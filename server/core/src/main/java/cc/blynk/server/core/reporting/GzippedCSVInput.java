@@ -0,0 +1,295 @@
+package cc.blynk.server.core.reporting;
+
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams reporting data of one pin as gzipped csv ("value,ts" lines). Same output as
+ * {@link cc.blynk.utils.FileUtils#makeGzippedCSVFile}, but series is read from storage
+ * in small chunks and every chunk is compressed right away, so neither whole series nor
+ * temp file is created. Chunks are pulled by ChunkedWriteHandler only while channel is writable.
+ * Seek to first entry and storage reads are done within readers pool, few chunks ahead
+ * of the channel. When next chunk is not read yet, readChunk() returns null and
+ * transfer is resumed via {@link #onChunkReady(Runnable)} listener.
+ */
+public class GzippedCSVInput implements ChunkedInput<ByteBuf> {
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int ENTRIES_PER_CHUNK = 4096;
+    private static final int PREFETCH_CHUNKS = 2;
+
+    private final ReportingStorage storage;
+    //whole series kept in memory, null when series is read from storage
+    private final byte[] cachedEntries;
+    private final Executor readers;
+    private final String username;
+    private final int dashId;
+    private final int deviceId;
+    private final PinType pinType;
+    private final byte pin;
+    private final GraphType type;
+    private final long from;
+    private final long to;
+
+    private final BlockingQueue<ByteBuffer> prefetched = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+    private final AtomicBoolean fetching = new AtomicBoolean();
+    //accessed only within fetch task, fetches never overlap. -1 till first entry is found
+    private int nextEntry = -1;
+    private volatile boolean fetchedAll;
+    private volatile Exception fetchError;
+    private volatile Runnable chunkReadyListener;
+    private volatile boolean closed;
+
+    private final ChunkOutputStream chunkOutput = new ChunkOutputStream();
+    private Writer writer;
+
+    private long progress;
+    private boolean endOfInput;
+
+    /**
+     * @param readers - pool for storage reads, first chunks are read right away.
+     * @param from - first timestamp to export, inclusive.
+     * @param to - last timestamp to export, inclusive.
+     */
+    public GzippedCSVInput(ReportingStorage storage, Executor readers, String username, int dashId, int deviceId,
+                           PinType pinType, byte pin, GraphType type, long from, long to) {
+        this(storage, null, readers, username, dashId, deviceId, pinType, pin, type, from, to);
+    }
+
+    /**
+     * Exports series that is already in memory, so no reads are done.
+     */
+    GzippedCSVInput(byte[] cachedEntries, String username, int dashId, int deviceId,
+                    PinType pinType, byte pin, GraphType type, long from, long to) {
+        this(null, cachedEntries, Runnable::run, username, dashId, deviceId, pinType, pin, type, from, to);
+    }
+
+    private GzippedCSVInput(ReportingStorage storage, byte[] cachedEntries, Executor readers,
+                            String username, int dashId, int deviceId,
+                            PinType pinType, byte pin, GraphType type, long from, long to) {
+        this.storage = storage;
+        this.cachedEntries = cachedEntries;
+        this.readers = readers;
+        this.username = username;
+        this.dashId = dashId;
+        this.deviceId = deviceId;
+        this.pinType = pinType;
+        this.pin = pin;
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        scheduleFetch();
+    }
+
+    /**
+     * Listener is called within readers pool every time new chunks are read, e.g. ChunkedWriteHandler::resumeTransfer.
+     */
+    public void onChunkReady(Runnable listener) {
+        this.chunkReadyListener = listener;
+    }
+
+    private void scheduleFetch() {
+        if (!fetchedAll && !closed && fetchError == null && prefetched.remainingCapacity() > 0
+                && fetching.compareAndSet(false, true)) {
+            try {
+                readers.execute(this::fetch);
+            } catch (RejectedExecutionException e) {
+                fetchError = e;
+                fetching.set(false);
+            }
+        }
+    }
+
+    private void fetch() {
+        try {
+            if (nextEntry < 0) {
+                nextEntry = from > 0 ? findFirst(from) : 0;
+            }
+            while (!fetchedAll && !closed && prefetched.remainingCapacity() > 0) {
+                ByteBuffer entries = ByteBuffer.allocate(ENTRIES_PER_CHUNK * ENTRY_SIZE);
+                int read = read(nextEntry, entries);
+                nextEntry += read;
+                entries.flip();
+                fetchedAll = read < ENTRIES_PER_CHUNK || entries.getLong(entries.limit() - 8) > to;
+                prefetched.add(entries);
+            }
+        } catch (Exception e) {
+            fetchError = e;
+        } finally {
+            fetching.set(false);
+        }
+
+        Runnable listener = chunkReadyListener;
+        if (listener != null) {
+            listener.run();
+        }
+        //chunk may be taken while fetching flag was still set
+        scheduleFetch();
+    }
+
+    /**
+     * Entries are appended in time order, so first entry within range is found with binary search.
+     */
+    private int findFirst(long from) throws IOException {
+        int low = 0;
+        int high = cachedEntries == null
+                ? storage.size(username, dashId, deviceId, pinType, pin, type)
+                : cachedEntries.length / ENTRY_SIZE;
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            entry.clear();
+            if (read(mid, entry) == 0) {
+                return mid;
+            }
+            if (entry.getLong(8) < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int read(int fromEntry, ByteBuffer target) throws IOException {
+        if (cachedEntries == null) {
+            return storage.read(username, dashId, deviceId, pinType, pin, type, fromEntry, target);
+        }
+        int count = Math.min(cachedEntries.length / ENTRY_SIZE - fromEntry, target.remaining() / ENTRY_SIZE);
+        if (count <= 0) {
+            return 0;
+        }
+        target.put(cachedEntries, fromEntry * ENTRY_SIZE, count * ENTRY_SIZE);
+        return count;
+    }
+
+    @Override
+    public boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        prefetched.clear();
+        chunkOutput.chunk = null;
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+        return readChunk(ctx.alloc());
+    }
+
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+        if (endOfInput) {
+            return null;
+        }
+
+        ByteBuffer entries = prefetched.poll();
+        if (entries == null) {
+            scheduleFetch();
+            //fetch could be finished right now
+            entries = prefetched.poll();
+            if (entries == null) {
+                Exception e = fetchError;
+                if (e != null) {
+                    throw e;
+                }
+                //ChunkedWriteHandler waits till chunk ready listener resumes transfer
+                return null;
+            }
+        }
+        scheduleFetch();
+
+        ByteBuf chunk = allocator.buffer(ENTRIES_PER_CHUNK * 4);
+        chunkOutput.chunk = chunk;
+        try {
+            if (writer == null) {
+                //gzip header goes to first chunk. sync flush, so every chunk contains all data written so far
+                writer = new OutputStreamWriter(new GZIPOutputStream(chunkOutput, 8192, true), StandardCharsets.US_ASCII);
+            }
+
+            boolean reachedEnd = entries.remaining() < ENTRIES_PER_CHUNK * ENTRY_SIZE;
+            while (entries.hasRemaining()) {
+                double value = entries.getDouble();
+                long ts = entries.getLong();
+                if (ts > to) {
+                    reachedEnd = true;
+                    break;
+                }
+                writer.write(Double.toString(value));
+                writer.write(',');
+                writer.write(Long.toString(ts));
+                writer.write('\n');
+                progress++;
+            }
+
+            if (reachedEnd) {
+                //writes gzip trailer
+                writer.close();
+                endOfInput = true;
+            } else {
+                writer.flush();
+            }
+        } catch (Exception e) {
+            chunk.release();
+            throw e;
+        } finally {
+            chunkOutput.chunk = null;
+        }
+        return chunk;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public long progress() {
+        return progress;
+    }
+
+    private static final class ChunkOutputStream extends OutputStream {
+
+        private ByteBuf chunk;
+
+        @Override
+        public void write(int b) {
+            if (chunk != null) {
+                chunk.writeByte(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (chunk != null) {
+                chunk.writeBytes(b, off, len);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,435 @@
+package cc.blynk.server.core.reporting;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.protocol.exceptions.NoDataException;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static cc.blynk.utils.ReportingUtil.EMPTY_ARRAY;
+
+/**
+ * Reads graph data from reporting storage within own thread pool, so graph loads
+ * don't compete with notifications and DB queries of BlockingIOProcessor.
+ * Identical reads that are in progress at the same time are done only once.
+ * Recently read tail of every pin is kept in memory until reporting worker
+ * appends to it, so reopening of dashboard doesn't hit the disk.
+ * Http history export is read within same pool.
+ */
+public class ReportingReadProcessor implements Closeable {
+
+    private static final int ENTRY_SIZE = 16;
+
+    private final ReportingStorage storage;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<ReadKey, CompletableFuture<byte[]>> inProgress = new ConcurrentHashMap<>();
+    private final TailCache cache;
+
+    /**
+     * @param maxQueueSize - max number of pending reads, reads above are rejected.
+     * @param cacheSizeMb - memory for recently read data, 0 disables caching.
+     */
+    public ReportingReadProcessor(ReportingStorage storage, int poolSize, int maxQueueSize, int cacheSizeMb) {
+        this.storage = storage;
+        this.executor = new ThreadPoolExecutor(
+                Math.max(1, poolSize), Math.max(1, poolSize),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueueSize)),
+                new DefaultThreadFactory("reporting-reader", true)
+        );
+        this.cache = new TailCache(cacheSizeMb * 1024L * 1024L);
+    }
+
+    /**
+     * Reads all requested pins in parallel.
+     *
+     * @return future completed within reader thread (or right away when all pins are cached).
+     *         Fails with NoDataException in case none of pins has data and with
+     *         RejectedExecutionException in case read queue is full.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<byte[][]> read(String username, GraphPinRequest[] requestedPins) {
+        CompletableFuture<byte[]>[] reads = new CompletableFuture[requestedPins.length];
+        for (int i = 0; i < requestedPins.length; i++) {
+            GraphPinRequest request = requestedPins[i];
+            reads[i] = read(username, request.dashId, request.deviceId, request.pinType, request.pin,
+                    request.count, request.type, request.function);
+        }
+
+        return CompletableFuture.allOf(reads).thenApply(ignored -> {
+            byte[][] values = new byte[reads.length][];
+            boolean noData = true;
+            for (int i = 0; i < reads.length; i++) {
+                values[i] = reads[i].join();
+                noData = noData && values[i].length == 0;
+            }
+            if (noData) {
+                throw new NoDataException();
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<byte[]> read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                                          int count, GraphType type) {
+        return read(username, dashId, deviceId, pinType, pin, count, type, AggregationFunction.AVG);
+    }
+
+    /**
+     * Reads last count entries of the pin. Returned array is shared, so it should not be modified.
+     */
+    public CompletableFuture<byte[]> read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                                          int count, GraphType type, AggregationFunction function) {
+        SeriesKey series = new SeriesKey(username, dashId, deviceId, pinType.pintTypeChar, pin, type, function);
+        byte[] cached = cache.get(series, count);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        //read started before last invalidation of the series is never joined
+        ReadKey key = new ReadKey(series, cache.version(series), count);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> sameRead = inProgress.putIfAbsent(key, future);
+        if (sameRead != null) {
+            return sameRead;
+        }
+
+        try {
+            executor.execute(() -> readFromStorage(key, pinType, future));
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Opens gzipped csv export of the pin. Size check, seek to "from" and all chunk reads
+     * are done within reader threads, so caller never touches the disk. Whole series
+     * that is already cached is exported from memory.
+     *
+     * @return future completed with null in case pin has no data. Fails with
+     *         RejectedExecutionException in case read queue is full.
+     */
+    public CompletableFuture<GzippedCSVInput> exportCSV(String username, int dashId, int deviceId, PinType pinType,
+                                                        byte pin, GraphType type, long from, long to) {
+        SeriesKey series = new SeriesKey(username, dashId, deviceId, pinType.pintTypeChar, pin, type, AggregationFunction.AVG);
+        byte[] cached = cache.getWholeSeries(series);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.length == 0 ? null
+                    : new GzippedCSVInput(cached, username, dashId, deviceId, pinType, pin, type, from, to));
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    if (storage.size(username, dashId, deviceId, pinType, pin, type) <= 0) {
+                        return null;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return new GzippedCSVInput(storage, executor, username, dashId, deviceId, pinType, pin, type, from, to);
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<GzippedCSVInput> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private void readFromStorage(ReadKey key, PinType pinType, CompletableFuture<byte[]> future) {
+        SeriesKey series = key.series;
+        long version = cache.beginRead(series);
+        final byte[] data;
+        try {
+            ByteBuffer byteBuffer = storage.read(series.username, series.dashId, series.deviceId,
+                    pinType, series.pin, key.count, series.type, series.function);
+            data = byteBuffer == null ? EMPTY_ARRAY : toArray(byteBuffer);
+        } catch (Throwable e) {
+            inProgress.remove(key, future);
+            cache.endRead(series, version, null, false);
+            future.completeExceptionally(e);
+            return;
+        }
+        //removed before version of the series may be forgotten, so completed read is never returned for new request
+        inProgress.remove(key, future);
+        //less data than requested means whole series is read
+        cache.endRead(series, version, data, data.length < key.count * ENTRY_SIZE);
+        future.complete(data);
+    }
+
+    /**
+     * Should be called after every change of the pin data within storage.
+     */
+    public void invalidate(String username, int dashId, int deviceId, char pinType, byte pin,
+                           GraphType type, AggregationFunction function) {
+        cache.invalidate(new SeriesKey(username, dashId, deviceId, pinType, pin, type, function));
+    }
+
+    /**
+     * Invalidates series of all aggregates of the pin.
+     */
+    public void invalidate(String username, int dashId, int deviceId, char pinType, byte pin, GraphType type) {
+        for (AggregationFunction function : AggregationFunction.values()) {
+            invalidate(username, dashId, deviceId, pinType, pin, type, function);
+        }
+    }
+
+    /**
+     * Storage may return direct slices of mapped files, those has no backing array.
+     */
+    private static byte[] toArray(ByteBuffer byteBuffer) {
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0 && byteBuffer.array().length == byteBuffer.position()) {
+            return byteBuffer.array();
+        }
+        byte[] data = new byte[byteBuffer.position()];
+        ByteBuffer readView = byteBuffer.duplicate();
+        readView.flip();
+        readView.get(data);
+        return data;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * LRU of last entries of pins, limited by size of data. Every series that is cached or
+     * being read has own version, incremented on every invalidation of the series,
+     * so data read before invalidation is not cached and appends to one series
+     * don't affect reads of other series.
+     */
+    private static final class TailCache {
+
+        //approximate memory of key and map entry, so pins without data are not free
+        private static final int WINDOW_OVERHEAD = 128;
+
+        private final long maxBytes;
+        //guarded by this
+        private final LinkedHashMap<SeriesKey, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+        //only for series that are cached or being read, so it is bounded by cache and readers
+        private final HashMap<SeriesKey, SeriesVersion> versions = new HashMap<>();
+        private long bytes;
+
+        TailCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized long version(SeriesKey series) {
+            SeriesVersion seriesVersion = versions.get(series);
+            return seriesVersion == null ? 0 : seriesVersion.version;
+        }
+
+        /**
+         * @return version of the series data is read for.
+         */
+        synchronized long beginRead(SeriesKey series) {
+            SeriesVersion seriesVersion = versions.computeIfAbsent(series, k -> new SeriesVersion());
+            seriesVersion.reads++;
+            return seriesVersion.version;
+        }
+
+        /**
+         * @param data - null in case read failed.
+         */
+        synchronized void endRead(SeriesKey series, long readVersion, byte[] data, boolean wholeSeries) {
+            SeriesVersion seriesVersion = versions.get(series);
+            seriesVersion.reads--;
+            if (data != null && seriesVersion.version == readVersion) {
+                put(series, data, wholeSeries);
+            }
+            forgetIfUnused(series, seriesVersion);
+        }
+
+        synchronized byte[] get(SeriesKey series, int count) {
+            Window window = windows.get(series);
+            if (window == null) {
+                return null;
+            }
+
+            int requestedBytes = count * ENTRY_SIZE;
+            int cachedBytes = window.data.length;
+            if (cachedBytes == requestedBytes || (window.wholeSeries && cachedBytes < requestedBytes)) {
+                return window.data;
+            }
+            if (cachedBytes > requestedBytes) {
+                return Arrays.copyOfRange(window.data, cachedBytes - requestedBytes, cachedBytes);
+            }
+            return null;
+        }
+
+        /**
+         * @return all entries of the series or null in case only tail of the series is cached.
+         */
+        synchronized byte[] getWholeSeries(SeriesKey series) {
+            Window window = windows.get(series);
+            return window == null || !window.wholeSeries ? null : window.data;
+        }
+
+        private void put(SeriesKey series, byte[] data, boolean wholeSeries) {
+            Window window = new Window(data, wholeSeries);
+            if (window.size() > maxBytes) {
+                return;
+            }
+
+            Window prev = windows.get(series);
+            if (prev != null) {
+                if (prev.data.length >= data.length) {
+                    return;
+                }
+                bytes -= prev.size();
+            }
+            windows.put(series, window);
+            bytes += window.size();
+
+            for (Iterator<Map.Entry<SeriesKey, Window>> iter = windows.entrySet().iterator();
+                 bytes > maxBytes && iter.hasNext(); ) {
+                Map.Entry<SeriesKey, Window> eldest = iter.next();
+                bytes -= eldest.getValue().size();
+                iter.remove();
+                SeriesVersion evictedVersion = versions.get(eldest.getKey());
+                if (evictedVersion != null && evictedVersion.reads == 0) {
+                    versions.remove(eldest.getKey());
+                }
+            }
+        }
+
+        synchronized void invalidate(SeriesKey series) {
+            SeriesVersion seriesVersion = versions.get(series);
+            if (seriesVersion == null) {
+                //nothing is cached or being read
+                return;
+            }
+            seriesVersion.version++;
+            Window window = windows.remove(series);
+            if (window != null) {
+                bytes -= window.size();
+            }
+            forgetIfUnused(series, seriesVersion);
+        }
+
+        private void forgetIfUnused(SeriesKey series, SeriesVersion seriesVersion) {
+            if (seriesVersion.reads == 0 && !windows.containsKey(series)) {
+                versions.remove(series);
+            }
+        }
+    }
+
+    private static final class SeriesVersion {
+
+        long version;
+        int reads;
+    }
+
+    private static final class Window {
+
+        final byte[] data;
+        final boolean wholeSeries;
+
+        Window(byte[] data, boolean wholeSeries) {
+            this.data = data;
+            this.wholeSeries = wholeSeries;
+        }
+
+        int size() {
+            return data.length + TailCache.WINDOW_OVERHEAD;
+        }
+    }
+
+    private static final class SeriesKey {
+
+        final String username;
+        final int dashId;
+        final int deviceId;
+        final char pinType;
+        final byte pin;
+        final GraphType type;
+        final AggregationFunction function;
+
+        SeriesKey(String username, int dashId, int deviceId, char pinType, byte pin,
+                  GraphType type, AggregationFunction function) {
+            this.username = username;
+            this.dashId = dashId;
+            this.deviceId = deviceId;
+            this.pinType = pinType;
+            this.pin = pin;
+            this.type = type;
+            this.function = function;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SeriesKey)) return false;
+
+            SeriesKey that = (SeriesKey) o;
+
+            return dashId == that.dashId && deviceId == that.deviceId && pinType == that.pinType
+                    && pin == that.pin && type == that.type && function == that.function
+                    && username.equals(that.username);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = username.hashCode();
+            result = 31 * result + dashId;
+            result = 31 * result + deviceId;
+            result = 31 * result + (int) pinType;
+            result = 31 * result + (int) pin;
+            result = 31 * result + type.hashCode();
+            result = 31 * result + function.hashCode();
+            return result;
+        }
+    }
+
+    private static final class ReadKey {
+
+        final SeriesKey series;
+        final long version;
+        final int count;
+
+        ReadKey(SeriesKey series, long version, int count) {
+            this.series = series;
+            this.version = version;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ReadKey)) return false;
+
+            ReadKey that = (ReadKey) o;
+
+            return count == that.count && version == that.version && series.equals(that.series);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = series.hashCode();
+            result = 31 * result + (int) (version ^ (version >>> 32));
+            result = 31 * result + count;
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,335 @@
+package cc.blynk.server.core.reporting.average;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead log for in-flight reporting aggregates.
+ *
+ * Every value collected into minute bucket is appended to per-stripe buffer of {@link AggregationMap}
+ * and buffers are written to current log file in batches on periodic flush, never by thread that adds value.
+ * Once a minute, right after reporting worker run, snapshot of all aggregates is written
+ * and new log file is started, so log never grows beyond one minute of data.
+ *
+ * Files are named with generation number. Snapshot "snapshot_N.bin" contains all data
+ * written to log files with generation less than N. On startup latest snapshot is loaded
+ * and all log files with generation greater or equal are replayed.
+ */
+public final class AggregationLog implements Closeable {
+
+    public static final String LOG_FOLDER = "wal";
+
+    private static final Logger log = LogManager.getLogger(AggregationLog.class);
+
+    private static final int LOG_MAGIC = 0x424C5741;
+    private static final int SNAPSHOT_MAGIC = 0x424C5341;
+    private static final int VERSION = 1;
+
+    private static final String LOG_PREFIX = "wal_";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot_";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    //username length + dashId + deviceId + pinType + pin + bucket + value
+    private static final int RECORD_SIZE_WITHOUT_USERNAME = 2 + 4 + 4 + 2 + 1 + 8 + 8;
+
+    private final Path folder;
+    private final boolean fsync;
+    private long generation;
+    private volatile LogFile current;
+
+    public AggregationLog(Path folder, boolean fsync) throws IOException {
+        this.folder = folder;
+        this.fsync = fsync;
+        Files.createDirectories(folder);
+    }
+
+    static int recordSize(byte[] username) {
+        return RECORD_SIZE_WITHOUT_USERNAME + username.length;
+    }
+
+    static void writeRecord(ByteBuffer buffer, byte[] username, int dashId, int deviceId,
+                            char pinType, byte pin, long bucket, double value) {
+        buffer.putShort((short) username.length);
+        buffer.put(username);
+        buffer.putInt(dashId);
+        buffer.putInt(deviceId);
+        buffer.putChar(pinType);
+        buffer.put(pin);
+        buffer.putLong(bucket);
+        buffer.putDouble(value);
+    }
+
+    private static long parseGeneration(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(prefix) && name.endsWith(suffix)) {
+            try {
+                return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                //not our file
+            }
+        }
+        return -1;
+    }
+
+    private List<Long> listGenerations(String prefix, String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                long fileGeneration = parseGeneration(file, prefix, suffix);
+                if (fileGeneration != -1) {
+                    generations.add(fileGeneration);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Loads latest snapshot and replays log files written after it.
+     * Should be called before log is attached to maps.
+     */
+    public void recover(UserIdRegistry userIds, AggregationMap minute, AggregationMap hourly, AggregationMap daily)
+            throws IOException {
+        long start = System.currentTimeMillis();
+
+        List<Long> snapshots = listGenerations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long snapshotGeneration = 0;
+        if (snapshots.size() > 0) {
+            snapshotGeneration = snapshots.get(snapshots.size() - 1);
+            readSnapshot(folder.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX), minute, hourly, daily);
+        }
+
+        int records = 0;
+        List<Long> logs = listGenerations(LOG_PREFIX, LOG_SUFFIX);
+        for (long logGeneration : logs) {
+            if (logGeneration >= snapshotGeneration) {
+                records += replay(folder.resolve(LOG_PREFIX + logGeneration + LOG_SUFFIX), userIds, minute);
+            }
+        }
+
+        long maxGeneration = snapshotGeneration;
+        if (logs.size() > 0) {
+            maxGeneration = Math.max(maxGeneration, logs.get(logs.size() - 1));
+        }
+        this.generation = maxGeneration;
+
+        log.info("Restored reporting aggregates from snapshot {} and {} log records. Time : {} ms.",
+                snapshotGeneration, records, System.currentTimeMillis() - start);
+    }
+
+    private static void readSnapshot(Path path, AggregationMap minute, AggregationMap hourly, AggregationMap daily)
+            throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != SNAPSHOT_MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("Wrong aggregation snapshot format : " + path);
+            }
+            readEntries(dis, minute);
+            readEntries(dis, hourly);
+            readEntries(dis, daily);
+        }
+    }
+
+    private static void readEntries(DataInputStream dis, AggregationMap map) throws IOException {
+        int size = dis.readInt();
+        for (int i = 0; i < size; i++) {
+            AggregationKey key = new AggregationKey(dis.readUTF(), dis.readInt(), dis.readInt(),
+                    dis.readChar(), dis.readByte(), dis.readLong());
+            AggregationValue value = new AggregationValue(dis.readDouble(), dis.readLong(),
+                    dis.readDouble(), dis.readDouble(), dis.readDouble());
+            map.add(key, value);
+        }
+    }
+
+    private static void writeEntries(DataOutputStream dos, Map<AggregationKey, AggregationValue> entries)
+            throws IOException {
+        dos.writeInt(entries.size());
+        for (Map.Entry<AggregationKey, AggregationValue> entry : entries.entrySet()) {
+            AggregationKey key = entry.getKey();
+            AggregationValue value = entry.getValue();
+            dos.writeUTF(key.username);
+            dos.writeInt(key.dashId);
+            dos.writeInt(key.deviceId);
+            dos.writeChar(key.pinType);
+            dos.writeByte(key.pin);
+            dos.writeLong(key.ts);
+            dos.writeDouble(value.values);
+            dos.writeLong(value.count);
+            dos.writeDouble(value.min);
+            dos.writeDouble(value.max);
+            dos.writeDouble(value.last);
+        }
+    }
+
+    private static int replay(Path path, UserIdRegistry userIds, AggregationMap minute) throws IOException {
+        int records = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != LOG_MAGIC || dis.readInt() != VERSION) {
+                log.error("Wrong aggregation log format : {}", path);
+                return 0;
+            }
+            while (true) {
+                byte[] username = new byte[dis.readShort()];
+                dis.readFully(username);
+                int userId = userIds.getId(new String(username, UserIdRegistry.CHARSET));
+                minute.add(userId, dis.readInt(), dis.readInt(), dis.readChar(), dis.readByte(),
+                        dis.readLong(), dis.readDouble());
+                records++;
+            }
+        } catch (EOFException eof) {
+            //end of log or torn last record. both are fine.
+        }
+        return records;
+    }
+
+    /**
+     * Starts new log file and writes snapshot of all aggregates. Minute map is switched
+     * to new log stripe by stripe, so every value ends up either in snapshot or in new log file.
+     * Older files are removed only after snapshot is written.
+     */
+    public synchronized void checkpoint(AggregationMap minute, AggregationMap hourly, AggregationMap daily)
+            throws IOException {
+        long newGeneration = generation + 1;
+        LogFile newFile = LogFile.create(folder.resolve(LOG_PREFIX + newGeneration + LOG_SUFFIX));
+
+        List<ByteBuffer> oldFileBuffers = new ArrayList<>();
+        Map<AggregationKey, AggregationValue> minuteSnapshot = minute.switchLog(newFile, oldFileBuffers);
+        LogFile oldFile = this.current;
+        this.current = newFile;
+        this.generation = newGeneration;
+        if (oldFile != null) {
+            for (ByteBuffer buffer : oldFileBuffers) {
+                oldFile.write(buffer);
+            }
+            oldFile.close();
+        }
+
+        Path snapshot = folder.resolve(SNAPSHOT_PREFIX + newGeneration + SNAPSHOT_SUFFIX);
+        Path tmp = folder.resolve(SNAPSHOT_PREFIX + newGeneration + SNAPSHOT_SUFFIX + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            dos.writeInt(SNAPSHOT_MAGIC);
+            dos.writeInt(VERSION);
+            writeEntries(dos, minuteSnapshot);
+            writeEntries(dos, hourly.toMap());
+            writeEntries(dos, daily.toMap());
+        }
+        if (fsync) {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        removeOlderThan(newGeneration);
+    }
+
+    private void removeOlderThan(long generation) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                long fileGeneration = Math.max(parseGeneration(file, LOG_PREFIX, LOG_SUFFIX),
+                                               parseGeneration(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+                if (fileGeneration != -1 && fileGeneration < generation) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all buffered records to log file. In case fsync is enabled also forces them to disk.
+     */
+    public synchronized void flush(AggregationMap minute) {
+        int dropped = minute.flushLog();
+        if (dropped > 0) {
+            log.warn("Aggregation log flush is too slow. Dropped {} log buffers.", dropped);
+        }
+        LogFile logFile = this.current;
+        if (fsync && logFile != null) {
+            logFile.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        LogFile logFile = this.current;
+        if (logFile != null) {
+            logFile.close();
+        }
+    }
+
+    /**
+     * Single log file. Written only by flush and checkpoint, those are serialized on log.
+     */
+    static final class LogFile {
+
+        private final Path path;
+        private final FileChannel channel;
+
+        private LogFile(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static LogFile create(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            return new LogFile(path, channel);
+        }
+
+        /**
+         * Writes flipped buffer to file. Buffer is not retried in case of error,
+         * values are still within snapshot written on next checkpoint.
+         */
+        synchronized void write(ByteBuffer buffer) {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                log.error("Error writing to aggregation log {}. Reason : {}", path, e.getMessage());
+            }
+        }
+
+        synchronized void force() {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("Error syncing aggregation log {}. Reason : {}", path, e.getMessage());
+            }
+        }
+
+        synchronized void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing aggregation log {}. Reason : {}", path, e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+package cc.blynk.server.core.reporting.average;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Striped open addressing map for aggregation of reporting values.
+ * Key is packed into 3 longs : (userId, dashId), (deviceId, pinType, pin) and time bucket.
+ * Sum, count, min, max and last value are stored in primitive arrays, so adding of value to existing bucket
+ * doesn't produce any garbage. Memory is allocated only when stripe grows.
+ *
+ * Every stripe is guarded by own lock, so writes from different event loops rarely contend.
+ * Entries are materialized to {@link AggregationKey} / {@link AggregationValue} objects only
+ * when closed buckets are removed by reporting worker, that happens once a minute.
+ *
+ * When {@link AggregationLog} is attached every added value is also recorded to stripe log buffer.
+ * Full buffers are only queued within stripe, they are written to disk by periodic flush,
+ * so thread that adds value never touches the file.
+ */
+public final class AggregationMap {
+
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+    private static final int LOG_BUFFER_SIZE = 8 * 1024;
+    //in case flush can't keep up, every stripe holds at most 1 MB of log records
+    private static final int MAX_PENDING_LOG_BUFFERS = 128;
+
+    private final UserIdRegistry userIds;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public AggregationMap(UserIdRegistry userIds, int stripesCount) {
+        this.userIds = userIds;
+        int size = Integer.highestOneBit(Math.max(1, stripesCount - 1) << 1);
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(INITIAL_STRIPE_CAPACITY);
+        }
+        this.stripeMask = size - 1;
+    }
+
+    private static long packUserDash(int userId, int dashId) {
+        return ((long) userId << 32) | (dashId & 0xFFFFFFFFL);
+    }
+
+    private static long packDevicePin(int deviceId, char pinType, byte pin) {
+        return ((long) deviceId << 32) | ((pinType & 0xFFFF) << 8) | (pin & 0xFF);
+    }
+
+    private static long hash(long userDash, long devicePin, long bucket) {
+        long h = userDash * 0x9E3779B97F4A7C15L;
+        h = (h ^ devicePin) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ bucket) * 0x165667B19E3779F9L;
+        return h ^ (h >>> 32);
+    }
+
+    private Stripe stripeFor(long hash) {
+        return stripes[(int) (hash >>> 40) & stripeMask];
+    }
+
+    public void add(int userId, int dashId, int deviceId, char pinType, byte pin, long bucket, double value) {
+        long userDash = packUserDash(userId, dashId);
+        long devicePin = packDevicePin(deviceId, pinType, pin);
+        long hash = hash(userDash, devicePin, bucket);
+
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            stripe.add(userDash, devicePin, bucket, (int) hash, value, 1, value, value, value);
+            if (stripe.logFile != null) {
+                stripe.log(userIds.getUsernameBytes(userId), dashId, deviceId, pinType, pin, bucket, value);
+            }
+        }
+    }
+
+    /**
+     * Merges already aggregated value. Used for restoring of entries and for roll up
+     * of smaller buckets into bigger ones.
+     */
+    public void add(AggregationKey key, AggregationValue value) {
+        if (value.count == 0) {
+            return;
+        }
+        long userDash = packUserDash(userIds.getId(key.username), key.dashId);
+        long devicePin = packDevicePin(key.deviceId, key.pinType, key.pin);
+        long hash = hash(userDash, devicePin, key.ts);
+
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            stripe.add(userDash, devicePin, key.ts, (int) hash,
+                    value.values, value.count, value.min, value.max, value.last);
+        }
+    }
+
+    public AggregationValue get(AggregationKey key) {
+        long userDash = packUserDash(userIds.getId(key.username), key.dashId);
+        long devicePin = packDevicePin(key.deviceId, key.pinType, key.pin);
+        long hash = hash(userDash, devicePin, key.ts);
+
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            int index = stripe.indexOf(userDash, devicePin, key.ts, (int) hash);
+            if (index == -1) {
+                return null;
+            }
+            return stripe.toValue(index);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return biggest bucket within map or Long.MIN_VALUE in case map is empty.
+     */
+    public long maxBucket() {
+        long max = Long.MIN_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.counts.length; i++) {
+                    if (stripe.counts[i] != 0 && stripe.buckets[i] > max) {
+                        max = stripe.buckets[i];
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Removes all entries with bucket less than given one.
+     *
+     * @return removed entries
+     */
+    public Map<AggregationKey, AggregationValue> removeOutdated(long nowTruncatedToPeriod) {
+        Map<AggregationKey, AggregationValue> removed = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.removeOutdated(nowTruncatedToPeriod, removed);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return copy of all entries.
+     */
+    public Map<AggregationKey, AggregationValue> toMap() {
+        Map<AggregationKey, AggregationValue> result = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.counts.length; i++) {
+                    if (stripe.counts[i] != 0) {
+                        result.put(toKey(stripe, i), stripe.toValue(i));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves every stripe to new log file. Pending records of stripe are taken for old file
+     * and copy of stripe is taken under same lock, so every value is either in returned copy or in new file.
+     *
+     * @param oldFileBuffers - filled with records that should be written to old file.
+     * @return copy of all entries.
+     */
+    Map<AggregationKey, AggregationValue> switchLog(AggregationLog.LogFile newFile, List<ByteBuffer> oldFileBuffers) {
+        Map<AggregationKey, AggregationValue> result = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.takeLogBuffers(oldFileBuffers);
+                for (int i = 0; i < stripe.counts.length; i++) {
+                    if (stripe.counts[i] != 0) {
+                        result.put(toKey(stripe, i), stripe.toValue(i));
+                    }
+                }
+                stripe.logFile = newFile;
+                if (stripe.logBuffer == null) {
+                    stripe.logBuffer = ByteBuffer.allocate(LOG_BUFFER_SIZE);
+                    stripe.fullLogBuffers = new ArrayList<>();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes pending records of every stripe. Stripe lock is held only while buffers are taken,
+     * so writers are never blocked by disk.
+     *
+     * @return number of log buffers dropped since last flush, because flush didn't keep up.
+     */
+    int flushLog() {
+        int dropped = 0;
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            AggregationLog.LogFile logFile;
+            synchronized (stripe) {
+                logFile = stripe.logFile;
+                stripe.takeLogBuffers(buffers);
+                dropped += stripe.droppedLogBuffers;
+                stripe.droppedLogBuffers = 0;
+            }
+            if (logFile != null) {
+                for (ByteBuffer buffer : buffers) {
+                    logFile.write(buffer);
+                }
+            }
+            buffers.clear();
+        }
+        return dropped;
+    }
+
+    private AggregationKey toKey(Stripe stripe, int index) {
+        long userDash = stripe.userDashKeys[index];
+        long devicePin = stripe.devicePinKeys[index];
+        return new AggregationKey(
+                userIds.getUsername((int) (userDash >>> 32)),
+                (int) userDash,
+                (int) (devicePin >>> 32),
+                (char) ((devicePin >>> 8) & 0xFFFF),
+                (byte) devicePin,
+                stripe.buckets[index]
+        );
+    }
+
+    /**
+     * Open addressing table with linear probing. Empty slot is marked with zero count.
+     */
+    private final class Stripe {
+
+        long[] userDashKeys;
+        long[] devicePinKeys;
+        long[] buckets;
+        double[] sums;
+        long[] counts;
+        double[] mins;
+        double[] maxs;
+        double[] lasts;
+        int size;
+        int mask;
+        AggregationLog.LogFile logFile;
+        ByteBuffer logBuffer;
+        List<ByteBuffer> fullLogBuffers;
+        int droppedLogBuffers;
+
+        Stripe(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            this.userDashKeys = new long[capacity];
+            this.devicePinKeys = new long[capacity];
+            this.buckets = new long[capacity];
+            this.sums = new double[capacity];
+            this.counts = new long[capacity];
+            this.mins = new double[capacity];
+            this.maxs = new double[capacity];
+            this.lasts = new double[capacity];
+            this.size = 0;
+            this.mask = capacity - 1;
+        }
+
+        int indexOf(long userDash, long devicePin, long bucket, int hash) {
+            int index = hash & mask;
+            while (counts[index] != 0) {
+                if (userDashKeys[index] == userDash && devicePinKeys[index] == devicePin && buckets[index] == bucket) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        void log(byte[] username, int dashId, int deviceId, char pinType, byte pin, long bucket, double value) {
+            int recordSize = AggregationLog.recordSize(username);
+            if (logBuffer.remaining() < recordSize) {
+                if (fullLogBuffers.size() < MAX_PENDING_LOG_BUFFERS) {
+                    fullLogBuffers.add(logBuffer);
+                    logBuffer = ByteBuffer.allocate(Math.max(LOG_BUFFER_SIZE, recordSize));
+                } else {
+                    //values are still aggregated in memory, only log records are lost
+                    droppedLogBuffers++;
+                    logBuffer.clear();
+                }
+            }
+            AggregationLog.writeRecord(logBuffer, username, dashId, deviceId, pinType, pin, bucket, value);
+        }
+
+        /**
+         * Moves all pending records to given list as flipped buffers. Should be called under stripe lock.
+         */
+        void takeLogBuffers(List<ByteBuffer> buffers) {
+            if (logBuffer == null) {
+                return;
+            }
+            for (ByteBuffer fullLogBuffer : fullLogBuffers) {
+                fullLogBuffer.flip();
+                buffers.add(fullLogBuffer);
+            }
+            fullLogBuffers.clear();
+            if (logBuffer.position() > 0) {
+                logBuffer.flip();
+                buffers.add(logBuffer);
+                logBuffer = ByteBuffer.allocate(LOG_BUFFER_SIZE);
+            }
+        }
+
+        AggregationValue toValue(int index) {
+            return new AggregationValue(sums[index], counts[index], mins[index], maxs[index], lasts[index]);
+        }
+
+        void add(long userDash, long devicePin, long bucket, int hash,
+                 double sum, long count, double min, double max, double last) {
+            int index = hash & mask;
+            while (counts[index] != 0) {
+                if (userDashKeys[index] == userDash && devicePinKeys[index] == devicePin && buckets[index] == bucket) {
+                    sums[index] += sum;
+                    counts[index] += count;
+                    mins[index] = Math.min(mins[index], min);
+                    maxs[index] = Math.max(maxs[index], max);
+                    lasts[index] = last;
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+
+            userDashKeys[index] = userDash;
+            devicePinKeys[index] = devicePin;
+            buckets[index] = bucket;
+            sums[index] = sum;
+            counts[index] = count;
+            mins[index] = min;
+            maxs[index] = max;
+            lasts[index] = last;
+            size++;
+
+            //keeping load factor below 0.5 for short probe sequences
+            if (size << 1 > mask) {
+                rehash(counts.length << 1, Long.MIN_VALUE, null);
+            }
+        }
+
+        void removeOutdated(long nowTruncatedToPeriod, Map<AggregationKey, AggregationValue> removed) {
+            int sizeBefore = removed.size();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0 && buckets[i] < nowTruncatedToPeriod) {
+                    removed.put(toKey(this, i), toValue(i));
+                }
+            }
+            if (removed.size() != sizeBefore) {
+                //open addressing doesn't allow simple removal, so table is rebuilt without outdated entries
+                rehash(counts.length, nowTruncatedToPeriod, removed);
+            }
+        }
+
+        private void rehash(int newCapacity, long nowTruncatedToPeriod, Map<AggregationKey, AggregationValue> removed) {
+            long[] oldUserDashKeys = userDashKeys;
+            long[] oldDevicePinKeys = devicePinKeys;
+            long[] oldBuckets = buckets;
+            double[] oldSums = sums;
+            long[] oldCounts = counts;
+            double[] oldMins = mins;
+            double[] oldMaxs = maxs;
+            double[] oldLasts = lasts;
+
+            allocate(newCapacity);
+
+            for (int i = 0; i < oldCounts.length; i++) {
+                if (oldCounts[i] != 0 && (removed == null || oldBuckets[i] >= nowTruncatedToPeriod)) {
+                    long hash = hash(oldUserDashKeys[i], oldDevicePinKeys[i], oldBuckets[i]);
+                    add(oldUserDashKeys[i], oldDevicePinKeys[i], oldBuckets[i], (int) hash,
+                            oldSums[i], oldCounts[i], oldMins[i], oldMaxs[i], oldLasts[i]);
+                }
+            }
+        }
+    }
+
+}
@@ -1,23 +1,123 @@
 package cc.blynk.server.core.reporting.average;
 
+import cc.blynk.server.core.model.enums.AggregationFunction;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
+ * Aggregated values of one pin within one time bucket.
+ * Besides average keeps min, max and last value, so they are available without extra storage passes.
+ *
  * The Blynk Project.
  * Created by Dmitriy Dumanskiy.
  * Created on 10.08.15.
  */
 public class AggregationValue implements Serializable {
 
-    private double values = 0;
-    private long count = 0;
+    //keeps compatibility with temp files written by previous versions
+    private static final long serialVersionUID = -445006968633062412L;
+
+    double values = 0;
+    long count = 0;
+    double min;
+    double max;
+    double last;
+
+    public AggregationValue() {
+    }
+
+    public AggregationValue(double values, long count, double min, double max, double last) {
+        this.values = values;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.last = last;
+    }
 
     public void update(double val) {
+        if (count == 0) {
+            min = val;
+            max = val;
+        } else {
+            min = Math.min(min, val);
+            max = Math.max(max, val);
+        }
+        last = val;
         values += val;
         count++;
     }
 
+    /**
+     * Merges value of smaller bucket into this one. Values should be merged in chronological order,
+     * so last value is correct.
+     */
+    public void merge(AggregationValue value) {
+        if (value.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            min = value.min;
+            max = value.max;
+        } else {
+            min = Math.min(min, value.min);
+            max = Math.max(max, value.max);
+        }
+        last = value.last;
+        values += value.values;
+        count += value.count;
+    }
+
     public double calcAverage() {
         return values / count;
     }
+
+    public double get(AggregationFunction function) {
+        switch (function) {
+            case MIN :
+                return min;
+            case MAX :
+                return max;
+            case LAST :
+                return last;
+            case COUNT :
+                return count;
+            default :
+                return calcAverage();
+        }
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.values = fields.get("values", 0D);
+        this.count = fields.get("count", 0L);
+        //old temp files have only sum and count
+        if (fields.defaulted("min")) {
+            double average = count == 0 ? 0 : calcAverage();
+            this.min = average;
+            this.max = average;
+            this.last = average;
+        } else {
+            this.min = fields.get("min", 0D);
+            this.max = fields.get("max", 0D);
+            this.last = fields.get("last", 0D);
+        }
+    }
 }
@@ -1,17 +1,23 @@
 package cc.blynk.server.core.reporting.average;
 
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.utils.FileUtils;
+import cc.blynk.utils.NumberUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static cc.blynk.utils.ReportingUtil.read;
-import static cc.blynk.utils.ReportingUtil.write;
 
 /**
+ * Aggregates reporting values in memory. Aggregates survive restarts and crashes via {@link AggregationLog}.
+ *
  * The Blynk Project.
  * Created by Dmitriy Dumanskiy.
  * Created on 10.08.15.
@@ -21,68 +27,216 @@ public class AverageAggregatorProcessor implements Closeable {
     public static final long MINUTE = 1000 * 60;
     public static final long HOUR = 60 * MINUTE;
     public static final long DAY = 24 * HOUR;
+    //temp files of previous versions, only read once during upgrade
     public static final String MINUTE_TEMP_FILENAME = "minute_temp.bin";
     public static final String HOURLY_TEMP_FILENAME = "hourly_temp.bin";
     public static final String DAILY_TEMP_FILENAME = "daily_temp.bin";
-    private final String dataFolder;
-    private final ConcurrentHashMap<AggregationKey, AggregationValue> minute;
-    private final ConcurrentHashMap<AggregationKey, AggregationValue> hourly;
-    private final ConcurrentHashMap<AggregationKey, AggregationValue> daily;
 
+    private static final Logger log = LogManager.getLogger(AverageAggregatorProcessor.class);
+
+    private static final int STRIPES = 64;
+
+    private final UserIdRegistry userIds;
+    private final AggregationMap minute;
+    private final AggregationMap hourly;
+    private final AggregationMap daily;
+    private final AggregationLog aggregationLog;
+    //buckets below these were already removed by reporting worker
+    private volatile long hourlyClosedBefore;
+    private volatile long dailyClosedBefore;
+    //buckets up to these were restored on start, so they may be already stored before crash
+    private final long minuteRecoveredUntil;
+    private final long hourlyRecoveredUntil;
+    private final long dailyRecoveredUntil;
+
+    //for tests only
     public AverageAggregatorProcessor(String dataFolder) {
-        this.dataFolder = dataFolder;
+        this(dataFolder, false);
+    }
 
-        Path path;
+    public AverageAggregatorProcessor(String dataFolder, boolean fsync) {
+        this.userIds = new UserIdRegistry();
+        this.minute = new AggregationMap(userIds, STRIPES);
+        this.hourly = new AggregationMap(userIds, STRIPES);
+        this.daily = new AggregationMap(userIds, STRIPES);
 
-        path = Paths.get(dataFolder, MINUTE_TEMP_FILENAME);
-        this.minute = read(path);
-        FileUtils.deleteQuietly(path);
+        load(Paths.get(dataFolder, MINUTE_TEMP_FILENAME), minute);
+        load(Paths.get(dataFolder, HOURLY_TEMP_FILENAME), hourly);
+        load(Paths.get(dataFolder, DAILY_TEMP_FILENAME), daily);
 
-        path = Paths.get(dataFolder, HOURLY_TEMP_FILENAME);
-        this.hourly = read(path);
-        FileUtils.deleteQuietly(path);
+        this.aggregationLog = openLog(Paths.get(dataFolder, AggregationLog.LOG_FOLDER), fsync);
+
+        this.minuteRecoveredUntil = minute.maxBucket();
+        this.hourlyRecoveredUntil = recoveredUntil(hourly, minuteRecoveredUntil, HOUR);
+        this.dailyRecoveredUntil = recoveredUntil(daily, minuteRecoveredUntil, DAY);
+    }
+
+    /**
+     * Restored minutes are rolled up again, so they may recreate buckets that are not within snapshot.
+     */
+    private static long recoveredUntil(AggregationMap map, long minuteRecoveredUntil, long period) {
+        long rolledUp = minuteRecoveredUntil == Long.MIN_VALUE ? Long.MIN_VALUE : minuteRecoveredUntil * MINUTE / period;
+        return Math.max(map.maxBucket(), rolledUp);
+    }
 
-        path = Paths.get(dataFolder, DAILY_TEMP_FILENAME);
-        this.daily = read(path);
+    private AggregationLog openLog(Path logFolder, boolean fsync) {
+        try {
+            AggregationLog aggregationLog = new AggregationLog(logFolder, fsync);
+            aggregationLog.recover(userIds, minute, hourly, daily);
+            //compacts replayed log and attaches new log file to minute buckets
+            aggregationLog.checkpoint(minute, hourly, daily);
+            return aggregationLog;
+        } catch (IOException e) {
+            log.error("Error opening aggregation log. Reporting aggregates will not survive restart.", e);
+            return null;
+        }
+    }
+
+    private static void load(Path path, AggregationMap map) {
+        for (Map.Entry<AggregationKey, AggregationValue> entry : read(path).entrySet()) {
+            map.add(entry.getKey(), entry.getValue());
+        }
         FileUtils.deleteQuietly(path);
     }
 
-    private static void aggregate(Map<AggregationKey, AggregationValue> map, AggregationKey key, double value) {
-        AggregationValue aggregationValue = map.get(key);
-        if (aggregationValue == null) {
-            final AggregationValue aggregationValueTmp = new AggregationValue();
-            aggregationValue = map.putIfAbsent(key, aggregationValueTmp);
-            if (aggregationValue == null) {
-                aggregationValue = aggregationValueTmp;
+    /**
+     * Hot path. Only minute bucket is updated here, hourly and daily buckets
+     * are built from closed minute buckets, see {@link #rollUp(AggregationKey, AggregationValue)}.
+     */
+    public void collect(String username, int dashId, int deviceId, char pinType, byte pin, long ts, double val) {
+        minute.add(userIds.getId(username), dashId, deviceId, pinType, pin, ts / MINUTE, val);
+    }
+
+    /**
+     * Same as {@link #collect(String, int, int, char, byte, long, double)} for many pins of single device
+     * with same timestamp, so user id and minute bucket are resolved once.
+     * Not a number values (NumberUtil.NO_RESULT) are skipped.
+     */
+    public void collect(String username, int dashId, int deviceId,
+                        PinType[] pinTypes, byte[] pins, long ts, double[] values) {
+        int userId = userIds.getId(username);
+        long bucket = ts / MINUTE;
+        for (int i = 0; i < pins.length; i++) {
+            if (values[i] != NumberUtil.NO_RESULT) {
+                minute.add(userId, dashId, deviceId, pinTypes[i].pintTypeChar, pins[i], bucket, values[i]);
             }
         }
+    }
 
-        aggregationValue.update(value);
+    /**
+     * Cascades closed minute bucket into hourly and daily buckets.
+     * Minute buckets should be rolled up in chronological order, so last value is correct.
+     * Minute that was stored late (after failed attempt) is not rolled into buckets
+     * that were already removed and stored, otherwise same bucket is stored twice.
+     */
+    public void rollUp(AggregationKey minuteKey, AggregationValue value) {
+        long ts = minuteKey.ts * MINUTE;
+        rollUp(hourly, hourlyClosedBefore, new AggregationKey(minuteKey.username, minuteKey.dashId,
+                minuteKey.deviceId, minuteKey.pinType, minuteKey.pin, ts / HOUR), value);
+        rollUp(daily, dailyClosedBefore, new AggregationKey(minuteKey.username, minuteKey.dashId,
+                minuteKey.deviceId, minuteKey.pinType, minuteKey.pin, ts / DAY), value);
     }
 
-    public void collect(String username, int dashId, int deviceId, char pinType, byte pin, long ts, double val) {
-        aggregate(minute, new AggregationKey(username, dashId, deviceId, pinType, pin, ts / MINUTE), val);
-        aggregate(hourly, new AggregationKey(username, dashId, deviceId, pinType, pin, ts / HOUR), val);
-        aggregate(daily, new AggregationKey(username, dashId, deviceId, pinType, pin, ts / DAY), val);
+    private static void rollUp(AggregationMap map, long closedBefore, AggregationKey key, AggregationValue value) {
+        //bucket may still be within map in case it was restored after failed store
+        if (key.ts < closedBefore && map.get(key) == null) {
+            log.debug("Skipping roll up of late minute into already stored bucket {}.", key.ts);
+            return;
+        }
+        map.add(key, value);
     }
 
-    public ConcurrentHashMap<AggregationKey, AggregationValue> getMinute() {
+    public AggregationMap getMinute() {
         return minute;
     }
 
-    public ConcurrentHashMap<AggregationKey, AggregationValue> getHourly() {
+    public AggregationMap getHourly() {
         return hourly;
     }
 
-    public ConcurrentHashMap<AggregationKey, AggregationValue> getDaily() {
+    public AggregationMap getDaily() {
         return daily;
     }
 
+    private AggregationMap get(GraphType type) {
+        switch (type) {
+            case MINUTE :
+                return minute;
+            case HOURLY :
+                return hourly;
+            default :
+                return daily;
+        }
+    }
+
+    /**
+     * Removes all closed buckets of given type.
+     *
+     * @param nowTruncatedToPeriod - current time divided by type period.
+     * @return removed entries.
+     */
+    public Map<AggregationKey, AggregationValue> removeOutdated(GraphType type, long nowTruncatedToPeriod) {
+        Map<AggregationKey, AggregationValue> removed = get(type).removeOutdated(nowTruncatedToPeriod);
+        if (type == GraphType.HOURLY) {
+            hourlyClosedBefore = nowTruncatedToPeriod;
+        } else if (type == GraphType.DAILY) {
+            dailyClosedBefore = nowTruncatedToPeriod;
+        }
+        return removed;
+    }
+
+    /**
+     * Bucket restored from log on start may be already within storage, in case
+     * server was stopped after reporting worker stored it, but before checkpoint.
+     *
+     * @return true in case bucket was restored on start and should be checked against storage.
+     */
+    public boolean isRecovered(GraphType type, long bucket) {
+        switch (type) {
+            case MINUTE :
+                return bucket <= minuteRecoveredUntil;
+            case HOURLY :
+                return bucket <= hourlyRecoveredUntil;
+            default :
+                return bucket <= dailyRecoveredUntil;
+        }
+    }
+
+    /**
+     * Puts back entry that was removed, but wasn't stored.
+     */
+    public void restore(GraphType type, AggregationKey key, AggregationValue value) {
+        get(type).add(key, value);
+    }
+
+    /**
+     * Writes buffered log records to disk. Called periodically.
+     */
+    public void flushLog() {
+        if (aggregationLog != null) {
+            aggregationLog.flush(minute);
+        }
+    }
+
+    /**
+     * Writes snapshot of all aggregates and starts new log. Called after every reporting worker run.
+     */
+    public void checkpoint() {
+        if (aggregationLog != null) {
+            try {
+                aggregationLog.checkpoint(minute, hourly, daily);
+            } catch (IOException e) {
+                log.error("Error writing aggregation snapshot.", e);
+            }
+        }
+    }
+
     @Override
     public void close() {
-        write(Paths.get(dataFolder, MINUTE_TEMP_FILENAME), minute);
-        write(Paths.get(dataFolder, HOURLY_TEMP_FILENAME), hourly);
-        write(Paths.get(dataFolder, DAILY_TEMP_FILENAME), daily);
+        if (aggregationLog != null) {
+            checkpoint();
+            aggregationLog.close();
+        }
     }
 
 }
@@ -0,0 +1,57 @@
+package cc.blynk.server.core.reporting.average;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns small int id to every username, so aggregation keys could be packed into primitives.
+ * Ids are never released. Number of ids is limited by number of users that have ever
+ * sent data since server start.
+ */
+public final class UserIdRegistry {
+
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] usernames = new String[1024];
+    //encoded usernames, so they could be written to aggregation log without allocations
+    private volatile byte[][] usernamesBytes = new byte[1024][];
+    private int nextId;
+
+    public int getId(String username) {
+        //fast path doesn't allocate, as Integer is taken from map
+        Integer id = ids.get(username);
+        if (id == null) {
+            return register(username);
+        }
+        return id;
+    }
+
+    private synchronized int register(String username) {
+        Integer id = ids.get(username);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = nextId++;
+        if (newId == usernames.length) {
+            usernames = Arrays.copyOf(usernames, newId * 2);
+            usernamesBytes = Arrays.copyOf(usernamesBytes, newId * 2);
+        }
+        usernames[newId] = username;
+        usernamesBytes[newId] = username.getBytes(CHARSET);
+        ids.put(username, newId);
+        return newId;
+    }
+
+    public String getUsername(int id) {
+        return usernames[id];
+    }
+
+    byte[] getUsernameBytes(int id) {
+        return usernamesBytes[id];
+    }
+
+}
@@ -1,40 +1,224 @@
 package cc.blynk.server.core.reporting.raw;
 
-import cc.blynk.server.core.reporting.average.AggregationKey;
+import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.utils.NumberUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Simply stores every record in memory that should be stored in reporting DB lately.
- * Could cause OOM at high request rate. However we don't use it very high loads.
- * So this is fine for now.
+ * Buffers every record that should be stored in reporting DB lately.
+ * Records are kept in bounded lock-free queue. When queue is filled above high watermark
+ * or DB is too slow to accept drained records, they are spilled to local segment files by
+ * own spill thread or by DB worker, so memory usage is bounded and thread that collects record never
+ * touches the disk. Record that doesn't fit full queue is dropped.
  *
  * The Blynk Project.
  * Created by Dmitriy Dumanskiy.
  * Created on 25.01.17.
  */
-public class RawDataProcessor {
+public class RawDataProcessor implements Closeable {
 
-    public final Map<AggregationKey, Object> rawStorage;
+    private static final Logger log = LogManager.getLogger(RawDataProcessor.class);
 
-    public RawDataProcessor(boolean enable) {
+    private final Queue<RawEntry> buffer;
+    private final int highWatermark;
+    private final RawDataSpill spill;
+    private final ExecutorService spillExecutor;
+    private final AtomicBoolean spillScheduled = new AtomicBoolean();
+    private final AtomicInteger sequence;
+
+    public final LongAdder collected = new LongAdder();
+    public final LongAdder spilled = new LongAdder();
+    public final LongAdder dropped = new LongAdder();
+
+    public RawDataProcessor(boolean enable, String reportingFolder, int bufferSize) {
         if (enable) {
-            rawStorage = new ConcurrentHashMap<>();
+            this.buffer = PlatformDependent.newFixedMpscQueue(bufferSize);
+            this.spill = openSpill(Paths.get(reportingFolder, RawDataSpill.SPILL_FOLDER));
         } else {
-            rawStorage = Collections.emptyMap();
+            this.buffer = null;
+            this.spill = null;
+        }
+        this.highWatermark = Math.max(1, bufferSize * 3 / 4);
+        this.spillExecutor = spill == null ? null : Executors.newSingleThreadExecutor(new DefaultThreadFactory("raw-spill", true));
+        //spilled entries of previous run are not yet in DB, so sequence continues after them
+        this.sequence = new AtomicInteger(spill == null ? 0 : lastSequence(spill));
+    }
+
+    private static RawDataSpill openSpill(Path folder) {
+        try {
+            return new RawDataSpill(folder);
+        } catch (IOException e) {
+            log.error("Error opening raw data spill folder. Raw data overflow will be dropped.", e);
+            return null;
+        }
+    }
+
+    private static int lastSequence(RawDataSpill spill) {
+        try {
+            return spill.lastSequence();
+        } catch (IOException e) {
+            log.error("Error reading last raw data spill segment.", e);
+            return 0;
         }
     }
 
-    //todo 2 millis is minimum allowed interval for data pushing.
     public void collect(String username, int dashId, int deviceId, char pinType, byte pin, long ts, String stringValue, double doubleValue) {
-        final AggregationKey aggregationKey = new AggregationKey(username, dashId, deviceId, pinType, pin, ts);
+        final RawEntry entry;
         if (doubleValue == NumberUtil.NO_RESULT) {
-            rawStorage.put(aggregationKey, stringValue);
+            entry = new RawEntry(username, dashId, deviceId, pinType, pin, ts, sequence.incrementAndGet(), stringValue, 0);
         } else {
-            rawStorage.put(aggregationKey, doubleValue);
+            entry = new RawEntry(username, dashId, deviceId, pinType, pin, ts, sequence.incrementAndGet(), null, doubleValue);
+        }
+        collected.increment();
+
+        if (!buffer.offer(entry)) {
+            dropped.increment();
+        }
+
+        scheduleSpill();
+    }
+
+    /**
+     * Same as {@link #collect(String, int, int, char, byte, long, String, double)} for many pins of single device
+     * with same timestamp. Sequence numbers are reserved at once and spill is checked once per call.
+     */
+    public void collect(String username, int dashId, int deviceId, PinType[] pinTypes, byte[] pins, long ts,
+                        String[] stringValues, double[] doubleValues) {
+        int firstSequence = sequence.getAndAdd(pins.length) + 1;
+        int droppedEntries = 0;
+        for (int i = 0; i < pins.length; i++) {
+            final RawEntry entry;
+            if (doubleValues[i] == NumberUtil.NO_RESULT) {
+                entry = new RawEntry(username, dashId, deviceId, pinTypes[i].pintTypeChar, pins[i], ts,
+                        firstSequence + i, stringValues[i], 0);
+            } else {
+                entry = new RawEntry(username, dashId, deviceId, pinTypes[i].pintTypeChar, pins[i], ts,
+                        firstSequence + i, null, doubleValues[i]);
+            }
+            if (!buffer.offer(entry)) {
+                droppedEntries++;
+            }
+        }
+        collected.add(pins.length);
+        if (droppedEntries > 0) {
+            dropped.add(droppedEntries);
+        }
+
+        scheduleSpill();
+    }
+
+    private void scheduleSpill() {
+        if (spillExecutor != null && buffer.size() >= highWatermark && spillScheduled.compareAndSet(false, true)) {
+            try {
+                spillExecutor.execute(this::spillBuffer);
+            } catch (RejectedExecutionException e) {
+                //closing
+                spillScheduled.set(false);
+            }
+        }
+    }
+
+    private void spillBuffer() {
+        try {
+            spill(drain());
+        } finally {
+            spillScheduled.set(false);
+        }
+    }
+
+    private void spill(RawEntry entry) {
+        if (spill == null) {
+            dropped.increment();
+            return;
+        }
+        try {
+            spill.write(entry);
+            spilled.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            log.error("Error spilling raw data. Reason : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Moves entries from memory to spill segments. Used when DB can't keep up.
+     */
+    public void spill(List<RawEntry> entries) {
+        for (RawEntry entry : entries) {
+            spill(entry);
+        }
+    }
+
+    /**
+     * Takes all buffered entries. Buffer has single consumer, so drain is serialized
+     * between spill thread and DB worker.
+     */
+    public List<RawEntry> drain() {
+        List<RawEntry> entries = new ArrayList<>();
+        if (buffer != null) {
+            synchronized (buffer) {
+                RawEntry entry;
+                while ((entry = buffer.poll()) != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return oldest spilled segment or null if nothing was spilled.
+     */
+    public Path oldestSpilledSegment() {
+        if (spill == null) {
+            return null;
+        }
+        try {
+            return spill.oldestSegment();
+        } catch (IOException e) {
+            log.error("Error listing raw data spill segments.", e);
+            return null;
+        }
+    }
+
+    public int bufferSize() {
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    @Override
+    public void close() {
+        if (spill != null) {
+            spillExecutor.shutdown();
+            try {
+                spillExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            //keeping not stored entries for next start
+            spill(drain());
+            try {
+                spill.close();
+            } catch (IOException e) {
+                log.error("Error closing raw data spill.", e);
+            }
         }
     }
 
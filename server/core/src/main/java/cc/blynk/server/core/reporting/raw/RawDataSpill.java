@@ -0,0 +1,171 @@
+package cc.blynk.server.core.reporting.raw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local segment files for raw entries that can't be kept in memory - either raw buffer is full
+ * or DB is too slow to accept them. Segments are drained to DB one by one, oldest first,
+ * and removed only after successful insert.
+ */
+public final class RawDataSpill implements Closeable {
+
+    public static final String SPILL_FOLDER = "raw_spill";
+
+    private static final String SEGMENT_PREFIX = "raw_";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final Path folder;
+    private long nextSegmentId;
+    private Path currentPath;
+    private DataOutputStream current;
+
+    public RawDataSpill(Path folder) throws IOException {
+        this.folder = folder;
+        Files.createDirectories(folder);
+        for (Path segment : listSegments()) {
+            nextSegmentId = Math.max(nextSegmentId, segmentId(segment) + 1);
+        }
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+            try {
+                return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                //not a segment
+            }
+        }
+        return -1;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                if (segmentId(file) != -1) {
+                    segments.add(file);
+                }
+            }
+        }
+        segments.sort((o1, o2) -> Long.compare(segmentId(o1), segmentId(o2)));
+        return segments;
+    }
+
+    public synchronized void write(RawEntry entry) throws IOException {
+        if (current == null) {
+            currentPath = folder.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX);
+            current = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(currentPath)));
+        }
+
+        current.writeUTF(entry.username);
+        current.writeInt(entry.dashId);
+        current.writeInt(entry.deviceId);
+        current.writeChar(entry.pinType);
+        current.writeByte(entry.pin);
+        current.writeLong(entry.ts);
+        current.writeInt(entry.seq);
+        current.writeBoolean(entry.isString());
+        if (entry.isString()) {
+            current.writeUTF(entry.stringValue);
+        } else {
+            current.writeDouble(entry.doubleValue);
+        }
+
+        if (current.size() >= MAX_SEGMENT_SIZE) {
+            closeCurrent();
+        }
+    }
+
+    public synchronized void write(Collection<RawEntry> entries) throws IOException {
+        for (RawEntry entry : entries) {
+            write(entry);
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+            currentPath = null;
+        }
+    }
+
+    /**
+     * @return oldest segment ready for draining or null if there is nothing spilled.
+     * Segment that is currently written is closed and returned in case there are no other segments.
+     */
+    public synchronized Path oldestSegment() throws IOException {
+        for (Path segment : listSegments()) {
+            if (!segment.equals(currentPath)) {
+                return segment;
+            }
+        }
+        if (current != null && current.size() > 0) {
+            Path segment = currentPath;
+            closeCurrent();
+            return segment;
+        }
+        return null;
+    }
+
+    /**
+     * @return biggest sequence number within newest segment or 0 in case there is nothing spilled.
+     */
+    public synchronized int lastSequence() throws IOException {
+        List<Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        int max = 0;
+        for (RawEntry entry : read(segments.get(segments.size() - 1))) {
+            max = Math.max(max, entry.seq);
+        }
+        return max;
+    }
+
+    public synchronized int segmentsCount() throws IOException {
+        return listSegments().size();
+    }
+
+    public static List<RawEntry> read(Path segment) throws IOException {
+        List<RawEntry> entries = new ArrayList<>();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                String username = dis.readUTF();
+                int dashId = dis.readInt();
+                int deviceId = dis.readInt();
+                char pinType = dis.readChar();
+                byte pin = dis.readByte();
+                long ts = dis.readLong();
+                int seq = dis.readInt();
+                if (dis.readBoolean()) {
+                    entries.add(new RawEntry(username, dashId, deviceId, pinType, pin, ts, seq, dis.readUTF(), 0));
+                } else {
+                    entries.add(new RawEntry(username, dashId, deviceId, pinType, pin, ts, seq, null, dis.readDouble()));
+                }
+            }
+        } catch (EOFException eof) {
+            //end of segment or torn last entry after crash
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeCurrent();
+    }
+}
@@ -0,0 +1,37 @@
+package cc.blynk.server.core.reporting.raw;
+
+/**
+ * Single raw value that should be stored in reporting DB.
+ * Sequence number makes every entry unique, so values that came within same millisecond are not lost.
+ */
+public final class RawEntry {
+
+    public final String username;
+    public final int dashId;
+    public final int deviceId;
+    public final char pinType;
+    public final byte pin;
+    public final long ts;
+    public final int seq;
+
+    //null in case value is number
+    public final String stringValue;
+    public final double doubleValue;
+
+    public RawEntry(String username, int dashId, int deviceId, char pinType, byte pin, long ts, int seq,
+                    String stringValue, double doubleValue) {
+        this.username = username;
+        this.dashId = dashId;
+        this.deviceId = deviceId;
+        this.pinType = pinType;
+        this.pin = pin;
+        this.ts = ts;
+        this.seq = seq;
+        this.stringValue = stringValue;
+        this.doubleValue = doubleValue;
+    }
+
+    public boolean isString() {
+        return stringValue != null;
+    }
+}
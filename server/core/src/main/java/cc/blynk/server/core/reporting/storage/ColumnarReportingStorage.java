@@ -0,0 +1,225 @@
+package cc.blynk.server.core.reporting.storage;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.UserSeriesIndex.Series;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cc.blynk.server.core.dao.ReportingDao.generateFilename;
+import static cc.blynk.server.core.reporting.storage.SegmentStore.ENTRIES_PER_BLOCK;
+import static cc.blynk.server.core.reporting.storage.SegmentStore.ENTRY_SIZE;
+
+/**
+ * Storage engine that packs pins of all users into few memory-mapped segment files.
+ * Every user has only one small index file within his reporting folder, instead of
+ * 3 files per pin. Entries within segments have same layout as old reporting files,
+ * so reads that fit one block are returned as slices of mapped memory.
+ *
+ * Appends are visible to readers immediately, while indexes are stored to disk on {@link #flush()}.
+ */
+public class ColumnarReportingStorage implements ReportingStorage {
+
+    public static final String SEGMENTS_FOLDER = "segments";
+
+    private static final Logger log = LogManager.getLogger(ColumnarReportingStorage.class);
+    //extra series are only few more entries within shared blocks, so all aggregates are kept
+    private static final AggregationFunction[] EXTRA_FUNCTIONS = {
+            AggregationFunction.MIN, AggregationFunction.MAX, AggregationFunction.LAST, AggregationFunction.COUNT
+    };
+
+    private final String dataFolder;
+    private final SegmentStore segmentStore;
+    private final boolean fsync;
+    private final ConcurrentHashMap<String, UserSeriesIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<UserSeriesIndex> changedIndexes = ConcurrentHashMap.newKeySet();
+
+    public ColumnarReportingStorage(String dataFolder, boolean fsync) throws IOException {
+        this(dataFolder, fsync, new SegmentStore(Paths.get(dataFolder, SEGMENTS_FOLDER)));
+    }
+
+    ColumnarReportingStorage(String dataFolder, boolean fsync, SegmentStore segmentStore) {
+        this.dataFolder = dataFolder;
+        this.fsync = fsync;
+        this.segmentStore = segmentStore;
+    }
+
+    private UserSeriesIndex getIndex(String username) {
+        return indexes.computeIfAbsent(username, name -> UserSeriesIndex.load(Paths.get(dataFolder, name)));
+    }
+
+    @Override
+    public void append(String username, int dashId, int deviceId, char pinType, byte pin,
+                       GraphType type, AggregationFunction function, double value, long ts) throws IOException {
+        UserSeriesIndex index = getIndex(username);
+        String seriesName = generateFilename(dashId, deviceId, pinType, pin, type, function);
+
+        synchronized (index) {
+            Series series = index.getOrCreate(seriesName);
+            if (series.isLastBlockFull()) {
+                series.addBlock(segmentStore.allocateBlock());
+            }
+            segmentStore.put(series.lastBlock(), series.lastBlockEntries, value, ts);
+            series.lastBlockEntries++;
+            index.changed = true;
+        }
+
+        changedIndexes.add(index);
+    }
+
+    @Override
+    public AggregationFunction[] extraFunctions() {
+        return EXTRA_FUNCTIONS;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //blocks should be durable before indexes start pointing to them
+        segmentStore.flush(fsync);
+
+        for (Iterator<UserSeriesIndex> iter = changedIndexes.iterator(); iter.hasNext(); ) {
+            UserSeriesIndex index = iter.next();
+            iter.remove();
+            synchronized (index) {
+                if (index.changed) {
+                    index.save();
+                }
+            }
+        }
+    }
+
+    @Override
+    public ByteBuffer read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                           int count, GraphType type, AggregationFunction function) {
+        UserSeriesIndex index = getIndex(username);
+        String seriesName = generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type, function);
+
+        synchronized (index) {
+            Series series = index.get(seriesName);
+            if (series == null) {
+                return null;
+            }
+
+            int total = series.size();
+            int entriesToRead = Math.min(count, total);
+            if (entriesToRead <= 0) {
+                return ByteBuffer.allocate(0);
+            }
+
+            int from = total - entriesToRead;
+            int firstBlock = from / ENTRIES_PER_BLOCK;
+            int lastBlock = series.blocksCount - 1;
+
+            //most of graph requests fit one block, so no copy is required.
+            if (firstBlock == lastBlock) {
+                ByteBuffer slice = segmentStore.slice(series.blocks[firstBlock], from % ENTRIES_PER_BLOCK, entriesToRead);
+                slice.position(slice.limit());
+                return slice;
+            }
+
+            ByteBuffer result = ByteBuffer.allocate(entriesToRead * ENTRY_SIZE);
+            for (int i = firstBlock; i <= lastBlock; i++) {
+                int start = i == firstBlock ? from % ENTRIES_PER_BLOCK : 0;
+                int end = i == lastBlock ? series.lastBlockEntries : ENTRIES_PER_BLOCK;
+                result.put(segmentStore.slice(series.blocks[i], start, end - start));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public int size(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type) {
+        UserSeriesIndex index = getIndex(username);
+        String seriesName = generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type);
+
+        synchronized (index) {
+            Series series = index.get(seriesName);
+            return series == null ? -1 : series.size();
+        }
+    }
+
+    @Override
+    public int read(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type,
+                    int fromEntry, ByteBuffer target) {
+        UserSeriesIndex index = getIndex(username);
+        String seriesName = generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type);
+
+        synchronized (index) {
+            Series series = index.get(seriesName);
+            if (series == null) {
+                return 0;
+            }
+
+            int entriesToRead = Math.min(target.remaining() / ENTRY_SIZE, series.size() - fromEntry);
+            int end = fromEntry + entriesToRead;
+            for (int entry = fromEntry; entry < end; ) {
+                int entryInBlock = entry % ENTRIES_PER_BLOCK;
+                int count = Math.min(ENTRIES_PER_BLOCK - entryInBlock, end - entry);
+                target.put(segmentStore.slice(series.blocks[entry / ENTRIES_PER_BLOCK], entryInBlock, count));
+                entry += count;
+            }
+            return Math.max(0, entriesToRead);
+        }
+    }
+
+    @Override
+    public void delete(String username, int dashId, int deviceId, PinType pinType, byte pin) {
+        UserSeriesIndex index = getIndex(username);
+
+        synchronized (index) {
+            List<Series> removed = new ArrayList<>();
+            for (GraphType type : GraphType.values()) {
+                for (AggregationFunction function : AggregationFunction.values()) {
+                    Series series = index.remove(generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type, function));
+                    if (series != null) {
+                        removed.add(series);
+                    }
+                }
+            }
+
+            if (removed.isEmpty()) {
+                return;
+            }
+
+            //index may also point to blocks allocated since last flush, so segments meta goes first,
+            //same as in flush(). index on disk should stop pointing to removed blocks before they
+            //are marked as free, otherwise crash in between leaves index that references reused blocks.
+            try {
+                segmentStore.flush(fsync);
+                index.save();
+            } catch (IOException e) {
+                //blocks are not released, so they are just lost in case of crash. index is retried on next flush
+                log.error("Error storing reporting index for {}. Reason : {}", username, e.getMessage());
+                index.changed = true;
+                changedIndexes.add(index);
+                return;
+            }
+
+            for (Series series : removed) {
+                segmentStore.release(series.blocks, series.blocksCount);
+            }
+            try {
+                segmentStore.flush(fsync);
+            } catch (IOException e) {
+                log.error("Error storing reporting segments meta. Reason : {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        segmentStore.close();
+    }
+
+}
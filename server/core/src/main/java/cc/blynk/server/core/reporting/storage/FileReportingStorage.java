@@ -0,0 +1,100 @@
+package cc.blynk.server.core.reporting.storage;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static cc.blynk.server.core.dao.ReportingDao.generateFilename;
+
+/**
+ * Old storage engine. Keeps every pin of every graph type in separate file within user folder.
+ */
+public class FileReportingStorage implements ReportingStorage {
+
+    private final String dataFolder;
+
+    public FileReportingStorage(String dataFolder) {
+        this.dataFolder = dataFolder;
+    }
+
+    public static ByteBuffer read(String dataFolder, String username, int dashId, int deviceId,
+                                  PinType pinType, byte pin, int count, GraphType type) throws IOException {
+        return read(dataFolder, username, dashId, deviceId, pinType, pin, count, type, AggregationFunction.AVG);
+    }
+
+    public static ByteBuffer read(String dataFolder, String username, int dashId, int deviceId,
+                                  PinType pinType, byte pin, int count, GraphType type,
+                                  AggregationFunction function) throws IOException {
+        Path userDataFile = Paths.get(dataFolder, username,
+                generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type, function));
+        if (Files.notExists(userDataFile)) {
+            return null;
+        }
+
+        return FileUtils.read(userDataFile, count);
+    }
+
+    @Override
+    public void append(String username, int dashId, int deviceId, char pinType, byte pin,
+                       GraphType type, AggregationFunction function, double value, long ts) throws IOException {
+        Path userReportFolder = Paths.get(dataFolder, username);
+        if (Files.notExists(userReportFolder)) {
+            Files.createDirectories(userReportFolder);
+        }
+
+        Path filePath = Paths.get(userReportFolder.toString(), generateFilename(dashId, deviceId, pinType, pin, type, function));
+        FileUtils.write(filePath, value, ts);
+    }
+
+    @Override
+    public void flush() {
+        //every entry is written immediately
+    }
+
+    @Override
+    public ByteBuffer read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                           int count, GraphType type, AggregationFunction function) throws IOException {
+        return read(dataFolder, username, dashId, deviceId, pinType, pin, count, type, function);
+    }
+
+    @Override
+    public int size(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type) throws IOException {
+        Path userDataFile = Paths.get(dataFolder, username, generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type));
+        if (Files.notExists(userDataFile)) {
+            return -1;
+        }
+        return FileUtils.size(userDataFile);
+    }
+
+    @Override
+    public int read(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type,
+                    int fromEntry, ByteBuffer target) throws IOException {
+        Path userDataFile = Paths.get(dataFolder, username, generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type));
+        if (Files.notExists(userDataFile)) {
+            return 0;
+        }
+        return FileUtils.read(userDataFile, fromEntry, target);
+    }
+
+    @Override
+    public void delete(String username, int dashId, int deviceId, PinType pinType, byte pin) {
+        for (GraphType type : GraphType.values()) {
+            for (AggregationFunction function : AggregationFunction.values()) {
+                FileUtils.deleteQuietly(Paths.get(dataFolder, username,
+                        generateFilename(dashId, deviceId, pinType.pintTypeChar, pin, type, function)));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
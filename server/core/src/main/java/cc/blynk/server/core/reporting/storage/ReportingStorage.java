@@ -0,0 +1,74 @@
+package cc.blynk.server.core.reporting.storage;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage engine for aggregated reporting data. Every reporting entry
+ * is value (double 8 bytes) and timestamp (long 8 bytes).
+ *
+ * Writes are done in batches - all entries of one reporting worker run are
+ * appended and made visible on disk with single {@link #flush()} call.
+ */
+public interface ReportingStorage extends Closeable {
+
+    /**
+     * Appends entry to series of given aggregate. Every aggregate of the pin is stored as separate series.
+     */
+    void append(String username, int dashId, int deviceId, char pinType, byte pin,
+                GraphType type, AggregationFunction function, double value, long ts) throws IOException;
+
+    default void append(String username, int dashId, int deviceId, char pinType, byte pin,
+                        GraphType type, double value, long ts) throws IOException {
+        append(username, dashId, deviceId, pinType, pin, type, AggregationFunction.AVG, value, ts);
+    }
+
+    /**
+     * Aggregates that are stored for every bucket in addition to average. Every one of them
+     * is separate series, so by default only average is kept.
+     */
+    default AggregationFunction[] extraFunctions() {
+        return new AggregationFunction[0];
+    }
+
+    void flush() throws IOException;
+
+    /**
+     * Reads last count entries of the pin.
+     *
+     * @return buffer with position set to the end of data (so it should be flipped before reading)
+     *         or null in case no data for the pin.
+     */
+    ByteBuffer read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                    int count, GraphType type, AggregationFunction function) throws IOException;
+
+    default ByteBuffer read(String username, int dashId, int deviceId, PinType pinType, byte pin,
+                            int count, GraphType type) throws IOException {
+        return read(username, dashId, deviceId, pinType, pin, count, type, AggregationFunction.AVG);
+    }
+
+    /**
+     * @return number of entries stored for the pin or -1 in case no data for the pin.
+     */
+    int size(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type) throws IOException;
+
+    /**
+     * Reads entries of the pin starting from entry with given index into target buffer,
+     * so big series could be read in chunks without loading them into memory.
+     *
+     * @return number of entries put to target, 0 in case there are no more entries.
+     */
+    int read(String username, int dashId, int deviceId, PinType pinType, byte pin, GraphType type,
+             int fromEntry, ByteBuffer target) throws IOException;
+
+    /**
+     * Removes all series of the pin.
+     */
+    void delete(String username, int dashId, int deviceId, PinType pinType, byte pin);
+
+}
@@ -0,0 +1,189 @@
+package cc.blynk.server.core.reporting.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Memory-mapped segment files shared by all users. Every segment is split on
+ * fixed size blocks (one file system page). Every block holds entries of only one pin series,
+ * so any range of entries within block could be returned as a slice of mapped memory without copying.
+ *
+ * Blocks released by removed series are reused only after restart, so slices
+ * that were already returned to readers never see data of other series.
+ */
+class SegmentStore implements Closeable {
+
+    static final int ENTRY_SIZE = 16;
+    static final int BLOCK_SIZE = 4096;
+    static final int ENTRIES_PER_BLOCK = BLOCK_SIZE / ENTRY_SIZE;
+    static final int BLOCKS_PER_SEGMENT = 16 * 1024;
+    private static final long SEGMENT_SIZE = (long) BLOCK_SIZE * BLOCKS_PER_SEGMENT;
+    private static final String META_FILENAME = "blocks.meta";
+
+    private static final Logger log = LogManager.getLogger(SegmentStore.class);
+
+    private final Path segmentsFolder;
+    private final List<FileChannel> channels = new ArrayList<>();
+    //replaced on every new segment, so readers never need lock
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private final ArrayDeque<Integer> freeBlocks = new ArrayDeque<>();
+    private final List<Integer> releasedBlocks = new ArrayList<>();
+    private int nextBlockId;
+    private boolean metaChanged;
+
+    SegmentStore(Path segmentsFolder) throws IOException {
+        this.segmentsFolder = segmentsFolder;
+        Files.createDirectories(segmentsFolder);
+        readMeta();
+
+        int segmentsCount = (nextBlockId + BLOCKS_PER_SEGMENT - 1) / BLOCKS_PER_SEGMENT;
+        for (int i = 0; i < segmentsCount; i++) {
+            mapSegment(i);
+        }
+    }
+
+    private void readMeta() throws IOException {
+        Path metaPath = Paths.get(segmentsFolder.toString(), META_FILENAME);
+        if (Files.notExists(metaPath)) {
+            return;
+        }
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(metaPath)))) {
+            this.nextBlockId = dis.readInt();
+            int freeCount = dis.readInt();
+            for (int i = 0; i < freeCount; i++) {
+                freeBlocks.add(dis.readInt());
+            }
+        }
+        log.info("Reporting segments : {} allocated blocks, {} free blocks.", nextBlockId, freeBlocks.size());
+    }
+
+    private void writeMeta() throws IOException {
+        Path metaPath = Paths.get(segmentsFolder.toString(), META_FILENAME);
+        Path tmpPath = Paths.get(segmentsFolder.toString(), META_FILENAME + ".tmp");
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            dos.writeInt(nextBlockId);
+            dos.writeInt(freeBlocks.size() + releasedBlocks.size());
+            for (Integer blockId : freeBlocks) {
+                dos.writeInt(blockId);
+            }
+            for (Integer blockId : releasedBlocks) {
+                dos.writeInt(blockId);
+            }
+        }
+
+        Files.move(tmpPath, metaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void mapSegment(int segmentIndex) throws IOException {
+        Path segmentPath = Paths.get(segmentsFolder.toString(), "segment_" + segmentIndex + ".dat");
+        FileChannel channel = FileChannel.open(segmentPath, CREATE, READ, WRITE);
+        channels.add(channel);
+
+        MappedByteBuffer[] newSegments = Arrays.copyOf(segments, segmentIndex + 1);
+        newSegments[segmentIndex] = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        this.segments = newSegments;
+    }
+
+    synchronized int allocateBlock() throws IOException {
+        metaChanged = true;
+
+        Integer freeBlock = freeBlocks.poll();
+        if (freeBlock != null) {
+            return freeBlock;
+        }
+
+        int blockId = nextBlockId;
+        int segmentIndex = blockId / BLOCKS_PER_SEGMENT;
+        if (segmentIndex == segments.length) {
+            mapSegment(segmentIndex);
+        }
+        nextBlockId++;
+        return blockId;
+    }
+
+    /**
+     * Puts blocks on free list with next meta flush. Should be called only after
+     * index that pointed to those blocks is stored.
+     */
+    synchronized void release(int[] blocks, int blocksCount) {
+        for (int i = 0; i < blocksCount; i++) {
+            releasedBlocks.add(blocks[i]);
+        }
+        metaChanged = true;
+    }
+
+    void put(int blockId, int entryIndex, double value, long ts) {
+        ByteBuffer segment = segments[blockId / BLOCKS_PER_SEGMENT];
+        int offset = blockOffset(blockId) + entryIndex * ENTRY_SIZE;
+        segment.putDouble(offset, value);
+        segment.putLong(offset + 8, ts);
+    }
+
+    /**
+     * Returns view of entries within block. Returned buffer shares memory with segment.
+     */
+    ByteBuffer slice(int blockId, int fromEntry, int entriesCount) {
+        ByteBuffer segment = segments[blockId / BLOCKS_PER_SEGMENT].duplicate();
+        int offset = blockOffset(blockId) + fromEntry * ENTRY_SIZE;
+        segment.limit(offset + entriesCount * ENTRY_SIZE);
+        segment.position(offset);
+        return segment.slice();
+    }
+
+    private static int blockOffset(int blockId) {
+        return (blockId % BLOCKS_PER_SEGMENT) * BLOCK_SIZE;
+    }
+
+    /**
+     * Makes all allocated blocks durable. Should be done before indexes
+     * that point to those blocks are stored.
+     */
+    synchronized void flush(boolean fsync) throws IOException {
+        if (fsync) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+        if (metaChanged) {
+            writeMeta();
+            metaChanged = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing reporting segment. Reason : {}", e.getMessage());
+            }
+        }
+    }
+
+}
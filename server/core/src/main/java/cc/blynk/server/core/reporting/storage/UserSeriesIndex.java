@@ -0,0 +1,151 @@
+package cc.blynk.server.core.reporting.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static cc.blynk.server.core.reporting.storage.SegmentStore.ENTRIES_PER_BLOCK;
+
+/**
+ * Per user index of pin series stored within segments. Maps series name
+ * (old reporting file name) to ordered list of blocks that hold series entries.
+ *
+ * Not thread safe. All access should be done under lock on index object.
+ */
+class UserSeriesIndex {
+
+    static final String INDEX_FILENAME = "series.idx";
+    private static final int VERSION = 1;
+
+    private static final Logger log = LogManager.getLogger(UserSeriesIndex.class);
+
+    private final Path userFolder;
+    private final Map<String, Series> series;
+    boolean changed;
+
+    private UserSeriesIndex(Path userFolder, Map<String, Series> series) {
+        this.userFolder = userFolder;
+        this.series = series;
+    }
+
+    static UserSeriesIndex load(Path userFolder) {
+        Path indexPath = Paths.get(userFolder.toString(), INDEX_FILENAME);
+        Map<String, Series> series = new HashMap<>();
+
+        if (Files.exists(indexPath)) {
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                int version = dis.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported index version " + version);
+                }
+                int seriesCount = dis.readInt();
+                for (int i = 0; i < seriesCount; i++) {
+                    String name = dis.readUTF();
+                    int lastBlockEntries = dis.readInt();
+                    int blocksCount = dis.readInt();
+                    int[] blocks = new int[blocksCount];
+                    for (int j = 0; j < blocksCount; j++) {
+                        blocks[j] = dis.readInt();
+                    }
+                    series.put(name, new Series(blocks, blocksCount, lastBlockEntries));
+                }
+            } catch (IOException e) {
+                log.error("Error reading reporting index {}. Reason : {}", indexPath, e.getMessage());
+            }
+        }
+
+        return new UserSeriesIndex(userFolder, series);
+    }
+
+    void save() throws IOException {
+        if (Files.notExists(userFolder)) {
+            Files.createDirectories(userFolder);
+        }
+
+        Path indexPath = Paths.get(userFolder.toString(), INDEX_FILENAME);
+        Path tmpPath = Paths.get(userFolder.toString(), INDEX_FILENAME + ".tmp");
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            dos.writeInt(VERSION);
+            dos.writeInt(series.size());
+            for (Map.Entry<String, Series> entry : series.entrySet()) {
+                Series value = entry.getValue();
+                dos.writeUTF(entry.getKey());
+                dos.writeInt(value.lastBlockEntries);
+                dos.writeInt(value.blocksCount);
+                for (int i = 0; i < value.blocksCount; i++) {
+                    dos.writeInt(value.blocks[i]);
+                }
+            }
+        }
+
+        Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    Series get(String name) {
+        return series.get(name);
+    }
+
+    Series getOrCreate(String name) {
+        Series result = series.get(name);
+        if (result == null) {
+            result = new Series(new int[1], 0, 0);
+            series.put(name, result);
+        }
+        return result;
+    }
+
+    Series remove(String name) {
+        return series.remove(name);
+    }
+
+    static final class Series {
+
+        int[] blocks;
+        int blocksCount;
+        int lastBlockEntries;
+
+        private Series(int[] blocks, int blocksCount, int lastBlockEntries) {
+            this.blocks = blocks;
+            this.blocksCount = blocksCount;
+            this.lastBlockEntries = lastBlockEntries;
+        }
+
+        boolean isLastBlockFull() {
+            return blocksCount == 0 || lastBlockEntries == ENTRIES_PER_BLOCK;
+        }
+
+        void addBlock(int blockId) {
+            if (blocksCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.max(4, blocksCount * 2));
+            }
+            blocks[blocksCount++] = blockId;
+            lastBlockEntries = 0;
+        }
+
+        int lastBlock() {
+            return blocks[blocksCount - 1];
+        }
+
+        int size() {
+            if (blocksCount == 0) {
+                return 0;
+            }
+            return (blocksCount - 1) * ENTRIES_PER_BLOCK + lastBlockEntries;
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package cc.blynk.server.core.stats;
 
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
@@ -20,6 +21,43 @@ public class GlobalStats {
     //2 last load adders are used as separate counters
     public final LongAdder[] specificCounters;
 
+    //reporting DB writer metrics
+    public final LongAdder reportingDBRowsWritten = new LongAdder();
+    public final LongAdder reportingDBStatements = new LongAdder();
+    public final LongAdder reportingDBWriteNanos = new LongAdder();
+    public final LongAdder reportingDBErrors = new LongAdder();
+    public final LongAdder reportingDBRetries = new LongAdder();
+    public final LongAdder reportingDBRowsDropped = new LongAdder();
+    //rows skipped as already stored
+    public final LongAdder reportingDBRowsRejected = new LongAdder();
+    //rows dropped due to not null, foreign key or check violations
+    public final LongAdder reportingDBRowsInvalid = new LongAdder();
+
+    //profile saver metrics. lag is time between first profile change and its save
+    public final LongAdder profilesSaved = new LongAdder();
+    public final LongAdder profileBytesWritten = new LongAdder();
+    public final LongAdder profileSaveLagMillis = new LongAdder();
+    public final LongAccumulator profileMaxSaveLagMillis = new LongAccumulator(Long::max, 0);
+
+    //app write coalescing metrics. collapsed - intermediate pin values skipped for not writable app
+    public final LongAdder appMessagesDelivered = new LongAdder();
+    public final LongAdder appFlushes = new LongAdder();
+    public final LongAdder appMessagesCollapsed = new LongAdder();
+
+    //hardware read timeout metrics. tracked - currently tracked channels, idle closed - closed due to no reads
+    public final LongAdder heartbeatTracked = new LongAdder();
+    public final LongAdder heartbeatIdleClosed = new LongAdder();
+
+    //login admission metrics. delayed - logins put to pending queue
+    public final LongAdder loginsAccepted = new LongAdder();
+    public final LongAdder loginsDelayed = new LongAdder();
+    public final LongAdder loginsRejected = new LongAdder();
+
+    //session event loop metrics. re registered - login channels moved to loop of user session,
+    //moved - sessions moved to another loop by rebalancer
+    public final LongAdder channelsReRegistered = new LongAdder();
+    public final LongAdder sessionsMoved = new LongAdder();
+
     public GlobalStats() {
         this.totalMessages = new Meter();
 
@@ -0,0 +1,88 @@
+package cc.blynk.server.core.stats.metrics;
+
+/**
+ * Restricts request rate with token bucket. Bucket holds 1 second of requests, so client
+ * may send burst of limit messages and after that limit messages per second.
+ * Besides, meter counts allowed requests per second, that count could be read from
+ * any thread via {@link #getRate(long)}.
+ *
+ * Channel meter is updated within channel event loop only. User meter is shared by channels
+ * that may be served by different event loops, so it is updated via {@link #tryAcquireShared(int, long)}.
+ * All time calculations are constant time.
+ */
+public final class QuotaMeter {
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    private double tokens;
+    private long lastRefill;
+    private boolean initialized;
+
+    private long window;
+    private int windowCount;
+    //window number in high 32 bits and number of requests within that window in low 32 bits
+    private volatile long snapshot;
+
+    /**
+     * @param limit - max requests per second.
+     * @return false in case quota is exceeded.
+     */
+    public boolean tryAcquire(int limit, long now) {
+        if (!hasToken(limit, now)) {
+            return false;
+        }
+        acquire(now);
+        return true;
+    }
+
+    /**
+     * Same as {@link #tryAcquire(int, long)}, but may be called from different threads.
+     */
+    public synchronized boolean tryAcquireShared(int limit, long now) {
+        return tryAcquire(limit, now);
+    }
+
+    /**
+     * Checks quota without taking token, so request rejected by other meter doesn't consume it.
+     */
+    public boolean hasToken(int limit, long now) {
+        if (!initialized) {
+            tokens = limit;
+            lastRefill = now;
+            initialized = true;
+        } else if (now > lastRefill) {
+            tokens = Math.min(limit, tokens + (now - lastRefill) * limit / (double) WINDOW_MILLIS);
+            lastRefill = now;
+        }
+        return tokens >= 1;
+    }
+
+    /**
+     * Takes token checked with {@link #hasToken(int, long)} before.
+     */
+    public void acquire(long now) {
+        tokens--;
+        count(now);
+    }
+
+    private void count(long now) {
+        final long currentWindow = now / WINDOW_MILLIS;
+        if (currentWindow != window) {
+            //publish only when window is closed
+            snapshot = window << 32 | windowCount;
+            window = currentWindow;
+            windowCount = 0;
+        }
+        windowCount++;
+    }
+
+    /**
+     * @return number of requests within last full second, 0 in case there were no requests.
+     */
+    public int getRate(long now) {
+        final long snapshot = this.snapshot;
+        final long snapshotWindow = snapshot >>> 32;
+        return now / WINDOW_MILLIS - snapshotWindow > 2 ? 0 : (int) snapshot;
+    }
+
+}
@@ -0,0 +1,27 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Messages written to apps with write coalescing since last stat.
+ */
+public class AppWriteStat {
+
+    public final long delivered;
+    public final long flushes;
+    public final long collapsed;
+    public final long avgMessagesPerFlush;
+
+    public AppWriteStat(GlobalStats stats, boolean reset) {
+        this.delivered = sum(stats.appMessagesDelivered, reset);
+        this.flushes = sum(stats.appFlushes, reset);
+        this.collapsed = sum(stats.appMessagesCollapsed, reset);
+        this.avgMessagesPerFlush = flushes == 0 ? 0 : delivered / flushes;
+    }
+
+    private static long sum(LongAdder longAdder, boolean reset) {
+        return reset ? longAdder.sumThenReset() : longAdder.sum();
+    }
+}
@@ -0,0 +1,17 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+/**
+ * Channels tracked for read timeout and channels closed due to read timeout since last stat.
+ */
+public class HeartbeatStat {
+
+    public final long tracked;
+    public final long idleClosed;
+
+    public HeartbeatStat(GlobalStats stats, boolean reset) {
+        this.tracked = stats.heartbeatTracked.sum();
+        this.idleClosed = reset ? stats.heartbeatIdleClosed.sumThenReset() : stats.heartbeatIdleClosed.sum();
+    }
+}
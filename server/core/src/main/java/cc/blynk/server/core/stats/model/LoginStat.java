@@ -0,0 +1,25 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * App and hardware logins passed through login admission since last stat.
+ */
+public class LoginStat {
+
+    public final long accepted;
+    public final long delayed;
+    public final long rejected;
+
+    public LoginStat(GlobalStats stats, boolean reset) {
+        this.accepted = sum(stats.loginsAccepted, reset);
+        this.delayed = sum(stats.loginsDelayed, reset);
+        this.rejected = sum(stats.loginsRejected, reset);
+    }
+
+    private static long sum(LongAdder longAdder, boolean reset) {
+        return reset ? longAdder.sumThenReset() : longAdder.sum();
+    }
+}
@@ -0,0 +1,33 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profiles stored to disk since last stat.
+ */
+public class ProfileSaveStat {
+
+    public final long saved;
+    public final long bytesWritten;
+    public final long avgLagMillis;
+    public final long maxLagMillis;
+
+    public ProfileSaveStat(GlobalStats stats, boolean reset) {
+        this.saved = sum(stats.profilesSaved, reset);
+        this.bytesWritten = sum(stats.profileBytesWritten, reset);
+        long lag = sum(stats.profileSaveLagMillis, reset);
+        this.avgLagMillis = saved == 0 ? 0 : lag / saved;
+        this.maxLagMillis = max(stats.profileMaxSaveLagMillis, reset);
+    }
+
+    private static long sum(LongAdder longAdder, boolean reset) {
+        return reset ? longAdder.sumThenReset() : longAdder.sum();
+    }
+
+    private static long max(LongAccumulator longAccumulator, boolean reset) {
+        return reset ? longAccumulator.getThenReset() : longAccumulator.get();
+    }
+}
@@ -0,0 +1,36 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency of reporting DB writer since last stat.
+ */
+public class ReportingDBStat {
+
+    public final long rowsWritten;
+    public final long statements;
+    public final long avgStatementMillis;
+    public final long errors;
+    public final long retries;
+    public final long rowsDropped;
+    public final long rowsRejected;
+    public final long rowsInvalid;
+
+    public ReportingDBStat(GlobalStats stats, boolean reset) {
+        this.rowsWritten = sum(stats.reportingDBRowsWritten, reset);
+        this.statements = sum(stats.reportingDBStatements, reset);
+        long writeNanos = sum(stats.reportingDBWriteNanos, reset);
+        this.avgStatementMillis = statements == 0 ? 0 : writeNanos / statements / 1_000_000;
+        this.errors = sum(stats.reportingDBErrors, reset);
+        this.retries = sum(stats.reportingDBRetries, reset);
+        this.rowsDropped = sum(stats.reportingDBRowsDropped, reset);
+        this.rowsRejected = sum(stats.reportingDBRowsRejected, reset);
+        this.rowsInvalid = sum(stats.reportingDBRowsInvalid, reset);
+    }
+
+    private static long sum(LongAdder longAdder, boolean reset) {
+        return reset ? longAdder.sumThenReset() : longAdder.sum();
+    }
+}
@@ -0,0 +1,18 @@
+package cc.blynk.server.core.stats.model;
+
+import cc.blynk.server.core.stats.GlobalStats;
+
+/**
+ * Login channels re-registered to event loop of user session and sessions
+ * moved to another event loop by rebalancer since last stat.
+ */
+public class SessionLoopStat {
+
+    public final long channelsReRegistered;
+    public final long sessionsMoved;
+
+    public SessionLoopStat(GlobalStats stats, boolean reset) {
+        this.channelsReRegistered = reset ? stats.channelsReRegistered.sumThenReset() : stats.channelsReRegistered.sum();
+        this.sessionsMoved = reset ? stats.sessionsMoved.sumThenReset() : stats.sessionsMoved.sum();
+    }
+}
@@ -26,6 +26,12 @@ public class Stat {
 
     public final CommandStat commands = new CommandStat();
     public final HttpStat http = new HttpStat();
+    public final ReportingDBStat reportingDB;
+    public final ProfileSaveStat profileSave;
+    public final AppWriteStat appWrites;
+    public final HeartbeatStat heartbeat;
+    public final LoginStat logins;
+    public final SessionLoopStat sessionLoops;
 
     public final int oneMinRate;
     public final int registrations;
@@ -53,6 +59,14 @@ public class Stat {
         this.totalOnlineApps = totalOnlineApps;
         this.onlineHards = onlineHards;
         this.totalOnlineHards = totalOnlineHards;
+        //no collected metrics, so all of them are zero
+        GlobalStats emptyStats = new GlobalStats();
+        this.reportingDB = new ReportingDBStat(emptyStats, false);
+        this.profileSave = new ProfileSaveStat(emptyStats, false);
+        this.appWrites = new AppWriteStat(emptyStats, false);
+        this.heartbeat = new HeartbeatStat(emptyStats, false);
+        this.logins = new LoginStat(emptyStats, false);
+        this.sessionLoops = new SessionLoopStat(emptyStats, false);
         this.ts = ts;
     }
 
@@ -69,6 +83,12 @@ public class Stat {
 
         this.commands.appTotal = (int) globalStats.getTotalAppCounter(reset);
         this.commands.hardTotal = (int) globalStats.getTotalHardCounter(reset);
+        this.reportingDB = new ReportingDBStat(globalStats, reset);
+        this.profileSave = new ProfileSaveStat(globalStats, reset);
+        this.appWrites = new AppWriteStat(globalStats, reset);
+        this.heartbeat = new HeartbeatStat(globalStats, reset);
+        this.logins = new LoginStat(globalStats, reset);
+        this.sessionLoops = new SessionLoopStat(globalStats, reset);
 
         this.oneMinRate = (int) globalStats.totalMessages.getOneMinuteRate();
         int connectedSessions = 0;
@@ -132,7 +152,7 @@ public class Stat {
     }
 
     private boolean dashUpdated(User user, long now, long period) {
-        for (DashBoard dash : user.profile.dashBoards) {
+        for (DashBoard dash : user.getProfile().dashBoards) {
             if (now - dash.updatedAt < period) {
                 return true;
             }
@@ -5,10 +5,15 @@ import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.reporting.average.AggregationKey;
 import cc.blynk.server.core.reporting.average.AggregationValue;
+import cc.blynk.server.core.reporting.raw.RawDataProcessor;
+import cc.blynk.server.core.reporting.raw.RawDataSpill;
+import cc.blynk.server.core.reporting.raw.RawEntry;
+import cc.blynk.server.core.stats.GlobalStats;
 import cc.blynk.server.core.stats.model.Stat;
 import cc.blynk.server.db.dao.PurchaseDBDao;
 import cc.blynk.server.db.dao.RedeemDBDao;
 import cc.blynk.server.db.dao.ReportingDBDao;
+import cc.blynk.server.db.dao.ReportingDBWriter;
 import cc.blynk.server.db.dao.UserDBDao;
 import cc.blynk.server.db.model.Purchase;
 import cc.blynk.server.db.model.Redeem;
@@ -19,11 +24,18 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The Blynk Project.
@@ -38,16 +50,26 @@ public class DBManager implements Closeable {
 
     private final BlockingIOProcessor blockingIOProcessor;
     private final boolean cleanOldReporting;
+    private final AtomicBoolean rawInsertInProgress = new AtomicBoolean();
+    private ReportingDBWriter reportingDBWriter;
     protected UserDBDao userDBDao;
     protected ReportingDBDao reportingDBDao;
     protected RedeemDBDao redeemDBDao;
     protected PurchaseDBDao purchaseDBDao;
 
     public DBManager(BlockingIOProcessor blockingIOProcessor) {
-        this(DB_PROPERTIES_FILENAME, blockingIOProcessor);
+        this(DB_PROPERTIES_FILENAME, blockingIOProcessor, new GlobalStats());
+    }
+
+    public DBManager(BlockingIOProcessor blockingIOProcessor, GlobalStats stats) {
+        this(DB_PROPERTIES_FILENAME, blockingIOProcessor, stats);
     }
 
     public DBManager(String propsFilename, BlockingIOProcessor blockingIOProcessor) {
+        this(propsFilename, blockingIOProcessor, new GlobalStats());
+    }
+
+    public DBManager(String propsFilename, BlockingIOProcessor blockingIOProcessor, GlobalStats stats) {
         this.blockingIOProcessor = blockingIOProcessor;
 
         ServerProperties serverProperties;
@@ -63,7 +85,8 @@ public class DBManager implements Closeable {
             return;
         }
 
-        HikariConfig config = initConfig(serverProperties);
+        int writers = serverProperties.getIntProperty("reporting.writers", 2);
+        HikariConfig config = initConfig(serverProperties, writers);
 
         log.info("DB url : {}", config.getJdbcUrl());
         log.info("DB user : {}", config.getUsername());
@@ -80,7 +103,11 @@ public class DBManager implements Closeable {
         }
 
         this.ds = hikariDataSource;
-        this.reportingDBDao = new ReportingDBDao(hikariDataSource);
+        this.reportingDBWriter = new ReportingDBWriter(hikariDataSource, stats, writers,
+                serverProperties.getIntProperty("reporting.batch.size", 1000),
+                serverProperties.getIntProperty("reporting.write.retries", 3),
+                serverProperties.getIntProperty("reporting.max.pending.rows", 100_000));
+        this.reportingDBDao = new ReportingDBDao(hikariDataSource, reportingDBWriter);
         this.userDBDao = new UserDBDao(hikariDataSource);
         this.redeemDBDao = new RedeemDBDao(hikariDataSource);
         this.purchaseDBDao = new PurchaseDBDao(hikariDataSource);
@@ -89,7 +116,7 @@ public class DBManager implements Closeable {
         log.info("Connected to database successfully.");
     }
 
-    private HikariConfig initConfig(ServerProperties serverProperties) {
+    private HikariConfig initConfig(ServerProperties serverProperties, int reportingWriters) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(serverProperties.getProperty("jdbc.url"));
         config.setUsername(serverProperties.getProperty("user"));
@@ -97,7 +124,8 @@ public class DBManager implements Closeable {
 
         config.setAutoCommit(false);
         config.setConnectionTimeout(serverProperties.getLongProperty("connection.timeout.millis"));
-        config.setMaximumPoolSize(3);
+        //reporting writers hold own connections while writing
+        config.setMaximumPoolSize(3 + reportingWriters);
         config.setMaxLifetime(0);
         config.setConnectionTestQuery("SELECT 1");
         return config;
@@ -115,15 +143,87 @@ public class DBManager implements Closeable {
         }
     }
 
+    /**
+     * Rows are written by reporting writer threads, so neither caller nor blocking IO pool waits for DB.
+     */
     public void insertReporting(Map<AggregationKey, AggregationValue> map, GraphType graphType) {
         if (isDBEnabled() && map.size() > 0) {
-            blockingIOProcessor.execute(() -> reportingDBDao.insert(map, graphType));
+            reportingDBDao.insert(map, graphType);
+        }
+    }
+
+    /**
+     * Drains raw data buffer to DB. Only one raw insert is running at a time.
+     * In case previous insert is still running, DB is considered slow and buffered data is spilled to disk.
+     * Every run also drains one spilled segment.
+     */
+    public void insertReportingRaw(RawDataProcessor rawDataProcessor) {
+        if (!isDBEnabled()) {
+            //nowhere to store, so just keeping memory bounded
+            rawDataProcessor.drain();
+            return;
+        }
+
+        List<RawEntry> rawData = rawDataProcessor.drain();
+        if (!rawInsertInProgress.compareAndSet(false, true)) {
+            log.warn("Previous raw data insert is still running. Spilling {} records to disk.", rawData.size());
+            rawDataProcessor.spill(rawData);
+            return;
+        }
+
+        Path segment = rawDataProcessor.oldestSpilledSegment();
+        if (rawData.size() == 0 && segment == null) {
+            rawInsertInProgress.set(false);
+            return;
+        }
+
+        try {
+            blockingIOProcessor.execute(() -> drainRaw(rawDataProcessor, rawData, segment));
+        } catch (RejectedExecutionException e) {
+            log.warn("Blocking IO queue is full. Spilling {} raw records to disk.", rawData.size());
+            rawDataProcessor.spill(rawData);
+            rawInsertInProgress.set(false);
+        }
+    }
+
+    /**
+     * Doesn't wait for writes, so blocking IO thread is released right after segment is read.
+     */
+    private void drainRaw(RawDataProcessor rawDataProcessor, List<RawEntry> rawData, Path segment) {
+        CompletableFuture<Void> result = reportingDBDao.insertRawData(rawData)
+                .thenAccept(failed -> spillFailed(rawDataProcessor, failed));
+        if (segment != null) {
+            result = result.thenCompose(ignored -> drainSegment(rawDataProcessor, segment));
         }
+        result.whenComplete((ignored, e) -> {
+            if (e != null) {
+                log.error("Error draining raw data spill segment {}.", segment, e);
+            }
+            rawInsertInProgress.set(false);
+        });
+    }
+
+    private CompletableFuture<Void> drainSegment(RawDataProcessor rawDataProcessor, Path segment) {
+        List<RawEntry> spilled;
+        try {
+            spilled = RawDataSpill.read(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return reportingDBDao.insertRawData(spilled).thenAccept(failed -> {
+            spillFailed(rawDataProcessor, failed);
+            try {
+                Files.delete(segment);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
-    public void insertReportingRaw(Map<AggregationKey, Object> rawData) {
-        if (isDBEnabled() && rawData.size() > 0) {
-            blockingIOProcessor.execute(() -> reportingDBDao.insertRawData(rawData));
+    private static void spillFailed(RawDataProcessor rawDataProcessor, List<RawEntry> failed) {
+        if (failed.size() > 0) {
+            log.warn("Failed to store {} raw records. Spilling them to disk.", failed.size());
+            rawDataProcessor.spill(failed);
         }
     }
 
@@ -176,6 +276,7 @@ public class DBManager implements Closeable {
     public void close() {
         if (isDBEnabled()) {
             System.out.println("Closing DB...");
+            reportingDBWriter.close();
             ds.close();
         }
     }
@@ -5,6 +5,7 @@ import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.reporting.average.AggregationKey;
 import cc.blynk.server.core.reporting.average.AggregationValue;
 import cc.blynk.server.core.reporting.average.AverageAggregatorProcessor;
+import cc.blynk.server.core.reporting.raw.RawEntry;
 import cc.blynk.server.core.stats.model.CommandStat;
 import cc.blynk.server.core.stats.model.HttpStat;
 import cc.blynk.server.core.stats.model.Stat;
@@ -18,8 +19,10 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Blynk Project.
@@ -28,11 +31,19 @@ import java.util.Map;
  */
 public class ReportingDBDao {
 
-    public static final String insertMinute = "INSERT INTO reporting_average_minute (username, project_id, device_id, pin, pinType, ts, value) VALUES (?, ?, ?, ?, ?, ?, ?)";
-    public static final String insertHourly = "INSERT INTO reporting_average_hourly (username, project_id, device_id, pin, pinType, ts, value) VALUES (?, ?, ?, ?, ?, ?, ?)";
-    public static final String insertDaily = "INSERT INTO reporting_average_daily (username, project_id, device_id, pin, pinType, ts, value) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    //prefixes for multi-row inserts
+    private static final int AVERAGE_COLUMNS = 11;
+    private static final String insertMinutePrefix = "INSERT INTO reporting_average_minute (username, project_id, device_id, pin, pinType, ts, value, min_value, max_value, last_value, count)";
+    private static final String insertHourlyPrefix = "INSERT INTO reporting_average_hourly (username, project_id, device_id, pin, pinType, ts, value, min_value, max_value, last_value, count)";
+    private static final String insertDailyPrefix = "INSERT INTO reporting_average_daily (username, project_id, device_id, pin, pinType, ts, value, min_value, max_value, last_value, count)";
+    private static final int RAW_DATA_COLUMNS = 9;
+    private static final String insertRawDataPrefix = "INSERT INTO reporting_raw_data (username, project_id, device_id, pin, pinType, ts, seq, stringValue, doubleValue)";
 
-    public static final String insertRawData = "INSERT INTO reporting_raw_data (username, project_id, device_id, pin, pinType, ts, stringValue, doubleValue) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String insertMinute = insertMinutePrefix + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String insertHourly = insertHourlyPrefix + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String insertDaily = insertDailyPrefix + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public static final String insertRawData = insertRawDataPrefix + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     public static final String selectMinute = "SELECT ts, value FROM reporting_average_minute WHERE ts > ? ORDER BY ts DESC limit ?";
     public static final String selectHourly = "SELECT ts, value FROM reporting_average_hourly WHERE ts > ? ORDER BY ts DESC limit ?";
@@ -48,9 +59,11 @@ public class ReportingDBDao {
 
     private static final Logger log = LogManager.getLogger(ReportingDBDao.class);
     private final HikariDataSource ds;
+    private final ReportingDBWriter writer;
 
-    public ReportingDBDao(HikariDataSource ds) {
+    public ReportingDBDao(HikariDataSource ds, ReportingDBWriter writer) {
         this.ds = ds;
+        this.writer = writer;
     }
 
     public static void prepareReportingSelect(PreparedStatement ps, long ts, int limit) throws SQLException {
@@ -58,12 +71,40 @@ public class ReportingDBDao {
         ps.setInt(2, limit);
     }
 
-    private static void prepareReportingInsert(PreparedStatement ps,
+    private static void prepareReportingInsert(PreparedStatement ps, int index,
                                                Map.Entry<AggregationKey, AggregationValue> entry,
                                                GraphType type) throws SQLException {
         final AggregationKey key = entry.getKey();
         final AggregationValue value = entry.getValue();
-        prepareReportingInsert(ps, key.username, key.dashId, key.deviceId, key.pin, key.pinType, key.getTs(type), value.calcAverage());
+        ps.setString(index, key.username);
+        ps.setInt(index + 1, key.dashId);
+        ps.setInt(index + 2, key.deviceId);
+        ps.setByte(index + 3, key.pin);
+        ps.setString(index + 4, PinType.getPinTypeString(key.pinType));
+        ps.setLong(index + 5, key.getTs(type));
+        ps.setDouble(index + 6, value.calcAverage());
+        ps.setDouble(index + 7, value.getMin());
+        ps.setDouble(index + 8, value.getMax());
+        ps.setDouble(index + 9, value.getLast());
+        ps.setLong(index + 10, value.getCount());
+    }
+
+    private static void prepareRawDataInsert(PreparedStatement ps, int index, RawEntry entry) throws SQLException {
+        ps.setString(index, entry.username);
+        ps.setInt(index + 1, entry.dashId);
+        ps.setInt(index + 2, entry.deviceId);
+        ps.setByte(index + 3, entry.pin);
+        ps.setString(index + 4, PinType.getPinTypeString(entry.pinType));
+        ps.setLong(index + 5, entry.ts);
+        ps.setInt(index + 6, entry.seq);
+
+        if (entry.isString()) {
+            ps.setString(index + 7, entry.stringValue);
+            ps.setNull(index + 8, Types.DOUBLE);
+        } else {
+            ps.setNull(index + 7, Types.VARCHAR);
+            ps.setDouble(index + 8, entry.doubleValue);
+        }
     }
 
     public static void prepareReportingInsert(PreparedStatement ps,
@@ -81,61 +122,39 @@ public class ReportingDBDao {
         ps.setString(5, PinType.getPinTypeString(pinType));
         ps.setLong(6, ts);
         ps.setDouble(7, value);
+        ps.setDouble(8, value);
+        ps.setDouble(9, value);
+        ps.setDouble(10, value);
+        ps.setLong(11, 1);
     }
 
     private static String getTableByGraphType(GraphType graphType) {
         switch (graphType) {
             case MINUTE :
-                return insertMinute;
+                return insertMinutePrefix;
             case HOURLY :
-                return insertHourly;
+                return insertHourlyPrefix;
             default :
-                return insertDaily;
+                return insertDailyPrefix;
         }
     }
 
-    public void insertRawData(Map<AggregationKey, Object> rawData) {
+    /**
+     * Every statement is executed in own transaction, so failed rows could be safely retried.
+     *
+     * @return future completed within writer thread with rows that were not stored.
+     */
+    public CompletableFuture<List<RawEntry>> insertRawData(List<RawEntry> rawData) {
         long start = System.currentTimeMillis();
 
         log.info("Storing raw reporting...");
-        int counter = 0;
-
-        try (Connection connection = ds.getConnection();
-             PreparedStatement ps = connection.prepareStatement(insertRawData)) {
-
-            for (Iterator<Map.Entry<AggregationKey, Object>> iter = rawData.entrySet().iterator(); iter.hasNext(); ) {
-                Map.Entry<AggregationKey, Object> entry = iter.next();
-
-                final AggregationKey key = entry.getKey();
-                final Object value = entry.getValue();
-
-                ps.setString(1, key.username);
-                ps.setInt(2, key.dashId);
-                ps.setInt(3, key.deviceId);
-                ps.setByte(4, key.pin);
-                ps.setString(5, PinType.getPinTypeString(key.pinType));
-                ps.setLong(6, key.ts);
-
-                if (value instanceof String) {
-                    ps.setString(7, (String) value);
-                    ps.setNull(8, Types.DOUBLE);
-                } else {
-                    ps.setNull(7, Types.VARCHAR);
-                    ps.setDouble(8, (Double) value);
-                }
-
-                ps.addBatch();
-                counter++;
-                iter.remove();
-            }
-
-            ps.executeBatch();
-            connection.commit();
-        } catch (Exception e) {
-            log.error("Error inserting raw reporting data in DB.", e);
-        }
 
-        log.info("Storing raw reporting finished. Time {}. Records saved {}", System.currentTimeMillis() - start, counter);
+        return writer.writeAsync(insertRawDataPrefix, RAW_DATA_COLUMNS, rawData,
+                ReportingDBDao::prepareRawDataInsert).thenApply(failed -> {
+                    log.info("Storing raw reporting finished. Time {}. Records saved {}. Failed {}",
+                            System.currentTimeMillis() - start, rawData.size() - failed.size(), failed.size());
+                    return failed;
+                });
     }
 
     public void insertStat(String region, Stat stat) {
@@ -237,28 +256,18 @@ public class ReportingDBDao {
         }
     }
 
-    public void insert(Map<AggregationKey, AggregationValue> map, GraphType graphType) {
+    /**
+     * @return future completed within reporting writer thread when all rows are stored or kept for retry.
+     */
+    public CompletableFuture<Void> insert(Map<AggregationKey, AggregationValue> map, GraphType graphType) {
         long start = System.currentTimeMillis();
 
         log.info("Storing {} reporting...", graphType.name());
 
-        String insertSQL = getTableByGraphType(graphType);
-
-        try (Connection connection = ds.getConnection();
-             PreparedStatement ps = connection.prepareStatement(insertSQL)) {
-
-            for (Map.Entry<AggregationKey, AggregationValue> entry : map.entrySet()) {
-                prepareReportingInsert(ps, entry, graphType);
-                ps.addBatch();
-            }
-
-            ps.executeBatch();
-            connection.commit();
-        } catch (Exception e) {
-            log.error("Error inserting reporting data in DB.", e);
-        }
-
-        log.info("Storing {} reporting finished. Time {}. Records saved {}", graphType.name(), System.currentTimeMillis() - start, map.size());
+        return writer.writeWithRetryBuffer(getTableByGraphType(graphType), AVERAGE_COLUMNS, new ArrayList<>(map.entrySet()),
+                (ps, index, entry) -> prepareReportingInsert(ps, index, entry, graphType))
+                .thenRun(() -> log.info("Storing {} reporting finished. Time {}. Records saved {}",
+                        graphType.name(), System.currentTimeMillis() - start, map.size()));
     }
 
     public void cleanOldReportingRecords(Instant now) {
@@ -0,0 +1,288 @@
+package cc.blynk.server.db.dao;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated sink for reporting tables. Rows are written with multi-row
+ * INSERT ... VALUES (...),(...) statements. Every statement carries up to "batchSize" rows
+ * and is executed in own transaction on one of the writer threads, so big flushes
+ * are written in parallel and callers are not blocked. Failed statements are retried few times, rows that still
+ * failed are returned to caller or kept in bounded retry buffer till next write.
+ * Rows rejected by unique constraint (e.g. already stored after aggregation log replay)
+ * are skipped, so write of same rows is idempotent. Rows rejected by other constraints
+ * are logged with error and dropped.
+ */
+public class ReportingDBWriter implements Closeable {
+
+    private static final Logger log = LogManager.getLogger(ReportingDBWriter.class);
+
+    //postgres limit for bind parameters within one statement
+    private static final int MAX_PARAMETERS = Short.MAX_VALUE;
+    //SQL state class of unique, foreign key, not null and check violations
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final int RETRY_DELAY_MILLIS = 100;
+
+    private final DataSource ds;
+    private final ExecutorService writers;
+    private final GlobalStats stats;
+    private final int batchSize;
+    private final int maxRetries;
+    private final int maxPendingRows;
+
+    private final Map<String, String> statementsCache = new ConcurrentHashMap<>();
+    private final Map<String, List<Object>> pendingRows = new ConcurrentHashMap<>();
+
+    public ReportingDBWriter(DataSource ds, GlobalStats stats, int writersCount,
+                             int batchSize, int maxRetries, int maxPendingRows) {
+        this.ds = ds;
+        this.stats = stats;
+        this.writers = Executors.newFixedThreadPool(writersCount, new DefaultThreadFactory("reporting-db-writer"));
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.maxPendingRows = maxPendingRows;
+    }
+
+    /**
+     * Binds single row to multi-row statement starting from given parameter index.
+     */
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(PreparedStatement ps, int index, T row) throws SQLException;
+    }
+
+    private static String buildStatement(String insertPrefix, int columns, int rows) {
+        StringBuilder sb = new StringBuilder(insertPrefix.length() + rows * (columns * 3 + 3));
+        sb.append(insertPrefix).append(" VALUES ");
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sb.append(',');
+            }
+            sb.append('(');
+            for (int column = 0; column < columns; column++) {
+                if (column > 0) {
+                    sb.append(',');
+                }
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private String getStatement(String insertPrefix, int columns, int rows) {
+        String key = insertPrefix + rows;
+        String sql = statementsCache.get(key);
+        if (sql == null) {
+            sql = buildStatement(insertPrefix, columns, rows);
+            //caching only full batches, last partial batch differs almost every time
+            if (rows == rowsPerStatement(columns)) {
+                statementsCache.put(key, sql);
+            }
+        }
+        return sql;
+    }
+
+    private int rowsPerStatement(int columns) {
+        return Math.max(1, Math.min(batchSize, MAX_PARAMETERS / columns));
+    }
+
+    /**
+     * Writes rows in parallel and waits till all of them are written.
+     *
+     * @param insertPrefix - "INSERT INTO table (columns)" part of statement.
+     * @return rows that were not written even after retries.
+     */
+    public <T> List<T> write(String insertPrefix, int columns, List<T> rows, RowBinder<T> binder) {
+        return writeAsync(insertPrefix, columns, rows, binder).join();
+    }
+
+    /**
+     * Writes rows in parallel without blocking of caller.
+     *
+     * @return future completed within writer thread with rows that were not written even after retries.
+     */
+    public <T> CompletableFuture<List<T>> writeAsync(String insertPrefix, int columns, List<T> rows,
+                                                     RowBinder<T> binder) {
+        if (rows.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        int rowsPerStatement = rowsPerStatement(columns);
+        List<CompletableFuture<List<T>>> results = new ArrayList<>();
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+            List<T> chunk = rows.subList(from, Math.min(rows.size(), from + rowsPerStatement));
+            chunks.add(chunk);
+            try {
+                results.add(CompletableFuture.supplyAsync(() -> writeWithRetries(insertPrefix, columns, chunk, binder), writers));
+            } catch (RejectedExecutionException e) {
+                results.add(CompletableFuture.completedFuture(chunk));
+            }
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).handle((ignored, e) -> {
+            List<T> failed = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                CompletableFuture<List<T>> result = results.get(i);
+                failed.addAll(result.isCompletedExceptionally() ? chunks.get(i) : result.join());
+            }
+            return failed;
+        });
+    }
+
+    /**
+     * Writes rows together with rows that failed during previous writes to same table without blocking of caller.
+     * Rows that failed again are kept for next write. Retry buffer is bounded by "maxPendingRows",
+     * oldest rows are dropped on overflow.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Void> writeWithRetryBuffer(String insertPrefix, int columns, List<T> rows,
+                                                            RowBinder<T> binder) {
+        List<T> toWrite = rows;
+        List<Object> pending = pendingRows.remove(insertPrefix);
+        if (pending != null) {
+            toWrite = new ArrayList<>(pending.size() + rows.size());
+            toWrite.addAll((List<T>) pending);
+            toWrite.addAll(rows);
+        }
+
+        return writeAsync(insertPrefix, columns, toWrite, binder).thenAccept(failed -> keepForRetry(insertPrefix, failed));
+    }
+
+    /**
+     * Previous write to same table may still be running, so its failed rows are merged.
+     */
+    private void keepForRetry(String insertPrefix, List<?> failed) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        pendingRows.compute(insertPrefix, (key, pending) -> {
+            List<Object> result = pending == null ? new ArrayList<>(failed.size()) : pending;
+            result.addAll(failed);
+            int overflow = result.size() - maxPendingRows;
+            if (overflow > 0) {
+                log.error("Reporting retry buffer is full. Dropping {} rows.", overflow);
+                stats.reportingDBRowsDropped.add(overflow);
+                result = new ArrayList<>(result.subList(overflow, result.size()));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @return rows that were not written.
+     */
+    private <T> List<T> writeWithRetries(String insertPrefix, int columns, List<T> rows, RowBinder<T> binder) {
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                stats.reportingDBRetries.increment();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return rows;
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                writeStatement(insertPrefix, columns, rows, binder);
+                stats.reportingDBWriteNanos.add(System.nanoTime() - start);
+                stats.reportingDBStatements.increment();
+                stats.reportingDBRowsWritten.add(rows.size());
+                return Collections.emptyList();
+            } catch (SQLException e) {
+                if (isConstraintViolation(e)) {
+                    if (rows.size() == 1) {
+                        reject(rows.get(0), e);
+                        return Collections.emptyList();
+                    }
+                    return writeSplit(insertPrefix, columns, rows, binder);
+                }
+                stats.reportingDBErrors.increment();
+                log.error("Error writing {} reporting rows. Attempt {}. Reason : {}",
+                        rows.size(), attempt + 1, e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Single rejected row fails whole statement. So statement is split in halves
+     * till rejected rows are found. Retrying them makes no sense.
+     */
+    private <T> List<T> writeSplit(String insertPrefix, int columns, List<T> rows, RowBinder<T> binder) {
+        int middle = rows.size() / 2;
+        List<T> failed = new ArrayList<>(writeWithRetries(insertPrefix, columns, rows.subList(0, middle), binder));
+        failed.addAll(writeWithRetries(insertPrefix, columns, rows.subList(middle, rows.size()), binder));
+        return failed;
+    }
+
+    /**
+     * Already stored rows are expected after replay, any other violation means broken row.
+     */
+    private void reject(Object row, SQLException e) {
+        if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+            stats.reportingDBRowsRejected.increment();
+            log.debug("Reporting row {} is already stored.", row);
+        } else {
+            stats.reportingDBRowsInvalid.increment();
+            log.error("Reporting row {} is rejected by DB. Dropping it. Reason : {}", row, e.getMessage());
+        }
+    }
+
+    private static boolean isConstraintViolation(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && sqlState.startsWith(INTEGRITY_CONSTRAINT_VIOLATION);
+    }
+
+    private <T> void writeStatement(String insertPrefix, int columns, List<T> rows, RowBinder<T> binder)
+            throws SQLException {
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(getStatement(insertPrefix, columns, rows.size()))) {
+                int index = 1;
+                for (T row : rows) {
+                    binder.bind(ps, index, row);
+                    index += columns;
+                }
+                ps.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        writers.shutdown();
+        try {
+            writers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -5,10 +5,13 @@ import cc.blynk.server.core.protocol.exceptions.QuotaLimitException;
 import cc.blynk.server.core.protocol.handlers.DefaultExceptionHandler;
 import cc.blynk.server.core.protocol.model.messages.MessageBase;
 import cc.blynk.server.core.session.StateHolderBase;
-import cc.blynk.server.core.stats.metrics.InstanceLoadMeter;
+import cc.blynk.server.core.stats.metrics.QuotaMeter;
+import cc.blynk.utils.CoarseClock;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.TypeParameterMatcher;
 
@@ -19,21 +22,42 @@ import io.netty.util.internal.TypeParameterMatcher;
  */
 public abstract class BaseSimpleChannelInboundHandler<I> extends ChannelInboundHandlerAdapter implements DefaultExceptionHandler {
 
+    /**
+     * Set when handler is added to pipeline, so session reads state and rates of channel without pipeline scan.
+     */
+    private static final AttributeKey<BaseSimpleChannelInboundHandler<?>> HANDLER = AttributeKey.valueOf("baseHandler");
+
     public final StateHolderBase state;
     private final int USER_QUOTA_LIMIT_WARN_PERIOD;
     private final int USER_QUOTA_LIMIT;
+    private final int USER_TOTAL_QUOTA_LIMIT;
     private final TypeParameterMatcher matcher;
-    private final InstanceLoadMeter quotaMeter;
+    private final QuotaMeter quotaMeter;
     private long lastQuotaExceededTime;
 
     protected BaseSimpleChannelInboundHandler(Limits limits, StateHolderBase state) {
         this.matcher = TypeParameterMatcher.find(this, BaseSimpleChannelInboundHandler.class, "I");
         this.USER_QUOTA_LIMIT = limits.USER_QUOTA_LIMIT;
         this.USER_QUOTA_LIMIT_WARN_PERIOD = limits.USER_QUOTA_LIMIT_WARN_PERIOD_MILLIS;
-        this.quotaMeter = new InstanceLoadMeter();
+        this.USER_TOTAL_QUOTA_LIMIT = limits.USER_TOTAL_QUOTA_LIMIT;
+        this.quotaMeter = new QuotaMeter();
         this.state = state;
     }
 
+    public static BaseSimpleChannelInboundHandler<?> get(Channel channel) {
+        return channel.attr(HANDLER).get();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        ctx.channel().attr(HANDLER).set(this);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        ctx.channel().attr(HANDLER).compareAndSet(this, null);
+    }
+
     private static int getMsgId(Object o) {
         if (o instanceof MessageBase) {
             return ((MessageBase) o).id;
@@ -47,11 +71,11 @@ public abstract class BaseSimpleChannelInboundHandler<I> extends ChannelInboundH
         if (matcher.match(msg)) {
             final I typedMsg = (I) msg;
             try {
-                if (quotaMeter.getOneMinuteRate() > USER_QUOTA_LIMIT) {
-                    sendErrorResponseIfTicked();
+                final long now = CoarseClock.millis();
+                if (!acquireQuota(now)) {
+                    sendErrorResponseIfTicked(now);
                     return;
                 }
-                quotaMeter.mark();
                 messageReceived(ctx, typedMsg);
             } catch (Exception e) {
                 handleGeneralException(ctx, e, getMsgId(msg));
@@ -61,8 +85,23 @@ public abstract class BaseSimpleChannelInboundHandler<I> extends ChannelInboundH
         }
     }
 
-    private void sendErrorResponseIfTicked() {
-        long now = System.currentTimeMillis();
+    /**
+     * Channel token is taken only after user token is taken, so message rejected by any of meters
+     * doesn't consume token of another one. Channels of user may be served by different event loops,
+     * so user meter is shared.
+     */
+    private boolean acquireQuota(long now) {
+        if (!quotaMeter.hasToken(USER_QUOTA_LIMIT, now)) {
+            return false;
+        }
+        if (USER_TOTAL_QUOTA_LIMIT > 0 && !state.user.quotaMeter.tryAcquireShared(USER_TOTAL_QUOTA_LIMIT, now)) {
+            return false;
+        }
+        quotaMeter.acquire(now);
+        return true;
+    }
+
+    private void sendErrorResponseIfTicked(long now) {
         //once a minute sending user response message in case limit is exceeded constantly
         if (lastQuotaExceededTime + USER_QUOTA_LIMIT_WARN_PERIOD < now) {
             lastQuotaExceededTime = now;
@@ -82,7 +121,7 @@ public abstract class BaseSimpleChannelInboundHandler<I> extends ChannelInboundH
      */
     public abstract void messageReceived(ChannelHandlerContext ctx, I msg);
 
-    public InstanceLoadMeter getQuotaMeter() {
+    public QuotaMeter getQuotaMeter() {
         return quotaMeter;
     }
 
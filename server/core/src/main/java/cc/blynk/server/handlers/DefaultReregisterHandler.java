@@ -1,6 +1,7 @@
 package cc.blynk.server.handlers;
 
 import cc.blynk.server.core.model.auth.Session;
+import cc.blynk.server.core.stats.GlobalStats;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
@@ -12,7 +13,9 @@ import io.netty.channel.ChannelHandlerContext;
  */
 public interface DefaultReregisterHandler {
 
-    default void reRegisterChannel(ChannelHandlerContext ctx, Session session, ChannelFutureListener completeHandler) {
+    default void reRegisterChannel(ChannelHandlerContext ctx, Session session, GlobalStats stats,
+                                   ChannelFutureListener completeHandler) {
+        stats.channelsReRegistered.increment();
         ChannelFuture cf = ctx.deregister();
         cf.addListener(new ChannelFutureListener() {
             @Override
@@ -0,0 +1,46 @@
+package cc.blynk.server.transport;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker event loops user sessions are spread across. All channels of user session live within
+ * one event loop. Session takes event loop of first channel that logged in, so first login
+ * is never re-registered. Sessions are moved between loops only by SessionRebalanceWorker.
+ */
+public class EventLoopSharding {
+
+    public static final EventLoopSharding DISABLED = new EventLoopSharding(new EventLoop[0]);
+
+    public final EventLoop[] loops;
+
+    public EventLoopSharding(EventLoop[] loops) {
+        this.loops = loops;
+    }
+
+    public EventLoopSharding(EventLoopGroup group) {
+        this(toArray(group));
+    }
+
+    private static EventLoop[] toArray(EventLoopGroup group) {
+        List<EventLoop> loops = new ArrayList<>();
+        for (EventExecutor executor : group) {
+            loops.add((EventLoop) executor);
+        }
+        return loops.toArray(new EventLoop[loops.size()]);
+    }
+
+    public int indexOf(EventLoop eventLoop) {
+        for (int i = 0; i < loops.length; i++) {
+            if (loops[i] == eventLoop) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,113 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.utils.CoarseClock;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.timeout.ReadTimeoutException;
+
+/**
+ * Closes channel in case there were no reads within timeout, same as ReadTimeoutHandler does.
+ * Channel is tracked within hashed wheel of its event loop. In case channel is re-registered
+ * to another event loop it is moved to wheel of new event loop.
+ */
+public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+
+    private final HeartbeatTracker tracker;
+    private int timeoutMillis;
+
+    private ChannelHandlerContext ctx;
+    private HeartbeatWheel wheel;
+    private int slot;
+
+    HeartbeatHandler(HeartbeatTracker tracker, int timeoutSecs) {
+        this.tracker = tracker;
+        this.timeoutMillis = timeoutSecs * 1000;
+    }
+
+    /**
+     * Changes read timeout of channel with given pipeline, for example, after
+     * hardware reported its heartbeat interval.
+     *
+     * @return false in case channel has no heartbeat handler.
+     */
+    public static boolean changeTimeout(ChannelPipeline pipeline, int timeoutSecs) {
+        HeartbeatHandler handler = pipeline.get(HeartbeatHandler.class);
+        if (handler == null) {
+            return false;
+        }
+        handler.setTimeout(timeoutSecs);
+        return true;
+    }
+
+    public void setTimeout(int timeoutSecs) {
+        this.timeoutMillis = timeoutSecs * 1000;
+        if (wheel != null) {
+            wheel.setTimeout(slot, timeoutMillis);
+        }
+    }
+
+    private void track(ChannelHandlerContext ctx) {
+        if (wheel == null && ctx.channel().isRegistered() && ctx.channel().isOpen()) {
+            this.ctx = ctx;
+            this.wheel = tracker.getWheel(ctx.channel().eventLoop());
+            this.slot = wheel.add(this, timeoutMillis, System.currentTimeMillis());
+        }
+    }
+
+    private void untrack() {
+        if (wheel != null) {
+            wheel.remove(slot);
+            wheel = null;
+        }
+    }
+
+    /**
+     * Called by wheel, slot is already released at this point.
+     */
+    void expire() {
+        wheel = null;
+        if (ctx.channel().isOpen()) {
+            ctx.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+            ctx.close();
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        track(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        untrack();
+    }
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        track(ctx);
+        super.channelRegistered(ctx);
+    }
+
+    @Override
+    public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+        //fired within old event loop on re-registration
+        untrack();
+        super.channelUnregistered(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        untrack();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (wheel != null) {
+            wheel.touch(slot, CoarseClock.millis());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+}
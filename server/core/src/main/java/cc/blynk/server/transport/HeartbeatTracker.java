@@ -0,0 +1,49 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.channel.EventLoop;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Replacement for per channel ReadTimeoutHandler. Instead of scheduled task per channel
+ * it keeps 1 hashed wheel with single sweep task per event loop.
+ */
+public class HeartbeatTracker {
+
+    public final int defaultTimeoutSecs;
+    private final GlobalStats stats;
+    private final ConcurrentMap<EventLoop, HeartbeatWheel> wheels = new ConcurrentHashMap<>();
+
+    public HeartbeatTracker(int defaultTimeoutSecs, GlobalStats stats) {
+        this.defaultTimeoutSecs = defaultTimeoutSecs;
+        this.stats = stats;
+    }
+
+    public boolean isEnabled() {
+        return defaultTimeoutSecs > 0;
+    }
+
+    /**
+     * @return new non-sharable handler that should be added to channel pipeline.
+     */
+    public HeartbeatHandler newHandler() {
+        return new HeartbeatHandler(this, defaultTimeoutSecs);
+    }
+
+    HeartbeatWheel getWheel(EventLoop eventLoop) {
+        HeartbeatWheel wheel = wheels.get(eventLoop);
+        if (wheel == null) {
+            wheel = new HeartbeatWheel(stats, System.currentTimeMillis());
+            HeartbeatWheel prev = wheels.putIfAbsent(eventLoop, wheel);
+            if (prev == null) {
+                wheel.start(eventLoop);
+            } else {
+                wheel = prev;
+            }
+        }
+        return wheel;
+    }
+
+}
@@ -0,0 +1,180 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.channel.EventLoop;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed wheel of read deadlines for all tracked channels of one event loop.
+ * Channel takes slot in primitive arrays and is linked into bucket of its deadline tick.
+ * Reads only update last read time of slot, so there is no rescheduling per read.
+ * Single sweep task per event loop visits 1 bucket per tick, closes expired channels
+ * and moves not expired ones to bucket of their new deadline.
+ * All methods should be called within event loop of wheel.
+ */
+final class HeartbeatWheel implements Runnable {
+
+    private static final Logger log = LogManager.getLogger(HeartbeatWheel.class);
+
+    static final long TICK_MILLIS = 1000;
+    static final int BUCKETS = 512;
+    private static final int MASK = BUCKETS - 1;
+    private static final int EMPTY = -1;
+
+    private final GlobalStats stats;
+
+    private final int[] heads = new int[BUCKETS];
+    private long[] lastRead;
+    private int[] timeouts;
+    private int[] next;
+    private int[] prev;
+    private int[] bucketOf;
+    private HeartbeatHandler[] handlers;
+
+    private int[] freeSlots;
+    private int freeSize;
+    private int used;
+
+    private long lastTick;
+    private final List<HeartbeatHandler> expired = new ArrayList<>();
+
+    HeartbeatWheel(GlobalStats stats, long now) {
+        this.stats = stats;
+        this.lastTick = now / TICK_MILLIS;
+        Arrays.fill(heads, EMPTY);
+        resize(64);
+    }
+
+    void start(EventLoop eventLoop) {
+        eventLoop.scheduleAtFixedRate(this, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void resize(int capacity) {
+        this.lastRead = lastRead == null ? new long[capacity] : Arrays.copyOf(lastRead, capacity);
+        this.timeouts = timeouts == null ? new int[capacity] : Arrays.copyOf(timeouts, capacity);
+        this.next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        this.prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+        this.bucketOf = bucketOf == null ? new int[capacity] : Arrays.copyOf(bucketOf, capacity);
+        this.handlers = handlers == null ? new HeartbeatHandler[capacity] : Arrays.copyOf(handlers, capacity);
+        this.freeSlots = freeSlots == null ? new int[capacity] : Arrays.copyOf(freeSlots, capacity);
+    }
+
+    int add(HeartbeatHandler handler, int timeoutMillis, long now) {
+        final int slot;
+        if (freeSize > 0) {
+            slot = freeSlots[--freeSize];
+        } else {
+            if (used == handlers.length) {
+                resize(used * 2);
+            }
+            slot = used++;
+        }
+        handlers[slot] = handler;
+        lastRead[slot] = now;
+        timeouts[slot] = timeoutMillis;
+        link(slot, now + timeoutMillis);
+        stats.heartbeatTracked.increment();
+        return slot;
+    }
+
+    void remove(int slot) {
+        unlink(slot);
+        handlers[slot] = null;
+        freeSlots[freeSize++] = slot;
+        stats.heartbeatTracked.decrement();
+    }
+
+    void touch(int slot, long now) {
+        lastRead[slot] = now;
+    }
+
+    void setTimeout(int slot, int timeoutMillis) {
+        timeouts[slot] = timeoutMillis;
+        //deadline may become earlier, so slot is moved right away
+        unlink(slot);
+        link(slot, lastRead[slot] + timeoutMillis);
+    }
+
+    int size() {
+        return used - freeSize;
+    }
+
+    private int bucketFor(long deadline) {
+        //not expired slots are checked not earlier than on next tick
+        return (int) (Math.max(deadline / TICK_MILLIS, lastTick + 1) & MASK);
+    }
+
+    private void link(int slot, long deadline) {
+        final int bucket = bucketFor(deadline);
+        final int head = heads[bucket];
+        next[slot] = head;
+        prev[slot] = EMPTY;
+        if (head != EMPTY) {
+            prev[head] = slot;
+        }
+        heads[bucket] = slot;
+        bucketOf[slot] = bucket;
+    }
+
+    private void unlink(int slot) {
+        final int p = prev[slot];
+        final int n = next[slot];
+        if (p == EMPTY) {
+            heads[bucketOf[slot]] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n != EMPTY) {
+            prev[n] = p;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("Error sweeping idle channels.", e);
+        }
+    }
+
+    void sweep(long now) {
+        final long nowTick = now / TICK_MILLIS;
+        //in case sweep was delayed for more than full round each bucket is visited once
+        final long fromTick = Math.max(lastTick + 1, nowTick - MASK);
+        lastTick = nowTick;
+
+        for (long tick = fromTick; tick <= nowTick; tick++) {
+            sweepBucket((int) (tick & MASK), now);
+        }
+
+        for (HeartbeatHandler handler : expired) {
+            handler.expire();
+        }
+        expired.clear();
+    }
+
+    private void sweepBucket(int bucket, long now) {
+        int slot = heads[bucket];
+        while (slot != EMPTY) {
+            final int nextSlot = next[slot];
+            final long deadline = lastRead[slot] + timeouts[slot];
+            if (deadline <= now) {
+                expired.add(handlers[slot]);
+                remove(slot);
+                stats.heartbeatIdleClosed.increment();
+            } else if (bucketFor(deadline) != bucket) {
+                unlink(slot);
+                link(slot, deadline);
+            }
+            slot = nextSlot;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.utils.ServerProperties;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+
+/**
+ * Socket options for specific server type. Hardware servers usually have a lot of small idle
+ * connections while app and http servers need throughput, so options are defined per type :
+ * "hard", "app" and "http" properties prefix.
+ */
+public class TransportProfile {
+
+    public final String type;
+    public final boolean tcpNoDelay;
+    public final int writeBufferLowWaterMark;
+    public final int writeBufferHighWaterMark;
+
+    //native epoll only options
+    public final boolean tcpQuickAck;
+    public final boolean edgeTriggered;
+    //number of server sockets bound to same port with SO_REUSEPORT
+    public final int acceptors;
+
+    public TransportProfile(ServerProperties props, String type) {
+        this.type = type;
+        this.tcpNoDelay = getBool(props, type + ".socket.tcp.nodelay", true);
+        this.writeBufferLowWaterMark = props.getIntProperty(type + ".socket.write.buffer.low.water.mark", 32 * 1024);
+        this.writeBufferHighWaterMark = props.getIntProperty(type + ".socket.write.buffer.high.water.mark", 64 * 1024);
+        this.tcpQuickAck = getBool(props, type + ".socket.tcp.quickack", false);
+        this.edgeTriggered = getBool(props, type + ".socket.epoll.edge.triggered", true);
+        this.acceptors = Math.max(1, props.getIntProperty(type + ".socket.acceptors", 1));
+    }
+
+    private static boolean getBool(ServerProperties props, String name, boolean defaultValue) {
+        String value = props.getProperty(name);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public void apply(ServerBootstrap b, boolean epoll) {
+        b.childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+         .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                 new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+
+        if (epoll) {
+            EpollMode mode = edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            b.option(EpollChannelOption.EPOLL_MODE, mode)
+             .childOption(EpollChannelOption.EPOLL_MODE, mode)
+             .childOption(EpollChannelOption.TCP_QUICKACK, tcpQuickAck);
+            if (acceptors > 1) {
+                b.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+    }
+
+    /**
+     * @return number of server sockets to bind. SO_REUSEPORT is available for native epoll only.
+     */
+    public int getAcceptors(boolean epoll) {
+        return epoll ? acceptors : 1;
+    }
+
+    public String describe(boolean epoll) {
+        StringBuilder sb = new StringBuilder()
+                .append("tcpNoDelay=").append(tcpNoDelay)
+                .append(", writeBufferWaterMark=").append(writeBufferLowWaterMark)
+                .append('/').append(writeBufferHighWaterMark);
+        if (epoll) {
+            sb.append(", tcpQuickAck=").append(tcpQuickAck)
+              .append(", epollMode=").append(edgeTriggered ? "edge" : "level")
+              .append(", acceptors=").append(acceptors);
+        }
+        return sb.toString();
+    }
+
+}
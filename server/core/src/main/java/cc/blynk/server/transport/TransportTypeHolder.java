@@ -27,27 +27,37 @@ public class TransportTypeHolder implements Closeable {
     public final EventLoopGroup bossGroup;
     public final EventLoopGroup workerGroup;
     public final Class<? extends ServerChannel> channelClass;
+    public final boolean epoll;
+
+    public final TransportProfile hardwareProfile;
+    public final TransportProfile appProfile;
+    public final TransportProfile httpProfile;
 
     public TransportTypeHolder(ServerProperties serverProperties) {
-        this(serverProperties.getBoolProperty("enable.native.epoll.transport"),
-                serverProperties.getIntProperty("server.worker.threads", Runtime.getRuntime().availableProcessors() * 2));
+        this.hardwareProfile = new TransportProfile(serverProperties, "hard");
+        this.appProfile = new TransportProfile(serverProperties, "app");
+        this.httpProfile = new TransportProfile(serverProperties, "http");
 
-        if (serverProperties.getBoolProperty("enable.native.openssl")) {
-            log.info("Using native openSSL provider.");
-        }
-    }
+        this.epoll = serverProperties.getBoolProperty("enable.native.epoll.transport");
+        int workerThreads = serverProperties.getIntProperty("server.worker.threads", Runtime.getRuntime().availableProcessors() * 2);
+        //each SO_REUSEPORT server socket gets own acceptor thread
+        int bossThreads = Math.max(hardwareProfile.getAcceptors(epoll),
+                Math.max(appProfile.getAcceptors(epoll), httpProfile.getAcceptors(epoll)));
 
-    private TransportTypeHolder(boolean enableNativeEpoll, int workerThreads) {
-        if (enableNativeEpoll) {
+        if (epoll) {
             log.warn("Using native epoll transport.");
-            bossGroup = new EpollEventLoopGroup(1);
+            bossGroup = new EpollEventLoopGroup(bossThreads);
             workerGroup = new EpollEventLoopGroup(workerThreads);
             channelClass = EpollServerSocketChannel.class;
         } else {
-            bossGroup = new NioEventLoopGroup(1);
+            bossGroup = new NioEventLoopGroup(bossThreads);
             workerGroup = new NioEventLoopGroup(workerThreads);
             channelClass = NioServerSocketChannel.class;
         }
+
+        if (serverProperties.getBoolProperty("enable.native.openssl")) {
+            log.info("Using native openSSL provider.");
+        }
     }
 
     @Override
@@ -64,11 +64,11 @@ public class ReadingWidgetsWorker implements Runnable {
             if (session.isAppConnected() && session.isHardwareConnected()) {
                 final UserKey userKey = entry.getKey();
                 final User user = userDao.users.get(userKey);
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     if (dashBoard.isActive) {
-                        for (Channel channel : session.hardwareChannels) {
+                        for (Channel channel : session.getHardChannels(dashBoard.id)) {
                             final HardwareStateHolder stateHolder = StateHolderUtil.getHardState(channel);
-                            if (stateHolder != null && stateHolder.dashId == dashBoard.id) {
+                            if (stateHolder != null) {
                                 for (Widget widget : dashBoard.widgets) {
                                     if (widget instanceof FrequencyWidget) {
                                         final FrequencyWidget frequencyWidget = (FrequencyWidget) widget;
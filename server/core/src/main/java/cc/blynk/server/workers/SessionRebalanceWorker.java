@@ -0,0 +1,108 @@
+package cc.blynk.server.workers;
+
+import cc.blynk.server.core.dao.SessionDao;
+import cc.blynk.server.core.model.auth.Session;
+import cc.blynk.server.core.stats.GlobalStats;
+import cc.blynk.server.transport.EventLoopSharding;
+import io.netty.channel.EventLoop;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sums request rates of user sessions per worker event loop and moves
+ * one loaded session from most loaded loop to least loaded per run.
+ * Runs within own thread : session loop is volatile, channel rates are read
+ * from volatile snapshots of channel quota meters.
+ */
+public class SessionRebalanceWorker implements Runnable {
+
+    private static final Logger log = LogManager.getLogger(SessionRebalanceWorker.class);
+
+    private final SessionDao sessionDao;
+    private final EventLoopSharding sharding;
+    private final GlobalStats stats;
+    private final double thresholdRatio;
+
+    public SessionRebalanceWorker(SessionDao sessionDao, GlobalStats stats, int thresholdPercent) {
+        this.sessionDao = sessionDao;
+        this.sharding = sessionDao.sharding;
+        this.stats = stats;
+        this.thresholdRatio = 1 + thresholdPercent / 100D;
+    }
+
+    private static int getLoad(Session session) {
+        return session.getAppRequestRate() + session.getHardRequestRate();
+    }
+
+    @Override
+    public void run() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            log.error("Error rebalancing sessions.", e);
+        }
+    }
+
+    /**
+     * @return moved session or null.
+     */
+    Session rebalance() {
+        final EventLoop[] loops = sharding.loops;
+        if (loops.length < 2) {
+            return null;
+        }
+
+        long[] loads = new long[loops.length];
+        long total = 0;
+        for (Session session : sessionDao.userSession.values()) {
+            int i = sharding.indexOf(session.initialEventLoop);
+            if (i != -1) {
+                int load = getLoad(session);
+                loads[i] += load;
+                total += load;
+            }
+        }
+
+        int max = 0;
+        int min = 0;
+        for (int i = 1; i < loads.length; i++) {
+            if (loads[i] > loads[max]) {
+                max = i;
+            }
+            if (loads[i] < loads[min]) {
+                min = i;
+            }
+        }
+
+        double avg = (double) total / loops.length;
+        if (total == 0 || loads[max] <= avg * thresholdRatio) {
+            return null;
+        }
+
+        //most loaded session that doesn't make target loop more loaded than source one
+        final long maxMovableLoad = (loads[max] - loads[min]) / 2;
+        Session candidate = null;
+        int candidateLoad = 0;
+        for (Session session : sessionDao.userSession.values()) {
+            if (session.initialEventLoop == loops[max]) {
+                int load = getLoad(session);
+                if (load > candidateLoad && load <= maxMovableLoad) {
+                    candidate = session;
+                    candidateLoad = load;
+                }
+            }
+        }
+
+        if (candidate != null) {
+            log.info("Moving session with load {} req/sec from worker {} ({} req/sec) to worker {} ({} req/sec).",
+                    candidateLoad, max, loads[max], min, loads[min]);
+            final Session session = candidate;
+            final EventLoop target = loops[min];
+            loops[max].execute(() -> session.migrate(target));
+            stats.sessionsMoved.increment();
+        }
+
+        return candidate;
+    }
+
+}
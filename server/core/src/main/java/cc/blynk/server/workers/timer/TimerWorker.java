@@ -77,7 +77,11 @@ public class TimerWorker implements Runnable {
     private void init(ConcurrentMap<UserKey, User> users) {
         int counter = 0;
         for (Map.Entry<UserKey, User> entry : users.entrySet()) {
-            for (DashBoard dashBoard : entry.getValue().profile.dashBoards) {
+            //users restored from profiles index have no timers, see FileManager.deserialize()
+            if (!entry.getValue().isProfileLoaded()) {
+                continue;
+            }
+            for (DashBoard dashBoard : entry.getValue().getProfile().dashBoards) {
                 for (Widget widget : dashBoard.widgets) {
                     if (widget instanceof Timer) {
                         Timer timer = (Timer) widget;
@@ -185,7 +189,7 @@ public class TimerWorker implements Runnable {
             if (key.time.time == curSeconds && isTime(key.time, currentDateTime)) {
                 User user = userDao.users.get(key.userKey);
                 if (user != null) {
-                    DashBoard dash = user.profile.getDashById(key.dashId);
+                    DashBoard dash = user.getProfile().getDashById(key.dashId);
                     if (dash != null && dash.isActive) {
                         activeTimers++;
                         String value;
@@ -193,6 +197,7 @@ public class TimerWorker implements Runnable {
                             SetPinAction setPinAction = (SetPinAction) objValue;
                             value = setPinAction.makeHardwareBody();
                             dash.update(key.deviceId, setPinAction.pin.pin, setPinAction.pin.pinType, setPinAction.value, nowMillis);
+                            user.markPinsDirty();
                         } else if (objValue instanceof NotifyAction) {
                             NotifyAction notifyAction = (NotifyAction) objValue;
                             EventorProcessor.push(gcmWrapper, dash, notifyAction.message);
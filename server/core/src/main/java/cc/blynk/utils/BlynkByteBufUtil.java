@@ -4,6 +4,7 @@ import cc.blynk.server.core.protocol.enums.Command;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 import static cc.blynk.server.core.protocol.enums.Response.OK;
 import static cc.blynk.server.core.protocol.model.messages.MessageBase.HEADER_LENGTH;
@@ -20,17 +21,54 @@ public class BlynkByteBufUtil {
 
     public static final ByteBufAllocator ALLOCATOR = ByteBufAllocator.DEFAULT;
 
+    //bodies smaller than this are copied, as composite buffer costs more than copy of few bytes
+    private static final int COMPOSITE_BODY_THRESHOLD = 128;
+    //"dashId-deviceId\0"
+    private static final int MAX_DEVICE_PREFIX_LENGTH = 24;
+
+    private static final int MSG_ID_MASK = 0xFFFF;
+
+    //pre-encoded ok responses for every possible msgId. Shared between all channels, so never released.
+    private static final ByteBuf OK_FRAMES = makeOkFrames();
+
+    private static ByteBuf makeOkFrames() {
+        ByteBuf frames = Unpooled.directBuffer((MSG_ID_MASK + 1) * HEADER_LENGTH);
+        for (int msgId = 0; msgId <= MSG_ID_MASK; msgId++) {
+            frames.writeByte(Command.RESPONSE)
+                  .writeShort(msgId)
+                  .writeShort(OK);
+        }
+        return Unpooled.unreleasableBuffer(frames);
+    }
+
+    /**
+     * @return read-only view of pre-encoded frame. Nothing is allocated except view itself.
+     */
     public static ByteBuf ok(int msgId) {
-        return makeResponse(msgId, OK);
+        return OK_FRAMES.slice((msgId & MSG_ID_MASK) * HEADER_LENGTH, HEADER_LENGTH);
     }
 
     public static ByteBuf makeResponse(int msgId, int responseCode) {
+        if (responseCode == OK) {
+            return ok(msgId);
+        }
         return ALLOCATOR.buffer(HEADER_LENGTH)
                 .writeByte(Command.RESPONSE)
                 .writeShort(msgId)
                 .writeShort(responseCode);
     }
 
+    /**
+     * Response with int body, for example DEVICE_WENT_OFFLINE with dash id.
+     */
+    public static ByteBuf makeResponse(int msgId, int responseCode, int body) {
+        return ALLOCATOR.buffer(HEADER_LENGTH + 4)
+                .writeByte(Command.RESPONSE)
+                .writeShort(msgId)
+                .writeShort(responseCode)
+                .writeInt(body);
+    }
+
     public static ByteBuf makeUTF8StringMessage(short cmd, int msgId, String data) {
         ByteBuf byteBuf = ALLOCATOR.buffer(HEADER_LENGTH + ByteBufUtil.utf8MaxBytes(data));
         byteBuf.writerIndex(HEADER_LENGTH);
@@ -51,6 +89,70 @@ public class BlynkByteBufUtil {
         return byteBuf;
     }
 
+    /**
+     * Creates message with body "dashId-deviceId\0" + body, where body bytes are taken as is.
+     * Body is not decoded or encoded. Big bodies are not copied, they are added to composite buffer.
+     * Body reader index is not changed.
+     */
+    public static ByteBuf makeDeviceMessage(short cmd, int msgId, int dashId, int deviceId, ByteBuf body) {
+        int bodyLength = body.readableBytes();
+        boolean copyBody = bodyLength < COMPOSITE_BODY_THRESHOLD;
+
+        ByteBuf byteBuf = ALLOCATOR.buffer(HEADER_LENGTH + MAX_DEVICE_PREFIX_LENGTH + (copyBody ? bodyLength : 0));
+        byteBuf.writerIndex(HEADER_LENGTH);
+        writeInt(byteBuf, dashId);
+        //todo this is back compatibility code. remove in future versions
+        if (deviceId != 0) {
+            byteBuf.writeByte(StringUtils.DEVICE_SEPARATOR);
+            writeInt(byteBuf, deviceId);
+        }
+        byteBuf.writeByte(StringUtils.BODY_SEPARATOR);
+
+        byteBuf.setByte(0, cmd)
+               .setShort(1, msgId)
+               .setShort(3, byteBuf.writerIndex() - HEADER_LENGTH + bodyLength);
+
+        if (copyBody) {
+            return byteBuf.writeBytes(body, body.readerIndex(), bodyLength);
+        }
+        return ALLOCATOR.compositeBuffer(2).addComponents(true, byteBuf, body.retainedDuplicate());
+    }
+
+    /**
+     * Creates message with body "dashId-deviceId", for example HARDWARE_CONNECTED.
+     * Same as string message, but without string concatenation and encoding.
+     */
+    public static ByteBuf makeDeviceMessage(short cmd, int msgId, int dashId, int deviceId) {
+        ByteBuf byteBuf = ALLOCATOR.buffer(HEADER_LENGTH + MAX_DEVICE_PREFIX_LENGTH);
+        byteBuf.writerIndex(HEADER_LENGTH);
+        writeInt(byteBuf, dashId);
+        byteBuf.writeByte(StringUtils.DEVICE_SEPARATOR);
+        writeInt(byteBuf, deviceId);
+
+        return byteBuf.setByte(0, cmd)
+                      .setShort(1, msgId)
+                      .setShort(3, byteBuf.writerIndex() - HEADER_LENGTH);
+    }
+
+    private static void writeInt(ByteBuf byteBuf, int value) {
+        if (value < 0) {
+            byteBuf.writeByte('-');
+            if (value == Integer.MIN_VALUE) {
+                ByteBufUtil.writeAscii(byteBuf, "2147483648");
+                return;
+            }
+            value = -value;
+        }
+        int divider = 1;
+        while (value / divider >= 10) {
+            divider *= 10;
+        }
+        while (divider > 0) {
+            byteBuf.writeByte('0' + value / divider % 10);
+            divider /= 10;
+        }
+    }
+
     public static ByteBuf makeBinaryMessage(short cmd, int msgId, byte[] byteData) {
         return ALLOCATOR.buffer(HEADER_LENGTH + byteData.length)
                 .writeByte(cmd)
@@ -0,0 +1,37 @@
+package cc.blynk.utils;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current time in millis with {@link #PRECISION_MILLIS} precision. Time is updated by
+ * single background thread, so reading it is just a volatile read instead of system call.
+ * Should be used where time is needed for every message, like quotas.
+ */
+public final class CoarseClock {
+
+    public static final long PRECISION_MILLIS = 10;
+
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("coarse-clock", true));
+        executor.scheduleAtFixedRate(CoarseClock::update, PRECISION_MILLIS, PRECISION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private CoarseClock() {
+    }
+
+    private static void update() {
+        now = System.currentTimeMillis();
+    }
+
+    public static long millis() {
+        return now;
+    }
+
+}
@@ -158,4 +158,39 @@ public class FileUtils {
             return buf;
         }
     }
+
+    /**
+     * Reads records starting from given record index. Only whole records are read,
+     * so record that is being appended right now is left for the next read.
+     *
+     * @param userDataFile - file to read
+     * @param fromEntry - index of first record to read
+     * @param target - buffer to fill, up to its remaining space
+     * @return - number of records read
+     * @throws IOException
+     */
+    public static int read(Path userDataFile, int fromEntry, ByteBuffer target) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(userDataFile, StandardOpenOption.READ)) {
+            final int start = target.position();
+            final int limit = target.limit();
+            target.limit(start + target.remaining() / SIZE_OF_REPORT_ENTRY * SIZE_OF_REPORT_ENTRY);
+
+            channel.position((long) fromEntry * SIZE_OF_REPORT_ENTRY);
+            while (target.hasRemaining() && channel.read(target) > 0) {
+                //read till buffer is full or end of file
+            }
+
+            final int entries = (target.position() - start) / SIZE_OF_REPORT_ENTRY;
+            target.limit(limit);
+            target.position(start + entries * SIZE_OF_REPORT_ENTRY);
+            return entries;
+        }
+    }
+
+    /**
+     * @return - number of whole records within file.
+     */
+    public static int size(Path userDataFile) throws IOException {
+        return (int) (Files.size(userDataFile) / SIZE_OF_REPORT_ENTRY);
+    }
 }
@@ -0,0 +1,69 @@
+package cc.blynk.utils;
+
+import cc.blynk.server.core.model.enums.PinType;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+
+import static cc.blynk.utils.StringUtils.BODY_SEPARATOR;
+
+/**
+ * Parses hardware write command "vw\0pin\0value" once, right from incoming bytes, into primitive
+ * fields, so reporting, dashboard update, eventor and webhooks don't split and parse body again.
+ * Cursor is reused for every command of channel, so it should be used within channel thread only.
+ */
+public final class HardwareCommandCursor {
+
+    public ByteBuf body;
+    public PinType pinType;
+    public byte pin;
+    //index of first value byte within body
+    public int valueIndex;
+    public String value;
+    //NumberUtil.NO_RESULT in case value is not a number
+    public double doubleValue;
+
+    public static boolean isWriteOperation(ByteBuf body) {
+        return body.readableBytes() > 1 && body.getByte(body.readerIndex() + 1) == 'w';
+    }
+
+    /**
+     * @return false in case body is not valid write command. Cursor fields are undefined in that case.
+     */
+    public boolean parseWrite(ByteBuf body) {
+        final int from = body.readerIndex();
+        final int to = body.writerIndex();
+
+        final int i1 = body.indexOf(from + 1, to, (byte) BODY_SEPARATOR);
+        final int i2 = i1 == -1 ? -1 : body.indexOf(i1 + 1, to, (byte) BODY_SEPARATOR);
+
+        if (i2 == -1 || i2 + 1 == to) {
+            return false;
+        }
+
+        this.body = body;
+        this.pinType = PinType.getPinType((char) body.getByte(from));
+        this.pin = ParseUtil.parseByte(body, i1 + 1, i2);
+        this.valueIndex = i2 + 1;
+        this.value = body.toString(valueIndex, to - valueIndex, StandardCharsets.UTF_8);
+        this.doubleValue = parseDouble(value);
+        return true;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return NumberUtil.parseDouble(value);
+        } catch (Exception e) {
+            //should never happen. just in case.
+            return NumberUtil.NO_RESULT;
+        }
+    }
+
+    /**
+     * @return value bytes, without copy.
+     */
+    public ByteBuf rawValue() {
+        return body.slice(valueIndex, body.writerIndex() - valueIndex);
+    }
+
+}
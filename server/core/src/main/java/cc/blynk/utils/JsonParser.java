@@ -20,6 +20,8 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -38,8 +40,14 @@ public final class JsonParser {
 
     //it is threadsafe
     public static final ObjectMapper mapper = init();
+    //binary json (smile), used for user profiles when enabled
+    public static final ObjectMapper smileMapper = init(new ObjectMapper(
+            new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)));
 
     private static final ObjectReader userReader = mapper.readerFor(User.class);
+    private static final ObjectReader smileUserReader = smileMapper.readerFor(User.class);
+    //detects format by smile header, so both json and smile user files are read transparently
+    private static final ObjectReader userFileReader = userReader.withFormatDetection(smileUserReader, userReader);
     private static final ObjectReader dashboardReader = mapper.readerFor(DashBoard.class);
     private static final ObjectReader widgetReader = mapper.readerFor(Widget.class);
     private static final ObjectReader deviceReader = mapper.readerFor(Device.class);
@@ -47,6 +55,7 @@ public final class JsonParser {
     private static final ObjectReader facebookTokenReader = mapper.readerFor(FacebookTokenResponse.class);
 
     private static final ObjectWriter userWriter = mapper.writerFor(User.class);
+    private static final ObjectWriter smileUserWriter = smileMapper.writerFor(User.class);
     private static final ObjectWriter profileWriter = mapper.writerFor(Profile.class);
     private static final ObjectWriter dashboardWriter = mapper.writerFor(DashBoard.class);
     private static final ObjectWriter deviceWriter = mapper.writerFor(Device.class);
@@ -58,7 +67,11 @@ public final class JsonParser {
     private static final ObjectWriter statWriter = init().writerWithDefaultPrettyPrinter().forType(Stat.class);
 
     public static ObjectMapper init() {
-        return new ObjectMapper()
+        return init(new ObjectMapper());
+    }
+
+    private static ObjectMapper init(ObjectMapper mapper) {
+        return mapper
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .setSerializationInclusion(JsonInclude.Include.NON_NULL)
                 .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
@@ -94,6 +107,10 @@ public final class JsonParser {
         userWriter.writeValue(file, user);
     }
 
+    public static void writeUserBinary(File file, User user) throws IOException {
+        smileUserWriter.writeValue(file, user);
+    }
+
     private static String toJson(ObjectWriter writer, Object o) {
         try {
             return writer.writeValueAsString(o);
@@ -121,8 +138,11 @@ public final class JsonParser {
         return null;
     }
 
+    /**
+     * Reads user stored either in json or in binary (smile) format.
+     */
     public static User parseUserFromFile(File userFile) throws IOException {
-        return userReader.readValue(userFile);
+        return userFileReader.readValue(userFile);
     }
 
     public static User parseUserFromString(String userString) throws IOException {
@@ -1,6 +1,8 @@
 package cc.blynk.utils;
 
 import cc.blynk.server.core.protocol.exceptions.ParseException;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
 
 /**
  * The Blynk Project.
@@ -25,6 +27,41 @@ public final class ParseUtil {
         }
     }
 
+    /**
+     * Parses ascii number from buffer bytes [from, to) without creating string.
+     */
+    public static byte parseByte(ByteBuf buf, int from, int to) {
+        int index = from;
+        boolean negative = false;
+        if (index < to && (buf.getByte(index) == '-' || buf.getByte(index) == '+')) {
+            negative = buf.getByte(index) == '-';
+            index++;
+        }
+        if (index == to || to - index > 3) {
+            throw notValidByte(buf, from, to);
+        }
+
+        int result = 0;
+        for (; index < to; index++) {
+            int digit = buf.getByte(index) - '0';
+            if (digit < 0 || digit > 9) {
+                throw notValidByte(buf, from, to);
+            }
+            result = result * 10 + digit;
+        }
+        if (negative) {
+            result = -result;
+        }
+        if (result < Byte.MIN_VALUE || result > Byte.MAX_VALUE) {
+            throw notValidByte(buf, from, to);
+        }
+        return (byte) result;
+    }
+
+    private static ParseException notValidByte(ByteBuf buf, int from, int to) {
+        return new ParseException(buf.toString(from, to - from, CharsetUtil.US_ASCII) + " not a valid byte number.");
+    }
+
     public static long parseLong(String longString) {
         try {
             return Long.parseLong(longString);
@@ -3,6 +3,8 @@ package cc.blynk.utils;
 import cc.blynk.server.core.session.HardwareStateHolder;
 import cc.blynk.server.handlers.BaseSimpleChannelInboundHandler;
 import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 
 /**
  * The Blynk Project.
@@ -11,26 +13,33 @@ import io.netty.channel.Channel;
  */
 public class StateHolderUtil {
 
+    /**
+     * Set on hardware login, so state lookup doesn't require pipeline scan.
+     */
+    public static final AttributeKey<HardwareStateHolder> HARDWARE_STATE = AttributeKey.valueOf("hardwareState");
+
+    public static void setHardState(Channel channel, HardwareStateHolder state) {
+        channel.attr(HARDWARE_STATE).set(state);
+    }
+
     public static HardwareStateHolder getHardState(Channel channel) {
-        BaseSimpleChannelInboundHandler handler = channel.pipeline().get(BaseSimpleChannelInboundHandler.class);
+        Attribute<HardwareStateHolder> attr = channel.attr(HARDWARE_STATE);
+        HardwareStateHolder state = attr.get();
+        if (state != null) {
+            return state;
+        }
+        BaseSimpleChannelInboundHandler<?> handler = BaseSimpleChannelInboundHandler.get(channel);
         return handler == null ? null : (HardwareStateHolder) handler.state;
     }
 
     public static boolean isSameDash(Channel channel, int dashId) {
-        BaseSimpleChannelInboundHandler handler = channel.pipeline().get(BaseSimpleChannelInboundHandler.class);
-        return handler != null && ((HardwareStateHolder) handler.state).dashId == dashId;
+        HardwareStateHolder state = getHardState(channel);
+        return state != null && state.dashId == dashId;
     }
 
     public static boolean isSameDashAndDeviceId(Channel channel, int dashId, int deviceId) {
-        BaseSimpleChannelInboundHandler handler = channel.pipeline().get(BaseSimpleChannelInboundHandler.class);
-
-        if (handler == null) {
-            return false;
-        }
-
-        HardwareStateHolder hardwareStateHolder = (HardwareStateHolder) handler.state;
-
-        return hardwareStateHolder.dashId == dashId && hardwareStateHolder.deviceId == deviceId;
+        HardwareStateHolder state = getHardState(channel);
+        return state != null && state.dashId == dashId && state.deviceId == deviceId;
     }
 
 }
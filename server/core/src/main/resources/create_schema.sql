@@ -36,11 +36,12 @@ CREATE TABLE reporting_raw_data (
   pin int2,
   pinType char,
   ts int8,
+  seq int4,
 
   stringValue text,
   doubleValue float8,
 
-  PRIMARY KEY (username, project_id, device_id, pin, pinType, ts)
+  PRIMARY KEY (username, project_id, device_id, pin, pinType, ts, seq)
 );
 
 CREATE TABLE reporting_average_minute (
@@ -51,6 +52,10 @@ CREATE TABLE reporting_average_minute (
   pinType char,
   ts int8,
   value float8,
+  min_value float8,
+  max_value float8,
+  last_value float8,
+  count int8,
   PRIMARY KEY (username, project_id, device_id, pin, pinType, ts)
 );
 
@@ -62,6 +67,10 @@ CREATE TABLE reporting_average_hourly (
   pinType char,
   ts int8,
   value float8,
+  min_value float8,
+  max_value float8,
+  last_value float8,
+  count int8,
   PRIMARY KEY (username, project_id, device_id, pin, pinType, ts)
 );
 
@@ -73,6 +82,10 @@ CREATE TABLE reporting_average_daily (
   pinType char,
   ts int8,
   value float8,
+  min_value float8,
+  max_value float8,
+  last_value float8,
+  count int8,
   PRIMARY KEY (username, project_id, device_id, pin, pinType, ts)
 );
 
@@ -0,0 +1,150 @@
+package cc.blynk.server.core;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoginAdmissionTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final GlobalStats stats = new GlobalStats();
+    private final List<String> events = new ArrayList<>();
+    private long start;
+
+    private LoginAdmission newAdmission(int appRate, int hardRate, int maxPending, int maxWaitMillis) {
+        LoginAdmission admission = new LoginAdmission(appRate, hardRate, maxPending, maxWaitMillis, stats);
+        //buckets are full at creation time
+        this.start = System.nanoTime();
+        return admission;
+    }
+
+    private void admit(LoginAdmission admission, EmbeddedChannel channel, boolean app, String name, long now) {
+        admission.admit(channel, app, () -> events.add("login " + name), () -> events.add("reject " + name), now);
+    }
+
+    @Test
+    public void testNoLimit() {
+        LoginAdmission admission = newAdmission(0, 0, 1, 1000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        for (int i = 0; i < 100; i++) {
+            admit(admission, channel, false, "h" + i, start);
+        }
+        assertEquals(100, events.size());
+        assertEquals(100, stats.loginsAccepted.sum());
+        assertEquals(0, admission.getPendingCount());
+    }
+
+    @Test
+    public void testLoginsAboveRateAreDelayed() {
+        LoginAdmission admission = newAdmission(0, 2, 10, 10_000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(admission, channel, false, "h1", start);
+        admit(admission, channel, false, "h2", start);
+        admit(admission, channel, false, "h3", start);
+        admit(admission, channel, false, "h4", start);
+        assertEquals(2, events.size());
+        assertEquals(2, admission.getPendingCount());
+        assertEquals(2, stats.loginsDelayed.sum());
+
+        //1 token per 500 ms
+        admission.drain(start + SECOND / 2);
+        channel.runPendingTasks();
+        assertEquals("login h3", events.get(2));
+        assertEquals(1, admission.getPendingCount());
+
+        //new login doesn't overtake pending one
+        admit(admission, channel, false, "h5", start + SECOND);
+        admission.drain(start + SECOND);
+        channel.runPendingTasks();
+        assertEquals("login h4", events.get(3));
+        assertEquals(1, admission.getPendingCount());
+        assertEquals(4, stats.loginsAccepted.sum());
+    }
+
+    @Test
+    public void testRejectedWhenQueueFullOrWaitTooLong() {
+        LoginAdmission admission = newAdmission(0, 1, 1, 1000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(admission, channel, false, "h1", start);
+        admit(admission, channel, false, "h2", start);
+        admit(admission, channel, false, "h3", start);
+        channel.runPendingTasks();
+        assertEquals("login h1", events.get(0));
+        assertEquals("reject h3", events.get(1));
+
+        admission.drain(start + 2 * SECOND);
+        channel.runPendingTasks();
+        assertEquals("reject h2", events.get(2));
+        assertEquals(2, stats.loginsRejected.sum());
+        assertEquals(0, admission.getPendingCount());
+    }
+
+    @Test
+    public void testAppLoginsHavePriority() {
+        LoginAdmission admission = newAdmission(1, 1, 3, 10_000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(admission, channel, true, "a1", start);
+        admit(admission, channel, false, "h1", start);
+        admit(admission, channel, false, "h2", start);
+        admit(admission, channel, false, "h3", start);
+        admit(admission, channel, true, "a2", start);
+        //queue is full, latest hardware login gives place to app
+        admit(admission, channel, true, "a3", start);
+        admit(admission, channel, false, "h4", start);
+        channel.runPendingTasks();
+        assertEquals("login a1", events.get(0));
+        assertEquals("login h1", events.get(1));
+        assertEquals("reject h3", events.get(2));
+        assertEquals("reject h4", events.get(3));
+
+        //hardware waits for apps
+        admission.drain(start + SECOND);
+        channel.runPendingTasks();
+        assertEquals(5, events.size());
+        assertEquals("login a2", events.get(4));
+
+        admission.drain(start + 2 * SECOND);
+        channel.runPendingTasks();
+        assertEquals("login a3", events.get(5));
+        assertEquals("login h2", events.get(6));
+        assertEquals(0, admission.getPendingCount());
+    }
+
+    @Test
+    public void testChannelDoesntReadWhileLoginIsPending() {
+        LoginAdmission admission = newAdmission(0, 1, 10, 10_000);
+        EmbeddedChannel channel1 = new EmbeddedChannel();
+        EmbeddedChannel channel2 = new EmbeddedChannel();
+        admit(admission, channel1, false, "h1", start);
+        admit(admission, channel2, false, "h2", start);
+        assertTrue(channel1.config().isAutoRead());
+        assertFalse(channel2.config().isAutoRead());
+
+        admission.drain(start + SECOND);
+        channel2.runPendingTasks();
+        assertEquals("login h2", events.get(1));
+        assertTrue(channel2.config().isAutoRead());
+    }
+
+    @Test
+    public void testAppLoginsNotQueuedWithoutAppLimit() {
+        LoginAdmission admission = newAdmission(0, 1, 10, 10_000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(admission, channel, false, "h1", start);
+        admit(admission, channel, false, "h2", start);
+        admit(admission, channel, true, "a1", start);
+        assertEquals("login h1", events.get(0));
+        assertEquals("login a1", events.get(1));
+        assertEquals(1, admission.getPendingCount());
+    }
+
+}
@@ -0,0 +1,127 @@
+package cc.blynk.server.core.dao;
+
+import cc.blynk.server.core.model.AppName;
+import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.PinStorageKey;
+import cc.blynk.server.core.model.Profile;
+import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.utils.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PinStateStorageTest {
+
+    private final Path dataDir = Paths.get(System.getProperty("java.io.tmpdir"), "blynk_pin_state_test");
+
+    @Before
+    public void cleanup() throws IOException {
+        Path folder = dataDir.resolve(PinStateStorage.PIN_STATE_FOLDER);
+        if (Files.exists(folder)) {
+            try (Stream<Path> files = Files.list(folder)) {
+                files.forEach(FileUtils::deleteQuietly);
+            }
+        }
+    }
+
+    private static UserDao makeUserDao() {
+        User user = new User("test@test.com", "", AppName.BLYNK, "local", false);
+        DashBoard dash = new DashBoard();
+        dash.id = 1;
+        user.getProfile().dashBoards = new DashBoard[] {dash};
+
+        ConcurrentMap<UserKey, User> users = new ConcurrentHashMap<>();
+        users.put(new UserKey(user), user);
+        return new UserDao(users, "local");
+    }
+
+    private static DashBoard getDash(UserDao userDao) {
+        return userDao.getByName("test@test.com", AppName.BLYNK).getProfile().dashBoards[0];
+    }
+
+    @Test
+    public void testPinValuesRestoredAfterRestart() {
+        UserDao userDao = makeUserDao();
+        User user = userDao.getByName("test@test.com", AppName.BLYNK);
+        DashBoard dash = getDash(userDao);
+        PinStateStorage pinStateStorage = new PinStateStorage(dataDir, userDao, 64);
+
+        dash.update(0, (byte) 1, PinType.VIRTUAL, "10");
+        dash.update(1, (byte) 2, PinType.DIGITAL, "1");
+        user.markPinsDirty();
+        pinStateStorage.flush();
+
+        dash.update(0, (byte) 1, PinType.VIRTUAL, "11");
+        user.markPinsDirty();
+        pinStateStorage.flush();
+
+        dash.pinStates.removeDevice(1);
+        user.markPinsDirty();
+        pinStateStorage.close();
+
+        //pin updates don't touch profile
+        assertNull(userDao.pollDirty());
+
+        UserDao restartedUserDao = makeUserDao();
+        new PinStateStorage(dataDir, restartedUserDao, 64).close();
+
+        DashBoard restoredDash = getDash(restartedUserDao);
+        assertEquals(1, restoredDash.pinStates.size());
+        assertEquals("11", restoredDash.pinStates.get(0, PinType.VIRTUAL, (byte) 1));
+        assertNull(restoredDash.pinStates.get(1, PinType.DIGITAL, (byte) 2));
+    }
+
+    @Test
+    public void testPinValuesAppliedWhenProfileLoaded() {
+        UserDao userDao = makeUserDao();
+        User user = userDao.getByName("test@test.com", AppName.BLYNK);
+        PinStateStorage pinStateStorage = new PinStateStorage(dataDir, userDao, 64);
+        getDash(userDao).update(0, (byte) 1, PinType.VIRTUAL, "10");
+        user.markPinsDirty();
+        pinStateStorage.close();
+
+        UserDao restartedUserDao = makeUserDao();
+        User restartedUser = restartedUserDao.getByName("test@test.com", AppName.BLYNK);
+        Profile profile = restartedUser.getProfile();
+        restartedUser.setProfileLoader(u -> profile);
+
+        new PinStateStorage(dataDir, restartedUserDao, 64).close();
+        assertFalse(restartedUser.isProfileLoaded());
+
+        //values are kept in snapshot till profile is loaded
+        new PinStateStorage(dataDir, restartedUserDao, 64).close();
+        assertEquals("10", getDash(restartedUserDao).pinStates.get(0, PinType.VIRTUAL, (byte) 1));
+    }
+
+    @Test
+    public void testPinsStorageFromProfileMigrated() {
+        UserDao userDao = makeUserDao();
+        DashBoard dash = getDash(userDao);
+        dash.pinsStorage.put(new PinStorageKey(0, PinType.VIRTUAL, (byte) 5), "55");
+
+        new PinStateStorage(dataDir, userDao, 64).close();
+
+        assertEquals("55", dash.pinStates.get(0, PinType.VIRTUAL, (byte) 5));
+        assertEquals(0, dash.pinsStorage.size());
+        //profile is rewritten without pins storage
+        assertNotNull(userDao.pollDirty());
+
+        UserDao restartedUserDao = makeUserDao();
+        new PinStateStorage(dataDir, restartedUserDao, 64).close();
+        assertEquals("55", getDash(restartedUserDao).pinStates.get(0, PinType.VIRTUAL, (byte) 5));
+    }
+
+}
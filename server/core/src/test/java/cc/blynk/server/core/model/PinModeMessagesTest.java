@@ -0,0 +1,51 @@
+package cc.blynk.server.core.model;
+
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.model.widgets.Widget;
+import cc.blynk.server.core.model.widgets.controls.Button;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PinModeMessagesTest {
+
+    private static Button button(int deviceId, int pin) {
+        Button button = new Button();
+        button.deviceId = deviceId;
+        button.pinType = PinType.DIGITAL;
+        button.pin = (byte) pin;
+        return button;
+    }
+
+    @Test
+    public void testMessageCachedPerDevice() {
+        DashBoard dash = new DashBoard();
+        dash.widgets = new Widget[] {button(0, 1), button(1, 2)};
+
+        String pm0 = dash.buildPMMessage(0);
+        String pm1 = dash.buildPMMessage(1);
+        assertEquals(DashBoard.buildPMMessage(dash.widgets, 0), pm0);
+        assertEquals(DashBoard.buildPMMessage(dash.widgets, 1), pm1);
+        assertSame(pm0, dash.buildPMMessage(0));
+        assertSame(pm1, dash.buildPMMessage(1));
+    }
+
+    @Test
+    public void testCacheInvalidatedOnWidgetsChange() {
+        DashBoard dash = new DashBoard();
+        dash.widgets = new Widget[] {button(0, 1)};
+        String pm = dash.buildPMMessage(0);
+
+        //new widgets array
+        dash.widgets = new Widget[] {button(0, 1), button(0, 3)};
+        assertEquals(DashBoard.buildPMMessage(dash.widgets, 0), dash.buildPMMessage(0));
+        assertEquals(pm.length() * 2 - 2, dash.buildPMMessage(0).length());
+
+        //widget replaced in place
+        dash.widgets[1] = button(0, 4);
+        dash.invalidateWidgetsCache();
+        assertEquals(DashBoard.buildPMMessage(dash.widgets, 0), dash.buildPMMessage(0));
+    }
+
+}
@@ -22,16 +22,16 @@ public class PinStorageSerializationTest {
     public void testSerialize() {
         User user = new User();
         user.name = "123";
-        user.profile = new Profile();
-        user.profile.dashBoards = new DashBoard[] {
+        user.setProfile(new Profile());
+        user.getProfile().dashBoards = new DashBoard[] {
                 new DashBoard()
         };
         user.lastModifiedTs = 0;
-        user.profile.dashBoards[0].pinsStorage = new HashMap<>();
+        user.getProfile().dashBoards[0].pinsStorage = new HashMap<>();
         PinStorageKey pinStorageKey = new PinStorageKey(0, PinType.VIRTUAL, (byte) 0);
         PinStorageKey pinStorageKey2 = new PinStorageKey(0, PinType.DIGITAL, (byte) 1);
-        user.profile.dashBoards[0].pinsStorage.put(pinStorageKey, "0");
-        user.profile.dashBoards[0].pinsStorage.put(pinStorageKey2, "1");
+        user.getProfile().dashBoards[0].pinsStorage.put(pinStorageKey, "0");
+        user.getProfile().dashBoards[0].pinsStorage.put(pinStorageKey2, "1");
 
         String result = user.toString();
         assertTrue(result.contains("0-v0"));
@@ -46,13 +46,13 @@ public class PinStorageSerializationTest {
 
         User user = JsonParser.parseUserFromString(expectedString);
         assertNotNull(user);
-        assertEquals(2, user.profile.dashBoards[0].pinsStorage.size());
+        assertEquals(2, user.getProfile().dashBoards[0].pinsStorage.size());
 
         PinStorageKey pinStorageKey = new PinStorageKey(0, PinType.VIRTUAL, (byte) 0);
         PinStorageKey pinStorageKey2 = new PinStorageKey(0, PinType.DIGITAL, (byte) 1);
 
-        assertEquals("0", user.profile.dashBoards[0].pinsStorage.get(pinStorageKey));
-        assertEquals("1", user.profile.dashBoards[0].pinsStorage.get(pinStorageKey2));
+        assertEquals("0", user.getProfile().dashBoards[0].pinsStorage.get(pinStorageKey));
+        assertEquals("1", user.getProfile().dashBoards[0].pinsStorage.get(pinStorageKey2));
     }
 
 
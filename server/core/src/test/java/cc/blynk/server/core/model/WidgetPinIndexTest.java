@@ -0,0 +1,56 @@
+package cc.blynk.server.core.model;
+
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.model.widgets.Widget;
+import cc.blynk.server.core.model.widgets.controls.Button;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class WidgetPinIndexTest {
+
+    private static Button button(int deviceId, int pin) {
+        Button button = new Button();
+        button.deviceId = deviceId;
+        button.pinType = PinType.DIGITAL;
+        button.pin = (byte) pin;
+        return button;
+    }
+
+    @Test
+    public void testWidgetFoundByPin() {
+        DashBoard dash = new DashBoard();
+        Button button1 = button(0, 1);
+        Button button2 = button(1, 1);
+        dash.widgets = new Widget[] {button1, button2};
+
+        assertSame(button1, dash.findWidgetByPin(0, (byte) 1, PinType.DIGITAL));
+        assertSame(button2, dash.findWidgetByPin(1, (byte) 1, PinType.DIGITAL));
+        assertNull(dash.findWidgetByPin(0, (byte) 2, PinType.DIGITAL));
+        assertNull(dash.findWidgetByPin(0, (byte) 1, PinType.VIRTUAL));
+        //cached lookups return same result
+        assertSame(button1, dash.findWidgetByPin(0, (byte) 1, PinType.DIGITAL));
+        assertNull(dash.findWidgetByPin(0, (byte) 2, PinType.DIGITAL));
+    }
+
+    @Test
+    public void testIndexInvalidatedOnWidgetsChange() {
+        DashBoard dash = new DashBoard();
+        dash.widgets = new Widget[] {button(0, 1)};
+        assertNull(dash.findWidgetByPin(0, (byte) 2, PinType.DIGITAL));
+
+        //new widgets array
+        Button button2 = button(0, 2);
+        dash.widgets = new Widget[] {dash.widgets[0], button2};
+        assertSame(button2, dash.findWidgetByPin(0, (byte) 2, PinType.DIGITAL));
+
+        //widget replaced in place
+        Button button3 = button(0, 3);
+        dash.widgets[1] = button3;
+        dash.invalidateWidgetsCache();
+        assertNull(dash.findWidgetByPin(0, (byte) 2, PinType.DIGITAL));
+        assertSame(button3, dash.findWidgetByPin(0, (byte) 3, PinType.DIGITAL));
+    }
+
+}
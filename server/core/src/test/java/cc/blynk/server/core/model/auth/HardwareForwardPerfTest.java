@@ -0,0 +1,91 @@
+package cc.blynk.server.core.model.auth;
+
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.utils.BlynkByteBufUtil;
+import cc.blynk.utils.ParseUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
+import static cc.blynk.utils.StringUtils.BODY_SEPARATOR;
+import static cc.blynk.utils.StringUtils.prependDashIdAndDeviceId;
+import static cc.blynk.utils.StringUtils.split3;
+
+/**
+ * Hardware write command forwarding to app. Old way decodes body to string, splits it and encodes
+ * it again with dashId and deviceId prefix. New way parses pin right from incoming buffer and
+ * forwards body bytes as is.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class HardwareForwardPerfTest {
+
+    @Param({"vw 1 100", "vw 10 22222.32", "vw 99 ddddddd dddddddddddddd ddddddddddddd dddddddddddddddddddddddddddddd "
+            + "dddddddddddddddddd dddddddddddddddddd ddddddddddddddddddddd dddddddddddddddd dddddddddddd"})
+    public String data;
+
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() {
+        frame = BlynkByteBufUtil.makeUTF8StringMessage(HARDWARE, 1, data.replaceAll(" ", "\0"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public void decodeAndEncode(Blackhole bh) {
+        frame.readerIndex(5);
+        String body = frame.readSlice(frame.readableBytes()).toString(CharsetUtil.UTF_8);
+
+        String[] splitBody = split3(body);
+        bh.consume(PinType.getPinType(splitBody[0].charAt(0)));
+        bh.consume(ParseUtil.parseByte(splitBody[1]));
+        bh.consume(splitBody[2]);
+
+        ByteBuf msg = BlynkByteBufUtil.makeUTF8StringMessage(HARDWARE, 1, prependDashIdAndDeviceId(1, 0, body));
+        bh.consume(msg);
+        msg.release();
+    }
+
+    @Benchmark
+    public void forwardBytes(Blackhole bh) {
+        frame.readerIndex(5);
+        ByteBuf body = frame.readSlice(frame.readableBytes());
+
+        int from = body.readerIndex();
+        int to = body.writerIndex();
+        int i1 = body.indexOf(from + 1, to, (byte) BODY_SEPARATOR);
+        int i2 = body.indexOf(i1 + 1, to, (byte) BODY_SEPARATOR);
+        bh.consume(PinType.getPinType((char) body.getByte(from)));
+        bh.consume(ParseUtil.parseByte(body, i1 + 1, i2));
+        bh.consume(body.toString(i2 + 1, to - i2 - 1, CharsetUtil.UTF_8));
+
+        ByteBuf msg = BlynkByteBufUtil.makeDeviceMessage(HARDWARE, 1, 1, 0, body);
+        bh.consume(msg);
+        msg.release();
+    }
+
+}
@@ -56,29 +56,29 @@ public class SessionPerfTest {
         User user = new User();
         user.dashTokens.putIfAbsent(DASH_ID, "1");
 
-        HardwareStateHolder hardwareStateHolder = new HardwareStateHolder(0, DASH_ID, user, "1");
+        HardwareStateHolder hardwareStateHolder = new HardwareStateHolder(DASH_ID, 0, user, "1");
 
         // create 1 hardware channel and a session
         session1 = new Session(null);
-        session1.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session1.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
 
         // create two hardware channels and a session
         session2 = new Session(null);
-        session2.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session2.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session2.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session2.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
 
         // create 3 hardware channels and a session
         session3 = new Session(null);
-        session3.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session3.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session3.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session3.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session3.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session3.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
 
         // create 4 hardware channels and a session
         session4 = new Session(null);
-        session4.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session4.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session4.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
-        session4.hardwareChannels.add(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session4.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session4.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session4.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
+        session4.addHardChannel(new EmbeddedChannel(newChannelHandler(hardwareStateHolder)));
     }
 
     @Benchmark
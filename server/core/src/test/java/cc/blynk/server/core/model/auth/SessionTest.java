@@ -0,0 +1,140 @@
+package cc.blynk.server.core.model.auth;
+
+import cc.blynk.server.core.session.HardwareStateHolder;
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
+import static cc.blynk.utils.StateHolderUtil.setHardState;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionTest {
+
+    private static final User user = new User();
+
+    private static EmbeddedChannel login(Session session, int dashId, int deviceId, String token) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        setHardState(channel, new HardwareStateHolder(dashId, deviceId, user, token));
+        session.addHardChannel(channel);
+        return channel;
+    }
+
+    private static void assertReceived(EmbeddedChannel channel, int times) {
+        for (int i = 0; i < times; i++) {
+            ByteBuf msg = channel.readOutbound();
+            assertEquals(HARDWARE, msg.getUnsignedByte(0));
+            msg.release();
+        }
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testHardwareChannelsRoutedByDashAndDevice() {
+        Session session = new Session(null);
+        EmbeddedChannel dash1Device0 = login(session, 1, 0, "token1");
+        EmbeddedChannel dash1Device1 = login(session, 1, 1, "token2");
+        EmbeddedChannel dash2Device0 = login(session, 2, 0, "token3");
+
+        assertFalse(session.sendMessageToHardware(1, HARDWARE, 1, "vw 1 1", 0));
+        assertFalse(session.sendMessageToHardware(1, HARDWARE, 2, "vw 1 1"));
+        assertFalse(session.sendMessageToHardware(1, HARDWARE, 3, "vw 1 1", 0, 1, 0));
+        assertTrue(session.sendMessageToHardware(1, HARDWARE, 4, "vw 1 1", 5, 6));
+
+        assertReceived(dash1Device0, 3);
+        assertReceived(dash1Device1, 2);
+        assertReceived(dash2Device0, 0);
+
+        assertArrayEquals(new Channel[] {dash1Device1}, session.getHardChannelsByToken("token2"));
+        assertTrue(session.isHardwareConnected(2));
+        assertTrue(session.isHardwareConnected(2, 0));
+        assertFalse(session.isHardwareConnected(2, 1));
+    }
+
+    @Test
+    public void testClosedHardwareChannelRemovedFromIndex() {
+        Session session = new Session(null);
+        login(session, 1, 0, "token1");
+        EmbeddedChannel second = login(session, 1, 0, "token1");
+
+        assertEquals(2, session.getHardChannels(1, 0).length);
+
+        session.closeHardwareChannelByDeviceId(1, 0);
+
+        assertEquals(0, session.hardwareChannels.size());
+        assertFalse(session.isHardwareConnected(1));
+        assertEquals(0, session.getHardChannelsByToken("token1").length);
+        assertTrue(session.sendMessageToHardware(1, HARDWARE, 1, "vw 1 1", 0));
+        assertFalse(second.isOpen());
+    }
+
+    private static String readBody(EmbeddedChannel channel) {
+        ByteBuf msg = channel.readOutbound();
+        String body = msg.toString(5, msg.readableBytes() - 5, CharsetUtil.UTF_8);
+        msg.release();
+        return body;
+    }
+
+    @Test
+    public void testAppWritesFlushedOncePerTick() {
+        GlobalStats stats = new GlobalStats();
+        EmbeddedChannel app = new EmbeddedChannel();
+        Session session = new Session(app.eventLoop(), new WriteCoalescing(true, 3, 0, false, stats));
+        session.addAppChannel(app);
+
+        session.sendToApps(HARDWARE, 1, 1, 0, "vw\u00001\u00001");
+        session.sendToApps(HARDWARE, 2, 1, 0, "vw\u00001\u00002");
+        assertNull(app.readOutbound());
+
+        app.runPendingTasks();
+        assertEquals("1\u0000vw\u00001\u00001", readBody(app));
+        assertEquals("1\u0000vw\u00001\u00002", readBody(app));
+        assertNull(app.readOutbound());
+
+        //max messages reached, flushed right away
+        session.sendToApps(HARDWARE, 3, 1, 0, "vw\u00001\u00003");
+        session.sendToApps(HARDWARE, 4, 1, 0, "vw\u00001\u00004");
+        session.sendToApps(HARDWARE, 5, 1, 0, "vw\u00001\u00005");
+        assertReceived(app, 3);
+
+        assertEquals(5, stats.appMessagesDelivered.sum());
+        assertEquals(2, stats.appFlushes.sum());
+    }
+
+    @Test
+    public void testLatestPinValueDeliveredWhenAppBecomesWritable() {
+        GlobalStats stats = new GlobalStats();
+        EmbeddedChannel app = new EmbeddedChannel();
+        app.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 2));
+        Session session = new Session(app.eventLoop(), new WriteCoalescing(true, 64, 0, true, stats));
+        session.addAppChannel(app);
+
+        //first message is not flushed yet, so channel is not writable after it
+        for (int i = 1; i <= 5; i++) {
+            session.sendToApps(HARDWARE, i, 1, 0, "vw\u00001\u0000" + i);
+            session.sendToApps(HARDWARE, i, 1, 0, "vw\u00002\u0000" + i);
+        }
+        assertFalse(app.isWritable());
+
+        app.runPendingTasks();
+        assertTrue(app.isWritable());
+        session.onAppChannelWritable(app);
+
+        assertEquals("1\u0000vw\u00001\u00001", readBody(app));
+        assertEquals("1\u0000vw\u00002\u00005", readBody(app));
+        assertEquals("1\u0000vw\u00001\u00005", readBody(app));
+        assertNull(app.readOutbound());
+
+        assertEquals(3, stats.appMessagesDelivered.sum());
+        assertEquals(7, stats.appMessagesCollapsed.sum());
+    }
+
+}
@@ -0,0 +1,137 @@
+package cc.blynk.server.core.reporting;
+
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ColumnarReportingStorage;
+import cc.blynk.server.core.reporting.storage.FileReportingStorage;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GzippedCSVInputTest {
+
+    private static final String username = "test@test.com";
+    private static final int COUNT = 10000;
+
+    @Test
+    public void testStreamWholeSeriesAndRangeFromFiles() throws Exception {
+        try (ReportingStorage storage = new FileReportingStorage(Files.createTempDirectory("csv_export").toString())) {
+            fillAndCheck(storage);
+        }
+    }
+
+    @Test
+    public void testStreamWholeSeriesAndRangeFromSegments() throws Exception {
+        try (ReportingStorage storage = new ColumnarReportingStorage(Files.createTempDirectory("csv_export").toString(), false)) {
+            fillAndCheck(storage);
+        }
+    }
+
+    @Test
+    public void testStreamWithinReadersPool() throws Exception {
+        ExecutorService readers = Executors.newSingleThreadExecutor();
+        try (ReportingStorage storage = new FileReportingStorage(Files.createTempDirectory("csv_export").toString())) {
+            fill(storage);
+
+            GzippedCSVInput input = new GzippedCSVInput(storage, readers, username, 1, 0, PinType.VIRTUAL, (byte) 1,
+                    GraphType.MINUTE, 45005, Long.MAX_VALUE);
+            Semaphore chunkReady = new Semaphore(0);
+            input.onChunkReady(chunkReady::release);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (!input.isEndOfInput()) {
+                ByteBuf chunk = input.readChunk(ByteBufAllocator.DEFAULT);
+                if (chunk == null) {
+                    //not read yet, transfer is resumed by listener
+                    assertTrue(chunkReady.tryAcquire(5, TimeUnit.SECONDS));
+                    continue;
+                }
+                chunk.readBytes(out, chunk.readableBytes());
+                chunk.release();
+            }
+            input.close();
+
+            List<String> lines = unzip(out);
+            assertEquals(5499, lines.size());
+            assertEquals("4501.0,45010", lines.get(0));
+            assertEquals("9999.0,99990", lines.get(lines.size() - 1));
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private static void fill(ReportingStorage storage) throws Exception {
+        for (int i = 0; i < COUNT; i++) {
+            storage.append(username, 1, 0, 'v', (byte) 1, GraphType.MINUTE, i, i * 10);
+        }
+        storage.flush();
+    }
+
+    private static void fillAndCheck(ReportingStorage storage) throws Exception {
+        fill(storage);
+
+        assertEquals(COUNT, storage.size(username, 1, 0, PinType.VIRTUAL, (byte) 1, GraphType.MINUTE));
+        assertEquals(-1, storage.size(username, 1, 0, PinType.VIRTUAL, (byte) 2, GraphType.MINUTE));
+
+        List<String> lines = export(new GzippedCSVInput(storage, Runnable::run, username, 1, 0, PinType.VIRTUAL, (byte) 1,
+                GraphType.MINUTE, 0, Long.MAX_VALUE));
+        assertEquals(COUNT, lines.size());
+        assertEquals("0.0,0", lines.get(0));
+        assertEquals("9999.0,99990", lines.get(COUNT - 1));
+
+        lines = export(new GzippedCSVInput(storage, Runnable::run, username, 1, 0, PinType.VIRTUAL, (byte) 1,
+                GraphType.MINUTE, 45005, 90000));
+        assertEquals(4500, lines.size());
+        assertEquals("4501.0,45010", lines.get(0));
+        assertEquals("9000.0,90000", lines.get(lines.size() - 1));
+
+        lines = export(new GzippedCSVInput(storage, Runnable::run, username, 1, 0, PinType.VIRTUAL, (byte) 1,
+                GraphType.MINUTE, 200000, Long.MAX_VALUE));
+        assertTrue(lines.isEmpty());
+    }
+
+    private static List<String> export(GzippedCSVInput input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int chunks = 0;
+        while (!input.isEndOfInput()) {
+            ByteBuf chunk = input.readChunk(ByteBufAllocator.DEFAULT);
+            chunk.readBytes(out, chunk.readableBytes());
+            chunk.release();
+            chunks++;
+        }
+        input.close();
+        assertTrue(chunks > 0);
+
+        return unzip(out);
+    }
+
+    private static List<String> unzip(ByteArrayOutputStream out) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,189 @@
+package cc.blynk.server.core.reporting;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReportingReadProcessorTest {
+
+    private static final String username = "test@test.com";
+
+    private ReportingStorage storage;
+    private ReportingReadProcessor readProcessor;
+
+    @Before
+    public void init() throws Exception {
+        storage = mock(ReportingStorage.class);
+        when(storage.read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class)))
+                .thenAnswer(invocation -> entries((Integer) invocation.getArguments()[5], 100));
+        readProcessor = new ReportingReadProcessor(storage, 2, 100, 1);
+    }
+
+    @After
+    public void shutdown() {
+        readProcessor.close();
+    }
+
+    @Test
+    public void testTailIsServedFromCacheUntilInvalidated() throws Exception {
+        byte[] data = read(60);
+        assertEquals(60 * 16, data.length);
+
+        //same and smaller windows are served from memory
+        assertSame(data, read(60));
+        byte[] tail = read(10);
+        assertArrayEquals(entriesArray(10, 100), tail);
+        verify(storage, times(1)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+
+        //whole series is read, so any bigger window is served from memory as well
+        assertEquals(100 * 16, read(200).length);
+        assertEquals(100 * 16, read(300).length);
+        verify(storage, times(2)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+
+        readProcessor.invalidate(username, 1, 0, PinType.VIRTUAL.pintTypeChar, (byte) 1, GraphType.MINUTE);
+        read(60);
+        verify(storage, times(3)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+
+        //other resolution is separate series
+        read(60, GraphType.HOURLY);
+        verify(storage, times(4)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+    }
+
+    @Test
+    public void testConcurrentIdenticalReadsAreCoalesced() throws Exception {
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseRead = new CountDownLatch(1);
+        when(storage.read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), eq(60), any(GraphType.class), any(AggregationFunction.class)))
+                .thenAnswer(invocation -> {
+                    readStarted.countDown();
+                    releaseRead.await();
+                    return entries(60, 100);
+                });
+
+        CompletableFuture<byte[]> first = readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 60, GraphType.MINUTE);
+        assertTrue(readStarted.await(1, TimeUnit.SECONDS));
+        CompletableFuture<byte[]> second = readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 60, GraphType.MINUTE);
+        assertSame(first, second);
+
+        releaseRead.countDown();
+        assertEquals(60 * 16, second.get(1, TimeUnit.SECONDS).length);
+        verify(storage, times(1)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+    }
+
+    @Test
+    public void testReadAfterInvalidationIsNotJoinedToOlderRead() throws Exception {
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseRead = new CountDownLatch(1);
+        when(storage.read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), eq(60), any(GraphType.class), any(AggregationFunction.class)))
+                .thenAnswer(invocation -> {
+                    readStarted.countDown();
+                    releaseRead.await();
+                    return entries(60, 100);
+                }).thenAnswer(invocation -> entries(60, 101));
+
+        CompletableFuture<byte[]> first = readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 60, GraphType.MINUTE);
+        assertTrue(readStarted.await(1, TimeUnit.SECONDS));
+        readProcessor.invalidate(username, 1, 0, PinType.VIRTUAL.pintTypeChar, (byte) 1, GraphType.MINUTE);
+        CompletableFuture<byte[]> second = readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 60, GraphType.MINUTE);
+        assertNotSame(first, second);
+        assertArrayEquals(entriesArray(60, 101), second.get(1, TimeUnit.SECONDS));
+
+        releaseRead.countDown();
+        assertArrayEquals(entriesArray(60, 100), first.get(1, TimeUnit.SECONDS));
+
+        //older read is not cached over newer one
+        assertArrayEquals(entriesArray(60, 101), read(60));
+        verify(storage, times(2)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+    }
+
+    @Test
+    public void testInvalidationOfOtherSeriesKeepsReadCached() throws Exception {
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseRead = new CountDownLatch(1);
+        when(storage.read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), eq(60), any(GraphType.class), any(AggregationFunction.class)))
+                .thenAnswer(invocation -> {
+                    readStarted.countDown();
+                    releaseRead.await();
+                    return entries(60, 100);
+                });
+
+        CompletableFuture<byte[]> first = readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 60, GraphType.MINUTE);
+        assertTrue(readStarted.await(1, TimeUnit.SECONDS));
+        readProcessor.invalidate(username, 1, 0, PinType.VIRTUAL.pintTypeChar, (byte) 2, GraphType.MINUTE);
+        releaseRead.countDown();
+        byte[] data = first.get(1, TimeUnit.SECONDS);
+
+        assertSame(data, read(60));
+        verify(storage, times(1)).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), anyInt(), any(GraphType.class), any(AggregationFunction.class));
+    }
+
+    @Test
+    public void testWholeCachedSeriesExportedWithoutReads() throws Exception {
+        //whole series is read and cached
+        assertEquals(100 * 16, read(200).length);
+
+        GzippedCSVInput csv = readProcessor.exportCSV(username, 1, 0, PinType.VIRTUAL, (byte) 1, GraphType.MINUTE,
+                0, Long.MAX_VALUE).get(1, TimeUnit.SECONDS);
+        assertNotNull(csv);
+        ByteBuf chunk = csv.readChunk(ByteBufAllocator.DEFAULT);
+        assertTrue(csv.isEndOfInput());
+        assertTrue(chunk.readableBytes() > 0);
+        chunk.release();
+        csv.close();
+
+        verify(storage, never()).size(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), any(GraphType.class));
+        verify(storage, never()).read(anyString(), anyInt(), anyInt(), any(PinType.class), anyByte(), any(GraphType.class), anyInt(), any(ByteBuffer.class));
+    }
+
+    private byte[] read(int count) throws Exception {
+        return read(count, GraphType.MINUTE);
+    }
+
+    private byte[] read(int count, GraphType type) throws Exception {
+        return readProcessor.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, count, type).get(1, TimeUnit.SECONDS);
+    }
+
+    //storage returns buffer positioned at the end of data
+    private static ByteBuffer entries(int count, int total) {
+        int entries = Math.min(count, total);
+        ByteBuffer buffer = ByteBuffer.allocate(entries * 16);
+        for (int i = total - entries; i < total; i++) {
+            buffer.putDouble(i);
+            buffer.putLong(i * 1000L);
+        }
+        return buffer;
+    }
+
+    private static byte[] entriesArray(int count, int total) {
+        return entries(count, total).array();
+    }
+
+}
@@ -0,0 +1,42 @@
+package cc.blynk.server.core.reporting.average;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AggregationMapTest {
+
+    @Test
+    public void testGrowAndRemoveOutdated() {
+        UserIdRegistry userIds = new UserIdRegistry();
+        AggregationMap map = new AggregationMap(userIds, 4);
+
+        int userId = userIds.getId("test@test.com");
+        for (int i = 0; i < 10000; i++) {
+            map.add(userId, 1, 0, 'v', (byte) (i % 128), i / 128, i);
+            map.add(userId, 1, 0, 'v', (byte) (i % 128), i / 128, i);
+        }
+        assertEquals(10000, map.size());
+
+        AggregationValue value = map.get(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 5, 0));
+        assertNotNull(value);
+        assertEquals(5, value.calcAverage(), 0.0001);
+        assertNull(map.get(new AggregationKey("test2@test.com", 1, 0, 'v', (byte) 5, 0)));
+
+        Map<AggregationKey, AggregationValue> removed = map.removeOutdated(10);
+        assertEquals(10 * 128, removed.size());
+        assertEquals(10000 - 10 * 128, map.size());
+        assertEquals(128 * 9 + 3, removed.get(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 3, 9)).calcAverage(), 0.0001);
+        assertNull(map.get(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 3, 9)));
+        assertNotNull(map.get(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 3, 10)));
+
+        map.add(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 3, 9), new AggregationValue(10, 2, 4, 6, 6));
+        assertEquals(5, map.get(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 3, 9)).calcAverage(), 0.0001);
+        assertEquals(10000 - 10 * 128 + 1, map.toMap().size());
+    }
+
+}
@@ -1,8 +1,10 @@
 package cc.blynk.server.core.reporting.average;
 
 import cc.blynk.server.core.dao.ReportingDao;
+import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.utils.ServerProperties;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -11,13 +13,16 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static cc.blynk.server.core.reporting.average.AverageAggregatorProcessor.DAY;
 import static cc.blynk.server.core.reporting.average.AverageAggregatorProcessor.HOUR;
-import static cc.blynk.utils.ReportingUtil.getReportingFolder;
+import static cc.blynk.server.core.reporting.average.AverageAggregatorProcessor.MINUTE;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
 
 /**
  * The Blynk Project.
@@ -26,16 +31,95 @@ import static org.junit.Assert.assertTrue;
  */
 public class AverageAggregatorTest {
 
-    private final String reportingFolder = getReportingFolder(System.getProperty("java.io.tmpdir"));
+    private String reportingFolder;
+    private Path walFolder;
+
+    @Before
+    public void init() throws IOException {
+        reportingFolder = Files.createTempDirectory("reporting").toString();
+        walFolder = Paths.get(reportingFolder, AggregationLog.LOG_FOLDER);
+    }
 
     private static long getMillis(int year, int month, int dayOfMonth, int hour, int minute) {
         LocalDateTime dateTime = LocalDateTime.of(year, month, dayOfMonth, hour, minute);
         return dateTime.toInstant(ZoneOffset.ofTotalSeconds(0)).toEpochMilli();
     }
 
+    private static void rollUpAll(AverageAggregatorProcessor averageAggregator) {
+        Map<AggregationKey, AggregationValue> closedMinutes = averageAggregator.removeOutdated(GraphType.MINUTE, Long.MAX_VALUE);
+        List<AggregationKey> keys = new ArrayList<>(closedMinutes.keySet());
+        Collections.sort(keys, AggregationKey.AGGREGATION_KEY_COMPARATOR);
+        for (AggregationKey key : keys) {
+            averageAggregator.rollUp(key, closedMinutes.get(key));
+        }
+    }
+
+    @Test
+    public void testMinMaxLastRolledUp() {
+        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
+        String username = "test";
+        char pinType = PinType.VIRTUAL.pintTypeChar;
+        int dashId = 1;
+        byte pin = 1;
+
+        for (int minute = 0; minute < 60; minute++) {
+            long ts = getMillis(2015, 8, 1, 0, minute);
+            averageAggregator.collect(username, dashId, 0, pinType, pin, ts, minute);
+            averageAggregator.collect(username, dashId, 0, pinType, pin, ts + 1000, -minute);
+        }
+        assertEquals(60, averageAggregator.getMinute().size());
+
+        AggregationValue minuteValue = averageAggregator.getMinute().get(new AggregationKey(username, dashId, 0, pinType, pin, getMillis(2015, 8, 1, 0, 10) / MINUTE));
+        assertEquals(-10, minuteValue.getMin(), 0);
+        assertEquals(10, minuteValue.getMax(), 0);
+        assertEquals(-10, minuteValue.getLast(), 0);
+        assertEquals(2, minuteValue.getCount());
+
+        rollUpAll(averageAggregator);
+
+        AggregationValue hourlyValue = averageAggregator.getHourly().get(new AggregationKey(username, dashId, 0, pinType, pin, getMillis(2015, 8, 1, 0, 0) / HOUR));
+        assertEquals(0, hourlyValue.calcAverage(), 0);
+        assertEquals(-59, hourlyValue.getMin(), 0);
+        assertEquals(59, hourlyValue.getMax(), 0);
+        assertEquals(-59, hourlyValue.getLast(), 0);
+        assertEquals(120, hourlyValue.getCount());
+
+        AggregationValue dailyValue = averageAggregator.getDaily().get(new AggregationKey(username, dashId, 0, pinType, pin, getMillis(2015, 8, 1, 0, 0) / DAY));
+        assertEquals(120, dailyValue.getCount());
+        assertEquals(-59, dailyValue.getLast(), 0);
+    }
+
+    @Test
+    public void testLateMinuteNotRolledIntoStoredBucket() {
+        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
+        String username = "test";
+        char pinType = PinType.VIRTUAL.pintTypeChar;
+        int dashId = 1;
+        byte pin = 1;
+
+        long ts = getMillis(2015, 8, 1, 0, 59);
+        averageAggregator.collect(username, dashId, 0, pinType, pin, ts, 10);
+        averageAggregator.collect(username, dashId, 0, pinType, pin, ts + MINUTE, 20);
+
+        //minute 00:59 failed to store and was put back
+        Map<AggregationKey, AggregationValue> closedMinutes = averageAggregator.removeOutdated(GraphType.MINUTE, (ts + MINUTE) / MINUTE);
+        AggregationKey lateKey = closedMinutes.keySet().iterator().next();
+        averageAggregator.restore(GraphType.MINUTE, lateKey, closedMinutes.get(lateKey));
+
+        //hour 00 is closed and stored without it
+        assertEquals(0, averageAggregator.removeOutdated(GraphType.HOURLY, (ts + MINUTE) / HOUR).size());
+
+        rollUpAll(averageAggregator);
+
+        assertEquals(1, averageAggregator.getHourly().size());
+        assertEquals(20, averageAggregator.getHourly().get(new AggregationKey(username, dashId, 0, pinType, pin, (ts + MINUTE) / HOUR)).calcAverage(), 0);
+        //day is not closed yet, so late minute is still counted there
+        assertEquals(2, averageAggregator.getDaily().get(new AggregationKey(username, dashId, 0, pinType, pin, ts / DAY)).getCount());
+    }
+
     @Test
     public void testAverageWorksOkForOnePin() {
-        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor("");
+        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
         String username = "test";
         char pinType = PinType.VIRTUAL.pintTypeChar;
         int dashId = 1;
@@ -52,6 +136,11 @@ public class AverageAggregatorTest {
         }
         expectedAverage /= COUNT;
 
+        assertEquals(1, averageAggregator.getMinute().size());
+        assertEquals(0, averageAggregator.getHourly().size());
+        rollUpAll(averageAggregator);
+
+        assertEquals(0, averageAggregator.getMinute().size());
         assertEquals(1, averageAggregator.getHourly().size());
         assertEquals(1, averageAggregator.getDaily().size());
 
@@ -61,7 +150,7 @@ public class AverageAggregatorTest {
 
     @Test
     public void testAverageWorksForOneDay() {
-        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor("");
+        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
         String username = "test";
         char pinType = PinType.VIRTUAL.pintTypeChar;
         int dashId = 1;
@@ -81,6 +170,7 @@ public class AverageAggregatorTest {
             }
             expectedDailyAverage += expectedAverage;
             expectedAverage /= COUNT;
+            rollUpAll(averageAggregator);
 
             assertEquals(hour + 1, averageAggregator.getHourly().size());
 
@@ -94,12 +184,7 @@ public class AverageAggregatorTest {
     }
 
     @Test
-    public void testTempFilesCreated() throws IOException {
-        Path dir = Paths.get(reportingFolder, "");
-        if (Files.notExists(dir)) {
-            Files.createDirectories(dir);
-        }
-
+    public void testStateRestoredAfterClose() throws IOException {
         AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
 
         String username = "test";
@@ -121,6 +206,7 @@ public class AverageAggregatorTest {
             }
             expectedDailyAverage += expectedAverage;
             expectedAverage /= COUNT;
+            rollUpAll(averageAggregator);
 
             assertEquals(hour + 1, averageAggregator.getHourly().size());
 
@@ -132,26 +218,63 @@ public class AverageAggregatorTest {
         assertEquals(1, averageAggregator.getDaily().size());
         assertEquals(expectedDailyAverage, averageAggregator.getDaily().get(new AggregationKey(username, dashId, 0, pinType, pin, getMillis(2015, 8, 1, 0, 0) / DAY)).calcAverage(), 0);
 
-
         averageAggregator.close();
 
-        assertTrue(Files.exists(Paths.get(reportingFolder, AverageAggregatorProcessor.HOURLY_TEMP_FILENAME)));
-        assertTrue(Files.exists(Paths.get(reportingFolder, AverageAggregatorProcessor.DAILY_TEMP_FILENAME)));
-
         averageAggregator = new AverageAggregatorProcessor(reportingFolder);
 
         assertEquals(24, averageAggregator.getHourly().size());
         assertEquals(1, averageAggregator.getDaily().size());
         assertEquals(expectedDailyAverage, averageAggregator.getDaily().get(new AggregationKey(username, dashId, 0, pinType, pin, getMillis(2015, 8, 1, 0, 0) / DAY)).calcAverage(), 0);
+        averageAggregator.close();
 
-        assertTrue(Files.notExists(Paths.get(reportingFolder, AverageAggregatorProcessor.HOURLY_TEMP_FILENAME)));
-        assertTrue(Files.notExists(Paths.get(reportingFolder, AverageAggregatorProcessor.DAILY_TEMP_FILENAME)));
+        //only latest snapshot and empty log are kept
+        try (Stream<Path> files = Files.list(walFolder)) {
+            assertEquals(2, files.count());
+        }
 
         ReportingDao reportingDao = new ReportingDao(reportingFolder, new ServerProperties(Collections.emptyMap()));
+        assertEquals(24, reportingDao.averageAggregator.getHourly().size());
+        reportingDao.averageAggregator.close();
+    }
+
+    @Test
+    public void testStateRestoredAfterCrash() throws IOException {
+        AverageAggregatorProcessor averageAggregator = new AverageAggregatorProcessor(reportingFolder);
+
+        String username = "test";
+        char pinType = PinType.VIRTUAL.pintTypeChar;
+        int dashId = 1;
+        byte pin = 1;
+        long ts = getMillis(2015, 8, 1, 0, 0);
+
+        for (int i = 0; i < 100; i++) {
+            averageAggregator.collect(username, dashId, 0, pinType, pin, ts, i);
+        }
+        rollUpAll(averageAggregator);
+        averageAggregator.checkpoint();
+
+        for (int i = 0; i < 10000; i++) {
+            averageAggregator.collect(username, dashId, 0, pinType, pin, ts + MINUTE, i);
+            averageAggregator.collect(username + i % 100, dashId, 1, pinType, pin, ts + MINUTE, i);
+        }
+        averageAggregator.flushLog();
+
+        //no close, emulating kill -9
+        AverageAggregatorProcessor restored = new AverageAggregatorProcessor(reportingFolder);
 
-        reportingDao.delete(username, dashId, 0, PinType.VIRTUAL, pin);
-        assertTrue(Files.notExists(Paths.get(reportingFolder, AverageAggregatorProcessor.HOURLY_TEMP_FILENAME)));
-        assertTrue(Files.notExists(Paths.get(reportingFolder, AverageAggregatorProcessor.DAILY_TEMP_FILENAME)));
+        assertEquals(101, restored.getMinute().size());
+        AggregationValue value = restored.getMinute().get(new AggregationKey(username, dashId, 0, pinType, pin, (ts + MINUTE) / MINUTE));
+        assertEquals(10000, value.getCount());
+        assertEquals(4999.5, value.calcAverage(), 0.0001);
+        assertEquals(9999, value.getLast(), 0);
+        assertEquals(100, restored.getMinute().get(new AggregationKey(username + 7, dashId, 1, pinType, pin, (ts + MINUTE) / MINUTE)).getCount());
+
+        assertEquals(1, restored.getHourly().size());
+        assertEquals(49.5, restored.getHourly().get(new AggregationKey(username, dashId, 0, pinType, pin, ts / HOUR)).calcAverage(), 0.0001);
+        assertEquals(1, restored.getDaily().size());
+
+        restored.close();
+        averageAggregator.close();
     }
 
 }
@@ -0,0 +1,112 @@
+package cc.blynk.server.core.reporting.raw;
+
+import cc.blynk.utils.FileUtils;
+import cc.blynk.utils.NumberUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RawDataProcessorTest {
+
+    private final String reportingFolder = Paths.get(System.getProperty("java.io.tmpdir"), "raw_test").toString();
+
+    @Before
+    public void cleanup() throws IOException {
+        Path spillFolder = Paths.get(reportingFolder, RawDataSpill.SPILL_FOLDER);
+        if (Files.exists(spillFolder)) {
+            try (Stream<Path> files = Files.list(spillFolder)) {
+                files.forEach(FileUtils::deleteQuietly);
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowIsSpilledAndSameMillisNotLost() throws Exception {
+        RawDataProcessor rawDataProcessor = new RawDataProcessor(true, reportingFolder, 4);
+
+        //high watermark is reached, so buffer is moved to disk by spill thread
+        for (int i = 0; i < 3; i++) {
+            rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111111, "Lamp is ON", i);
+        }
+        awaitSpilled(rawDataProcessor, 3);
+        assertEquals(0, rawDataProcessor.bufferSize());
+
+        rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111111, "Lamp is ON", NumberUtil.NO_RESULT);
+
+        assertEquals(4, rawDataProcessor.collected.sum());
+        assertEquals(0, rawDataProcessor.dropped.sum());
+
+        List<RawEntry> drained = rawDataProcessor.drain();
+        assertEquals(1, drained.size());
+        assertEquals("Lamp is ON", drained.get(0).stringValue);
+
+        Path segment = rawDataProcessor.oldestSpilledSegment();
+        assertNotNull(segment);
+        List<RawEntry> spilled = RawDataSpill.read(segment);
+        assertEquals(3, spilled.size());
+        assertEquals(2, spilled.get(2).doubleValue, 0.0001);
+
+        Set<Integer> sequences = new HashSet<>();
+        for (RawEntry entry : drained) {
+            sequences.add(entry.seq);
+        }
+        for (RawEntry entry : spilled) {
+            sequences.add(entry.seq);
+        }
+        assertEquals(4, sequences.size());
+
+        Files.delete(segment);
+        assertNull(rawDataProcessor.oldestSpilledSegment());
+        rawDataProcessor.close();
+    }
+
+    @Test
+    public void testSequenceContinuesAfterRestart() throws Exception {
+        RawDataProcessor rawDataProcessor = new RawDataProcessor(true, reportingFolder, 16);
+        for (int i = 0; i < 5; i++) {
+            rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111111, "1", i);
+        }
+        rawDataProcessor.close();
+
+        rawDataProcessor = new RawDataProcessor(true, reportingFolder, 16);
+        rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111111, "1", 1);
+        assertEquals(6, rawDataProcessor.drain().get(0).seq);
+        rawDataProcessor.close();
+    }
+
+    private static void awaitSpilled(RawDataProcessor rawDataProcessor, long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && rawDataProcessor.spilled.sum() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, rawDataProcessor.spilled.sum());
+    }
+
+    @Test
+    public void testBufferedEntriesKeptOnClose() throws Exception {
+        RawDataProcessor rawDataProcessor = new RawDataProcessor(true, reportingFolder, 16);
+        rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111111, "1", 1);
+        rawDataProcessor.collect("test@test.com", 1, 0, 'v', (byte) 1, 1111111112, "2", 2);
+        rawDataProcessor.close();
+
+        rawDataProcessor = new RawDataProcessor(true, reportingFolder, 16);
+        assertEquals(0, rawDataProcessor.drain().size());
+        Path segment = rawDataProcessor.oldestSpilledSegment();
+        assertNotNull(segment);
+        List<RawEntry> entries = RawDataSpill.read(segment);
+        assertEquals(2, entries.size());
+        assertEquals(1111111112, entries.get(1).ts);
+    }
+
+}
@@ -0,0 +1,139 @@
+package cc.blynk.server.core.reporting.storage;
+
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ColumnarReportingStorageTest {
+
+    private static final String username = "test@test.com";
+
+    private String dataFolder;
+
+    @Before
+    public void init() throws Exception {
+        dataFolder = Files.createTempDirectory("columnar_reporting").toString();
+    }
+
+    @Test
+    public void testCrashAfterIndexSaveOnDeleteKeepsOtherSeriesIntact() throws Exception {
+        CrashingSegmentStore segmentStore = new CrashingSegmentStore(Paths.get(dataFolder, ColumnarReportingStorage.SEGMENTS_FOLDER));
+        ColumnarReportingStorage storage = new ColumnarReportingStorage(dataFolder, false, segmentStore);
+
+        //2 blocks for deleted series, 1 block for series that should survive
+        fill(storage, (byte) 1, 300, 0);
+        fill(storage, (byte) 2, 10, 1000);
+        storage.flush();
+
+        //process dies right after index is stored and before segments meta is written
+        segmentStore.crashOnReleaseFlush = true;
+        storage.delete(username, 1, 0, PinType.VIRTUAL, (byte) 1);
+        segmentStore.close();
+
+        try (ColumnarReportingStorage restarted = new ColumnarReportingStorage(dataFolder, false)) {
+            assertNull(restarted.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 10, GraphType.MINUTE));
+
+            fill(restarted, (byte) 3, 300, 5000);
+            restarted.flush();
+
+            assertSeries(restarted, (byte) 2, 10, 1000);
+            assertSeries(restarted, (byte) 3, 300, 5000);
+        }
+    }
+
+    @Test
+    public void testCrashOnDeleteKeepsBlocksAllocatedSinceLastFlush() throws Exception {
+        CrashingSegmentStore segmentStore = new CrashingSegmentStore(Paths.get(dataFolder, ColumnarReportingStorage.SEGMENTS_FOLDER));
+        ColumnarReportingStorage storage = new ColumnarReportingStorage(dataFolder, false, segmentStore);
+
+        fill(storage, (byte) 1, 300, 0);
+        storage.flush();
+
+        //new blocks are allocated, but not flushed yet. delete stores index that points to them
+        fill(storage, (byte) 2, 300, 1000);
+        segmentStore.crashOnReleaseFlush = true;
+        storage.delete(username, 1, 0, PinType.VIRTUAL, (byte) 1);
+        segmentStore.close();
+
+        try (ColumnarReportingStorage restarted = new ColumnarReportingStorage(dataFolder, false)) {
+            fill(restarted, (byte) 3, 300, 5000);
+            restarted.flush();
+
+            assertSeries(restarted, (byte) 2, 300, 1000);
+            assertSeries(restarted, (byte) 3, 300, 5000);
+        }
+    }
+
+    @Test
+    public void testReleasedBlocksReusedAfterRestart() throws Exception {
+        try (ColumnarReportingStorage storage = new ColumnarReportingStorage(dataFolder, false)) {
+            fill(storage, (byte) 1, 300, 0);
+            fill(storage, (byte) 2, 10, 1000);
+            storage.flush();
+            storage.delete(username, 1, 0, PinType.VIRTUAL, (byte) 1);
+        }
+
+        try (ColumnarReportingStorage restarted = new ColumnarReportingStorage(dataFolder, false)) {
+            assertNull(restarted.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 10, GraphType.MINUTE));
+
+            fill(restarted, (byte) 3, 300, 5000);
+            restarted.flush();
+
+            assertSeries(restarted, (byte) 2, 10, 1000);
+            assertSeries(restarted, (byte) 3, 300, 5000);
+        }
+    }
+
+    private static void fill(ReportingStorage storage, byte pin, int count, int offset) throws Exception {
+        for (int i = 0; i < count; i++) {
+            storage.append(username, 1, 0, 'v', pin, GraphType.MINUTE, offset + i, offset + i);
+        }
+    }
+
+    private static void assertSeries(ReportingStorage storage, byte pin, int count, int offset) throws Exception {
+        ByteBuffer data = storage.read(username, 1, 0, PinType.VIRTUAL, pin, count + 10, GraphType.MINUTE);
+        assertNotNull(data);
+        data.flip();
+        assertEquals(count * 16, data.remaining());
+        for (int i = 0; i < count; i++) {
+            assertEquals(offset + i, data.getDouble(), 0.0001);
+            assertEquals(offset + i, data.getLong());
+        }
+    }
+
+    private static class CrashingSegmentStore extends SegmentStore {
+
+        boolean crashOnReleaseFlush;
+        private boolean released;
+
+        CrashingSegmentStore(Path segmentsFolder) throws IOException {
+            super(segmentsFolder);
+        }
+
+        @Override
+        synchronized void release(int[] blocks, int blocksCount) {
+            released = true;
+            super.release(blocks, blocksCount);
+        }
+
+        @Override
+        synchronized void flush(boolean fsync) throws IOException {
+            if (crashOnReleaseFlush && released) {
+                throw new IOException("crash");
+            }
+            super.flush(fsync);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package cc.blynk.server.core.stats.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuotaMeterTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        QuotaMeter meter = new QuotaMeter();
+        long now = 100_000;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(meter.tryAcquire(10, now));
+        }
+        assertFalse(meter.tryAcquire(10, now));
+
+        //1 token per 100 ms
+        assertFalse(meter.tryAcquire(10, now + 50));
+        assertTrue(meter.tryAcquire(10, now + 100));
+        assertFalse(meter.tryAcquire(10, now + 100));
+
+        //bucket is never filled above limit
+        for (int i = 0; i < 10; i++) {
+            assertTrue(meter.tryAcquire(10, now + 10_000));
+        }
+        assertFalse(meter.tryAcquire(10, now + 10_000));
+    }
+
+    @Test
+    public void testRate() {
+        QuotaMeter meter = new QuotaMeter();
+        long now = 100_000;
+        assertEquals(0, meter.getRate(now));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(meter.tryAcquire(100, now + i));
+        }
+        //second is not finished yet
+        assertEquals(0, meter.getRate(now + 10));
+
+        assertTrue(meter.tryAcquire(100, now + 1000));
+        assertEquals(5, meter.getRate(now + 1000));
+        assertEquals(5, meter.getRate(now + 2500));
+
+        //no messages for long time
+        assertEquals(0, meter.getRate(now + 10_000));
+    }
+
+    @Test
+    public void testCheckDoesntTakeToken() {
+        QuotaMeter meter = new QuotaMeter();
+        long now = 100_000;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(meter.hasToken(1, now));
+        }
+        meter.acquire(now);
+        assertFalse(meter.hasToken(1, now));
+        assertFalse(meter.tryAcquireShared(1, now));
+    }
+
+}
@@ -46,11 +46,11 @@ public class RawDataDBTest {
 
     @Test
     public void testInsertStringAsRawData() throws Exception {
-        RawDataProcessor rawDataProcessor = new RawDataProcessor(true);
+        RawDataProcessor rawDataProcessor = new RawDataProcessor(true, System.getProperty("java.io.tmpdir"), 16);
         rawDataProcessor.collect("test@test.com", 1, 2, 'v', (byte) 3, 1111111111, "Lamp is ON", NumberUtil.NO_RESULT);
 
         //invoking directly dao to avoid separate thread execution
-        dbManager.reportingDBDao.insertRawData(rawDataProcessor.rawStorage);
+        dbManager.reportingDBDao.insertRawData(rawDataProcessor.drain()).join();
 
         try (Connection connection = dbManager.getConnection();
              Statement statement = connection.createStatement();
@@ -75,11 +75,11 @@ public class RawDataDBTest {
 
     @Test
     public void testInsertDoubleAsRawData() throws Exception {
-        RawDataProcessor rawDataProcessor = new RawDataProcessor(true);
+        RawDataProcessor rawDataProcessor = new RawDataProcessor(true, System.getProperty("java.io.tmpdir"), 16);
         rawDataProcessor.collect("test@test.com", 1, 2, 'v', (byte) 3, 1111111111, "Lamp is ON", 1.33D);
 
         //invoking directly dao to avoid separate thread execution
-        dbManager.reportingDBDao.insertRawData(rawDataProcessor.rawStorage);
+        dbManager.reportingDBDao.insertRawData(rawDataProcessor.drain()).join();
 
         try (Connection connection = dbManager.getConnection();
              Statement statement = connection.createStatement();
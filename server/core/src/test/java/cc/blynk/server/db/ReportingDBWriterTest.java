@@ -0,0 +1,193 @@
+package cc.blynk.server.db;
+
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.reporting.average.AggregationKey;
+import cc.blynk.server.core.reporting.average.AggregationValue;
+import cc.blynk.server.core.reporting.average.AverageAggregatorProcessor;
+import cc.blynk.server.core.stats.GlobalStats;
+import cc.blynk.server.db.dao.ReportingDBDao;
+import cc.blynk.server.db.dao.ReportingDBWriter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs against in-memory H2 in PostgreSQL mode, so doesn't require running DB.
+ */
+public class ReportingDBWriterTest {
+
+    private static final String insertTestPrefix = "INSERT INTO test_table (id, value)";
+
+    private HikariDataSource ds;
+    private GlobalStats stats;
+
+    @Before
+    public void init() throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:reporting;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        config.setAutoCommit(false);
+        config.setMaximumPoolSize(4);
+        ds = new HikariDataSource(config);
+        stats = new GlobalStats();
+
+        executeSQL("CREATE TABLE reporting_average_minute (username varchar(255), project_id int4, device_id int4, pin int2, "
+                + "pinType char, ts int8, value float8, min_value float8, max_value float8, last_value float8, "
+                + "count int8, PRIMARY KEY (username, project_id, device_id, pin, pinType, ts))");
+    }
+
+    @After
+    public void close() throws Exception {
+        executeSQL("DROP ALL OBJECTS");
+        ds.close();
+    }
+
+    private void executeSQL(String sql) throws Exception {
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+            connection.commit();
+        }
+    }
+
+    private long count(String table) throws Exception {
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void testAverageRowsWrittenInBatches() throws Exception {
+        try (ReportingDBWriter writer = new ReportingDBWriter(ds, stats, 2, 1000, 0, 100)) {
+            ReportingDBDao reportingDBDao = new ReportingDBDao(ds, writer);
+
+            Map<AggregationKey, AggregationValue> map = new HashMap<>();
+            long minute = System.currentTimeMillis() / AverageAggregatorProcessor.MINUTE;
+            for (int i = 0; i < 2500; i++) {
+                map.put(new AggregationKey("test@test.com", 1, 0, 'v', (byte) 1, minute - i),
+                        new AggregationValue(i * 2, 2, 0, i, i));
+            }
+
+            reportingDBDao.insert(map, GraphType.MINUTE).join();
+        }
+
+        assertEquals(2500, count("reporting_average_minute"));
+        assertEquals(2500, stats.reportingDBRowsWritten.sum());
+        assertEquals(3, stats.reportingDBStatements.sum());
+        assertEquals(0, stats.reportingDBErrors.sum());
+
+        try (Connection connection = ds.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT value, min_value, max_value, last_value, count "
+                     + "FROM reporting_average_minute ORDER BY ts DESC LIMIT 1")) {
+            rs.next();
+            assertEquals(0, rs.getDouble("value"), 0.0001);
+            assertEquals(2, rs.getLong("count"));
+        }
+    }
+
+    @Test
+    public void testFailedRowsKeptForNextWrite() throws Exception {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(i);
+        }
+
+        try (ReportingDBWriter writer = new ReportingDBWriter(ds, stats, 2, 4, 1, 6)) {
+            //table doesn't exist yet, so all statements fail
+            writer.writeWithRetryBuffer(insertTestPrefix, 2, rows,
+                    (ps, index, row) -> {
+                        ps.setInt(index, row);
+                        ps.setDouble(index + 1, row);
+                    }).join();
+            assertEquals(0, stats.reportingDBRowsWritten.sum());
+            assertTrue(stats.reportingDBErrors.sum() > 0);
+            assertTrue(stats.reportingDBRetries.sum() > 0);
+            assertEquals(4, stats.reportingDBRowsDropped.sum());
+
+            executeSQL("CREATE TABLE test_table (id int4 PRIMARY KEY, value float8)");
+            List<Integer> next = new ArrayList<>();
+            next.add(100);
+            writer.writeWithRetryBuffer(insertTestPrefix, 2, next,
+                    (ps, index, row) -> {
+                        ps.setInt(index, row);
+                        ps.setDouble(index + 1, row);
+                    }).join();
+        }
+
+        //6 rows from retry buffer and 1 new one
+        assertEquals(7, count("test_table"));
+        assertEquals(7, stats.reportingDBRowsWritten.sum());
+    }
+
+    @Test
+    public void testAlreadyStoredRowsSkipped() throws Exception {
+        executeSQL("CREATE TABLE test_table (id int4 PRIMARY KEY, value float8)");
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(i);
+        }
+
+        try (ReportingDBWriter writer = new ReportingDBWriter(ds, stats, 2, 8, 0, 100)) {
+            assertTrue(writer.write(insertTestPrefix, 2, rows.subList(2, 5), ReportingDBWriterTest::bindTestRow).isEmpty());
+
+            //replayed rows within statement don't fail new ones
+            assertTrue(writer.write(insertTestPrefix, 2, rows, ReportingDBWriterTest::bindTestRow).isEmpty());
+        }
+
+        assertEquals(10, count("test_table"));
+        assertEquals(10, stats.reportingDBRowsWritten.sum());
+        assertEquals(3, stats.reportingDBRowsRejected.sum());
+        assertEquals(0, stats.reportingDBErrors.sum());
+    }
+
+    @Test
+    public void testInvalidRowsDroppedButNotCountedAsStored() throws Exception {
+        executeSQL("CREATE TABLE test_table (id int4 PRIMARY KEY, value float8 NOT NULL)");
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(i);
+        }
+
+        try (ReportingDBWriter writer = new ReportingDBWriter(ds, stats, 2, 8, 0, 100)) {
+            //odd rows violate not null constraint
+            assertTrue(writer.write(insertTestPrefix, 2, rows, (ps, index, row) -> {
+                ps.setInt(index, row);
+                if (row % 2 == 0) {
+                    ps.setDouble(index + 1, row);
+                } else {
+                    ps.setNull(index + 1, Types.DOUBLE);
+                }
+            }).isEmpty());
+        }
+
+        assertEquals(5, count("test_table"));
+        assertEquals(5, stats.reportingDBRowsWritten.sum());
+        assertEquals(5, stats.reportingDBRowsInvalid.sum());
+        assertEquals(0, stats.reportingDBRowsRejected.sum());
+    }
+
+    private static void bindTestRow(PreparedStatement ps, int index, Integer row) throws SQLException {
+        ps.setInt(index, row);
+        ps.setDouble(index + 1, row);
+    }
+
+}
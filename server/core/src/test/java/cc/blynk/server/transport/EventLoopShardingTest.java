@@ -0,0 +1,91 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.server.core.dao.SessionDao;
+import cc.blynk.server.core.dao.UserKey;
+import cc.blynk.server.core.model.auth.Session;
+import cc.blynk.server.core.model.auth.WriteCoalescing;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.local.LocalChannel;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EventLoopShardingTest {
+
+    private final DefaultEventLoopGroup group = new DefaultEventLoopGroup(4);
+
+    @After
+    public void shutdown() {
+        group.shutdownGracefully();
+    }
+
+    @Test
+    public void testFirstLoginKeepsAcceptingEventLoop() {
+        EventLoopSharding sharding = new EventLoopSharding(group);
+        assertEquals(4, sharding.loops.length);
+        SessionDao sessionDao = new SessionDao(WriteCoalescing.DISABLED, sharding);
+
+        for (int i = 0; i < 100; i++) {
+            EventLoop accepting = sharding.loops[i % sharding.loops.length];
+            UserKey userKey = new UserKey("test" + i + "@test.com", "Blynk");
+            assertSame(accepting, sessionDao.getOrCreateSessionByUser(userKey, accepting).initialEventLoop);
+        }
+    }
+
+    @Test
+    public void testSecondLoginJoinsSessionEventLoop() {
+        EventLoopSharding sharding = new EventLoopSharding(group);
+        SessionDao sessionDao = new SessionDao(WriteCoalescing.DISABLED, sharding);
+        UserKey userKey = new UserKey("test@test.com", "Blynk");
+
+        sessionDao.getOrCreateSessionByUser(userKey, sharding.loops[0]);
+        assertSame(sharding.loops[0], sessionDao.getOrCreateSessionByUser(userKey, sharding.loops[1]).initialEventLoop);
+    }
+
+    @Test
+    public void testSessionMigratedToAnotherEventLoop() throws Exception {
+        EventLoopSharding sharding = new EventLoopSharding(group);
+        Session session = new Session(sharding.loops[0]);
+
+        sharding.loops[0].submit(() -> session.migrate(sharding.loops[1])).sync();
+
+        assertSame(sharding.loops[1], session.initialEventLoop);
+    }
+
+    @Test
+    public void testChannelAddedRightAfterMigrationFollowsSession() throws Exception {
+        EventLoopSharding sharding = new EventLoopSharding(group);
+        Session session = new Session(sharding.loops[0]);
+        LocalChannel channel = new LocalChannel();
+        sharding.loops[0].register(channel).sync();
+
+        //login completes within previous loop after session is moved
+        sharding.loops[0].submit(() -> {
+            session.migrate(sharding.loops[1]);
+            session.addAppChannel(channel);
+        }).sync();
+
+        for (int i = 0; i < 100 && channel.eventLoop() != sharding.loops[1]; i++) {
+            Thread.sleep(10);
+        }
+        assertSame(sharding.loops[1], channel.eventLoop());
+        channel.close();
+    }
+
+    @Test
+    public void testMigrationScheduledOnPreviousLoopIsExecutedWithinActualOne() throws Exception {
+        EventLoopSharding sharding = new EventLoopSharding(group);
+        Session session = new Session(sharding.loops[0]);
+
+        sharding.loops[0].submit(() -> session.migrate(sharding.loops[1])).sync();
+        //rebalancer decided to move session before first migration
+        sharding.loops[0].submit(() -> session.migrate(sharding.loops[2])).sync();
+        sharding.loops[1].submit(() -> { }).sync();
+
+        assertSame(sharding.loops[2], session.initialEventLoop);
+    }
+
+}
@@ -0,0 +1,116 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.server.core.stats.GlobalStats;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class HeartbeatWheelTest {
+
+    private final GlobalStats stats = new GlobalStats();
+
+    @Test
+    public void testIdleChannelExpires() {
+        HeartbeatWheel wheel = new HeartbeatWheel(stats, 0);
+        HeartbeatHandler handler = mock(HeartbeatHandler.class);
+        wheel.add(handler, 2000, 0);
+
+        wheel.sweep(1000);
+        verify(handler, never()).expire();
+
+        wheel.sweep(2000);
+        verify(handler).expire();
+        assertEquals(0, wheel.size());
+        assertEquals(1, stats.heartbeatIdleClosed.sum());
+        assertEquals(0, stats.heartbeatTracked.sum());
+    }
+
+    @Test
+    public void testReadPostponesExpiration() {
+        HeartbeatWheel wheel = new HeartbeatWheel(stats, 0);
+        HeartbeatHandler handler = mock(HeartbeatHandler.class);
+        int slot = wheel.add(handler, 2000, 0);
+
+        wheel.touch(slot, 1500);
+        wheel.sweep(2000);
+        wheel.sweep(3000);
+        wheel.sweep(3400);
+        verify(handler, never()).expire();
+
+        wheel.sweep(4000);
+        verify(handler).expire();
+    }
+
+    @Test
+    public void testTimeoutLongerThanWheelRound() {
+        HeartbeatWheel wheel = new HeartbeatWheel(stats, 0);
+        HeartbeatHandler handler = mock(HeartbeatHandler.class);
+        wheel.add(handler, 600_000, 0);
+
+        for (long now = 1000; now < 600_000; now += 1000) {
+            wheel.sweep(now);
+        }
+        verify(handler, never()).expire();
+
+        wheel.sweep(600_000);
+        verify(handler).expire();
+    }
+
+    @Test
+    public void testShorterTimeoutAppliedRightAway() {
+        HeartbeatWheel wheel = new HeartbeatWheel(stats, 0);
+        HeartbeatHandler handler = mock(HeartbeatHandler.class);
+        int slot = wheel.add(handler, 100_000, 0);
+
+        wheel.setTimeout(slot, 1000);
+        wheel.sweep(1000);
+        verify(handler).expire();
+    }
+
+    @Test
+    public void testSlotsReused() {
+        HeartbeatWheel wheel = new HeartbeatWheel(stats, 0);
+        HeartbeatHandler handler1 = mock(HeartbeatHandler.class);
+        HeartbeatHandler handler2 = mock(HeartbeatHandler.class);
+        int slot1 = wheel.add(handler1, 1000, 0);
+        wheel.add(handler2, 1000, 0);
+
+        wheel.remove(slot1);
+        assertEquals(slot1, wheel.add(handler1, 5000, 0));
+        assertEquals(2, wheel.size());
+
+        wheel.sweep(1000);
+        verify(handler1, never()).expire();
+        verify(handler2).expire();
+    }
+
+    @Test
+    public void testHandlerClosesIdleChannel() {
+        HeartbeatTracker tracker = new HeartbeatTracker(1, stats);
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.newHandler());
+        assertEquals(1, stats.heartbeatTracked.sum());
+
+        tracker.getWheel(channel.eventLoop()).sweep(System.currentTimeMillis() + 5000);
+        assertFalse(channel.isOpen());
+        assertEquals(1, stats.heartbeatIdleClosed.sum());
+        assertEquals(0, stats.heartbeatTracked.sum());
+    }
+
+    @Test
+    public void testClosedChannelNotTracked() {
+        HeartbeatTracker tracker = new HeartbeatTracker(1, stats);
+        EmbeddedChannel channel = new EmbeddedChannel(tracker.newHandler());
+        assertTrue(channel.isOpen());
+
+        channel.close();
+        assertEquals(0, stats.heartbeatTracked.sum());
+        assertEquals(0, tracker.getWheel(channel.eventLoop()).size());
+    }
+
+}
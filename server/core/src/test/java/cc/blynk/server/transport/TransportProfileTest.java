@@ -0,0 +1,67 @@
+package cc.blynk.server.transport;
+
+import cc.blynk.utils.ServerProperties;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransportProfileTest {
+
+    @Test
+    public void testOptionsDefinedPerServerType() {
+        Map<String, String> props = new HashMap<>();
+        props.put("app.socket.tcp.nodelay", "false");
+        props.put("app.socket.write.buffer.high.water.mark", "131072");
+        props.put("app.socket.acceptors", "4");
+        ServerProperties serverProperties = new ServerProperties(props);
+
+        TransportProfile app = new TransportProfile(serverProperties, "app");
+        assertFalse(app.tcpNoDelay);
+        assertEquals(131072, app.writeBufferHighWaterMark);
+        assertEquals(4, app.getAcceptors(true));
+        assertEquals(1, app.getAcceptors(false));
+
+        TransportProfile http = new TransportProfile(serverProperties, "http");
+        assertTrue(http.tcpNoDelay);
+        assertEquals(32 * 1024, http.writeBufferLowWaterMark);
+        assertEquals(64 * 1024, http.writeBufferHighWaterMark);
+        assertFalse(http.tcpQuickAck);
+        assertTrue(http.edgeTriggered);
+        assertEquals(1, http.getAcceptors(true));
+    }
+
+    @Test
+    public void testEpollOptionsAppliedForEpollOnly() {
+        Map<String, String> props = new HashMap<>();
+        props.put("hard.socket.epoll.edge.triggered", "false");
+        props.put("hard.socket.acceptors", "2");
+        TransportProfile profile = new TransportProfile(new ServerProperties(props), "hard");
+
+        ServerBootstrap nio = new ServerBootstrap();
+        profile.apply(nio, false);
+        assertEquals(Boolean.TRUE, nio.config().childOptions().get(ChannelOption.TCP_NODELAY));
+        WriteBufferWaterMark waterMark =
+                (WriteBufferWaterMark) nio.config().childOptions().get(ChannelOption.WRITE_BUFFER_WATER_MARK);
+        assertEquals(64 * 1024, waterMark.high());
+        assertNull(nio.config().childOptions().get(EpollChannelOption.EPOLL_MODE));
+        assertNull(nio.config().options().get(EpollChannelOption.SO_REUSEPORT));
+
+        ServerBootstrap epoll = new ServerBootstrap();
+        profile.apply(epoll, true);
+        assertEquals(EpollMode.LEVEL_TRIGGERED, epoll.config().childOptions().get(EpollChannelOption.EPOLL_MODE));
+        assertEquals(Boolean.FALSE, epoll.config().childOptions().get(EpollChannelOption.TCP_QUICKACK));
+        assertEquals(Boolean.TRUE, epoll.config().options().get(EpollChannelOption.SO_REUSEPORT));
+    }
+
+}
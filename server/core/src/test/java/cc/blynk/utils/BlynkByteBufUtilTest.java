@@ -0,0 +1,96 @@
+package cc.blynk.utils;
+
+import cc.blynk.server.core.protocol.exceptions.ParseException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
+import static cc.blynk.server.core.protocol.enums.Command.HARDWARE_CONNECTED;
+import static cc.blynk.server.core.protocol.enums.Command.RESPONSE;
+import static cc.blynk.server.core.protocol.enums.Response.OK;
+import static cc.blynk.utils.StringUtils.prependDashIdAndDeviceId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlynkByteBufUtilTest {
+
+    private static void assertSameAsStringMessage(int dashId, int deviceId, String body) {
+        ByteBuf bodyBuf = Unpooled.copiedBuffer(body, CharsetUtil.UTF_8);
+        ByteBuf expected = BlynkByteBufUtil.makeUTF8StringMessage(HARDWARE, 7, prependDashIdAndDeviceId(dashId, deviceId, body));
+        ByteBuf actual = BlynkByteBufUtil.makeDeviceMessage(HARDWARE, 7, dashId, deviceId, bodyBuf);
+
+        assertTrue(ByteBufUtil.equals(expected, actual));
+        //body is not consumed
+        assertEquals(body, bodyBuf.toString(CharsetUtil.UTF_8));
+
+        expected.release();
+        actual.release();
+        assertEquals(1, bodyBuf.refCnt());
+    }
+
+    @Test
+    public void testDeviceMessageSameAsStringMessage() {
+        assertSameAsStringMessage(1, 0, "vw\u00001\u0000100");
+        assertSameAsStringMessage(123, 4567, "vw\u000010\u0000Небольшой текст юникода");
+        assertSameAsStringMessage(0, -1, "dw\u00001\u00001");
+
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append("value ").append(i);
+        }
+        assertSameAsStringMessage(2147483647, 2, "vw\u00001\u0000" + longValue);
+    }
+
+    @Test
+    public void testPreEncodedOk() {
+        for (int msgId : new int[] {0, 1, 255, 256, 65535}) {
+            ByteBuf ok = BlynkByteBufUtil.ok(msgId);
+            ByteBuf expected = Unpooled.buffer().writeByte(RESPONSE).writeShort(msgId).writeShort(OK);
+            assertTrue(ByteBufUtil.equals(expected, ok));
+
+            //shared frame is not affected by reads and releases of view
+            ok.skipBytes(ok.readableBytes());
+            ok.release();
+            assertTrue(ByteBufUtil.equals(expected, BlynkByteBufUtil.ok(msgId)));
+        }
+        assertTrue(ByteBufUtil.equals(BlynkByteBufUtil.ok(1), BlynkByteBufUtil.makeResponse(1, OK)));
+    }
+
+    @Test
+    public void testDeviceMessageWithoutBody() {
+        ByteBuf expected = BlynkByteBufUtil.makeUTF8StringMessage(HARDWARE_CONNECTED, 3, "123-0");
+        ByteBuf actual = BlynkByteBufUtil.makeDeviceMessage(HARDWARE_CONNECTED, 3, 123, 0);
+        assertTrue(ByteBufUtil.equals(expected, actual));
+        expected.release();
+        actual.release();
+    }
+
+    @Test
+    public void testParseByteFromBuffer() {
+        ByteBuf buf = Unpooled.copiedBuffer("vw\u0000127\u0000-128\u00000", CharsetUtil.US_ASCII);
+        assertEquals(127, ParseUtil.parseByte(buf, 3, 6));
+        assertEquals(-128, ParseUtil.parseByte(buf, 7, 11));
+        assertEquals(0, ParseUtil.parseByte(buf, 12, 13));
+
+        assertNotByte("128");
+        assertNotByte("");
+        assertNotByte("1a");
+        assertNotByte("-");
+        assertNotByte("1000");
+    }
+
+    private static void assertNotByte(String value) {
+        ByteBuf buf = Unpooled.copiedBuffer(value, CharsetUtil.US_ASCII);
+        try {
+            ParseUtil.parseByte(buf, 0, buf.writerIndex());
+            fail();
+        } catch (ParseException e) {
+            //expected
+        }
+    }
+
+}
@@ -1,9 +1,14 @@
 package cc.blynk.utils;
 
 import cc.blynk.server.core.dao.FileManager;
+import cc.blynk.server.core.dao.ProfileIndex;
+import cc.blynk.server.core.dao.TokenManager;
+import cc.blynk.server.core.dao.TokenValue;
 import cc.blynk.server.core.dao.UserKey;
 import cc.blynk.server.core.model.AppName;
+import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.model.device.Device;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -11,11 +16,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * User: ddumanskiy
@@ -39,6 +50,8 @@ public class FileManagerIntegrationTest {
 
         file = fileManager.generateFileName(user2.name, user1.appName);
         Files.deleteIfExists(file);
+
+        Files.deleteIfExists(fileManager.getDataDir().resolve(ProfileIndex.INDEX_FILE_NAME));
     }
 
     @Test
@@ -78,6 +91,71 @@ public class FileManagerIntegrationTest {
         assertNotNull(users.get(new UserKey(user2.name, AppName.BLYNK)));
     }
 
+    @Test
+    public void testProfileLoadedOnFirstAccessWhenRestoredFromIndex() throws IOException {
+        DashBoard dash = new DashBoard();
+        dash.id = 1;
+        dash.devices = new Device[] {new Device(0, "My Device", "ESP8266", "token1", null)};
+        dash.sharedToken = "shared1";
+        user1.getProfile().dashBoards = new DashBoard[] {dash};
+        fileManager.overrideUserFile(user1);
+        fileManager.overrideUserFile(user2);
+        fileManager.writeProfileIndex(fileManager.deserialize().values());
+
+        FileManager restartedFileManager = new FileManager(dataFolder);
+        ConcurrentMap<UserKey, User> users = restartedFileManager.deserialize();
+        User restored = users.get(new UserKey(user1.name, AppName.BLYNK));
+        assertFalse(restored.isProfileLoaded());
+        assertEquals(user1.pass, restored.pass);
+
+        TokenManager tokenManager = new TokenManager(users, restartedFileManager.getIndexedUsers(), null, null, "");
+        TokenValue tokenValue = tokenManager.getUserByToken("token1");
+        assertSame(restored, tokenValue.user);
+        assertEquals(1, tokenValue.dashId);
+        assertEquals(0, tokenValue.deviceId);
+        assertSame(restored, tokenManager.getUserBySharedToken("shared1").user);
+        assertFalse(restored.isProfileLoaded());
+
+        assertEquals(1, restored.getProfile().dashBoards.length);
+        assertEquals("token1", restored.getProfile().dashBoards[0].devices[0].token);
+        assertTrue(restored.isProfileLoaded());
+    }
+
+    @Test
+    public void testChangedFileIsParsedDespiteIndex() throws IOException {
+        fileManager.overrideUserFile(user1);
+        fileManager.writeProfileIndex(fileManager.deserialize().values());
+
+        DashBoard dash = new DashBoard();
+        dash.id = 2;
+        user1.getProfile().dashBoards = new DashBoard[] {dash};
+        fileManager.overrideUserFile(user1);
+
+        User restored = new FileManager(dataFolder).deserialize().get(new UserKey(user1.name, AppName.BLYNK));
+        assertTrue(restored.isProfileLoaded());
+        assertEquals(2, restored.getProfile().dashBoards[0].id);
+    }
+
+    @Test
+    public void testBinaryAndJsonProfilesAreRead() throws IOException {
+        DashBoard dash = new DashBoard();
+        dash.id = 1;
+        dash.name = "My Dashboard";
+        user1.getProfile().dashBoards = new DashBoard[] {dash};
+        new FileManager(dataFolder, true).overrideUserFile(user1);
+        fileManager.overrideUserFile(user2);
+
+        byte[] header = Arrays.copyOf(Files.readAllBytes(fileManager.generateFileName(user1.name, user1.appName)), 2);
+        assertArrayEquals(new byte[] {':', ')'}, header);
+
+        Map<UserKey, User> users = fileManager.deserialize();
+        assertEquals(2, users.size());
+        User restored = users.get(new UserKey(user1.name, AppName.BLYNK));
+        assertEquals(user1.pass, restored.pass);
+        assertEquals("My Dashboard", restored.getProfile().dashBoards[0].name);
+        assertNotNull(users.get(new UserKey(user2.name, AppName.BLYNK)));
+    }
+
     @Test
     public void testOverrideFiles() throws IOException {
         fileManager.overrideUserFile(user1);
@@ -0,0 +1,52 @@
+package cc.blynk.utils;
+
+import cc.blynk.server.core.model.enums.PinType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HardwareCommandCursorTest {
+
+    private static ByteBuf buf(String body) {
+        return Unpooled.copiedBuffer(body.replaceAll(" ", "\0"), CharsetUtil.UTF_8);
+    }
+
+    @Test
+    public void testWriteCommandParsedOnce() {
+        HardwareCommandCursor cursor = new HardwareCommandCursor();
+
+        assertTrue(cursor.parseWrite(buf("vw 99 22222.32")));
+        assertEquals(PinType.VIRTUAL, cursor.pinType);
+        assertEquals(99, cursor.pin);
+        assertEquals("22222.32", cursor.value);
+        assertEquals(22222.32, cursor.doubleValue, 0.0001);
+        assertEquals("22222.32", cursor.rawValue().toString(CharsetUtil.UTF_8));
+
+        //cursor is reused
+        assertTrue(cursor.parseWrite(buf("dw 1 text")));
+        assertEquals(PinType.DIGITAL, cursor.pinType);
+        assertEquals(1, cursor.pin);
+        assertEquals("text", cursor.value);
+        assertEquals(NumberUtil.NO_RESULT, cursor.doubleValue, 0);
+
+        //value with separators is kept as is
+        assertTrue(cursor.parseWrite(buf("aw 10 1 2")));
+        assertEquals("1\u00002", cursor.value);
+    }
+
+    @Test
+    public void testWrongWriteCommand() {
+        HardwareCommandCursor cursor = new HardwareCommandCursor();
+
+        assertFalse(cursor.parseWrite(buf("vw 1")));
+        assertFalse(cursor.parseWrite(buf("vw 1 ")));
+        assertTrue(HardwareCommandCursor.isWriteOperation(buf("vw 1")));
+        assertFalse(HardwareCommandCursor.isWriteOperation(buf("vr 1")));
+    }
+
+}
@@ -0,0 +1,84 @@
+package cc.blynk.utils;
+
+import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.model.Profile;
+import cc.blynk.server.core.model.auth.User;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares json and smile user profile serialization. Sizes are printed on setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class ProfileSerializationPerfTest {
+
+    private static final int DASHBOARDS = 10;
+
+    private final ObjectWriter jsonWriter = JsonParser.mapper.writerFor(User.class);
+    private final ObjectReader jsonReader = JsonParser.mapper.readerFor(User.class);
+    private final ObjectWriter smileWriter = JsonParser.smileMapper.writerFor(User.class);
+    private final ObjectReader smileReader = JsonParser.smileMapper.readerFor(User.class);
+
+    private User user;
+    private byte[] json;
+    private byte[] smile;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectReader profileReader = JsonParser.mapper.readerFor(Profile.class);
+        DashBoard[] dashBoards = new DashBoard[DASHBOARDS];
+        for (int i = 0; i < DASHBOARDS; i++) {
+            try (InputStream is = getClass().getResourceAsStream("/json_test/user_profile_json_5.txt")) {
+                Profile profile = profileReader.readValue(is);
+                dashBoards[i] = profile.dashBoards[0];
+                dashBoards[i].id = i;
+            }
+        }
+
+        user = new User("test@test.com", "pass", "Blynk", "local", false);
+        user.getProfile().dashBoards = dashBoards;
+
+        json = jsonWriter.writeValueAsBytes(user);
+        smile = smileWriter.writeValueAsBytes(user);
+        System.out.println("Json size : " + json.length + ". Smile size : " + smile.length);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws Exception {
+        return jsonWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializeSmile() throws Exception {
+        return smileWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User deserializeJson() throws Exception {
+        return jsonReader.readValue(json);
+    }
+
+    @Benchmark
+    public User deserializeSmile() throws Exception {
+        return smileReader.readValue(smile);
+    }
+
+}
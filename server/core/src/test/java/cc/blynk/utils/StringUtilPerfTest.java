@@ -1,5 +1,9 @@
 package cc.blynk.utils;
 
+import cc.blynk.server.core.model.enums.PinType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -11,6 +15,7 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.concurrent.TimeUnit;
 
@@ -43,6 +48,11 @@ public class StringUtilPerfTest {
     public String aw_100_900;
     public String aw_10_long_text;
 
+    public ByteBuf vw_99_900_buf;
+    public ByteBuf vw_99_22222_buf;
+    public ByteBuf aw_10_long_text_buf;
+    private final HardwareCommandCursor cursor = new HardwareCommandCursor();
+
     @Setup
     public void setup(BenchmarkParams params) {
         vw_1 = "vw 1".replaceAll(" ", "\0");
@@ -51,6 +61,57 @@ public class StringUtilPerfTest {
         vw_99_22222 = "vw 99 22222.32".replaceAll(" ", "\0");
         aw_100_900 = "aw 100 200".replaceAll(" ", "\0");
         aw_10_long_text = "aw 10  dsfdsfdsfdsfdsfdsfdsfdsfd gfdsgdfg dfg dfg dfsgdf gdfs gdfsg dfsg dfsg dfs".replaceAll(" ", "\0");
+
+        vw_99_900_buf = Unpooled.copiedBuffer(vw_99_900, CharsetUtil.UTF_8);
+        vw_99_22222_buf = Unpooled.copiedBuffer(vw_99_22222, CharsetUtil.UTF_8);
+        aw_10_long_text_buf = Unpooled.copiedBuffer(aw_10_long_text, CharsetUtil.UTF_8);
+    }
+
+    //previous hardware write path : split, parse pin and parse value for reporting and eventor separately
+    private static void splitAndParse(String body, Blackhole bh) {
+        String[] split = StringUtils.split3(body);
+        bh.consume(PinType.getPinType(split[0].charAt(0)));
+        bh.consume(ParseUtil.parseByte(split[1]));
+        bh.consume(NumberUtil.parseDouble(split[2]));
+        bh.consume(NumberUtil.parseDouble(split[2]));
+    }
+
+    private void cursorParse(ByteBuf body, Blackhole bh) {
+        cursor.parseWrite(body);
+        bh.consume(cursor.pinType);
+        bh.consume(cursor.pin);
+        bh.consume(cursor.value);
+        bh.consume(cursor.doubleValue);
+    }
+
+    @Benchmark
+    public void splitAndParse_vw_99_900(Blackhole bh) {
+        splitAndParse(vw_99_900, bh);
+    }
+
+    @Benchmark
+    public void cursor_vw_99_900(Blackhole bh) {
+        cursorParse(vw_99_900_buf, bh);
+    }
+
+    @Benchmark
+    public void splitAndParse_vw_99_22222(Blackhole bh) {
+        splitAndParse(vw_99_22222, bh);
+    }
+
+    @Benchmark
+    public void cursor_vw_99_22222(Blackhole bh) {
+        cursorParse(vw_99_22222_buf, bh);
+    }
+
+    @Benchmark
+    public void splitAndParse_aw_10_long_text(Blackhole bh) {
+        splitAndParse(aw_10_long_text, bh);
+    }
+
+    @Benchmark
+    public void cursor_aw_10_long_text(Blackhole bh) {
+        cursorParse(aw_10_long_text_buf, bh);
     }
 
     @Benchmark
@@ -58,7 +58,7 @@ public class UserStatisticsTest {
         System.out.println("Board Types :");
         Map<String, Integer> boards = new HashMap<>();
         for (User user : users.values()) {
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     String type = dashBoard.boardType;
                     Integer i = boards.get(type);
                     if (i == null) {
@@ -79,7 +79,7 @@ public class UserStatisticsTest {
         System.out.println("Widget Usage :");
         Map<String, Integer> boards = new HashMap<>();
         for (User user : users.values()) {
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     if (dashBoard.widgets != null) {
                         for (Widget widget : dashBoard.widgets) {
                             Integer i = boards.get(widget.getClass().getSimpleName());
@@ -104,7 +104,7 @@ public class UserStatisticsTest {
 
         List<Integer> all = new ArrayList<>();
         for (User user : users.values()) {
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     if (dashBoard.widgets.length > 3) {
                         int sum = 0;
                         for (Widget widget : dashBoard.widgets) {
@@ -142,7 +142,7 @@ public class UserStatisticsTest {
         int max = 0;
         String maxDash = null;
         for (User user : users.values()) {
-                for (DashBoard dashBoard : user.profile.dashBoards) {
+                for (DashBoard dashBoard : user.getProfile().dashBoards) {
                     if (dashBoard.widgets.length > 0) {
                         String json = JsonParser.toJson(dashBoard);
                         byte[] compressed = compress(json.getBytes());
@@ -164,13 +164,13 @@ public class UserStatisticsTest {
         int maxDashes = 0;
         int widgetCount = 0;
         for (User user : users.values()) {
-            if (user.profile.dashBoards.length == 0) {
+            if (user.getProfile().dashBoards.length == 0) {
                 continue;
             }
             usersCounter++;
-            dashesCounter += user.profile.dashBoards.length;
-            maxDashes = Math.max(user.profile.dashBoards.length, maxDashes);
-            for (DashBoard dash : user.profile.dashBoards) {
+            dashesCounter += user.getProfile().dashBoards.length;
+            maxDashes = Math.max(user.getProfile().dashBoards.length, maxDashes);
+            for (DashBoard dash : user.getProfile().dashBoards) {
                 widgetCount += dash.widgets.length;
             }
         }
@@ -31,7 +31,8 @@ public class HttpsAdminServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public HttpsAdminServer(Holder holder, boolean isUnpacked) {
-        super(holder.props.getIntProperty("administration.https.port", 7443), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("administration.https.port", 7443),
+                holder.transportTypeHolder, holder.transportTypeHolder.httpProfile);
 
         final String adminRootPath = holder.props.getProperty("admin.rootPath", "/admin");
 
@@ -156,7 +156,7 @@ public class StatsLogic extends HttpLogicUtil {
                 final String name = user.name + "-" + user.appName;
                 if (ip == null) {
                     res.add(new IpNameResponse(name, user.lastLoggedIP));
-                    for (DashBoard dashBoard : user.profile.dashBoards) {
+                    for (DashBoard dashBoard : user.getProfile().dashBoards) {
                         for (Device device : dashBoard.devices) {
                             if (device.lastLoggedIP != null) {
                                 res.add(new IpNameResponse(name, device.lastLoggedIP));
@@ -175,7 +175,7 @@ public class StatsLogic extends HttpLogicUtil {
     }
 
     private boolean deviceContains(User user, String ip) {
-        for (DashBoard dash : user.profile.dashBoards) {
+        for (DashBoard dash : user.getProfile().dashBoards) {
             for (Device device : dash.devices) {
                 if (device.lastLoggedIP != null && device.lastLoggedIP.contains(ip)) {
                     return true;
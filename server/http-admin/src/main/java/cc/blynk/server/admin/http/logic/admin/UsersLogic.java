@@ -149,7 +149,7 @@ public class UsersLogic extends HttpLogicUtil {
         //user name was changed
         if (!updatedUser.name.equals(oldUser.name)) {
             deleteUserByName(id);
-            for (DashBoard dashBoard : oldUser.profile.dashBoards) {
+            for (DashBoard dashBoard : oldUser.getProfile().dashBoards) {
                 for (Device device : dashBoard.devices) {
                     tokenManager.assignToken(updatedUser, dashBoard.id, device.id, device.token);
                 }
@@ -157,7 +157,7 @@ public class UsersLogic extends HttpLogicUtil {
         }
 
         userDao.add(updatedUser);
-        updatedUser.lastModifiedTs = System.currentTimeMillis();
+        updatedUser.updateLastModifiedTs(System.currentTimeMillis());
         log.debug("Adding new user {}", updatedUser.name);
 
 
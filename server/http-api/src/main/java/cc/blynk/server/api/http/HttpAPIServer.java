@@ -30,7 +30,8 @@ public class HttpAPIServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public HttpAPIServer(Holder holder) {
-        super(holder.props.getIntProperty("http.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("http.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.httpProfile);
 
         HandlerRegistry.register(new ResetPasswordLogic(holder.props, holder.userDao, holder.mailWrapper));
         HandlerRegistry.register(new HttpAPILogic(holder));
@@ -34,7 +34,8 @@ public class HttpsAPIServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public HttpsAPIServer(Holder holder, boolean isUnpacked) {
-        super(holder.props.getIntProperty("https.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("https.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.httpProfile);
 
         HandlerRegistry.register(new HttpAPILogic(holder));
         HandlerRegistry.register(new HttpBusinessAPILogic(holder));
@@ -1,6 +1,7 @@
 package cc.blynk.server.api.http.handlers;
 
 import cc.blynk.core.http.BaseHttpHandler;
+import cc.blynk.core.http.ChunkedResponse;
 import cc.blynk.core.http.Response;
 import cc.blynk.core.http.rest.HandlerHolder;
 import cc.blynk.core.http.rest.HandlerRegistry;
@@ -30,7 +31,7 @@ public class HttpHandler extends BaseHttpHandler {
     public void finishHttp(ChannelHandlerContext ctx, URIDecoder uriDecoder, HandlerHolder handlerHolder, Object[] params) {
         String tokenPathParam = uriDecoder.pathData.get("token");
         if (tokenPathParam == null) {
-            ctx.writeAndFlush(HandlerRegistry.invoke(handlerHolder, params), ctx.voidPromise());
+            ChunkedResponse.write(ctx, HandlerRegistry.invoke(handlerHolder, params));
             return;
         }
 
@@ -45,14 +46,15 @@ public class HttpHandler extends BaseHttpHandler {
         Session session = sessionDao.getOrCreateSessionByUser(new UserKey(tokenValue.user), ctx.channel().eventLoop());
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering http channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), HandlerRegistry.invoke(handlerHolder, params)));
+            reRegisterChannel(ctx, session, globalStats,
+                    channelFuture -> completeLogin(channelFuture.channel(), HandlerRegistry.invoke(handlerHolder, params)));
         } else {
             completeLogin(ctx.channel(), HandlerRegistry.invoke(handlerHolder, params));
         }
     }
 
     private void completeLogin(Channel channel, FullHttpResponse response) {
-        channel.writeAndFlush(response);
+        ChunkedResponse.write(channel, response);
         log.debug("Re registering http channel finished.");
     }
 }
@@ -1,5 +1,7 @@
 package cc.blynk.server.api.http.logic;
 
+import cc.blynk.core.http.ChunkedResponse;
+import cc.blynk.core.http.DeferredResponse;
 import cc.blynk.core.http.MediaType;
 import cc.blynk.core.http.Response;
 import cc.blynk.core.http.annotation.Consumes;
@@ -12,6 +14,7 @@ import cc.blynk.core.http.annotation.QueryParam;
 import cc.blynk.server.Holder;
 import cc.blynk.server.api.http.logic.serialization.NotificationCloneHideFields;
 import cc.blynk.server.api.http.logic.serialization.TwitterCloneHideFields;
+import cc.blynk.server.api.http.pojo.BatchPinData;
 import cc.blynk.server.api.http.pojo.EmailPojo;
 import cc.blynk.server.api.http.pojo.PinData;
 import cc.blynk.server.api.http.pojo.PushMessagePojo;
@@ -23,9 +26,9 @@ import cc.blynk.server.core.dao.TokenValue;
 import cc.blynk.server.core.dao.UserKey;
 import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.Pin;
-import cc.blynk.server.core.model.PinStorageKey;
 import cc.blynk.server.core.model.auth.Session;
 import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.model.widgets.MultiPinWidget;
 import cc.blynk.server.core.model.widgets.OnePinWidget;
@@ -35,24 +38,29 @@ import cc.blynk.server.core.model.widgets.notifications.Notification;
 import cc.blynk.server.core.model.widgets.notifications.Twitter;
 import cc.blynk.server.core.processors.EventorProcessor;
 import cc.blynk.server.core.protocol.exceptions.IllegalCommandBodyException;
-import cc.blynk.server.core.protocol.exceptions.NoDataException;
 import cc.blynk.server.core.stats.GlobalStats;
 import cc.blynk.server.notifications.mail.MailWrapper;
 import cc.blynk.server.notifications.push.GCMWrapper;
 import cc.blynk.utils.ByteUtils;
-import cc.blynk.utils.FileUtils;
 import cc.blynk.utils.JsonParser;
+import cc.blynk.utils.NumberUtil;
 import cc.blynk.utils.StringUtils;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.channel.EventLoop;
 import net.glxn.qrgen.core.image.ImageType;
 import net.glxn.qrgen.javase.QRCode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static cc.blynk.core.http.Response.ok;
-import static cc.blynk.core.http.Response.redirect;
 import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
 import static cc.blynk.server.core.protocol.enums.Command.HTTP_EMAIL;
 import static cc.blynk.server.core.protocol.enums.Command.HTTP_GET_HISTORY_DATA;
@@ -135,7 +143,7 @@ public class HttpAPILogic {
         final User user = tokenValue.user;
         final int dashId = tokenValue.dashId;
 
-        DashBoard dashBoard = user.profile.getDashById(dashId);
+        DashBoard dashBoard = user.getProfile().getDashById(dashId);
 
         return ok(dashBoard.toString());
     }
@@ -175,7 +183,7 @@ public class HttpAPILogic {
         final User user = tokenValue.user;
         final int dashId = tokenValue.dashId;
 
-        final DashBoard dashBoard = user.profile.getDashById(dashId);
+        final DashBoard dashBoard = user.getProfile().getDashById(dashId);
 
         final Session session = sessionDao.userSession.get(new UserKey(user));
 
@@ -208,7 +216,7 @@ public class HttpAPILogic {
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dashBoard = user.profile.getDashById(dashId);
+        DashBoard dashBoard = user.getProfile().getDashById(dashId);
 
         PinType pinType;
         byte pin;
@@ -224,7 +232,7 @@ public class HttpAPILogic {
         Widget widget = dashBoard.findWidgetByPin(deviceId, pin, pinType);
 
         if (widget == null) {
-            String value = dashBoard.pinsStorage.get(new PinStorageKey(deviceId, pinType, pin));
+            String value = dashBoard.pinStates.get(deviceId, pinType, pin);
             if (value == null) {
                 log.debug("Requested pin {} not found. User {}", pinString, user.name);
                 return Response.badRequest("Requested pin not exists in app.");
@@ -251,7 +259,7 @@ public class HttpAPILogic {
         final User user = tokenValue.user;
         final int dashId = tokenValue.dashId;
 
-        DashBoard dashBoard = user.profile.getDashById(dashId);
+        DashBoard dashBoard = user.getProfile().getDashById(dashId);
 
         try {
             byte[] compressed = ByteUtils.compress(dashboardCloneWriter.writeValueAsString(dashBoard));
@@ -264,10 +272,20 @@ public class HttpAPILogic {
         }
     }
 
+    /**
+     * Streams pin history as gzipped csv. By default whole minute series is returned.
+     *
+     * @param from - first timestamp in millis, inclusive.
+     * @param to - last timestamp in millis, inclusive.
+     * @param type - resolution of data : minute, hourly or daily.
+     */
     @GET
     @Path("{token}/data/{pin}")
     public Response getPinHistoryData(@PathParam("token") String token,
-                                      @PathParam("pin") String pinString) {
+                                      @PathParam("pin") String pinString,
+                                      @QueryParam("from") String fromString,
+                                      @QueryParam("to") String toString,
+                                      @QueryParam("type") String typeString) {
         globalStats.mark(HTTP_GET_HISTORY_DATA);
 
         TokenValue tokenValue = tokenManager.getUserByToken(token);
@@ -292,20 +310,38 @@ public class HttpAPILogic {
             return Response.badRequest("Wrong pin format.");
         }
 
-        //todo may be optimized
-        try {
-            java.nio.file.Path path = FileUtils.createCSV(reportingDao, user.name, dashId, deviceId, pinType, pin);
-            return redirect("/" + path.getFileName().toString());
-        } catch (IllegalCommandBodyException e1) {
-            log.debug(e1.getMessage());
-            return Response.badRequest(e1.getMessage());
-        } catch (NoDataException noData) {
-            log.debug("No data for pin.");
-            return Response.badRequest("No data for pin.");
-        } catch (Exception e) {
-            log.debug("Error getting pin data.");
-            return Response.badRequest("Error getting pin data.");
+        if (pinType == null || pin == Pin.NO_PIN) {
+            log.debug("Wrong pin format. {}", pinString);
+            return Response.badRequest("Wrong pin format.");
         }
+
+        long from;
+        long to;
+        GraphType type;
+
+        try {
+            from = fromString == null ? 0 : Long.parseLong(fromString);
+            to = toString == null ? Long.MAX_VALUE : Long.parseLong(toString);
+            type = typeString == null ? GraphType.MINUTE : GraphType.valueOf(typeString.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.debug("Wrong history data params. from : {}, to : {}, type : {}.", fromString, toString, typeString);
+            return Response.badRequest("Wrong history data params.");
+        }
+
+        //storage is read within reporting read pool, not within event loop of the user
+        return new DeferredResponse(reportingDao.readProcessor.exportCSV(user.name, dashId, deviceId, pinType, pin, type, from, to)
+                .handle((csv, e) -> {
+                    if (e != null) {
+                        log.debug("Error getting pin data.", e);
+                        return Response.badRequest("Error getting pin data.");
+                    }
+                    if (csv == null) {
+                        log.debug("No data for pin.");
+                        return Response.badRequest("No data for pin.");
+                    }
+                    return ChunkedResponse.attachment(csv, MediaType.APPLICATION_GZIP,
+                            dashId + "_" + pinType.pintTypeChar + pin + ".csv.gz");
+                }));
     }
 
     public Response updateWidgetProperty(String token,
@@ -330,7 +366,7 @@ public class HttpAPILogic {
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
 
         //todo add test for this use case
         if (!dash.isActive) {
@@ -442,7 +478,7 @@ public class HttpAPILogic {
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
 
         PinType pinType;
         byte pin;
@@ -460,6 +496,7 @@ public class HttpAPILogic {
         reportingDao.process(user.name, dashId, deviceId, pin, pinType, pinValue, System.currentTimeMillis());
 
         dash.update(deviceId, pin, pinType, pinValue);
+        user.markPinsDirty();
 
         String body = makeBody(dash, deviceId, pin, pinType, pinValue);
 
@@ -505,7 +542,7 @@ public class HttpAPILogic {
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
 
         PinType pinType;
         byte pin;
@@ -523,6 +560,7 @@ public class HttpAPILogic {
         }
 
         dash.update(deviceId, pin, pinType, pinsData[0].value);
+        user.markPinsDirty();
 
         String body = makeBody(dash, deviceId, pin, pinType, pinsData[0].value);
 
@@ -542,6 +580,254 @@ public class HttpAPILogic {
         return Response.ok();
     }
 
+    @GET
+    @Path("{token}/get")
+    public Response getWidgetsPinData(@PathParam("token") String token,
+                                      @QueryParam("pin") String[] pinStrings) {
+
+        globalStats.mark(HTTP_GET_PIN_DATA);
+
+        if (pinStrings == null || pinStrings.length == 0) {
+            log.debug("No pins requested.");
+            return Response.badRequest("No pins requested.");
+        }
+
+        TokenValue tokenValue = tokenManager.getUserByToken(token);
+
+        if (tokenValue == null) {
+            log.debug("Requested token {} not found.", token);
+            return Response.badRequest("Invalid token.");
+        }
+
+        final int deviceId = tokenValue.deviceId;
+        DashBoard dashBoard = tokenValue.user.getProfile().getDashById(tokenValue.dashId);
+
+        PinType[] pinTypes = new PinType[pinStrings.length];
+        byte[] pins = new byte[pinStrings.length];
+        if (!parsePins(pinStrings, pinTypes, pins)) {
+            return Response.badRequest("Wrong pin format.");
+        }
+
+        //{"v1":["1"],"d8":null} - same values as for single pin request, null for not existing pins
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < pins.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(pinTypes[i].pintTypeChar).append(pins[i]).append("\":");
+
+            Widget widget = dashBoard.findWidgetByPin(deviceId, pins[i], pinTypes[i]);
+            if (widget == null) {
+                String value = dashBoard.pinStates.get(deviceId, pinTypes[i], pins[i]);
+                sb.append(value == null
+                        ? "null"
+                        : JsonParser.valueToJsonAsString(value.split(StringUtils.BODY_SEPARATOR_STRING)));
+            } else {
+                sb.append(widget.getJsonValue());
+            }
+        }
+
+        return ok(sb.append('}').toString());
+    }
+
+    @PUT
+    @Path("{token}/update")
+    @Consumes(value = MediaType.APPLICATION_JSON)
+    public Response updateWidgetsPinData(@PathParam("token") String token,
+                                         BatchPinData[] pinsData) {
+
+        globalStats.mark(HTTP_UPDATE_PIN_DATA);
+
+        if (pinsData == null || pinsData.length == 0) {
+            log.debug("No pin for update provided.");
+            return Response.badRequest("No pin for update provided.");
+        }
+
+        TokenValue tokenValue = tokenManager.getUserByToken(token);
+
+        if (tokenValue == null) {
+            log.debug("Requested token {} not found.", token);
+            return Response.badRequest("Invalid token.");
+        }
+
+        DeviceBatch batch = DeviceBatch.parse(token, tokenValue, Arrays.asList(pinsData));
+        if (batch == null) {
+            return Response.badRequest("Wrong pin format.");
+        }
+
+        //channel is already re-registered to session event loop by token
+        applyBatch(batch, sessionDao.userSession.get(new UserKey(tokenValue.user)));
+        return Response.ok();
+    }
+
+    /**
+     * Updates pins of many devices within 1 request. Every item should have token.
+     * Pins of every device are applied within event loop of device owner session,
+     * response is sent once pins of all devices are applied.
+     */
+    @PUT
+    @Path("batch/update")
+    @Consumes(value = MediaType.APPLICATION_JSON)
+    public Response updateDevicesPinData(BatchPinData[] pinsData) {
+
+        globalStats.mark(HTTP_UPDATE_PIN_DATA);
+
+        if (pinsData == null || pinsData.length == 0) {
+            log.debug("No pin for update provided.");
+            return Response.badRequest("No pin for update provided.");
+        }
+
+        Map<String, List<BatchPinData>> pinsByToken = new LinkedHashMap<>();
+        for (BatchPinData pinData : pinsData) {
+            if (pinData.token == null) {
+                return Response.badRequest("Token is missing.");
+            }
+            pinsByToken.computeIfAbsent(pinData.token, k -> new ArrayList<>()).add(pinData);
+        }
+
+        List<DeviceBatch> batches = new ArrayList<>(pinsByToken.size());
+        for (Map.Entry<String, List<BatchPinData>> entry : pinsByToken.entrySet()) {
+            TokenValue tokenValue = tokenManager.getUserByToken(entry.getKey());
+            if (tokenValue == null) {
+                log.debug("Requested token {} not found.", entry.getKey());
+                return Response.badRequest("Invalid token.");
+            }
+            DeviceBatch batch = DeviceBatch.parse(entry.getKey(), tokenValue, entry.getValue());
+            if (batch == null) {
+                return Response.badRequest("Wrong pin format.");
+            }
+            batches.add(batch);
+        }
+
+        CompletableFuture<?>[] results = new CompletableFuture<?>[batches.size()];
+        for (int i = 0; i < results.length; i++) {
+            DeviceBatch batch = batches.get(i);
+            Session session = sessionDao.userSession.get(new UserKey(batch.user));
+            EventLoop eventLoop = session == null ? null : session.initialEventLoop;
+            if (eventLoop == null || eventLoop.inEventLoop()) {
+                CompletableFuture<Void> result = new CompletableFuture<>();
+                try {
+                    applyBatch(batch, session);
+                    result.complete(null);
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+                results[i] = result;
+            } else {
+                results[i] = CompletableFuture.runAsync(() -> applyBatch(batch, session), eventLoop);
+            }
+        }
+
+        return new DeferredResponse(CompletableFuture.allOf(results).handle((ignored, error) -> {
+            if (error == null) {
+                return Response.ok();
+            }
+            List<String> failedTokens = new ArrayList<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].isCompletedExceptionally()) {
+                    failedTokens.add(batches.get(i).token);
+                }
+            }
+            Throwable cause = error.getCause() == null ? error : error.getCause();
+            log.error("Error updating pins of {} devices. Reason : {}", failedTokens.size(), cause.getMessage());
+            return Response.serverError("Pins are not updated for tokens " + String.join(",", failedTokens) + ".");
+        }));
+    }
+
+    private static boolean parsePins(String[] pinStrings, PinType[] pinTypes, byte[] pins) {
+        for (int i = 0; i < pinStrings.length; i++) {
+            String pinString = pinStrings[i];
+            try {
+                pinTypes[i] = PinType.getPinType(pinString.charAt(0));
+                pins[i] = Byte.parseByte(pinString.substring(1));
+            } catch (NumberFormatException | IllegalCommandBodyException | NullPointerException
+                    | StringIndexOutOfBoundsException e) {
+                log.debug("Wrong pin format. {}", pinString);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies all pins of device at once : single timestamp, reporting and eventor call for all pins,
+     * single dirty mark for user, single session lookup and 1 flush per hardware and app channel.
+     */
+    private void applyBatch(DeviceBatch batch, Session session) {
+        final User user = batch.user;
+        final DashBoard dash = user.getProfile().getDashById(batch.dashId);
+        final long now = System.currentTimeMillis();
+        final double[] doubleValues = new double[batch.pins.length];
+        for (int i = 0; i < batch.pins.length; i++) {
+            doubleValues[i] = NumberUtil.parseDouble(batch.values[i]);
+        }
+
+        reportingDao.process(user.name, batch.dashId, batch.deviceId, batch.pinTypes, batch.pins,
+                batch.values, now, doubleValues);
+
+        final List<String> bodies = new ArrayList<>(batch.pins.length);
+        for (int i = 0; i < batch.pins.length; i++) {
+            dash.update(batch.deviceId, batch.pins[i], batch.pinTypes[i], batch.values[i]);
+            bodies.add(makeBody(dash, batch.deviceId, batch.pins[i], batch.pinTypes[i], batch.values[i]));
+        }
+        user.markPinsDirty();
+
+        if (session == null) {
+            log.debug("No session for user {}.", user.name);
+            return;
+        }
+
+        eventorProcessor.process(session, dash, batch.deviceId, batch.pins, batch.pinTypes, batch.values, doubleValues);
+
+        session.sendMessagesToHardware(batch.dashId, HARDWARE, 111, bodies, batch.deviceId);
+
+        if (dash.isActive) {
+            session.sendToApps(HARDWARE, 111, batch.dashId, batch.deviceId, bodies);
+        }
+    }
+
+    /**
+     * Parsed pins of single device.
+     */
+    private static final class DeviceBatch {
+
+        final String token;
+        final User user;
+        final int dashId;
+        final int deviceId;
+        final PinType[] pinTypes;
+        final byte[] pins;
+        final String[] values;
+
+        private DeviceBatch(String token, TokenValue tokenValue, int size) {
+            this.token = token;
+            this.user = tokenValue.user;
+            this.dashId = tokenValue.dashId;
+            this.deviceId = tokenValue.deviceId;
+            this.pinTypes = new PinType[size];
+            this.pins = new byte[size];
+            this.values = new String[size];
+        }
+
+        /**
+         * @return null in case any pin or value is wrong.
+         */
+        static DeviceBatch parse(String token, TokenValue tokenValue, List<BatchPinData> pinsData) {
+            DeviceBatch batch = new DeviceBatch(token, tokenValue, pinsData.size());
+            String[] pinStrings = new String[pinsData.size()];
+            for (int i = 0; i < pinStrings.length; i++) {
+                BatchPinData pinData = pinsData.get(i);
+                if (pinData.value == null || pinData.value.length == 0) {
+                    log.debug("No value for pin {}.", pinData.pin);
+                    return null;
+                }
+                pinStrings[i] = pinData.pin;
+                batch.values[i] = String.join(StringUtils.BODY_SEPARATOR_STRING, pinData.value);
+            }
+            return parsePins(pinStrings, batch.pinTypes, batch.pins) ? batch : null;
+        }
+    }
+
     @POST
     @Path("{token}/notify")
     @Consumes(value = MediaType.APPLICATION_JSON)
@@ -565,7 +851,7 @@ public class HttpAPILogic {
             return Response.badRequest("Body is empty or larger than 255 chars.");
         }
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
 
         if (!dash.isActive) {
             log.debug("Project is not active.");
@@ -604,7 +890,7 @@ public class HttpAPILogic {
             return Response.badRequest("Invalid token.");
         }
 
-        DashBoard dash = tokenValue.user.profile.getDashById(tokenValue.dashId);
+        DashBoard dash = tokenValue.user.getProfile().getDashById(tokenValue.dashId);
 
         if (dash == null || !dash.isActive) {
             log.debug("Project is not active.");
@@ -131,7 +131,7 @@ public class ResetPasswordLogic {
         }
 
         user.pass = password;
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         log.info("{} password was reset.", user.name);
         tokensPool.removeToken(token);
@@ -1,6 +1,7 @@
 package cc.blynk.server.api.http.logic.business;
 
 import cc.blynk.core.http.BaseHttpHandler;
+import cc.blynk.core.http.ChunkedResponse;
 import cc.blynk.core.http.rest.HandlerHolder;
 import cc.blynk.core.http.rest.HandlerRegistry;
 import cc.blynk.core.http.rest.URIDecoder;
@@ -30,7 +31,7 @@ public class AuthHttpHandler extends BaseHttpHandler {
         User user = ctx.channel().attr(AuthCookieHandler.userAttributeKey).get();
 
         if (user == null) {
-            ctx.writeAndFlush(HandlerRegistry.invoke(handlerHolder, params), ctx.voidPromise());
+            ChunkedResponse.write(ctx, HandlerRegistry.invoke(handlerHolder, params));
             return;
         }
 
@@ -41,14 +42,15 @@ public class AuthHttpHandler extends BaseHttpHandler {
         Session session = sessionDao.getOrCreateSessionByUser(new UserKey(user), ctx.channel().eventLoop());
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering http channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), HandlerRegistry.invoke(handlerHolder, params)));
+            reRegisterChannel(ctx, session, globalStats,
+                    channelFuture -> completeLogin(channelFuture.channel(), HandlerRegistry.invoke(handlerHolder, params)));
         } else {
             completeLogin(ctx.channel(), HandlerRegistry.invoke(handlerHolder, params));
         }
     }
 
     private void completeLogin(Channel channel, FullHttpResponse response) {
-        channel.writeAndFlush(response);
+        ChunkedResponse.write(channel, response);
         log.debug("Re registering http channel finished.");
     }
 }
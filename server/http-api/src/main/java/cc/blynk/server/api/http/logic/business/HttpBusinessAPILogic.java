@@ -155,7 +155,7 @@ public class HttpBusinessAPILogic {
             return Response.badRequest("Invalid token.");
         }
 
-        List<DashBoard> projects = Arrays.asList(tokenValue.user.profile.dashBoards).stream()
+        List<DashBoard> projects = Arrays.asList(tokenValue.user.getProfile().dashBoards).stream()
             .filter(filterByProjectName(name))
             .filter(filterByValue(tokenValue.deviceId, pin, value))
                 .collect(Collectors.toList());
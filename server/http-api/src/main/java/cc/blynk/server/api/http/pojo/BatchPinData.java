@@ -0,0 +1,19 @@
+package cc.blynk.server.api.http.pojo;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Single pin update within batch update request.
+ * For instance {"pin":"v1","value":"10"} or {"token":"...","pin":"v1","value":["1","2"]}.
+ */
+public class BatchPinData {
+
+    //used only for multi device batch update
+    public String token;
+
+    public String pin;
+
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    public String[] value;
+
+}
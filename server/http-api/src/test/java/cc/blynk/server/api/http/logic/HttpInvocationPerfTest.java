@@ -0,0 +1,93 @@
+package cc.blynk.server.api.http.logic;
+
+import cc.blynk.core.http.MediaType;
+import cc.blynk.core.http.Response;
+import cc.blynk.core.http.annotation.Consumes;
+import cc.blynk.core.http.annotation.GET;
+import cc.blynk.core.http.annotation.Path;
+import cc.blynk.core.http.annotation.PathParam;
+import cc.blynk.core.http.annotation.QueryParam;
+import cc.blynk.core.http.rest.HandlerHolder;
+import cc.blynk.core.http.rest.HandlerRegistry;
+import cc.blynk.core.http.rest.RouteMatch;
+import cc.blynk.core.http.rest.URIDecoder;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handler invocation for "{token}/update/{pin}" GET request. "reflection" is previous
+ * invocation via Method.invoke, "methodHandle" is HandlerRegistry invocation.
+ * Handler has same signature as HttpAPILogic.updateWidgetPinDataViaGet, but does nothing,
+ * so only params fetching and invocation are measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class HttpInvocationPerfTest {
+
+    private static final String URI = "/4ae3851817194e2596cf1b7103603ef8/update/v10?value=1";
+
+    private HandlerHolder handlerHolder;
+    private URIDecoder uriDecoder;
+
+    @Setup
+    public void setup() {
+        HandlerRegistry.register("/perf", new UpdatePinLogic());
+
+        RouteMatch routeMatch = HandlerRegistry.match(HttpMethod.GET, HandlerRegistry.path("/perf" + URI));
+        this.handlerHolder = routeMatch.handlerHolder;
+        this.uriDecoder = new URIDecoder(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, URI));
+        this.uriDecoder.pathData = routeMatch.pathData;
+    }
+
+    @Benchmark
+    public FullHttpResponse reflection() throws Exception {
+        Object[] params = handlerHolder.fetchParams(uriDecoder);
+        return (FullHttpResponse) handlerHolder.method.invoke(handlerHolder.handler, params);
+    }
+
+    @Benchmark
+    public FullHttpResponse methodHandle() {
+        Object[] params = handlerHolder.fetchParams(uriDecoder);
+        return HandlerRegistry.invoke(handlerHolder, params);
+    }
+
+    @Path("")
+    public static class UpdatePinLogic {
+
+        private final Response ok = Response.ok();
+
+        @GET
+        @Path("/{token}/update/{pin}")
+        @Consumes(value = MediaType.APPLICATION_JSON)
+        public Response updateWidgetPinDataViaGet(@PathParam("token") String token,
+                                                  @PathParam("pin") String pinString,
+                                                  @QueryParam("value") String[] pinValues,
+                                                  @QueryParam("label") String labelValue,
+                                                  @QueryParam("labels") String labelsValue,
+                                                  @QueryParam("color") String colorValue,
+                                                  @QueryParam("onLabel") String onLabelValue,
+                                                  @QueryParam("offLabel") String offLabelValue,
+                                                  @QueryParam("isOnPlay") String isOnPlay) {
+            return ok;
+        }
+    }
+
+}
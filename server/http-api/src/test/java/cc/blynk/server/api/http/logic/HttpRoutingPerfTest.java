@@ -0,0 +1,78 @@
+package cc.blynk.server.api.http.logic;
+
+import cc.blynk.core.http.UriTemplate;
+import cc.blynk.core.http.annotation.Path;
+import cc.blynk.core.http.rest.HandlerRegistry;
+import cc.blynk.core.http.rest.RouteMatch;
+import cc.blynk.server.Holder;
+import io.netty.handler.codec.http.HttpMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Route lookup over real HttpAPILogic routes. "regex" is previous lookup - regex match
+ * of every route template one by one, "trie" is HandlerRegistry lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class HttpRoutingPerfTest {
+
+    @Param({
+            "/4ae3851817194e2596cf1b7103603ef8/get/v10",
+            "/4ae3851817194e2596cf1b7103603ef8/update/d8",
+            "/4ae3851817194e2596cf1b7103603ef8/isHardwareConnected",
+            "/4ae3851817194e2596cf1b7103603ef8/unknown"
+    })
+    public String path;
+
+    private final List<UriTemplate> templates = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        HandlerRegistry.register(new HttpAPILogic(mock(Holder.class)));
+
+        String mainPath = HttpAPILogic.class.getAnnotation(Path.class).value();
+        for (Method method : HttpAPILogic.class.getMethods()) {
+            Path path = method.getAnnotation(Path.class);
+            if (path != null) {
+                templates.add(new UriTemplate(mainPath + path.value()));
+            }
+        }
+    }
+
+    @Benchmark
+    public UriTemplate regex() {
+        for (UriTemplate template : templates) {
+            if (template.matches(path)) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public RouteMatch trie() {
+        return HandlerRegistry.match(HttpMethod.GET, path);
+    }
+
+}
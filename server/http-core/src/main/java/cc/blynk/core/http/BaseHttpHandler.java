@@ -2,6 +2,7 @@ package cc.blynk.core.http;
 
 import cc.blynk.core.http.rest.HandlerHolder;
 import cc.blynk.core.http.rest.HandlerRegistry;
+import cc.blynk.core.http.rest.RouteMatch;
 import cc.blynk.core.http.rest.URIDecoder;
 import cc.blynk.server.core.dao.SessionDao;
 import cc.blynk.server.core.dao.TokenManager;
@@ -51,21 +52,22 @@ public abstract class BaseHttpHandler extends ChannelInboundHandlerAdapter imple
     }
 
     public void processHttp(ChannelHandlerContext ctx, HttpRequest req) {
-        HandlerHolder handlerHolder = HandlerRegistry.findHandler(req.method(), HandlerRegistry.path(req.uri()));
+        RouteMatch routeMatch = HandlerRegistry.match(req.method(), HandlerRegistry.path(req.uri()));
 
-        if (handlerHolder == null) {
+        if (routeMatch == null) {
             log.debug("Error resolving url. No path found. {} : {}", req.method().name(), req.uri());
             ReferenceCountUtil.release(req);
             ctx.writeAndFlush(Response.notFound(), ctx.voidPromise());
             return;
         }
-        
+
+        HandlerHolder handlerHolder = routeMatch.handlerHolder;
         URIDecoder uriDecoder;
         Object[] params;
 
         try {
             uriDecoder = new URIDecoder(req);
-            uriDecoder.pathData = handlerHolder.uriTemplate.extractParameters();
+            uriDecoder.pathData = routeMatch.pathData;
             params = handlerHolder.fetchParams(uriDecoder);
         } catch (StringIndexOutOfBoundsException stringE) {
             log.error("{} : '{}'. Error : ", req.method().name(), req.uri(), stringE.getMessage());
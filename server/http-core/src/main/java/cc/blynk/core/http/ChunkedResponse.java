@@ -0,0 +1,107 @@
+package cc.blynk.core.http;
+
+import cc.blynk.server.core.reporting.GzippedCSVInput;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundInvoker;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_DISPOSITION;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaderNames.TRANSFER_ENCODING;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Response with body that is not known in advance. Only headers are kept within response,
+ * body is sent with chunked transfer encoding. Requires ChunkedWriteHandler within pipeline,
+ * it reads next chunk only when channel is writable. Transfer of input that reads chunks
+ * within other threads is resumed once its next chunk is ready.
+ */
+public class ChunkedResponse extends Response {
+
+    private static final Logger log = LogManager.getLogger(ChunkedResponse.class);
+
+    public final ChunkedInput<ByteBuf> body;
+
+    public ChunkedResponse(ChunkedInput<ByteBuf> body, String contentType) {
+        super(HTTP_1_1, OK);
+        this.body = body;
+        headers().remove(CONTENT_LENGTH);
+        headers().set(TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        headers().set(CONTENT_TYPE, contentType);
+        headers().set(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+    }
+
+    public static ChunkedResponse attachment(ChunkedInput<ByteBuf> body, String contentType, String fileName) {
+        ChunkedResponse response = new ChunkedResponse(body, contentType);
+        response.headers().set(CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        return response;
+    }
+
+    public static void write(ChannelHandlerContext ctx, FullHttpResponse response) {
+        write(ctx.channel(), ctx, response);
+    }
+
+    public static void write(Channel channel, FullHttpResponse response) {
+        write(channel, channel, response);
+    }
+
+    /**
+     * Writes response of rest handler. Chunked responses are written as headers
+     * followed by body chunks. Order of pipelined responses is kept by ChunkedWriteHandler.
+     * Deferred responses are written within channel event loop once completed, channel doesn't
+     * read next requests till then.
+     */
+    private static void write(Channel channel, ChannelOutboundInvoker out, FullHttpResponse response) {
+        if (response instanceof DeferredResponse) {
+            response.release();
+            CompletableFuture<? extends FullHttpResponse> result = ((DeferredResponse) response).result;
+            if (result.isDone()) {
+                write(channel, out, getNow(result));
+                return;
+            }
+            channel.config().setAutoRead(false);
+            result.whenComplete((ignored, e) -> channel.eventLoop().execute(() -> {
+                channel.config().setAutoRead(true);
+                write(channel, out, getNow(result));
+            }));
+        } else if (response instanceof ChunkedResponse) {
+            ChunkedResponse chunkedResponse = (ChunkedResponse) response;
+            if (chunkedResponse.body instanceof GzippedCSVInput) {
+                ChunkedWriteHandler chunkedWriter = channel.pipeline().get(ChunkedWriteHandler.class);
+                ((GzippedCSVInput) chunkedResponse.body).onChunkReady(chunkedWriter::resumeTransfer);
+            }
+            out.write(new DefaultHttpResponse(chunkedResponse.protocolVersion(), chunkedResponse.status(),
+                    chunkedResponse.headers()), out.voidPromise());
+            out.writeAndFlush(new HttpChunkedInput(chunkedResponse.body), out.voidPromise());
+        } else {
+            out.writeAndFlush(response, out.voidPromise());
+        }
+    }
+
+    private static FullHttpResponse getNow(CompletableFuture<? extends FullHttpResponse> result) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            log.error("Error processing http request. Reason : {}", cause.getMessage());
+            return Response.serverError(cause.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package cc.blynk.core.http;
+
+import io.netty.handler.codec.http.FullHttpResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Response that is known only when some work is finished within other thread,
+ * e.g. within event loop of other session or within blocking pool.
+ * Written by {@link ChunkedResponse} once result is completed.
+ */
+public class DeferredResponse extends Response {
+
+    public final CompletableFuture<? extends FullHttpResponse> result;
+
+    public DeferredResponse(CompletableFuture<? extends FullHttpResponse> result) {
+        super(HTTP_1_1, OK);
+        this.result = result;
+    }
+
+}
@@ -13,4 +13,6 @@ public class MediaType {
 
     public final static String TEXT_HTML = "text/html";
 
+    public final static String APPLICATION_GZIP = "application/gzip";
+
 }
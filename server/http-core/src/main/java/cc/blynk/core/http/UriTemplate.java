@@ -1,9 +1,7 @@
 package cc.blynk.core.http;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,8 +30,6 @@ public class UriTemplate {
 
     private Pattern compiledUrl;
 
-    private Matcher matcher;
-
     private final List<String> parameterNames = new ArrayList<>();
 
     public UriTemplate(String pattern) {
@@ -42,7 +38,7 @@ public class UriTemplate {
         compile();
     }
 
-    private String getUrlPattern() {
+    public String getUrlPattern() {
         return urlPattern;
     }
 
@@ -52,8 +48,7 @@ public class UriTemplate {
     }
 
     public boolean matches(String url) {
-        this.matcher = compiledUrl.matcher(url);
-        return matcher.matches();
+        return compiledUrl.matcher(url).matches();
     }
 
     public void compile() {
@@ -71,20 +66,6 @@ public class UriTemplate {
         }
     }
 
-    public Map<String, String> extractParameters() {
-        Map<String, String> values = new HashMap<>();
-
-        for (int i = 0; i < matcher.groupCount(); i++) {
-            String value = matcher.group(i + 1);
-
-            if (value != null) {
-                values.put(parameterNames.get(i), value);
-            }
-        }
-
-        return values;
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -6,8 +6,12 @@ import cc.blynk.core.http.annotation.GET;
 import cc.blynk.core.http.annotation.POST;
 import cc.blynk.core.http.annotation.PUT;
 import cc.blynk.core.http.rest.params.Param;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpMethod;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
@@ -27,10 +31,14 @@ public class HandlerHolder {
 
     public final Param[] params;
 
+    //handler method bound to handler instance and taking all params as array
+    private final MethodHandle invoker;
+
     public HandlerHolder(UriTemplate uriTemplate, Method method, Object handler, int paramsCount) {
         this.uriTemplate = uriTemplate;
         this.method = method;
         this.handler = handler;
+        this.invoker = bind(method, handler, paramsCount);
 
         if (method.isAnnotationPresent(GET.class)) {
             this.httpMethod = HttpMethod.GET;
@@ -48,6 +56,21 @@ public class HandlerHolder {
         this.params = new Param[paramsCount];
     }
 
+    private static MethodHandle bind(Method method, Object handler, int paramsCount) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method)
+                    .bindTo(handler)
+                    .asSpreader(Object[].class, paramsCount)
+                    .asType(MethodType.methodType(FullHttpResponse.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Handler method should be public. " + method, e);
+        }
+    }
+
+    public FullHttpResponse invoke(Object[] params) throws Throwable {
+        return (FullHttpResponse) invoker.invokeExact(params);
+    }
+
     public Object[] fetchParams(URIDecoder uriDecoder) {
         Object[] res = new Object[params.length];
         for (int i = 0; i < params.length; i++) {
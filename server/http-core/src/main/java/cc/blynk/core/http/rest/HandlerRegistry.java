@@ -19,7 +19,7 @@ import org.apache.logging.log4j.Logger;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -31,7 +31,9 @@ public class HandlerRegistry {
 
     private static final Logger log = LogManager.getLogger(HandlerRegistry.class);
 
-    private final static Set<HandlerHolder> processors = new HashSet<>();
+    private final static Set<HandlerHolder> processors = new LinkedHashSet<>();
+    //rebuilt on every registration, handlers are registered only on server start
+    private static volatile Router router = new Router(processors);
 
     public static void register(String rootPath, Object o) {
         registerHandler(rootPath, o);
@@ -41,7 +43,7 @@ public class HandlerRegistry {
         registerHandler("", o);
     }
 
-    private static void registerHandler(String rootPath, Object handler) {
+    private static synchronized void registerHandler(String rootPath, Object handler) {
         Class<?> handlerClass = handler.getClass();
         Annotation pathAnnotation = handlerClass.getAnnotation(Path.class);
         String handlerMainPath = ((Path) pathAnnotation).value();
@@ -93,22 +95,21 @@ public class HandlerRegistry {
                 processors.add(handlerHolder);
             }
         }
-    }
 
-    public static HandlerHolder findHandler(HttpMethod httpMethod, String path) {
-        for (HandlerHolder handlerHolder : processors) {
-            if (handlerHolder.httpMethod == httpMethod && handlerHolder.uriTemplate.matches(path)) {
-                return handlerHolder;
-            }
-        }
+        router = new Router(processors);
+    }
 
-        return null;
+    /**
+     * @return handler with extracted path parameters or null in case there is no handler for given path.
+     */
+    public static RouteMatch match(HttpMethod httpMethod, String path) {
+        return router.match(httpMethod, path);
     }
 
     public static FullHttpResponse invoke(HandlerHolder handlerHolder, Object[] params) {
         try {
-            return (FullHttpResponse) handlerHolder.method.invoke(handlerHolder.handler, params);
-        } catch (Exception e) {
+            return handlerHolder.invoke(params);
+        } catch (Throwable e) {
             log.error("Error invoking handler. Reason : {}.", e.getMessage());
             log.debug(e);
             return Response.serverError(e.getMessage());
@@ -0,0 +1,20 @@
+package cc.blynk.core.http.rest;
+
+import java.util.Map;
+
+/**
+ * Result of route lookup. Immutable, so it may be safely passed between threads.
+ */
+public final class RouteMatch {
+
+    public final HandlerHolder handlerHolder;
+
+    //values of path parameters by their names
+    public final Map<String, String> pathData;
+
+    RouteMatch(HandlerHolder handlerHolder, Map<String, String> pathData) {
+        this.handlerHolder = handlerHolder;
+        this.pathData = pathData;
+    }
+
+}
@@ -0,0 +1,149 @@
+package cc.blynk.core.http.rest;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Path segment trie of registered handlers, 1 trie per http method.
+ * Static segments are checked before {param} segments, so "/users/changePass/{name}"
+ * wins over "/users/{name}/{action}" for "/users/changePass/x". Lookup walks request path
+ * once without regex and creates strings only for path parameter values.
+ * Router is immutable after creation, so it may be used from any thread.
+ */
+final class Router {
+
+    private final Map<HttpMethod, Node> roots = new HashMap<>();
+    private int maxParams;
+
+    Router(Collection<HandlerHolder> handlers) {
+        for (HandlerHolder handlerHolder : handlers) {
+            if (handlerHolder.httpMethod != null) {
+                add(handlerHolder);
+            }
+        }
+    }
+
+    private void add(HandlerHolder handlerHolder) {
+        String pattern = handlerHolder.uriTemplate.getUrlPattern();
+        Node node = roots.computeIfAbsent(handlerHolder.httpMethod, method -> new Node());
+        String[] paramNames = new String[0];
+
+        for (String segment : pattern.split("/", -1)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                paramNames = Arrays.copyOf(paramNames, paramNames.length + 1);
+                paramNames[paramNames.length - 1] = segment.substring(1, segment.length() - 1);
+                if (node.paramChild == null) {
+                    node.paramChild = new Node();
+                }
+                node = node.paramChild;
+            } else if (segment.indexOf('{') >= 0) {
+                throw new IllegalArgumentException("Path parameter should take whole path segment : " + pattern);
+            } else {
+                node = node.getOrAddStatic(segment);
+            }
+        }
+
+        //same as with set of handlers, latest registered handler wins
+        node.handlerHolder = handlerHolder;
+        node.paramNames = paramNames;
+        maxParams = Math.max(maxParams, paramNames.length);
+    }
+
+    RouteMatch match(HttpMethod httpMethod, String path) {
+        Node root = roots.get(httpMethod);
+        if (root == null) {
+            return null;
+        }
+        int[] bounds = new int[maxParams * 2];
+        Node leaf = find(root, path, 0, bounds, 0);
+        if (leaf == null) {
+            return null;
+        }
+        return new RouteMatch(leaf.handlerHolder, pathData(leaf.paramNames, path, bounds));
+    }
+
+    private static Map<String, String> pathData(String[] paramNames, String path, int[] bounds) {
+        if (paramNames.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> pathData = new HashMap<>();
+        for (int i = 0; i < paramNames.length; i++) {
+            pathData.put(paramNames[i], path.substring(bounds[i * 2], bounds[i * 2 + 1]));
+        }
+        return pathData;
+    }
+
+    /**
+     * @param from - start of current segment within path.
+     * @param bounds - start and end of every captured path parameter.
+     * @param captured - number of already captured path parameters.
+     */
+    private static Node find(Node node, String path, int from, int[] bounds, int captured) {
+        int end = path.indexOf('/', from);
+        final boolean last = end < 0;
+        if (last) {
+            end = path.length();
+        }
+
+        Node child = node.getStatic(path, from, end);
+        if (child != null) {
+            Node leaf = last ? child.leaf() : find(child, path, end + 1, bounds, captured);
+            if (leaf != null) {
+                return leaf;
+            }
+        }
+
+        child = node.paramChild;
+        if (child != null && end > from) {
+            bounds[captured * 2] = from;
+            bounds[captured * 2 + 1] = end;
+            return last ? child.leaf() : find(child, path, end + 1, bounds, captured + 1);
+        }
+
+        return null;
+    }
+
+    private static final class Node {
+
+        //usually there are few children, so linear scan without substring is faster than map lookup
+        private String[] staticNames = new String[0];
+        private Node[] staticChildren = new Node[0];
+        private Node paramChild;
+
+        private HandlerHolder handlerHolder;
+        private String[] paramNames;
+
+        Node leaf() {
+            return handlerHolder == null ? null : this;
+        }
+
+        Node getStatic(String path, int from, int end) {
+            final int length = end - from;
+            for (int i = 0; i < staticNames.length; i++) {
+                String name = staticNames[i];
+                if (name.length() == length && path.regionMatches(from, name, 0, length)) {
+                    return staticChildren[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddStatic(String segment) {
+            Node child = getStatic(segment, 0, segment.length());
+            if (child == null) {
+                child = new Node();
+                staticNames = Arrays.copyOf(staticNames, staticNames.length + 1);
+                staticNames[staticNames.length - 1] = segment;
+                staticChildren = Arrays.copyOf(staticChildren, staticChildren.length + 1);
+                staticChildren[staticChildren.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+}
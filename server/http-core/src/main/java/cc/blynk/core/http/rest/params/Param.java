@@ -2,6 +2,8 @@ package cc.blynk.core.http.rest.params;
 
 import cc.blynk.core.http.rest.URIDecoder;
 
+import java.util.function.Function;
+
 /**
  * The Blynk Project.
  * Created by Dmitriy Dumanskiy.
@@ -13,26 +15,34 @@ public abstract class Param {
 
     protected final Class<?> type;
 
+    //resolved once on handler registration, so there is no type checks per request
+    private final Function<String, Object> converter;
+
     public Param(String name, Class<?> type) {
         this.name = name;
         this.type = type;
+        this.converter = converter(type);
     }
 
-    public abstract Object get(URIDecoder uriDecoder);
-
-    Object convertTo(String value) {
+    private static Function<String, Object> converter(Class<?> type) {
         if (type == long.class) {
-            return Long.valueOf(value);
+            return Long::valueOf;
         }
         if (type == int.class || type == Integer.class) {
-            return Integer.valueOf(value);
+            return Integer::valueOf;
         }
         if (type == short.class || type == Short.class) {
-            return Short.valueOf(value);
+            return Short::valueOf;
         }
         if (type == boolean.class) {
-            return Boolean.valueOf(value);
+            return Boolean::valueOf;
         }
-        return value;
+        return value -> value;
+    }
+
+    public abstract Object get(URIDecoder uriDecoder);
+
+    Object convertTo(String value) {
+        return converter.apply(value);
     }
 }
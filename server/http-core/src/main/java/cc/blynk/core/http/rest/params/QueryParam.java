@@ -2,7 +2,6 @@ package cc.blynk.core.http.rest.params;
 
 import cc.blynk.core.http.rest.URIDecoder;
 
-import java.lang.reflect.Array;
 import java.util.List;
 
 /**
@@ -12,8 +11,16 @@ import java.util.List;
  */
 public class QueryParam extends Param {
 
+    private final boolean isList;
+    private final boolean isArray;
+
     public QueryParam(String name, Class<?> type) {
         super(name, type);
+        this.isList = type == List.class;
+        this.isArray = type.isArray();
+        if (isArray && type.getComponentType() != String.class) {
+            throw new IllegalStateException("Not supported query param type " + type + ".");
+        }
     }
 
     @Override
@@ -23,17 +30,12 @@ public class QueryParam extends Param {
             return null;
         }
 
-        if (type == List.class) {
+        if (isList) {
             return params;
         }
 
-        if (type.isArray()) {
-            //don't know how to make it better
-            if (type.getComponentType() == String.class) {
-                return params.toArray((String[]) Array.newInstance(type.getComponentType(), params.size()));
-            } else {
-                throw new IllegalStateException("Not supported.");
-            }
+        if (isArray) {
+            return params.toArray(new String[params.size()]);
         }
 
         return convertTo(params.get(0));
@@ -0,0 +1,62 @@
+package cc.blynk.core.http.rest;
+
+import cc.blynk.core.http.Response;
+import cc.blynk.core.http.UriTemplate;
+import cc.blynk.core.http.annotation.GET;
+import cc.blynk.core.http.rest.params.PathParam;
+import cc.blynk.core.http.rest.params.QueryParam;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class HandlerHolderTest {
+
+    @GET
+    public Response sum(String token, int a, String[] values) {
+        return Response.ok(token + ":" + (a + values.length));
+    }
+
+    @GET
+    public Response fail() {
+        throw new IllegalStateException("Expected");
+    }
+
+    @Test
+    public void testInvokeWithConvertedParams() throws Exception {
+        HandlerHolder handlerHolder = new HandlerHolder(new UriTemplate("/{token}/{a}"),
+                HandlerHolderTest.class.getMethod("sum", String.class, int.class, String[].class), this, 3);
+        handlerHolder.params[0] = new PathParam("token", String.class);
+        handlerHolder.params[1] = new PathParam("a", int.class);
+        handlerHolder.params[2] = new QueryParam("value", String[].class);
+
+        URIDecoder uriDecoder = new URIDecoder(
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/token/40?value=1&value=2"));
+        uriDecoder.pathData = new HashMap<>();
+        uriDecoder.pathData.put("token", "token");
+        uriDecoder.pathData.put("a", "40");
+
+        FullHttpResponse response = HandlerRegistry.invoke(handlerHolder, handlerHolder.fetchParams(uriDecoder));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals("token:42", response.content().toString(StandardCharsets.UTF_8));
+        response.release();
+    }
+
+    @Test
+    public void testHandlerExceptionIsServerError() throws Exception {
+        HandlerHolder handlerHolder = new HandlerHolder(new UriTemplate("/fail"),
+                HandlerHolderTest.class.getMethod("fail"), this, 0);
+
+        FullHttpResponse response = HandlerRegistry.invoke(handlerHolder, new Object[0]);
+        assertEquals(HttpResponseStatus.INTERNAL_SERVER_ERROR, response.status());
+        response.release();
+    }
+
+}
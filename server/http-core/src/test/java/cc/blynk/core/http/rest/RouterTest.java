@@ -0,0 +1,104 @@
+package cc.blynk.core.http.rest;
+
+import cc.blynk.core.http.UriTemplate;
+import cc.blynk.core.http.annotation.GET;
+import cc.blynk.core.http.annotation.PUT;
+import io.netty.handler.codec.http.HttpMethod;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouterTest {
+
+    private final List<HandlerHolder> handlers = new ArrayList<>();
+
+    private HandlerHolder add(String pattern, String methodName) throws Exception {
+        Method method = RouterTest.class.getDeclaredMethod(methodName);
+        HandlerHolder handlerHolder = new HandlerHolder(new UriTemplate(pattern), method, this, 0);
+        handlers.add(handlerHolder);
+        return handlerHolder;
+    }
+
+    @GET
+    public void get() {
+    }
+
+    @PUT
+    public void put() {
+    }
+
+    @Test
+    public void testStaticAndParams() throws Exception {
+        HandlerHolder users = add("/admin/users", "get");
+        HandlerHolder user = add("/admin/users/{name}", "get");
+        HandlerHolder changePass = add("/admin/users/changePass/{name}", "get");
+        HandlerHolder getPin = add("/{token}/get/{pin}", "get");
+        HandlerHolder putPin = add("/{token}/get/{pin}", "put");
+        Router router = new Router(handlers);
+
+        assertSame(users, router.match(HttpMethod.GET, "/admin/users").handlerHolder);
+        assertTrue(router.match(HttpMethod.GET, "/admin/users").pathData.isEmpty());
+
+        RouteMatch match = router.match(HttpMethod.GET, "/admin/users/dmitriy@blynk.cc");
+        assertSame(user, match.handlerHolder);
+        assertEquals("dmitriy@blynk.cc", match.pathData.get("name"));
+
+        match = router.match(HttpMethod.GET, "/admin/users/changePass/dmitriy@blynk.cc");
+        assertSame(changePass, match.handlerHolder);
+        assertEquals("dmitriy@blynk.cc", match.pathData.get("name"));
+
+        match = router.match(HttpMethod.GET, "/4ae3851817194e2596cf1b7103603ef8/get/v10");
+        assertSame(getPin, match.handlerHolder);
+        assertEquals("4ae3851817194e2596cf1b7103603ef8", match.pathData.get("token"));
+        assertEquals("v10", match.pathData.get("pin"));
+
+        assertSame(putPin, router.match(HttpMethod.PUT, "/token/get/v10").handlerHolder);
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        add("/admin/users/{name}", "get");
+        add("/{token}/get/{pin}", "get");
+        Router router = new Router(handlers);
+
+        assertNull(router.match(HttpMethod.GET, "/admin/users/"));
+        assertNull(router.match(HttpMethod.GET, "/admin/users/a/b"));
+        assertNull(router.match(HttpMethod.GET, "/token/get"));
+        assertNull(router.match(HttpMethod.GET, "/token//v10"));
+        assertNull(router.match(HttpMethod.DELETE, "/token/get/v10"));
+        assertNull(router.match(HttpMethod.GET, ""));
+    }
+
+    @Test
+    public void testStaticBacktracksToParam() throws Exception {
+        HandlerHolder changePass = add("/users/changePass/{name}", "get");
+        HandlerHolder action = add("/users/{name}/{action}", "get");
+        Router router = new Router(handlers);
+
+        RouteMatch match = router.match(HttpMethod.GET, "/users/changePass/x");
+        assertSame(changePass, match.handlerHolder);
+        assertEquals("x", match.pathData.get("name"));
+        assertNull(router.match(HttpMethod.GET, "/users/changePass/x/y"));
+
+        //static segment leads to dead end, so param branch is used
+        add("/users/{name}/{action}/{value}", "get");
+        router = new Router(handlers);
+        match = router.match(HttpMethod.GET, "/users/changePass/x/y");
+        assertEquals("changePass", match.pathData.get("name"));
+        assertEquals("x", match.pathData.get("action"));
+        assertEquals("y", match.pathData.get("value"));
+
+        match = router.match(HttpMethod.GET, "/users/dima/block");
+        assertSame(action, match.handlerHolder);
+        assertEquals("dima", match.pathData.get("name"));
+        assertEquals("block", match.pathData.get("action"));
+    }
+
+}
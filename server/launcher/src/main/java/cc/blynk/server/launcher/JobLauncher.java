@@ -5,9 +5,9 @@ import cc.blynk.server.core.BaseServer;
 import cc.blynk.server.core.reporting.average.AverageAggregatorProcessor;
 import cc.blynk.server.workers.ProfileSaverWorker;
 import cc.blynk.server.workers.ReportingWorker;
+import cc.blynk.server.workers.SessionRebalanceWorker;
 import cc.blynk.server.workers.ShutdownHookWorker;
 import cc.blynk.server.workers.StatsWorker;
-import cc.blynk.utils.ReportingUtil;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -27,17 +27,20 @@ class JobLauncher {
 
         long startDelay;
 
-        ReportingWorker reportingWorker = new ReportingWorker(
-                holder.reportingDao,
-                ReportingUtil.getReportingFolder(holder.props.getProperty("data.folder")),
-                holder.dbManager
-        );
+        ReportingWorker reportingWorker = new ReportingWorker(holder.reportingDao, holder.dbManager);
 
         //to start at the beggining of an minute
         startDelay = AverageAggregatorProcessor.MINUTE - (System.currentTimeMillis() % AverageAggregatorProcessor.MINUTE);
         scheduler.scheduleAtFixedRate(reportingWorker, startDelay, AverageAggregatorProcessor.MINUTE, TimeUnit.MILLISECONDS);
 
-        ProfileSaverWorker profileSaverWorker = new ProfileSaverWorker(holder.userDao, holder.fileManager, holder.dbManager);
+        scheduler.scheduleAtFixedRate(holder.reportingDao.averageAggregator::flushLog, 1000,
+                holder.props.getIntProperty("reporting.wal.flush.period", 1000), TimeUnit.MILLISECONDS);
+
+        scheduler.scheduleAtFixedRate(holder.pinStateStorage::flush, 1000,
+                holder.props.getIntProperty("pin.state.flush.period", 1000), TimeUnit.MILLISECONDS);
+
+        ProfileSaverWorker profileSaverWorker = new ProfileSaverWorker(holder.userDao, holder.fileManager,
+                holder.dbManager, holder.stats, holder.props.getIntProperty("profile.save.workers", 2));
 
         //running 1 sec later after reporting
         scheduler.scheduleAtFixedRate(profileSaverWorker, startDelay + 1000,
@@ -47,6 +50,13 @@ class JobLauncher {
         scheduler.scheduleAtFixedRate(statsWorker, 1000,
                 holder.props.getIntProperty("stats.print.worker.period"), TimeUnit.MILLISECONDS);
 
+        int rebalancePeriod = holder.props.getIntProperty("server.user.rebalance.period", 0);
+        if (rebalancePeriod > 0) {
+            SessionRebalanceWorker rebalanceWorker = new SessionRebalanceWorker(holder.sessionDao, holder.stats,
+                    holder.props.getIntProperty("server.user.rebalance.threshold", 50));
+            scheduler.scheduleAtFixedRate(rebalanceWorker, rebalancePeriod, rebalancePeriod, TimeUnit.MILLISECONDS);
+        }
+
         //millis we need to wait to start scheduler at the beginning of a second.
         startDelay = 1000 - (System.currentTimeMillis() % 1000);
 
@@ -2,20 +2,30 @@ package cc.blynk.server.workers;
 
 import cc.blynk.server.core.dao.FileManager;
 import cc.blynk.server.core.dao.UserDao;
-import cc.blynk.server.core.model.DashBoard;
+import cc.blynk.server.core.dao.UserKey;
 import cc.blynk.server.core.model.auth.User;
+import cc.blynk.server.core.stats.GlobalStats;
 import cc.blynk.server.db.DBManager;
 import cc.blynk.utils.JsonParser;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Background thread that once a minute stores all user DB to disk in case profile was changed since last saving.
+ * Background thread that once a minute stores to disk profiles of users that were changed since last saving.
+ * Changed users are taken from {@link UserDao} dirty queue, so unchanged profiles are not even touched.
+ * Profiles are written in parallel by "saversCount" threads.
  *
  * The Blynk Project.
  * Created by Dmitriy Dumanskiy.
@@ -25,34 +35,29 @@ public class ProfileSaverWorker implements Runnable, Closeable {
 
     private static final Logger log = LogManager.getLogger(ProfileSaverWorker.class);
 
-    //1 min
     private final UserDao userDao;
     private final FileManager fileManager;
     private final DBManager dbManager;
-    private long lastStart;
+    private final GlobalStats stats;
+    private final ExecutorService savers;
+    private final int saversCount;
     private long backupTs;
 
     public ProfileSaverWorker(UserDao userDao, FileManager fileManager, DBManager dbManager) {
+        this(userDao, fileManager, dbManager, new GlobalStats(), 1);
+    }
+
+    public ProfileSaverWorker(UserDao userDao, FileManager fileManager, DBManager dbManager,
+                              GlobalStats stats, int saversCount) {
         this.userDao = userDao;
         this.fileManager = fileManager;
         this.dbManager = dbManager;
-        this.lastStart = System.currentTimeMillis();
+        this.stats = stats;
+        this.saversCount = Math.max(1, saversCount);
+        this.savers = Executors.newFixedThreadPool(this.saversCount, new DefaultThreadFactory("profile-saver"));
         this.backupTs = 0;
     }
 
-    private static boolean isUpdated(long lastStart, User user) {
-        return (lastStart <= user.lastModifiedTs) || isDashUpdated(lastStart, user);
-    }
-
-    private static boolean isDashUpdated(long lastStart, User user) {
-        for (DashBoard dashBoard : user.profile.dashBoards) {
-            if (lastStart <= dashBoard.updatedAt) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     @Override
     public void run() {
         try {
@@ -60,7 +65,7 @@ public class ProfileSaverWorker implements Runnable, Closeable {
 
             final long now = System.currentTimeMillis();
 
-            List<User> users = saveModified();
+            List<User> users = saveModified(now);
 
             dbManager.saveUsers(users);
 
@@ -69,9 +74,8 @@ public class ProfileSaverWorker implements Runnable, Closeable {
                 archiveUser(now);
             }
 
-            lastStart = now;
-
-            log.debug("Saving user db finished. Modified {} users.", users.size());
+            log.debug("Saving user db finished. Modified {} users. Time : {} ms.",
+                    users.size(), System.currentTimeMillis() - now);
         } catch (Throwable t) {
             log.error("Error saving users.", t);
         }
@@ -84,7 +88,13 @@ public class ProfileSaverWorker implements Runnable, Closeable {
             for (User user : userDao.users.values()) {
                 try {
                     Path path = fileManager.generateBackupFileName(user.name, user.appName);
-                    JsonParser.writeUser(path.toFile(), user);
+                    if (user.isProfileLoaded()) {
+                        JsonParser.writeUser(path.toFile(), user);
+                    } else {
+                        //not loaded profile wasn't changed, so file is up to date
+                        Files.copy(fileManager.generateFileName(user.name, user.appName), path,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
                 } catch (Exception e) {
                     //ignore
                 }
@@ -92,25 +102,71 @@ public class ProfileSaverWorker implements Runnable, Closeable {
         }
     }
 
-    private List<User> saveModified() {
+    private List<User> pollModified() {
         List<User> users = new ArrayList<>();
+        UserKey userKey;
+        while ((userKey = userDao.pollDirty()) != null) {
+            User user = userDao.users.get(userKey);
+            //user may be already deleted
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
 
-        for (User user : userDao.getUsers().values()) {
-            if (isUpdated(lastStart, user)) {
-                try {
-                    fileManager.overrideUserFile(user);
-                    users.add(user);
-                } catch (Exception e) {
-                    log.error("Error saving : {}.", user);
-                }
+    private List<User> saveModified(long now) throws InterruptedException {
+        List<User> users = pollModified();
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        int chunkSize = (users.size() + saversCount - 1) / saversCount;
+        List<Future<List<User>>> results = new ArrayList<>(saversCount);
+        for (int from = 0; from < users.size(); from += chunkSize) {
+            List<User> chunk = users.subList(from, Math.min(users.size(), from + chunkSize));
+            results.add(savers.submit(() -> save(chunk, now)));
+        }
+
+        List<User> saved = new ArrayList<>(users.size());
+        for (Future<List<User>> result : results) {
+            try {
+                saved.addAll(result.get());
+            } catch (Exception e) {
+                log.error("Error saving users.", e);
             }
         }
+        return saved;
+    }
 
-        return users;
+    private List<User> save(List<User> users, long now) {
+        List<User> saved = new ArrayList<>(users.size());
+        for (User user : users) {
+            long lag = now - user.dirtySince;
+            //cleared before write, so changes made during write are saved on next run
+            user.clearDirty();
+            try {
+                stats.profileBytesWritten.add(fileManager.overrideUserFile(user));
+                stats.profilesSaved.increment();
+                stats.profileSaveLagMillis.add(lag);
+                stats.profileMaxSaveLagMillis.accumulate(lag);
+                saved.add(user);
+            } catch (Exception e) {
+                log.error("Error saving : {}.", user);
+                user.markDirty();
+            }
+        }
+        return saved;
     }
 
     @Override
     public void close() {
         run();
+        savers.shutdown();
+        try {
+            savers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
@@ -1,27 +1,25 @@
 package cc.blynk.server.workers;
 
 import cc.blynk.server.core.dao.ReportingDao;
+import cc.blynk.server.core.model.enums.AggregationFunction;
 import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.reporting.average.AggregationKey;
 import cc.blynk.server.core.reporting.average.AggregationValue;
+import cc.blynk.server.core.reporting.raw.RawDataProcessor;
+import cc.blynk.server.core.reporting.storage.ReportingStorage;
 import cc.blynk.server.db.DBManager;
-import cc.blynk.utils.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static cc.blynk.server.core.dao.ReportingDao.generateFilename;
-
 /**
  * Worker that runs once a minute. During run - stores all aggregated reporting data
  * to disk. Also sends all data in batches to RDBMS in case DBManager was initialized.
@@ -35,27 +33,32 @@ public class ReportingWorker implements Runnable {
     private static final Logger log = LogManager.getLogger(ReportingWorker.class);
 
     private final ReportingDao reportingDao;
-    private final String reportingPath;
+    private final ReportingStorage storage;
+    private final AggregationFunction[] extraFunctions;
     private final DBManager dbManager;
 
-    public ReportingWorker(ReportingDao reportingDao, String reportingPath, DBManager dbManager) {
+    public ReportingWorker(ReportingDao reportingDao, DBManager dbManager) {
         this.reportingDao = reportingDao;
-        this.reportingPath = reportingPath;
+        this.storage = reportingDao.storage;
+        this.extraFunctions = storage.extraFunctions();
         this.dbManager = dbManager;
     }
 
     @Override
     public void run() {
         try {
-            Map<AggregationKey, AggregationValue> removedKeysMinute = process(reportingDao.averageAggregator.getMinute(), GraphType.MINUTE);
-            Map<AggregationKey, AggregationValue> removedKeysHour = process(reportingDao.averageAggregator.getHourly(), GraphType.HOURLY);
-            Map<AggregationKey, AggregationValue> removedKeysDay = process(reportingDao.averageAggregator.getDaily(), GraphType.DAILY);
+            Map<AggregationKey, AggregationValue> removedKeysMinute = process(GraphType.MINUTE);
+            Map<AggregationKey, AggregationValue> removedKeysHour = process(GraphType.HOURLY);
+            Map<AggregationKey, AggregationValue> removedKeysDay = process(GraphType.DAILY);
+
+            flushAndCheckpoint();
 
             dbManager.insertReporting(removedKeysMinute, GraphType.MINUTE);
             dbManager.insertReporting(removedKeysHour, GraphType.HOURLY);
             dbManager.insertReporting(removedKeysDay, GraphType.DAILY);
 
-            dbManager.insertReportingRaw(reportingDao.rawDataProcessor.rawStorage);
+            dbManager.insertReportingRaw(reportingDao.rawDataProcessor);
+            logRawDataOverflow(reportingDao.rawDataProcessor);
 
             dbManager.cleanOldReportingRecords(Instant.now());
         } catch (Exception e) {
@@ -64,46 +67,105 @@ public class ReportingWorker implements Runnable {
     }
 
     /**
-     * Iterates over all reporting entries that were created during last minute.
-     * And stores all entries one by one to disk.
+     * Makes whole batch visible on disk in one pass. Only after that removed and rolled up buckets
+     * are durable, so log could start from scratch. In case flush fails log is kept and replayed on restart.
+     */
+    private void flushAndCheckpoint() {
+        try {
+            storage.flush();
+        } catch (IOException e) {
+            log.error("Error flushing reporting storage. Aggregation log is kept.", e);
+            return;
+        }
+        reportingDao.averageAggregator.checkpoint();
+    }
+
+    private static void logRawDataOverflow(RawDataProcessor rawDataProcessor) {
+        long spilled = rawDataProcessor.spilled.sumThenReset();
+        long dropped = rawDataProcessor.dropped.sumThenReset();
+        if (spilled > 0 || dropped > 0) {
+            log.warn("Raw data buffer overflow. Spilled to disk {}, dropped {} records.", spilled, dropped);
+        }
+    }
+
+    /**
+     * Removes all reporting entries that were closed during last minute
+     * and appends average of every entry to reporting storage, together with extra aggregates storage keeps.
+     * Entries which average failed to store are returned back to aggregator.
+     * Stored minute entries are cascaded into hourly and daily entries, so minute should be processed first.
      *
-     * @param map - reporting entires that were created during last minute.
      * @param type - type of reporting. Could be minute, hourly, daily.
-     * @return - returns list of reporting entries that were successfully flushed to disk.
+     * @return - returns list of reporting entries that were successfully appended to storage.
      */
-    private Map<AggregationKey, AggregationValue>  process(Map<AggregationKey, AggregationValue> map, GraphType type) {
+    private Map<AggregationKey, AggregationValue> process(GraphType type) {
         long nowTruncatedToPeriod = System.currentTimeMillis() / type.period;
 
-        List<AggregationKey> keys = new ArrayList<>(map.keySet());
+        Map<AggregationKey, AggregationValue> removedKeys =
+                reportingDao.averageAggregator.removeOutdated(type, nowTruncatedToPeriod);
+
+        List<AggregationKey> keys = new ArrayList<>(removedKeys.keySet());
         Collections.sort(keys, AggregationKey.AGGREGATION_KEY_COMPARATOR);
 
-        Map<AggregationKey, AggregationValue> removedKeys = new HashMap<>();
+        for (AggregationKey key : keys) {
+            AggregationValue value = removedKeys.get(key);
+            if (isAlreadyStored(key, type)) {
+                log.debug("Skipping reporting entry restored from log, it is already stored.");
+                //minute still goes to hourly and daily buckets, as they were restored without it
+                if (type == GraphType.MINUTE) {
+                    reportingDao.averageAggregator.rollUp(key, value);
+                }
+                continue;
+            }
 
-        for (AggregationKey keyToRemove : keys) {
-            //if prev hour
-            if (keyToRemove.isOutdated(nowTruncatedToPeriod)) {
-                AggregationValue value = map.get(keyToRemove);
+            try {
+                append(key, value, type, AggregationFunction.AVG);
+            } catch (IOException ioe) {
+                log.error("Error open user data reporting file. Reason : {}", ioe.getMessage());
+                removedKeys.remove(key);
+                reportingDao.averageAggregator.restore(type, key, value);
+                continue;
+            }
 
+            //average is stored, so bucket is not restored in case other aggregates fail
+            for (AggregationFunction function : extraFunctions) {
                 try {
-                    final Path userReportFolder = Paths.get(reportingPath, keyToRemove.username);
-                    if (Files.notExists(userReportFolder)) {
-                        Files.createDirectories(userReportFolder);
-                    }
-
-                    String fileName = generateFilename(keyToRemove.dashId, keyToRemove.deviceId, keyToRemove.pinType, keyToRemove.pin, type);
-                    Path filePath = Paths.get(userReportFolder.toString(), fileName);
-
-                    FileUtils.write(filePath, value.calcAverage(), keyToRemove.getTs(type));
-
-                    final AggregationValue removedValue = map.remove(keyToRemove);
-                    removedKeys.put(keyToRemove, removedValue);
+                    append(key, value, type, function);
                 } catch (IOException ioe) {
-                    log.error("Error open user data reporting file. Reason : {}", ioe.getMessage());
+                    log.error("Error storing {} reporting aggregate. Reason : {}", function, ioe.getMessage());
                 }
             }
+
+            if (type == GraphType.MINUTE) {
+                reportingDao.averageAggregator.rollUp(key, value);
+            }
         }
 
         return removedKeys;
     }
 
+    /**
+     * Replay of aggregation log returns buckets that could be stored right before crash,
+     * so for restored buckets last timestamp of series is checked.
+     */
+    private boolean isAlreadyStored(AggregationKey key, GraphType type) {
+        if (!reportingDao.averageAggregator.isRecovered(type, key.ts)) {
+            return false;
+        }
+        try {
+            ByteBuffer last = storage.read(key.username, key.dashId, key.deviceId,
+                    PinType.getPinType(key.pinType), key.pin, 1, type);
+            return last != null && last.position() >= 16 && last.getLong(last.position() - 8) >= key.getTs(type);
+        } catch (Exception e) {
+            log.error("Error reading last reporting entry. Reason : {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void append(AggregationKey key, AggregationValue value, GraphType type,
+                        AggregationFunction function) throws IOException {
+        storage.append(key.username, key.dashId, key.deviceId,
+                key.pinType, key.pin, type, function, value.get(function), key.getTs(type));
+        reportingDao.readProcessor.invalidate(key.username, key.dashId, key.deviceId, key.pinType, key.pin, type, function);
+    }
+
 }
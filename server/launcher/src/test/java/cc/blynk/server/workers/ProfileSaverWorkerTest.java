@@ -8,22 +8,22 @@ import cc.blynk.server.core.model.AppName;
 import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.stats.GlobalStats;
 import cc.blynk.server.db.DBManager;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.when;
 
 /**
  * The Blynk Project.
@@ -33,33 +33,36 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class ProfileSaverWorkerTest {
 
-    @Mock
-    private UserDao userDao;
-
     @Mock
     private FileManager fileManager;
 
-    @Mock
-    private GlobalStats stats;
-
     private BlockingIOProcessor blockingIOProcessor = new BlockingIOProcessor(1, 1, null);
 
+    private ProfileSaverWorker profileSaverWorker;
+
+    @After
+    public void shutdown() {
+        if (profileSaverWorker != null) {
+            profileSaverWorker.close();
+        }
+        blockingIOProcessor.close();
+    }
+
     @Test
     public void testCorrectProfilesAreSaved() throws IOException {
-        ProfileSaverWorker profileSaverWorker = new ProfileSaverWorker(userDao, fileManager, new DBManager(blockingIOProcessor));
+        UserDao userDao = new UserDao(new ConcurrentHashMap<>(), "local");
+        profileSaverWorker = new ProfileSaverWorker(userDao, fileManager, new DBManager(blockingIOProcessor));
 
         User user1 = new User("1", "", AppName.BLYNK, "local", false);
         User user2 = new User("2", "", AppName.BLYNK, "local", false);
         User user3 = new User("3", "", AppName.BLYNK, "local", false);
         User user4 = new User("4", "", AppName.BLYNK, "local", false);
 
-        ConcurrentMap<UserKey, User> userMap = new ConcurrentHashMap<>();
-        userMap.put(new UserKey(user1), user1);
-        userMap.put(new UserKey(user2), user2);
-        userMap.put(new UserKey(user3), user3);
-        userMap.put(new UserKey(user4), user4);
+        userDao.add(user1);
+        userDao.add(user2);
+        userDao.add(user3);
+        userDao.add(user4);
 
-        when(userDao.getUsers()).thenReturn(userMap);
         profileSaverWorker.run();
 
         verify(fileManager, times(4)).overrideUserFile(any());
@@ -76,20 +79,81 @@ public class ProfileSaverWorkerTest {
         User user3 = new User("3", "", AppName.BLYNK, "local", false);
         User user4 = new User("4", "", AppName.BLYNK, "local", false);
 
-        Map<UserKey, User> userMap = new HashMap<>();
+        ConcurrentMap<UserKey, User> userMap = new ConcurrentHashMap<>();
         userMap.put(new UserKey("1", AppName.BLYNK), user1);
         userMap.put(new UserKey("2", AppName.BLYNK), user2);
         userMap.put(new UserKey("3", AppName.BLYNK), user3);
         userMap.put(new UserKey("4", AppName.BLYNK), user4);
 
-        Thread.sleep(1);
+        UserDao userDao = new UserDao(userMap, "local");
+        profileSaverWorker = new ProfileSaverWorker(userDao, fileManager, new DBManager(blockingIOProcessor));
 
-        ProfileSaverWorker profileSaverWorker = new ProfileSaverWorker(userDao, fileManager, new DBManager(blockingIOProcessor));
+        profileSaverWorker.run();
+
+        verifyNoMoreInteractions(fileManager);
+    }
+
+    @Test
+    public void testOnlyChangedProfilesAreSaved() throws Exception {
+        User user1 = new User("1", "", AppName.BLYNK, "local", false);
+        User user2 = new User("2", "", AppName.BLYNK, "local", false);
+        User user3 = new User("3", "", AppName.BLYNK, "local", false);
 
-        when(userDao.getUsers()).thenReturn(userMap);
+        ConcurrentMap<UserKey, User> userMap = new ConcurrentHashMap<>();
+        userMap.put(new UserKey(user1), user1);
+        userMap.put(new UserKey(user2), user2);
+        userMap.put(new UserKey(user3), user3);
+
+        UserDao userDao = new UserDao(userMap, "local");
+        GlobalStats stats = new GlobalStats();
+        profileSaverWorker = new ProfileSaverWorker(userDao, fileManager,
+                new DBManager(blockingIOProcessor), stats, 2);
+
+        //few changes of same user are saved once
+        user1.markDirty();
+        user1.updateLastModifiedTs(System.currentTimeMillis());
+        user2.purchaseEnergy(100);
+        //deleted user is not saved
+        userDao.delete(new UserKey(user3));
+        user3.markDirty();
+
+        profileSaverWorker.run();
+
+        verify(fileManager, times(2)).overrideUserFile(any());
+        verify(fileManager).overrideUserFile(user1);
+        verify(fileManager).overrideUserFile(user2);
+        assertEquals(2, stats.profilesSaved.sum());
+
+        //changes after save are picked by next run
+        user1.markDirty();
         profileSaverWorker.run();
 
+        verify(fileManager, times(3)).overrideUserFile(any());
+        verify(fileManager, times(2)).overrideUserFile(user1);
+        assertEquals(3, stats.profilesSaved.sum());
+    }
+
+    @Test
+    public void testDirtyProfilesSavedOnClose() throws Exception {
+        User user1 = new User("1", "", AppName.BLYNK, "local", false);
+        User user2 = new User("2", "", AppName.BLYNK, "local", false);
+
+        ConcurrentMap<UserKey, User> userMap = new ConcurrentHashMap<>();
+        userMap.put(new UserKey(user1), user1);
+        userMap.put(new UserKey(user2), user2);
+
+        UserDao userDao = new UserDao(userMap, "local");
+        ProfileSaverWorker worker = new ProfileSaverWorker(userDao, fileManager,
+                new DBManager(blockingIOProcessor), new GlobalStats(), 2);
+
+        //changed after last scheduled run
+        user1.markDirty();
+
+        worker.close();
+
+        verify(fileManager).overrideUserFile(user1);
         verifyNoMoreInteractions(fileManager);
+        assertFalse(user1.isDirty());
     }
 
 }
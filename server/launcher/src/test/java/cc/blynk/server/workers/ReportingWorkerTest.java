@@ -2,11 +2,14 @@ package cc.blynk.server.workers;
 
 import cc.blynk.server.core.BlockingIOProcessor;
 import cc.blynk.server.core.dao.ReportingDao;
+import cc.blynk.server.core.model.enums.AggregationFunction;
 import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.reporting.average.AggregationKey;
+import cc.blynk.server.core.reporting.average.AggregationLog;
 import cc.blynk.server.core.reporting.average.AggregationValue;
 import cc.blynk.server.core.reporting.average.AverageAggregatorProcessor;
+import cc.blynk.server.core.reporting.storage.FileReportingStorage;
 import cc.blynk.server.db.DBManager;
 import cc.blynk.utils.ReportingUtil;
 import cc.blynk.utils.ServerProperties;
@@ -25,6 +28,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,7 +37,10 @@ import static cc.blynk.utils.ReportingUtil.getReportingFolder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 /**
@@ -73,7 +80,7 @@ public class ReportingWorkerTest {
 
     @Test
     public void testStore() throws IOException {
-        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, reportingFolder, new DBManager(blockingIOProcessor));
+        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, new DBManager(blockingIOProcessor));
 
         ConcurrentHashMap<AggregationKey, AggregationValue> map = new ConcurrentHashMap<>();
 
@@ -93,9 +100,7 @@ public class ReportingWorkerTest {
         map.put(aggregationKey2, aggregationValue2);
         map.put(aggregationKey3, aggregationValue3);
 
-        when(averageAggregator.getMinute()).thenReturn(new ConcurrentHashMap<>());
-        when(averageAggregator.getHourly()).thenReturn(map);
-        when(averageAggregator.getDaily()).thenReturn(new ConcurrentHashMap<>());
+        when(averageAggregator.removeOutdated(eq(GraphType.HOURLY), anyLong())).thenReturn(map);
 
         reportingWorker.run();
 
@@ -123,7 +128,7 @@ public class ReportingWorkerTest {
 
     @Test
     public void testStore2() throws IOException {
-        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, reportingFolder, new DBManager(blockingIOProcessor));
+        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, new DBManager(blockingIOProcessor));
 
         ConcurrentHashMap<AggregationKey, AggregationValue> map = new ConcurrentHashMap<>();
 
@@ -143,9 +148,7 @@ public class ReportingWorkerTest {
         map.put(aggregationKey2, aggregationValue2);
         map.put(aggregationKey3, aggregationValue3);
 
-        when(averageAggregator.getMinute()).thenReturn(new ConcurrentHashMap<>());
-        when(averageAggregator.getHourly()).thenReturn(map);
-        when(averageAggregator.getDaily()).thenReturn(new ConcurrentHashMap<>());
+        when(averageAggregator.removeOutdated(eq(GraphType.HOURLY), anyLong())).thenReturn(map);
 
         reportingWorker.run();
 
@@ -178,9 +181,108 @@ public class ReportingWorkerTest {
     }
 
 
+    @Test
+    public void testFileStorageKeepsAverageOnly() throws IOException {
+        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, new DBManager(blockingIOProcessor));
+
+        ConcurrentHashMap<AggregationKey, AggregationValue> map = new ConcurrentHashMap<>();
+
+        long ts = getTS() / AverageAggregatorProcessor.HOUR;
+
+        AggregationKey aggregationKey = new AggregationKey("test", 1, 0, PinType.ANALOG.pintTypeChar, (byte) 1, ts);
+        AggregationValue aggregationValue = new AggregationValue();
+        aggregationValue.update(100);
+        aggregationValue.update(300);
+        aggregationValue.update(50);
+        map.put(aggregationKey, aggregationValue);
+
+        when(averageAggregator.removeOutdated(eq(GraphType.HOURLY), anyLong())).thenReturn(map);
+
+        reportingWorker.run();
+
+        ByteBuffer data = FileReportingStorage.read(reportingFolder, "test", 1, 0, PinType.ANALOG, (byte) 1, 1, GraphType.HOURLY);
+        assertNotNull(data);
+        data.flip();
+        assertEquals(150.0, data.getDouble(), 0.001);
+        for (AggregationFunction function : new AggregationFunction[] {
+                AggregationFunction.MIN, AggregationFunction.MAX, AggregationFunction.LAST, AggregationFunction.COUNT}) {
+            assertFalse(Files.exists(Paths.get(reportingFolder, "test",
+                    generateFilename(1, 0, PinType.ANALOG.pintTypeChar, (byte) 1, GraphType.HOURLY, function))));
+        }
+    }
+
+    @Test
+    public void testColumnarStorageKeepsMinMaxLastCount() throws IOException {
+        String folder = Files.createTempDirectory("reporting_columnar").toString();
+        ServerProperties serverProperties = new ServerProperties(Collections.singletonMap("reporting.storage.type", "columnar"));
+        ReportingDao reportingDao = new ReportingDao(folder, averageAggregator, serverProperties);
+        ReportingWorker reportingWorker = new ReportingWorker(reportingDao, new DBManager(blockingIOProcessor));
+
+        ConcurrentHashMap<AggregationKey, AggregationValue> map = new ConcurrentHashMap<>();
+
+        long ts = getTS() / AverageAggregatorProcessor.HOUR;
+
+        AggregationKey aggregationKey = new AggregationKey("test", 1, 0, PinType.ANALOG.pintTypeChar, (byte) 1, ts);
+        AggregationValue aggregationValue = new AggregationValue();
+        aggregationValue.update(100);
+        aggregationValue.update(300);
+        aggregationValue.update(50);
+        map.put(aggregationKey, aggregationValue);
+
+        when(averageAggregator.removeOutdated(eq(GraphType.HOURLY), anyLong())).thenReturn(map);
+
+        reportingWorker.run();
+
+        assertEquals(150.0, readOne(reportingDao, AggregationFunction.AVG), 0.001);
+        assertEquals(50.0, readOne(reportingDao, AggregationFunction.MIN), 0.001);
+        assertEquals(300.0, readOne(reportingDao, AggregationFunction.MAX), 0.001);
+        assertEquals(50.0, readOne(reportingDao, AggregationFunction.LAST), 0.001);
+        assertEquals(3.0, readOne(reportingDao, AggregationFunction.COUNT), 0.001);
+
+        reportingDao.delete("test", 1, 0, PinType.ANALOG, (byte) 1);
+        assertNull(reportingDao.storage.read("test", 1, 0, PinType.ANALOG, (byte) 1, 1, GraphType.HOURLY, AggregationFunction.MAX));
+        reportingDao.close();
+    }
+
+    private static double readOne(ReportingDao reportingDao, AggregationFunction function) throws IOException {
+        ByteBuffer data = reportingDao.storage.read("test", 1, 0, PinType.ANALOG, (byte) 1, 1, GraphType.HOURLY, function);
+        assertNotNull(data);
+        data.flip();
+        return data.getDouble();
+    }
+
+    @Test
+    public void testMinuteReplayedAfterCrashIsNotStoredTwice() throws IOException {
+        String folder = Files.createTempDirectory("reporting_replay").toString();
+        Path walFolder = Paths.get(folder, AggregationLog.LOG_FOLDER);
+        Path walBackup = Files.createTempDirectory("reporting_replay_wal");
+        ServerProperties serverProperties = new ServerProperties(Collections.emptyMap());
+
+        ReportingDao reportingDao = new ReportingDao(folder, serverProperties);
+        reportingDao.averageAggregator.collect("test", 1, 0, PinType.ANALOG.pintTypeChar, (byte) 1, getTS(), 100);
+        reportingDao.averageAggregator.flushLog();
+        FileUtils.copyDirectory(walFolder.toFile(), walBackup.toFile());
+
+        new ReportingWorker(reportingDao, new DBManager(blockingIOProcessor)).run();
+
+        //emulating crash after storage flush, but before checkpoint. log still has stored minute
+        FileUtils.deleteDirectory(walFolder.toFile());
+        FileUtils.copyDirectory(walBackup.toFile(), walFolder.toFile());
+
+        ReportingDao restarted = new ReportingDao(folder, serverProperties);
+        new ReportingWorker(restarted, new DBManager(blockingIOProcessor)).run();
+
+        for (GraphType type : GraphType.values()) {
+            ByteBuffer data = restarted.storage.read("test", 1, 0, PinType.ANALOG, (byte) 1, 10, type);
+            assertNotNull(data);
+            assertEquals(16, data.position());
+        }
+        restarted.close();
+    }
+
     @Test
     public void testDeleteCommand() throws IOException {
-        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, reportingFolder, new DBManager(blockingIOProcessor));
+        ReportingWorker reportingWorker = new ReportingWorker(reportingDaoMock, new DBManager(blockingIOProcessor));
 
         ConcurrentHashMap<AggregationKey, AggregationValue> map = new ConcurrentHashMap<>();
 
@@ -200,9 +302,7 @@ public class ReportingWorkerTest {
         map.put(aggregationKey2, aggregationValue2);
         map.put(aggregationKey3, aggregationValue3);
 
-        when(averageAggregator.getMinute()).thenReturn(new ConcurrentHashMap<>());
-        when(averageAggregator.getHourly()).thenReturn(map);
-        when(averageAggregator.getDaily()).thenReturn(new ConcurrentHashMap<>());
+        when(averageAggregator.removeOutdated(eq(GraphType.HOURLY), anyLong())).thenReturn(map);
         when(properties.getProperty("data.folder")).thenReturn(System.getProperty("java.io.tmpdir"));
 
         reportingWorker.run();
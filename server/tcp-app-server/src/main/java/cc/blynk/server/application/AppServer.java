@@ -29,7 +29,8 @@ public class AppServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public AppServer(Holder holder) {
-        super(holder.props.getIntProperty("app.ssl.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("app.ssl.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.appProfile);
 
         final String[] loadBalancingIPs = holder.props.getCommaSeparatedValueAsArray("load.balancing.ips");
         final String[] allowedUsers = holder.props.getCommaSeparatedValueAsArray("allowed.users.list");
@@ -19,6 +19,7 @@ import static cc.blynk.utils.AppStateHolderUtil.getAppState;
  * Created on 2/20/2015.
  *
  * Removes channel from session in case it became inactive (closed from client side).
+ * Delivers values collapsed while channel was not writable.
  */
 @ChannelHandler.Sharable
 public class AppChannelStateHandler extends ChannelInboundHandlerAdapter {
@@ -40,7 +41,7 @@ public class AppChannelStateHandler extends ChannelInboundHandlerAdapter {
                 session.removeAppChannel(ctx.channel());
                 log.trace("Application channel disconnect. {}", ctx.channel());
 
-                for (DashBoard dashBoard : state.user.profile.dashBoards) {
+                for (DashBoard dashBoard : state.user.getProfile().dashBoards) {
                     if (dashBoard.isAppConnectedOn && dashBoard.isActive) {
                         log.trace("{}-{}. Sendeind App Disconnected event to hardware.", state.user.name, state.user.appName);
                         session.sendMessageToHardware(dashBoard.id, Command.BLYNK_INTERNAL, 7777, "adis");
@@ -50,4 +51,18 @@ public class AppChannelStateHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            AppStateHolder state = getAppState(ctx.channel());
+            if (state != null) {
+                Session session = sessionDao.userSession.get(state.userKey);
+                if (session != null) {
+                    session.onAppChannelWritable(ctx.channel());
+                }
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
 }
@@ -81,7 +81,7 @@ public class AppHandler extends BaseSimpleChannelInboundHandler<StringMessage> {
         this.token = new GetTokenLogic(holder);
         this.hardwareApp = new HardwareAppLogic(holder, state.user.name);
         this.refreshToken = new RefreshTokenLogic(holder);
-        this.graphData = new GetGraphDataLogic(holder.reportingDao, holder.blockingIOProcessor);
+        this.graphData = new GetGraphDataLogic(holder.reportingDao);
         this.exportGraphData = new ExportGraphDataLogic(holder.reportingDao, holder.blockingIOProcessor, holder.mailWrapper,
                 holder.currentIp,
                 holder.props.getIntProperty("http.port"));
@@ -16,6 +16,7 @@ import cc.blynk.server.handlers.common.UserNotLoggedHandler;
 import cc.blynk.utils.IPUtils;
 import cc.blynk.utils.JsonParser;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
@@ -30,6 +31,7 @@ import java.util.NoSuchElementException;
 
 import static cc.blynk.server.core.protocol.enums.Response.ILLEGAL_COMMAND;
 import static cc.blynk.server.core.protocol.enums.Response.NOT_ALLOWED;
+import static cc.blynk.server.core.protocol.enums.Response.SERVER_ERROR;
 import static cc.blynk.server.core.protocol.enums.Response.USER_NOT_AUTHENTICATED;
 import static cc.blynk.server.core.protocol.enums.Response.USER_NOT_REGISTERED;
 import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
@@ -69,6 +71,12 @@ public class AppLoginHandler extends SimpleChannelInboundHandler<LoginMessage> i
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, LoginMessage message) throws Exception {
+        holder.loginAdmission.admit(ctx.channel(), true,
+                () -> login(ctx, message),
+                () -> ctx.writeAndFlush(makeResponse(message.id, NOT_ALLOWED)).addListener(ChannelFutureListener.CLOSE));
+    }
+
+    private void login(ChannelHandlerContext ctx, LoginMessage message) {
         //warn: split may be optimized
         String[] messageParts = message.body.split("\0");
 
@@ -158,6 +166,17 @@ public class AppLoginHandler extends SimpleChannelInboundHandler<LoginMessage> i
     }
 
     private void login(ChannelHandlerContext ctx, int messageId, User user, OsType osType, String version) {
+        holder.blockingIOProcessor.loadProfile(user, ctx.channel(),
+                () -> completeLogin(ctx, messageId, user, osType, version),
+                () -> ctx.writeAndFlush(makeResponse(messageId, SERVER_ERROR), ctx.voidPromise()));
+    }
+
+    private void completeLogin(ChannelHandlerContext ctx, int messageId, User user, OsType osType, String version) {
+        if (ctx.isRemoved()) {
+            //repeated login of already logged in channel
+            return;
+        }
+
         AppStateHolder appStateHolder = new AppStateHolder(user, osType, version);
 
         try {
@@ -177,7 +196,8 @@ public class AppLoginHandler extends SimpleChannelInboundHandler<LoginMessage> i
 
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering app channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), session, user, messageId));
+            reRegisterChannel(ctx, session, holder.stats,
+                    channelFuture -> completeLogin(channelFuture.channel(), session, user, messageId));
         } else {
             completeLogin(ctx.channel(), session, user, messageId);
         }
@@ -186,7 +206,7 @@ public class AppLoginHandler extends SimpleChannelInboundHandler<LoginMessage> i
     private void completeLogin(Channel channel, Session session, User user, int msgId) {
         session.addAppChannel(channel);
         channel.writeAndFlush(ok(msgId), channel.voidPromise());
-        for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (DashBoard dashBoard : user.getProfile().dashBoards) {
             if (dashBoard.isAppConnectedOn && dashBoard.isActive) {
                 log.trace("{}-{}. Sendeind App Connected event to hardware.", user.name, user.appName);
                 session.sendMessageToHardware(dashBoard.id, Command.BLYNK_INTERNAL, 7777, "acon");
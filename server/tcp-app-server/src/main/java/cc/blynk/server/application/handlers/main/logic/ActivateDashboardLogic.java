@@ -48,9 +48,9 @@ public class ActivateDashboardLogic {
         int dashId = ParseUtil.parseInt(dashBoardIdString);
 
         log.debug("Activating dash {} for user {}", dashBoardIdString, user.name);
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
         dash.activate();
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         Session session = sessionDao.userSession.get(state.userKey);
 
@@ -26,7 +26,7 @@ public class AddPushLogic {
         String uid = data[1];
         String token = data[2];
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         Notification notification = dash.getWidgetByType(Notification.class);
 
@@ -45,7 +45,7 @@ public class AppMailLogic {
         String[] split = StringUtils.split2(message.body);
 
         int dashId = ParseUtil.parseInt(split[0]);
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         if (split.length == 2) {
             int deviceId = ParseUtil.parseInt(split[1]);
@@ -3,7 +3,6 @@ package cc.blynk.server.application.handlers.main.logic;
 import cc.blynk.server.application.handlers.main.auth.AppStateHolder;
 import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.Pin;
-import cc.blynk.server.core.model.PinStorageKey;
 import cc.blynk.server.core.model.widgets.AppSyncWidget;
 import cc.blynk.server.core.model.widgets.Widget;
 import cc.blynk.server.core.protocol.model.messages.StringMessage;
@@ -11,7 +10,6 @@ import cc.blynk.utils.ParseUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.util.Map;
 
 import static cc.blynk.server.core.model.widgets.AppSyncWidget.ANY_TARGET;
 import static cc.blynk.server.core.model.widgets.AppSyncWidget.SYNC_DEFAULT_MESSAGE_ID;
@@ -41,7 +39,7 @@ public class AppSyncLogic {
             targetId = ParseUtil.parseInt(dashIdAndTargetIdString[1]);
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         sendSyncAndOk(ctx, dash, targetId, message.id);
     }
@@ -56,13 +54,13 @@ public class AppSyncLogic {
             }
         }
 
-        for (Map.Entry<PinStorageKey, String> entry : dash.pinsStorage.entrySet()) {
-            PinStorageKey key = entry.getKey();
-            if (targetId == ANY_TARGET || targetId == key.deviceId) {
-                String body = prependDashIdAndDeviceId(dash.id, key.deviceId, Pin.makeHardwareBody(key.pinType, key.pin, entry.getValue()));
+        //values of pins without widgets
+        dash.pinStates.forEach((deviceId, pinType, pin, value) -> {
+            if ((targetId == ANY_TARGET || targetId == deviceId) && dash.findWidgetByPin(deviceId, pin, pinType) == null) {
+                String body = prependDashIdAndDeviceId(dash.id, deviceId, Pin.makeHardwareBody(pinType, pin, value));
                 ctx.write(makeUTF8StringMessage(APP_SYNC, SYNC_DEFAULT_MESSAGE_ID, body), ctx.voidPromise());
             }
-        }
+        });
 
         ctx.flush();
     }
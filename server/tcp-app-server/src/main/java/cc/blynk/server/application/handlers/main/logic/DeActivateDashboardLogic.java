@@ -36,14 +36,14 @@ public class DeActivateDashboardLogic {
         if (message.length > 0) {
             log.debug("DeActivating dash {} for user {}", message.body, user.name);
             int dashId = ParseUtil.parseInt(message.body);
-            DashBoard dashBoard = user.profile.getDashByIdOrThrow(dashId);
+            DashBoard dashBoard = user.getProfile().getDashByIdOrThrow(dashId);
             dashBoard.deactivate();
         } else {
-            for (DashBoard dashBoard : user.profile.dashBoards) {
+            for (DashBoard dashBoard : user.getProfile().dashBoards) {
                 dashBoard.deactivate();
             }
         }
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         Session session = sessionDao.userSession.get(state.userKey);
         for (Channel appChannel : session.appChannels) {
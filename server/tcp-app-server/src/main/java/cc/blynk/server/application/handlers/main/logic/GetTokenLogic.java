@@ -33,7 +33,7 @@ public class GetTokenLogic {
         int dashId = ParseUtil.parseInt(dashBoardIdString);
         int deviceId = 0;
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Device device = dash.getDeviceById(deviceId);
         String token = device == null ? null : device.token;
@@ -68,7 +68,7 @@ public class HardwareAppLogic {
             targetId = ParseUtil.parseInt(dashIdAndTargetIdString[1]);
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         //if no active dashboard - do nothing. this could happen only in case of app. bug
         if (!dash.isActive) {
@@ -98,6 +98,7 @@ public class HardwareAppLogic {
                 if (deviceSelector instanceof DeviceSelector) {
                     final int selectedDeviceId = ParseUtil.parseInt(splitBody[2]);
                     ((DeviceSelector) deviceSelector).value = selectedDeviceId;
+                    state.user.markDirty();
                     AppSyncLogic.sendSyncAndOk(ctx, dash, selectedDeviceId, message.id);
                 }
                 break;
@@ -115,6 +116,7 @@ public class HardwareAppLogic {
                 if (target.isTag()) {
                     dash.update(targetId, pin, pinType, value);
                 }
+                state.user.markPinsDirty();
 
                 //sending to shared dashes and master-master apps
                 session.sendToSharedApps(ctx.channel(), dash.sharedToken, APP_SYNC, message.id, message.body);
@@ -28,11 +28,11 @@ public class LoadProfileGzippedLogic {
         String body;
         //load all
         if (message.length == 0) {
-            body = user.profile.toString();
+            body = user.getProfile().toString();
         } else {
             //load specific by id
             int dashId = ParseUtil.parseInt(message.body);
-            body = user.profile.getDashByIdOrThrow(dashId).toString();
+            body = user.getProfile().getDashByIdOrThrow(dashId).toString();
         }
 
         log.debug("Load Gzipped Profile {} ", body);
@@ -36,7 +36,7 @@ public class RefreshTokenLogic {
             deviceId = ParseUtil.parseInt(split[1]);
         }
 
-        user.profile.validateDashId(dashId);
+        user.getProfile().validateDashId(dashId);
 
         String token = tokenManager.refreshToken(user, dashId, deviceId);
 
@@ -61,11 +61,11 @@ public class CreateDashLogic {
         log.info("Creating new dashboard.");
 
         final User user = state.user;
-        if (user.profile.dashBoards.length >= DASH_MAX_LIMIT) {
+        if (user.getProfile().dashBoards.length >= DASH_MAX_LIMIT) {
             throw new QuotaLimitException("Dashboards limit reached.");
         }
 
-        for (DashBoard dashBoard : user.profile.dashBoards) {
+        for (DashBoard dashBoard : user.getProfile().dashBoards) {
             if (dashBoard.id == newDash.id) {
                 throw new NotAllowedException("Dashboard already exists.");
             }
@@ -76,7 +76,7 @@ public class CreateDashLogic {
         }
 
         user.subtractEnergy(newDash.energySum());
-        user.profile.dashBoards = ArrayUtil.add(user.profile.dashBoards, newDash, DashBoard.class);
+        user.getProfile().dashBoards = ArrayUtil.add(user.getProfile().dashBoards, newDash, DashBoard.class);
 
         if (newDash.devices == null) {
             newDash.devices = ArrayUtil.EMPTY_DEVICES;
@@ -89,7 +89,7 @@ public class CreateDashLogic {
             }
         }
 
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         for (Widget widget : newDash.widgets) {
             if (widget instanceof Timer) {
@@ -44,11 +44,11 @@ public class DeleteDashLogic {
         int dashId = ParseUtil.parseInt(message.body);
 
         final User user = state.user;
-        int index = user.profile.getDashIndexOrThrow(dashId);
+        int index = user.getProfile().getDashIndexOrThrow(dashId);
 
         log.debug("Deleting dashboard {}.", dashId);
 
-        DashBoard dash = user.profile.dashBoards[index];
+        DashBoard dash = user.getProfile().dashBoards[index];
 
         user.recycleEnergy(dash.energySum());
 
@@ -60,11 +60,11 @@ public class DeleteDashLogic {
             }
         }
 
-        user.profile.dashBoards = ArrayUtil.remove(user.profile.dashBoards, index, DashBoard.class);
+        user.getProfile().dashBoards = ArrayUtil.remove(user.getProfile().dashBoards, index, DashBoard.class);
         tokenManager.deleteDash(dash);
         Session session = sessionDao.userSession.get(state.userKey);
         session.closeHardwareChannelByDashId(dashId);
-        user.lastModifiedTs = System.currentTimeMillis();
+        user.updateLastModifiedTs(System.currentTimeMillis());
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
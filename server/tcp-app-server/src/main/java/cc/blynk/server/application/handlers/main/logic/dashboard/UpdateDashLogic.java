@@ -58,7 +58,7 @@ public class UpdateDashLogic {
 
         final User user = state.user;
 
-        DashBoard existingDash = user.profile.getDashByIdOrThrow(updatedDash.id);
+        DashBoard existingDash = user.getProfile().getDashByIdOrThrow(updatedDash.id);
 
         for (Widget widget : existingDash.widgets) {
             if (widget instanceof Timer) {
@@ -77,7 +77,7 @@ public class UpdateDashLogic {
         }
 
         existingDash.updateFields(updatedDash);
-        user.lastModifiedTs = existingDash.updatedAt;
+        user.updateLastModifiedTs(existingDash.updatedAt);
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
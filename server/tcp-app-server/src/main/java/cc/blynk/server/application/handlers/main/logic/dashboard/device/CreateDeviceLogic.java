@@ -51,7 +51,7 @@ public class CreateDeviceLogic {
             throw new IllegalCommandException("Income device message is empty.");
         }
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         if (dash.devices.length > DEVICE_LIMIT) {
             throw new NotAllowedException("Device limit is reached.");
@@ -77,7 +77,7 @@ public class CreateDeviceLogic {
         tokenManager.assignToken(user, dashId, newDevice.id, newToken);
 
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         if (ctx.channel().isWritable()) {
             ctx.writeAndFlush(makeUTF8StringMessage(CREATE_DEVICE, message.id, newDevice.toString()), ctx.voidPromise());
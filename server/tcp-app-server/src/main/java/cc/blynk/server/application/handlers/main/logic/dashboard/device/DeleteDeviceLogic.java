@@ -48,7 +48,7 @@ public class DeleteDeviceLogic {
             throw new IllegalCommandException("You are not allowed to remove device with id 0.");
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         log.debug("Deleting device with id {}.", deviceId);
 
@@ -59,8 +59,10 @@ public class DeleteDeviceLogic {
         session.closeHardwareChannelByDeviceId(dashId, deviceId);
 
         dash.devices = ArrayUtil.remove(dash.devices, existingDeviceIndex, Device.class);
+        dash.pinStates.removeDevice(deviceId);
         dash.updatedAt = System.currentTimeMillis();
-        state.user.lastModifiedTs = dash.updatedAt;
+        state.user.updateLastModifiedTs(dash.updatedAt);
+        state.user.markPinsDirty();
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
@@ -38,7 +38,7 @@ public class UpdateDeviceLogic {
             throw new IllegalCommandException("Income device message is empty.");
         }
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Device newDevice = JsonParser.parseDevice(deviceString);
 
@@ -56,7 +56,7 @@ public class UpdateDeviceLogic {
 
         existingDevice.update(newDevice);
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
@@ -39,7 +39,7 @@ public class CreateTagLogic {
             throw new IllegalCommandException("Income tag message is empty.");
         }
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Tag newTag = JsonParser.parseTag(deviceString);
 
@@ -57,7 +57,7 @@ public class CreateTagLogic {
 
         dash.tags = ArrayUtil.add(dash.tags, newTag, Tag.class);
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         ctx.writeAndFlush(makeUTF8StringMessage(CREATE_TAG, message.id, newTag.toString()), ctx.voidPromise());
     }
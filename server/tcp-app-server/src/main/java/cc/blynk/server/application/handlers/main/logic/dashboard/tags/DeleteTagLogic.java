@@ -33,7 +33,7 @@ public class DeleteTagLogic {
         int dashId = ParseUtil.parseInt(split[0]) ;
         int tagId = ParseUtil.parseInt(split[1]);
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         log.debug("Deleting tag with id {}.", tagId);
 
@@ -41,7 +41,7 @@ public class DeleteTagLogic {
 
         dash.tags = ArrayUtil.remove(dash.tags, existingTagIndex, Tag.class);
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
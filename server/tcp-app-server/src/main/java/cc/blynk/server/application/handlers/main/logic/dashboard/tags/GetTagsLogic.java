@@ -24,7 +24,7 @@ public class GetTagsLogic {
     public static void messageReceived(ChannelHandlerContext ctx, User user, StringMessage message) {
         int dashId = ParseUtil.parseInt(message.body) ;
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         String response = JsonParser.toJson(dash.tags);
         if (response == null) {
@@ -37,7 +37,7 @@ public class UpdateTagLogic {
             throw new IllegalCommandException("Income tag message is empty.");
         }
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Tag newTag = JsonParser.parseTag(tagString);
 
@@ -55,7 +55,7 @@ public class UpdateTagLogic {
 
         existingTag.update(newTag);
         dash.updatedAt = System.currentTimeMillis();
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
     }
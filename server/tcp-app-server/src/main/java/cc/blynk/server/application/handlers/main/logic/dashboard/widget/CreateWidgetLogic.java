@@ -57,7 +57,7 @@ public class CreateWidgetLogic {
         }
 
         final User user = state.user;
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Widget newWidget = JsonParser.parseWidget(widgetString);
 
@@ -82,10 +82,9 @@ public class CreateWidgetLogic {
 
         user.subtractEnergy(newWidget.getPrice());
         dash.widgets = ArrayUtil.add(dash.widgets, newWidget, Widget.class);
-        dash.cleanPinStorage(newWidget);
         dash.updatedAt = System.currentTimeMillis();
 
-        user.lastModifiedTs = dash.updatedAt;
+        user.updateLastModifiedTs(dash.updatedAt);
 
         if (newWidget instanceof Timer) {
             timerWorker.add(state.userKey, (Timer) newWidget, dashId);
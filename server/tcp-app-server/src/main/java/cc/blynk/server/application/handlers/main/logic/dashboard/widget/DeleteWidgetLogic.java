@@ -49,7 +49,7 @@ public class DeleteWidgetLogic {
         long widgetId = ParseUtil.parseLong(split[1]);
 
         final User user = state.user;
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         log.debug("Removing widget with id {}.", widgetId);
 
@@ -58,7 +58,7 @@ public class UpdateWidgetLogic {
         }
 
         final User user = state.user;
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         Widget newWidget = JsonParser.parseWidget(widgetString);
 
@@ -81,9 +81,9 @@ public class UpdateWidgetLogic {
         //just log error for now
         try {
             dash.widgets[existingWidgetIndex] = newWidget;
-            dash.cleanPinStorage(newWidget);
+            dash.invalidateWidgetsCache();
             dash.updatedAt = System.currentTimeMillis();
-            user.lastModifiedTs = dash.updatedAt;
+            user.updateLastModifiedTs(dash.updatedAt);
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new BaseServerException("Error updating widget. " + widgetString, Response.SERVER_ERROR);
         }
@@ -72,7 +72,7 @@ public class ExportGraphDataLogic {
 
         long widgetId = ParseUtil.parseLong(messageParts[1]);
 
-        DashBoard dashBoard = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dashBoard = user.getProfile().getDashByIdOrThrow(dashId);
 
         Widget widget = dashBoard.getWidgetById(widgetId);
         if (!(widget instanceof HistoryGraph)) {
@@ -1,6 +1,5 @@
 package cc.blynk.server.application.handlers.main.logic.reporting;
 
-import cc.blynk.server.core.BlockingIOProcessor;
 import cc.blynk.server.core.dao.ReportingDao;
 import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.model.enums.PinType;
@@ -15,6 +14,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletionException;
 
 import static cc.blynk.server.core.protocol.enums.Command.GET_GRAPH_DATA_RESPONSE;
 import static cc.blynk.server.core.protocol.enums.Response.NO_DATA;
@@ -35,12 +35,10 @@ public class GetGraphDataLogic {
 
     private static final Logger log = LogManager.getLogger(GetGraphDataLogic.class);
 
-    private final BlockingIOProcessor blockingIOProcessor;
     private final ReportingDao reportingDao;
 
-    public GetGraphDataLogic(ReportingDao reportingDao, BlockingIOProcessor blockingIOProcessor) {
+    public GetGraphDataLogic(ReportingDao reportingDao) {
         this.reportingDao = reportingDao;
-        this.blockingIOProcessor = blockingIOProcessor;
     }
 
     public void messageReceived(ChannelHandlerContext ctx, User user, StringMessage message) {
@@ -64,7 +62,7 @@ public class GetGraphDataLogic {
             deleteGraphData(messageParts, user.name, dashId, deviceId);
             ctx.writeAndFlush(ok(message.id), ctx.voidPromise());
         } else {
-            user.profile.validateDashId(dashId);
+            user.getProfile().validateDashId(dashId);
             process(ctx.channel(), dashId, deviceId, Arrays.copyOfRange(messageParts, 1, messageParts.length), user, message.id, 4);
         }
     }
@@ -82,23 +80,35 @@ public class GetGraphDataLogic {
     }
 
     private void readGraphData(Channel channel, String username, GraphPinRequest[] requestedPins, int msgId) {
-        blockingIOProcessor.execute(() -> {
-            try {
-                byte[][] data = reportingDao.getAllFromDisk(username, requestedPins);
-                byte[] compressed = compress(requestedPins[0].dashId, data);
-
-                if (channel.isWritable()) {
-                    channel.writeAndFlush(makeBinaryMessage(GET_GRAPH_DATA_RESPONSE, msgId, compressed), channel.voidPromise());
-                }
-            } catch (NoDataException noDataException) {
+        reportingDao.readProcessor.read(username, requestedPins).whenComplete((data, throwable) -> {
+            if (throwable == null) {
+                sendGraphData(channel, username, requestedPins[0].dashId, data, msgId);
+                return;
+            }
+
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof NoDataException) {
                 channel.writeAndFlush(makeResponse(msgId, NO_DATA), channel.voidPromise());
-            } catch (Exception e) {
-                log.error("Error reading reporting data. For user {}", username);
+            } else {
+                log.error("Error reading reporting data. For user {}. Reason : {}", username, cause.getMessage());
                 channel.writeAndFlush(makeResponse(msgId, SERVER_ERROR), channel.voidPromise());
             }
         });
     }
 
+    private static void sendGraphData(Channel channel, String username, int dashId, byte[][] data, int msgId) {
+        try {
+            byte[] compressed = compress(dashId, data);
+
+            if (channel.isWritable()) {
+                channel.writeAndFlush(makeBinaryMessage(GET_GRAPH_DATA_RESPONSE, msgId, compressed), channel.voidPromise());
+            }
+        } catch (Exception e) {
+            log.error("Error compressing reporting data. For user {}", username);
+            channel.writeAndFlush(makeResponse(msgId, SERVER_ERROR), channel.voidPromise());
+        }
+    }
+
     private void deleteGraphData(String[] messageParts, String username, int dashId, int deviceId) {
         try {
             PinType pinType = PinType.getPinType(messageParts[1].charAt(0));
@@ -1,5 +1,6 @@
 package cc.blynk.server.application.handlers.main.logic.reporting;
 
+import cc.blynk.server.core.model.enums.AggregationFunction;
 import cc.blynk.server.core.model.enums.GraphType;
 import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.protocol.exceptions.IllegalCommandException;
@@ -19,7 +20,15 @@ public class GraphPinRequestData extends GraphPinRequest {
             pinType = PinType.getPinType(messageParts[pinIndex * valuesPerPin].charAt(0));
             pin = Byte.parseByte(messageParts[pinIndex * valuesPerPin + 1]);
             count = Integer.parseInt(messageParts[pinIndex * valuesPerPin + 2]);
-            type = GraphType.getPeriodByType(messageParts[pinIndex * valuesPerPin + 3].charAt(0));
+            String typeAndFunction = messageParts[pinIndex * valuesPerPin + 3];
+            type = GraphType.getPeriodByType(typeAndFunction.charAt(0));
+            //optional second char selects aggregate, "hx" - hourly max. average by default
+            if (typeAndFunction.length() > 1) {
+                function = AggregationFunction.getByChar(typeAndFunction.charAt(1));
+                if (function == null) {
+                    throw new IllegalCommandException("Wrong graph aggregation function.");
+                }
+            }
         } catch (NumberFormatException e) {
             throw new IllegalCommandException("HardwareLogic command body incorrect.");
         }
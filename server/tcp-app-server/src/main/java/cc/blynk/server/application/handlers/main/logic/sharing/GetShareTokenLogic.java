@@ -36,7 +36,7 @@ public class GetShareTokenLogic {
             throw new NotAllowedException("Dash board id not valid. Id : " + dashBoardIdString);
         }
 
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
         String token = dash.sharedToken;
 
         //if token not exists. generate new one
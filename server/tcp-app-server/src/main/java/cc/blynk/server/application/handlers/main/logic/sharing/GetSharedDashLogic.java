@@ -36,7 +36,7 @@ public class GetSharedDashLogic {
 
         User userThatShared = tokenValue.user;
 
-        DashBoard dashBoard = userThatShared.profile.getDashByIdOrThrow(tokenValue.dashId);
+        DashBoard dashBoard = userThatShared.getProfile().getDashByIdOrThrow(tokenValue.dashId);
 
         if (ctx.channel().isWritable()) {
             ctx.writeAndFlush(produce(message.id, message.command, JsonParser.toJsonSharedDashboard(dashBoard)), ctx.voidPromise());
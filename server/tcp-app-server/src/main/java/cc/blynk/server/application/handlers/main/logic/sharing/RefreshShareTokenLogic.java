@@ -46,7 +46,7 @@ public class RefreshShareTokenLogic {
         }
 
         final User user = state.user;
-        DashBoard dash = user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = user.getProfile().getDashByIdOrThrow(dashId);
 
         String token = tokenManager.refreshSharedToken(user, dash);
 
@@ -32,7 +32,7 @@ public class ShareLogic {
         String[] splitted = message.body.split(StringUtils.BODY_SEPARATOR_STRING);
 
         int dashId = ParseUtil.parseInt(splitted[0]);
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         switch (splitted[1]) {
             case "on" :
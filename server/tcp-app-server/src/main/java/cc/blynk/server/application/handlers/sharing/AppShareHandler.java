@@ -31,7 +31,7 @@ public class AppShareHandler extends BaseSimpleChannelInboundHandler<StringMessa
     public AppShareHandler(Holder holder, AppShareStateHolder state) {
         super(holder.limits, state);
         this.hardwareApp = new HardwareAppShareLogic(holder.sessionDao);
-        this.graphData = new GetGraphDataLogic(holder.reportingDao, holder.blockingIOProcessor);
+        this.graphData = new GetGraphDataLogic(holder.reportingDao);
         this.state = state;
         this.stats = holder.stats;
     }
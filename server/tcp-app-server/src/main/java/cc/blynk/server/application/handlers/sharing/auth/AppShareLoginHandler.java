@@ -23,6 +23,7 @@ import org.apache.logging.log4j.Logger;
 
 import static cc.blynk.server.core.protocol.enums.Response.ILLEGAL_COMMAND;
 import static cc.blynk.server.core.protocol.enums.Response.NOT_ALLOWED;
+import static cc.blynk.server.core.protocol.enums.Response.SERVER_ERROR;
 import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
 import static cc.blynk.utils.BlynkByteBufUtil.ok;
 
@@ -79,10 +80,23 @@ public class AppShareLoginHandler extends SimpleChannelInboundHandler<ShareLogin
             return;
         }
 
+        holder.blockingIOProcessor.loadProfile(tokenValue.user, ctx.channel(),
+                () -> login(ctx, messageId, token, tokenValue, osType, version),
+                () -> ctx.writeAndFlush(makeResponse(messageId, SERVER_ERROR), ctx.voidPromise()));
+    }
+
+    private void login(ChannelHandlerContext ctx, int messageId, String token, SharedTokenValue tokenValue,
+                       OsType osType, String version) {
+        if (ctx.isRemoved()) {
+            //repeated login of already logged in channel
+            return;
+        }
+
         final User user = tokenValue.user;
+        final String userName = user.name;
         final int dashId = tokenValue.dashId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
         if (!dash.isShared) {
             log.debug("Dashboard is not shared. User : {}, token {}, {}", userName, token, ctx.channel().remoteAddress());
             ctx.writeAndFlush(makeResponse(messageId, NOT_ALLOWED), ctx.voidPromise());
@@ -97,7 +111,8 @@ public class AppShareLoginHandler extends SimpleChannelInboundHandler<ShareLogin
 
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering app channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), session, user.name, messageId));
+            reRegisterChannel(ctx, session, holder.stats,
+                    channelFuture -> completeLogin(channelFuture.channel(), session, user.name, messageId));
         } else {
             completeLogin(ctx.channel(), session, user.name, messageId);
         }
@@ -54,7 +54,7 @@ public class HardwareAppShareLogic {
             deviceId = ParseUtil.parseInt(dashIdAndDeviceIdString[1]);
         }
 
-        DashBoard dashBoard = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dashBoard = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         if (!dashBoard.isActive) {
             log.debug("No active dashboard.");
@@ -69,11 +69,12 @@ public class HardwareAppShareLogic {
         }
 
         char operation = split[1].charAt(1);
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         switch (operation) {
             case 'w':
                 dash.update(deviceId, split[1]);
+                state.user.markPinsDirty();
 
                 final String sharedToken = state.token;
                 if (sharedToken != null) {
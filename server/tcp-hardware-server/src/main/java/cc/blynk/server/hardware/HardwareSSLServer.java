@@ -2,18 +2,18 @@ package cc.blynk.server.hardware;
 
 import cc.blynk.server.Holder;
 import cc.blynk.server.core.BaseServer;
-import cc.blynk.server.core.protocol.handlers.decoders.MessageDecoder;
+import cc.blynk.server.core.protocol.handlers.decoders.HardwareMessageDecoder;
 import cc.blynk.server.core.protocol.handlers.encoders.MessageEncoder;
 import cc.blynk.server.handlers.common.AlreadyLoggedHandler;
 import cc.blynk.server.handlers.common.UserNotLoggedHandler;
 import cc.blynk.server.hardware.handlers.hardware.HardwareChannelStateHandler;
 import cc.blynk.server.hardware.handlers.hardware.auth.HardwareLoginHandler;
+import cc.blynk.server.transport.HeartbeatTracker;
 import cc.blynk.utils.SslUtil;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.timeout.ReadTimeoutHandler;
 
 /**
  * The Blynk Project.
@@ -25,14 +25,15 @@ public class HardwareSSLServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public HardwareSSLServer(Holder holder) {
-        super(holder.props.getIntProperty("hardware.ssl.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("hardware.ssl.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.hardwareProfile);
 
         final HardwareLoginHandler hardwareLoginHandler = new HardwareLoginHandler(holder, port);
         final HardwareChannelStateHandler hardwareChannelStateHandler = new HardwareChannelStateHandler(holder.sessionDao, holder.gcmWrapper);
         final UserNotLoggedHandler userNotLoggedHandler = new UserNotLoggedHandler();
         final AlreadyLoggedHandler alreadyLoggedHandler = new AlreadyLoggedHandler();
 
-        int hardTimeoutSecs = holder.props.getIntProperty("hard.socket.idle.timeout", 0);
+        final HeartbeatTracker heartbeatTracker = holder.heartbeatTracker;
 
         final SslContext sslCtx = SslUtil.initSslContext(
                 holder.props.getProperty("server.ssl.cert"),
@@ -44,12 +45,12 @@ public class HardwareSSLServer extends BaseServer {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
                 final ChannelPipeline pipeline = ch.pipeline();
-                if (hardTimeoutSecs > 0) {
-                    pipeline.addLast("HSSLReadTimeout", new ReadTimeoutHandler(hardTimeoutSecs));
+                if (heartbeatTracker.isEnabled()) {
+                    pipeline.addLast("HSSLReadTimeout", heartbeatTracker.newHandler());
                 }
                 pipeline.addLast("HSSL", sslCtx.newHandler(ch.alloc()));
                 pipeline.addLast("HSSLChannelState", hardwareChannelStateHandler);
-                pipeline.addLast("HSSLMessageDecoder", new MessageDecoder(holder.stats));
+                pipeline.addLast("HSSLMessageDecoder", new HardwareMessageDecoder(holder.stats));
                 pipeline.addLast("HSSLMessageEncoder", new MessageEncoder(holder.stats));
                 pipeline.addLast("HSSLLogin", hardwareLoginHandler);
                 pipeline.addLast("HSSLNotLogged", userNotLoggedHandler);
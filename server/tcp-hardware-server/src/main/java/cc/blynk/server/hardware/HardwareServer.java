@@ -2,16 +2,16 @@ package cc.blynk.server.hardware;
 
 import cc.blynk.server.Holder;
 import cc.blynk.server.core.BaseServer;
-import cc.blynk.server.core.protocol.handlers.decoders.MessageDecoder;
+import cc.blynk.server.core.protocol.handlers.decoders.HardwareMessageDecoder;
 import cc.blynk.server.core.protocol.handlers.encoders.MessageEncoder;
 import cc.blynk.server.handlers.common.AlreadyLoggedHandler;
 import cc.blynk.server.handlers.common.UserNotLoggedHandler;
 import cc.blynk.server.hardware.handlers.hardware.HardwareChannelStateHandler;
 import cc.blynk.server.hardware.handlers.hardware.auth.HardwareLoginHandler;
+import cc.blynk.server.transport.HeartbeatTracker;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.ReadTimeoutHandler;
 
 /**
  * The Blynk Project.
@@ -23,9 +23,10 @@ public class HardwareServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public HardwareServer(Holder holder) {
-        super(holder.props.getIntProperty("hardware.default.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("hardware.default.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.hardwareProfile);
 
-        final int hardTimeoutSecs = holder.props.getIntProperty("hard.socket.idle.timeout", 0);
+        final HeartbeatTracker heartbeatTracker = holder.heartbeatTracker;
         final HardwareLoginHandler hardwareLoginHandler = new HardwareLoginHandler(holder, port);
         final HardwareChannelStateHandler hardwareChannelStateHandler = new HardwareChannelStateHandler(holder.sessionDao, holder.gcmWrapper);
         final UserNotLoggedHandler userNotLoggedHandler = new UserNotLoggedHandler();
@@ -36,11 +37,11 @@ public class HardwareServer extends BaseServer {
             protected void initChannel(SocketChannel ch) throws Exception {
                 final ChannelPipeline pipeline = ch.pipeline();
                 //non-sharable handlers
-                if (hardTimeoutSecs > 0) {
-                    pipeline.addLast("H_ReadTimeout", new ReadTimeoutHandler(hardTimeoutSecs));
+                if (heartbeatTracker.isEnabled()) {
+                    pipeline.addLast("H_ReadTimeout", heartbeatTracker.newHandler());
                 }
                 pipeline.addLast("H_ChannelState", hardwareChannelStateHandler);
-                pipeline.addLast("H_MessageDecoder", new MessageDecoder(holder.stats));
+                pipeline.addLast("H_MessageDecoder", new HardwareMessageDecoder(holder.stats));
                 pipeline.addLast("H_MessageEncoder", new MessageEncoder(holder.stats));
                 pipeline.addLast("H_Login", hardwareLoginHandler);
                 pipeline.addLast("H_NotLogged", userNotLoggedHandler);
@@ -48,7 +49,7 @@ public class HardwareServer extends BaseServer {
             }
         };
 
-        log.debug("hard.socket.idle.timeout = {}", hardTimeoutSecs);
+        log.debug("hard.socket.idle.timeout = {}", heartbeatTracker.defaultTimeoutSecs);
     }
 
     @Override
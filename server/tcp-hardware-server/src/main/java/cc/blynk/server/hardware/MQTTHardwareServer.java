@@ -5,12 +5,12 @@ import cc.blynk.server.core.BaseServer;
 import cc.blynk.server.handlers.common.UserNotLoggedHandler;
 import cc.blynk.server.hardware.handlers.hardware.HardwareChannelStateHandler;
 import cc.blynk.server.hardware.handlers.hardware.mqtt.auth.MqttHardwareLoginHandler;
+import cc.blynk.server.transport.HeartbeatTracker;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
-import io.netty.handler.timeout.ReadTimeoutHandler;
 
 /**
  * The Blynk Project.
@@ -22,9 +22,10 @@ public class MQTTHardwareServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public MQTTHardwareServer(Holder holder) {
-        super(holder.props.getIntProperty("hardware.mqtt.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("hardware.mqtt.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.hardwareProfile);
 
-        final int hardTimeoutSecs = holder.props.getIntProperty("hard.socket.idle.timeout", 0);
+        final HeartbeatTracker heartbeatTracker = holder.heartbeatTracker;
         final MqttHardwareLoginHandler mqttHardwareLoginHandler = new MqttHardwareLoginHandler(holder);
         final HardwareChannelStateHandler hardwareChannelStateHandler = new HardwareChannelStateHandler(holder.sessionDao, holder.gcmWrapper);
         final UserNotLoggedHandler userNotLoggedHandler = new UserNotLoggedHandler();
@@ -34,8 +35,8 @@ public class MQTTHardwareServer extends BaseServer {
             protected void initChannel(SocketChannel ch) throws Exception {
                 ChannelPipeline pipeline = ch.pipeline();
                 //non-sharable handlers
-                if (hardTimeoutSecs > 0) {
-                    pipeline.addLast("MqttReadTimeout", new ReadTimeoutHandler(hardTimeoutSecs));
+                if (heartbeatTracker.isEnabled()) {
+                    pipeline.addLast("MqttReadTimeout", heartbeatTracker.newHandler());
                 }
                 pipeline.addLast(hardwareChannelStateHandler);
                 pipeline.addLast(new MqttDecoder());
@@ -45,7 +46,7 @@ public class MQTTHardwareServer extends BaseServer {
             }
         };
 
-        log.debug("hard.socket.idle.timeout = {}", hardTimeoutSecs);
+        log.debug("hard.socket.idle.timeout = {}", heartbeatTracker.defaultTimeoutSecs);
     }
 
     @Override
@@ -5,10 +5,9 @@ import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.auth.Session;
 import cc.blynk.server.core.model.device.Device;
 import cc.blynk.server.core.model.widgets.notifications.Notification;
-import cc.blynk.server.core.protocol.enums.Command;
-import cc.blynk.server.core.protocol.model.messages.ResponseWithBodyMessage;
 import cc.blynk.server.core.session.HardwareStateHolder;
 import cc.blynk.server.notifications.push.GCMWrapper;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -18,6 +17,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import static cc.blynk.server.core.protocol.enums.Response.DEVICE_WENT_OFFLINE;
+import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
 import static cc.blynk.utils.StateHolderUtil.getHardState;
 
 /**
@@ -63,7 +63,7 @@ public class HardwareChannelStateHandler extends ChannelInboundHandlerAdapter {
     }
 
     private void sentOfflineMessage(Session session, HardwareStateHolder state) {
-        DashBoard dashBoard = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dashBoard = state.user.getProfile().getDashByIdOrThrow(state.dashId);
         Device device = dashBoard.getDeviceById(state.deviceId);
 
         //this is special case.
@@ -85,16 +85,14 @@ public class HardwareChannelStateHandler extends ChannelInboundHandlerAdapter {
         if (notification == null || !notification.notifyWhenOffline) {
             if (session.isAppConnected()) {
                 log.trace("Sending device offline message.");
+                //encoded once for all app channels
+                ByteBuf msg = makeResponse(0, DEVICE_WENT_OFFLINE, state.dashId);
                 for (Channel appChannel : session.appChannels) {
                     if (appChannel.isWritable()) {
-                        appChannel.writeAndFlush(
-                                new ResponseWithBodyMessage(
-                                        0, Command.RESPONSE, DEVICE_WENT_OFFLINE, state.dashId
-                                ),
-                                appChannel.voidPromise()
-                        );
+                        appChannel.writeAndFlush(msg.retainedDuplicate(), appChannel.voidPromise());
                     }
                 }
+                msg.release();
             }
         } else {
             sendPushNotification(dashBoard, notification, state.dashId, device);
@@ -19,6 +19,7 @@ import cc.blynk.server.redis.RedisClient;
 import cc.blynk.utils.IPUtils;
 import cc.blynk.utils.StringUtils;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -28,9 +29,12 @@ import org.apache.logging.log4j.Logger;
 import static cc.blynk.server.core.protocol.enums.Command.CONNECT_REDIRECT;
 import static cc.blynk.server.core.protocol.enums.Command.HARDWARE_CONNECTED;
 import static cc.blynk.server.core.protocol.enums.Response.INVALID_TOKEN;
+import static cc.blynk.server.core.protocol.enums.Response.NOT_ALLOWED;
+import static cc.blynk.server.core.protocol.enums.Response.SERVER_ERROR;
 import static cc.blynk.utils.BlynkByteBufUtil.makeASCIIStringMessage;
 import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
 import static cc.blynk.utils.BlynkByteBufUtil.ok;
+import static cc.blynk.utils.StateHolderUtil.setHardState;
 
 /**
  * Handler responsible for managing hardware and apps login messages.
@@ -84,6 +88,12 @@ public class HardwareLoginHandler extends SimpleChannelInboundHandler<LoginMessa
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, LoginMessage message) throws Exception {
+        holder.loginAdmission.admit(ctx.channel(), false,
+                () -> login(ctx, message),
+                () -> ctx.writeAndFlush(makeResponse(message.id, NOT_ALLOWED)).addListener(ChannelFutureListener.CLOSE));
+    }
+
+    private void login(ChannelHandlerContext ctx, LoginMessage message) {
         final String token = message.body.trim();
         final TokenValue tokenValue = holder.tokenManager.getUserByToken(token);
 
@@ -95,29 +105,42 @@ public class HardwareLoginHandler extends SimpleChannelInboundHandler<LoginMessa
             return;
         }
 
+        holder.blockingIOProcessor.loadProfile(tokenValue.user, ctx.channel(),
+                () -> login(ctx, message.id, token, tokenValue),
+                () -> ctx.writeAndFlush(makeResponse(message.id, SERVER_ERROR), ctx.voidPromise()));
+    }
+
+    private void login(ChannelHandlerContext ctx, int msgId, String token, TokenValue tokenValue) {
+        if (ctx.isRemoved()) {
+            //repeated login of already logged in channel
+            return;
+        }
+
         final User user = tokenValue.user;
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
         if (dash == null) {
             log.warn("User : {} requested token {} for non-existing {} dash id.", user.name, token, dashId);
-            ctx.writeAndFlush(makeResponse(message.id, INVALID_TOKEN), ctx.voidPromise());
+            ctx.writeAndFlush(makeResponse(msgId, INVALID_TOKEN), ctx.voidPromise());
             return;
         }
 
         ctx.pipeline().remove(this);
         ctx.pipeline().remove(UserNotLoggedHandler.class);
         HardwareStateHolder hardwareStateHolder = new HardwareStateHolder(dashId, deviceId, user, token);
+        setHardState(ctx.channel(), hardwareStateHolder);
         ctx.pipeline().addLast("HHArdwareHandler", new HardwareHandler(holder, hardwareStateHolder));
 
         Session session = holder.sessionDao.getOrCreateSessionByUser(hardwareStateHolder.userKey, ctx.channel().eventLoop());
 
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering hard channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), session, user, dash, deviceId, message.id));
+            reRegisterChannel(ctx, session, holder.stats,
+                    channelFuture -> completeLogin(channelFuture.channel(), session, user, dash, deviceId, msgId));
         } else {
-            completeLogin(ctx.channel(), session, user, dash, deviceId, message.id);
+            completeLogin(ctx.channel(), session, user, dash, deviceId, msgId);
         }
     }
 
@@ -6,9 +6,9 @@ import cc.blynk.server.core.model.widgets.others.rtc.RTC;
 import cc.blynk.server.core.protocol.enums.Response;
 import cc.blynk.server.core.protocol.model.messages.StringMessage;
 import cc.blynk.server.core.session.HardwareStateHolder;
+import cc.blynk.server.transport.HeartbeatHandler;
 import cc.blynk.utils.StringUtils;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -64,7 +64,7 @@ public class BlynkInternalLogic {
     }
 
     private void sendRTC(ChannelHandlerContext ctx, HardwareStateHolder state, int msgId) {
-        DashBoard dashBoard = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dashBoard = state.user.getProfile().getDashByIdOrThrow(state.dashId);
         RTC rtc = dashBoard.getWidgetByType(RTC.class);
         if (rtc != null) {
             ctx.writeAndFlush(makeASCIIStringMessage(BLYNK_INTERNAL, msgId, "rtc" + BODY_SEPARATOR + rtc.getTime()), ctx.voidPromise());
@@ -80,11 +80,10 @@ public class BlynkInternalLogic {
         if (hardwareIdleTimeout != 0 && newHardwareInterval > 0) {
             final int newReadTimeout = (int) Math.ceil(newHardwareInterval * 2.3D);
             log.debug("Changing read timeout interval to {}", newReadTimeout);
-            ctx.pipeline().remove(ReadTimeoutHandler.class);
-            ctx.pipeline().addFirst(new ReadTimeoutHandler(newReadTimeout));
+            HeartbeatHandler.changeTimeout(ctx.pipeline(), newReadTimeout);
         }
 
-        DashBoard dashBoard = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dashBoard = state.user.getProfile().getDashByIdOrThrow(state.dashId);
         //this info is not important, so we don't mark dash as updated.
         //this update will be stored only in case hardware sends real data to pins
         dashBoard.hardwareInfo = hardwareInfo;
@@ -77,10 +77,10 @@ public class BridgeLogic {
             if (session.hardwareChannels.size() > 1) {
                 boolean messageWasSent = false;
                 message.body = message.body.substring(message.body.indexOf(StringUtils.BODY_SEPARATOR_STRING) + 1);
-                for (Channel channel : session.hardwareChannels) {
+                for (Channel channel : session.getHardChannelsByToken(token)) {
                     if (channel != ctx.channel() && channel.isWritable()) {
                         HardwareStateHolder hardwareState = getHardState(channel);
-                        if (hardwareState != null && token.equals(hardwareState.token)) {
+                        if (hardwareState != null) {
                             messageWasSent = true;
                             hardwareLogic.messageReceived(ctx, hardwareState, message);
                             channel.writeAndFlush(message, channel.voidPromise());
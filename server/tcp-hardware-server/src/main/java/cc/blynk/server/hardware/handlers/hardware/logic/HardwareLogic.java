@@ -5,20 +5,24 @@ import cc.blynk.server.core.dao.ReportingDao;
 import cc.blynk.server.core.dao.SessionDao;
 import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.auth.Session;
-import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.processors.EventorProcessor;
 import cc.blynk.server.core.processors.WebhookProcessor;
 import cc.blynk.server.core.protocol.model.messages.StringMessage;
+import cc.blynk.server.core.protocol.model.messages.common.HardwareByteBufMessage;
 import cc.blynk.server.core.session.HardwareStateHolder;
-import cc.blynk.utils.ParseUtil;
+import cc.blynk.utils.HardwareCommandCursor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+
 import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
 import static cc.blynk.server.core.protocol.enums.Response.ILLEGAL_COMMAND;
 import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
-import static cc.blynk.utils.StringUtils.split3;
+import static cc.blynk.utils.HardwareCommandCursor.isWriteOperation;
 
 /**
  * Handler responsible for forwarding messages from hardware to applications.
@@ -38,6 +42,8 @@ public class HardwareLogic {
     private final SessionDao sessionDao;
     private final EventorProcessor eventorProcessor;
     private final WebhookProcessor webhookProcessor;
+    //logic is created per channel, so cursor is reused for all its commands
+    private final HardwareCommandCursor command = new HardwareCommandCursor();
 
     public HardwareLogic(Holder holder, String username) {
         this.sessionDao = holder.sessionDao;
@@ -51,17 +57,23 @@ public class HardwareLogic {
                 username);
     }
 
-    private static boolean isWriteOperation(String body) {
-        return body.charAt(1) == 'w';
+    private static ByteBuf getBody(StringMessage message) {
+        if (message instanceof HardwareByteBufMessage) {
+            return ((HardwareByteBufMessage) message).bodyBuf;
+        }
+        return Unpooled.wrappedBuffer(message.body.getBytes(StandardCharsets.UTF_8));
     }
 
     public void messageReceived(ChannelHandlerContext ctx, HardwareStateHolder state, StringMessage message) {
         Session session = sessionDao.userSession.get(state.userKey);
 
-        final String body = message.body;
+        //body is parsed right from incoming bytes. String is created only for pin value.
+        final ByteBuf body = getBody(message);
+        final int from = body.readerIndex();
+        final int to = body.writerIndex();
 
         //minimum command - "ar 1"
-        if (body.length() < 4) {
+        if (to - from < 4) {
             log.debug("HardwareLogic command body too short.");
             ctx.writeAndFlush(makeResponse(message.id, ILLEGAL_COMMAND), ctx.voidPromise());
             return;
@@ -70,26 +82,24 @@ public class HardwareLogic {
         final int dashId = state.dashId;
         final int deviceId = state.deviceId;
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         if (isWriteOperation(body)) {
-            String[] splitBody = split3(body);
-
-            if (splitBody.length < 3 || splitBody[0].length() == 0 || splitBody[2].length() == 0) {
+            final HardwareCommandCursor command = this.command;
+            if (!command.parseWrite(body)) {
                 log.debug("Write command is wrong.");
                 ctx.writeAndFlush(makeResponse(message.id, ILLEGAL_COMMAND), ctx.voidPromise());
                 return;
             }
 
-            final PinType pinType = PinType.getPinType(splitBody[0].charAt(0));
-            final byte pin = ParseUtil.parseByte(splitBody[1]);
-            final String value = splitBody[2];
             final long now = System.currentTimeMillis();
 
-            reportingDao.process(state.user.name, dashId, deviceId, pin, pinType, value, now);
-            dash.update(deviceId, pin, pinType, value, now);
+            reportingDao.process(state.user.name, dashId, deviceId, command.pin, command.pinType,
+                    command.value, now, command.doubleValue);
+            dash.update(deviceId, command.pin, command.pinType, command.value, now);
+            state.user.markPinsDirty();
 
-            process(dash, deviceId, session, pin, pinType, value);
+            process(dash, deviceId, session, command);
         }
 
         if (dash.isActive) {
@@ -99,10 +109,11 @@ public class HardwareLogic {
         }
     }
 
-    private void process(DashBoard dash, int deviceId, Session session, byte pin, PinType pinType, String value) {
+    private void process(DashBoard dash, int deviceId, Session session, HardwareCommandCursor command) {
         try {
-            eventorProcessor.process(session, dash, deviceId, pin, pinType, value);
-            webhookProcessor.process(session, dash, deviceId, pin, pinType, value);
+            eventorProcessor.process(session, dash, deviceId, command.pin, command.pinType,
+                    command.value, command.doubleValue);
+            webhookProcessor.process(session, dash, deviceId, command.pin, command.pinType, command.value);
         } catch (Exception e) {
             log.error("Error processing eventor/webhook.", e);
         }
@@ -2,7 +2,6 @@ package cc.blynk.server.hardware.handlers.hardware.logic;
 
 import cc.blynk.server.core.model.DashBoard;
 import cc.blynk.server.core.model.Pin;
-import cc.blynk.server.core.model.PinStorageKey;
 import cc.blynk.server.core.model.enums.PinType;
 import cc.blynk.server.core.model.widgets.HardwareSyncWidget;
 import cc.blynk.server.core.model.widgets.Widget;
@@ -15,7 +14,6 @@ import cc.blynk.utils.PinUtil;
 import cc.blynk.utils.StringUtils;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.util.Map;
 
 import static cc.blynk.server.core.protocol.enums.Command.HARDWARE;
 import static cc.blynk.utils.BlynkByteBufUtil.makeResponse;
@@ -32,7 +30,7 @@ public class HardwareSyncLogic {
     public void messageReceived(ChannelHandlerContext ctx, HardwareStateHolder state, StringMessage message) {
         final int dashId = state.dashId;
         final int deviceId = state.deviceId;
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         if (message.length == 0) {
             syncAll(ctx, message.id, dash, deviceId);
@@ -50,13 +48,12 @@ public class HardwareSyncLogic {
             }
         }
         //return all static server holders
-        for (Map.Entry<PinStorageKey, String> entry : dash.pinsStorage.entrySet()) {
-            PinStorageKey key = entry.getKey();
-            if (deviceId == key.deviceId) {
-                String body = Pin.makeHardwareBody(key.pinType, key.pin, entry.getValue());
+        dash.pinStates.forEach((pinDeviceId, pinType, pin, value) -> {
+            if (deviceId == pinDeviceId && dash.findWidgetByPin(deviceId, pin, pinType) == null) {
+                String body = Pin.makeHardwareBody(pinType, pin, value);
                 ctx.write(makeUTF8StringMessage(HARDWARE, msgId, body), ctx.voidPromise());
             }
-        }
+        });
 
         ctx.flush();
     }
@@ -78,7 +75,7 @@ public class HardwareSyncLogic {
                 byte pin = ParseUtil.parseByte(bodyParts[i]);
                 Widget widget = dash.findWidgetByPin(deviceId, pin, pinType);
                 if (widget == null) {
-                    String value = dash.pinsStorage.get(new PinStorageKey(deviceId, pinType, pin));
+                    String value = dash.pinStates.get(deviceId, pinType, pin);
                     if (value != null) {
                         String body = Pin.makeHardwareBody(pinType, pin, value);
                         ctx.write(makeUTF8StringMessage(HARDWARE, msgId, body), ctx.voidPromise());
@@ -43,7 +43,7 @@ public class MailLogic extends NotificationBase {
     }
 
     public void messageReceived(ChannelHandlerContext ctx, HardwareStateHolder state, StringMessage message) {
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(state.dashId);
 
         Mail mail = dash.getWidgetByType(Mail.class);
 
@@ -41,7 +41,7 @@ public class PushLogic extends NotificationBase {
             throw new NotificationBodyInvalidException();
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(state.dashId);
 
         if (!dash.isActive) {
             log.debug("No active dashboard.");
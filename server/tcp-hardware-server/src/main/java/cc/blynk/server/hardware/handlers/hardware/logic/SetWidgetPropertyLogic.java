@@ -59,7 +59,7 @@ public class SetWidgetPropertyLogic {
             return;
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(state.dashId);
 
         if (!dash.isActive) {
             return;
@@ -77,6 +77,7 @@ public class SetWidgetPropertyLogic {
         try {
             widget.setProperty(property, propertyValue);
             dash.updatedAt = System.currentTimeMillis();
+            state.user.markDirty();
         } catch (Exception e) {
             log.debug("Error setting widget property. Reason : {}", e.getMessage());
             ctx.writeAndFlush(makeResponse(message.id, ILLEGAL_COMMAND_BODY), ctx.voidPromise());
@@ -43,7 +43,7 @@ public class SmsLogic extends NotificationBase {
             throw new NotificationBodyInvalidException();
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(state.dashId);
         SMS smsWidget = dash.getWidgetByType(SMS.class);
 
         if (smsWidget == null || !dash.isActive ||
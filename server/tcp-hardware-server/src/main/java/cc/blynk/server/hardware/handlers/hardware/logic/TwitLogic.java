@@ -44,7 +44,7 @@ public class TwitLogic extends NotificationBase {
             throw new NotificationBodyInvalidException();
         }
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(state.dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(state.dashId);
         Twitter twitterWidget = dash.getWidgetByType(Twitter.class);
 
         if (twitterWidget == null || !dash.isActive ||
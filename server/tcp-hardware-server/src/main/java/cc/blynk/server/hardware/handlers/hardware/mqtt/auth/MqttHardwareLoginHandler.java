@@ -10,7 +10,9 @@ import cc.blynk.server.core.session.HardwareStateHolder;
 import cc.blynk.server.handlers.DefaultReregisterHandler;
 import cc.blynk.server.handlers.common.UserNotLoggedHandler;
 import cc.blynk.server.hardware.handlers.hardware.MqttHardwareHandler;
+import cc.blynk.server.transport.HeartbeatHandler;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -25,7 +27,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import static cc.blynk.server.core.protocol.enums.Command.HARDWARE_CONNECTED;
+import static cc.blynk.utils.StateHolderUtil.setHardState;
 import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD;
+import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE;
 
 /**
  * Handler responsible for managing hardware and apps login messages.
@@ -68,6 +72,13 @@ public class MqttHardwareLoginHandler extends SimpleChannelInboundHandler<MqttCo
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, MqttConnectMessage message) throws Exception {
+        holder.loginAdmission.admit(ctx.channel(), false,
+                () -> login(ctx, message),
+                () -> ctx.writeAndFlush(createConnAckMessage(CONNECTION_REFUSED_SERVER_UNAVAILABLE))
+                         .addListener(ChannelFutureListener.CLOSE));
+    }
+
+    private void login(ChannelHandlerContext ctx, MqttConnectMessage message) {
         String username = message.payload().userName().toLowerCase();
         String token = message.payload().password();
 
@@ -79,11 +90,22 @@ public class MqttHardwareLoginHandler extends SimpleChannelInboundHandler<MqttCo
             return;
         }
 
+        holder.blockingIOProcessor.loadProfile(tokenValue.user, ctx.channel(),
+                () -> login(ctx, message, token, tokenValue),
+                () -> ctx.writeAndFlush(createConnAckMessage(CONNECTION_REFUSED_SERVER_UNAVAILABLE), ctx.voidPromise()));
+    }
+
+    private void login(ChannelHandlerContext ctx, MqttConnectMessage message, String token, TokenValue tokenValue) {
+        if (ctx.isRemoved()) {
+            //repeated login of already logged in channel
+            return;
+        }
+
         final User user = tokenValue.user;
         final int dashId = tokenValue.dashId;
         final int deviceId = tokenValue.deviceId;
 
-        DashBoard dash = user.profile.getDashById(dashId);
+        DashBoard dash = user.getProfile().getDashById(dashId);
         if (dash == null) {
             log.warn("User : {} requested token {} for non-existing {} dash id.", user.name, token, dashId);
             ctx.writeAndFlush(createConnAckMessage(CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD), ctx.voidPromise());
@@ -93,13 +115,21 @@ public class MqttHardwareLoginHandler extends SimpleChannelInboundHandler<MqttCo
         ctx.pipeline().remove(this);
         ctx.pipeline().remove(UserNotLoggedHandler.class);
         HardwareStateHolder hardwareStateHolder = new HardwareStateHolder(dashId, deviceId, user, token);
+        setHardState(ctx.channel(), hardwareStateHolder);
         ctx.pipeline().addLast("HHArdwareMqttHandler", new MqttHardwareHandler(holder, hardwareStateHolder));
 
+        //mqtt spec : server disconnects client in case there is no messages within 1.5 keep alive period
+        final int keepAlive = message.variableHeader().keepAliveTimeSeconds();
+        if (keepAlive > 0) {
+            HeartbeatHandler.changeTimeout(ctx.pipeline(), (int) Math.ceil(keepAlive * 1.5D));
+        }
+
         Session session = holder.sessionDao.getOrCreateSessionByUser(hardwareStateHolder.userKey, ctx.channel().eventLoop());
 
         if (session.initialEventLoop != ctx.channel().eventLoop()) {
             log.debug("Re registering hard channel. {}", ctx.channel());
-            reRegisterChannel(ctx, session, channelFuture -> completeLogin(channelFuture.channel(), session, user, dash, deviceId, -1));
+            reRegisterChannel(ctx, session, holder.stats,
+                    channelFuture -> completeLogin(channelFuture.channel(), session, user, dash, deviceId, -1));
         } else {
             completeLogin(ctx.channel(), session, user, dash, deviceId, -1);
         }
@@ -60,7 +60,7 @@ public class MqttHardwareLogic {
         final int dashId = state.dashId;
         final int deviceId = state.deviceId;
 
-        DashBoard dash = state.user.profile.getDashByIdOrThrow(dashId);
+        DashBoard dash = state.user.getProfile().getDashByIdOrThrow(dashId);
 
         if (isWriteOperation(body)) {
             //" |\0" - to simplify demonstration
@@ -85,6 +85,7 @@ public class MqttHardwareLogic {
             reportingDao.process(state.user.name, dashId, deviceId, pin, pinType, value, now);
 
             dash.update(0, pin, pinType, value, now);
+            state.user.markPinsDirty();
         }
 
         //todo do not send if no widget pin
@@ -6,12 +6,12 @@ import cc.blynk.server.core.model.auth.User;
 import cc.blynk.server.core.protocol.model.messages.hardware.BlynkInternalMessage;
 import cc.blynk.server.core.session.HardwareStateHolder;
 import cc.blynk.server.hardware.handlers.hardware.logic.BlynkInternalLogic;
+import cc.blynk.server.transport.HeartbeatHandler;
 import cc.blynk.utils.ServerProperties;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -47,11 +47,15 @@ public class BlynkInternalLogicTest {
     @Mock
     private ByteBuf byteBuf;
 
+    @Mock
+    private HeartbeatHandler heartbeatHandler;
+
     @Test
     public void testCorrectBehavior() {
         BlynkInternalLogic logic = new BlynkInternalLogic(props.getIntProperty("hard.socket.idle.timeout", 0));
 
         when(ctx.pipeline()).thenReturn(pipeline);
+        when(pipeline.get(HeartbeatHandler.class)).thenReturn(heartbeatHandler);
         when(ctx.alloc()).thenReturn(allocator);
         when(allocator.ioBuffer(anyInt())).thenReturn(byteBuf);
         when(byteBuf.writeByte(eq(0))).thenReturn(byteBuf);
@@ -59,17 +63,16 @@ public class BlynkInternalLogicTest {
         when(byteBuf.writeShort(eq(200))).thenReturn(byteBuf);
 
         User user = new User();
-        user.profile = new Profile();
+        user.setProfile(new Profile());
         DashBoard dashBoard = new DashBoard();
         dashBoard.id = 1;
-        user.profile.dashBoards = new DashBoard[] {dashBoard};
+        user.getProfile().dashBoards = new DashBoard[] {dashBoard};
         HardwareStateHolder hardwareStateHolder = new HardwareStateHolder(1, 0, user, null);
 
         BlynkInternalMessage hardwareInfoLogic = new BlynkInternalMessage(1, "ver 0.3.2-beta h-beat 60 buff-in 256 dev ESP8266".replaceAll(" ", "\0"));
         logic.messageReceived(ctx, hardwareStateHolder, hardwareInfoLogic);
 
-        verify(pipeline).remove(ReadTimeoutHandler.class);
-        verify(pipeline).addFirst(any(ReadTimeoutHandler.class));
+        verify(heartbeatHandler).setTimeout(138);
         verify(ctx).writeAndFlush(any(), any());
     }
 
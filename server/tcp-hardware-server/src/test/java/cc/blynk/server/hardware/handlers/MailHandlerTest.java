@@ -69,7 +69,7 @@ public class MailHandlerTest {
 	public void testNoEmailWidget() throws InterruptedException {
 		MailMessage mailMessage = (MailMessage) MessageFactory.produce(1, Command.EMAIL, "body");
 
-        user.profile = profile;
+        when(user.getProfile()).thenReturn(profile);
         when(profile.getDashByIdOrThrow(1)).thenReturn(dashBoard);
         when(dashBoard.getWidgetByType(Mail.class)).thenReturn(null);
 
@@ -81,7 +81,7 @@ public class MailHandlerTest {
 	public void testNoToBody() throws InterruptedException {
 		MailMessage mailMessage = (MailMessage) MessageFactory.produce(1, Command.EMAIL, "".replaceAll(" ", "\0"));
 
-        user.profile = profile;
+        when(user.getProfile()).thenReturn(profile);
         when(profile.getDashByIdOrThrow(1)).thenReturn(dashBoard);
         Mail mail = new Mail();
         when(dashBoard.getWidgetByType(Mail.class)).thenReturn(mail);
@@ -95,7 +95,7 @@ public class MailHandlerTest {
 	public void testNoBody() throws InterruptedException {
 		MailMessage mailMessage = (MailMessage) MessageFactory.produce(1, Command.EMAIL, "body".replaceAll(" ", "\0"));
 
-        user.profile = profile;
+        when(user.getProfile()).thenReturn(profile);
         when(profile.getDashByIdOrThrow(1)).thenReturn(dashBoard);
         when(dashBoard.getWidgetByType(Mail.class)).thenReturn(new Mail());
         dashBoard.isActive = true;
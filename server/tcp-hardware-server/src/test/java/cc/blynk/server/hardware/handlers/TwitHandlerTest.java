@@ -79,7 +79,7 @@ public class TwitHandlerTest {
 	@Test(expected = NotificationBodyInvalidException.class)
 	public void testTweetMessageWithEmptyBody() {
 		TwitMessage twitMessage = (TwitMessage) MessageFactory.produce(1, Command.TWEET, "");
-        state.user.profile = profile;
+        when(state.user.getProfile()).thenReturn(profile);
 		TwitLogic tweetHandler = new TwitLogic(blockingIOProcessor, twitterWrapper, 60);
 		tweetHandler.messageReceived(ctx, state, twitMessage);
 	}
@@ -88,7 +88,7 @@ public class TwitHandlerTest {
 	public void testTweetMessageWithBodyMoreThen140Symbols() {
 		final String longBody = RandomStringUtils.random(150);
 		TwitMessage twitMessage = (TwitMessage) MessageFactory.produce(1, Command.TWEET, longBody);
-        state.user.profile = profile;
+        when(state.user.getProfile()).thenReturn(profile);
 		TwitLogic tweetHandler = new TwitLogic(blockingIOProcessor, twitterWrapper, 60);
 		tweetHandler.messageReceived(ctx, state, twitMessage);
 	}
@@ -97,11 +97,11 @@ public class TwitHandlerTest {
 	public void testSendQuotaLimitationException() throws InterruptedException {
 		TwitMessage twitMessage = (TwitMessage) MessageFactory.produce(1, Command.TWEET, "this is a test tweet");
 		TwitLogic tweetHandler = spy(new TwitLogic(blockingIOProcessor, twitterWrapper, 60));
-        state.user.profile = profile;
+        when(state.user.getProfile()).thenReturn(profile);
 		Twitter twitter = new Twitter();
 		twitter.token = "token";
 		twitter.secret = "secret_token";
-		when(state.user.profile.getDashByIdOrThrow(1)).thenReturn(dash);
+		when(state.user.getProfile().getDashByIdOrThrow(1)).thenReturn(dash);
 		when(dash.getWidgetByType(Twitter.class)).thenReturn(twitter);
 		dash.isActive = true;
 
@@ -116,11 +116,11 @@ public class TwitHandlerTest {
 		props.setProperty("notifications.frequency.user.quota.limit", "1");
 		final long defaultQuotaTime = props.getLongProperty("notifications.frequency.user.quota.limit") * 1000;
 		TwitLogic tweetHandler = spy(new TwitLogic(blockingIOProcessor, twitterWrapper, 60));
-		state.user.profile = profile;
+		when(state.user.getProfile()).thenReturn(profile);
 		Twitter twitter = new Twitter();
 		twitter.token = "token";
 		twitter.secret = "secret_token";
-		when(state.user.profile.getDashByIdOrThrow(1)).thenReturn(dash);
+		when(state.user.getProfile().getDashByIdOrThrow(1)).thenReturn(dash);
 		when(dash.getWidgetByType(Twitter.class)).thenReturn(twitter);
 		dash.isActive = true;
 
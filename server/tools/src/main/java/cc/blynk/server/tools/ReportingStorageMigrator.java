@@ -0,0 +1,150 @@
+package cc.blynk.server.tools;
+
+import cc.blynk.server.core.model.enums.AggregationFunction;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ColumnarReportingStorage;
+import cc.blynk.utils.FileUtils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static cc.blynk.utils.StringUtils.DEVICE_SEPARATOR;
+
+/**
+ * Converts old reporting files (separate file for every pin) to columnar reporting storage.
+ * Usage : java -cp tools.jar cc.blynk.server.tools.ReportingStorageMigrator /path/to/data [--delete]
+ *
+ * Should be run when server is stopped. Pins that were already migrated are skipped, so
+ * migration could be safely restarted.
+ */
+public class ReportingStorageMigrator {
+
+    private static final String PREFIX = "history_";
+    private static final String SUFFIX = ".bin";
+
+    public static void main(String[] args) throws Exception {
+        String reportingFolder = args[0];
+        boolean deleteOldFiles = args.length > 1 && "--delete".equals(args[1]);
+        Path reportingPath = Paths.get(reportingFolder);
+        if (Files.exists(reportingPath)) {
+            System.out.println("Starting migration of " + reportingPath.toString());
+            start(reportingPath, deleteOldFiles);
+        } else {
+            System.out.println(reportingPath.toString() + " not exists.");
+        }
+    }
+
+    private static void start(Path reportingPath, boolean deleteOldFiles) throws Exception {
+        File[] allReporting = reportingPath.toFile().listFiles();
+        if (allReporting == null || allReporting.length == 0) {
+            System.out.println("No files.");
+            return;
+        }
+
+        int filesCount = 0;
+        int migratedCount = 0;
+        long entriesCount = 0;
+
+        try (ColumnarReportingStorage storage = new ColumnarReportingStorage(reportingPath.toString(), true)) {
+            for (File userDirectory : allReporting) {
+                if (!userDirectory.isDirectory() || ColumnarReportingStorage.SEGMENTS_FOLDER.equals(userDirectory.getName())) {
+                    continue;
+                }
+                File[] userFiles = userDirectory.listFiles();
+                if (userFiles == null) {
+                    continue;
+                }
+                String username = userDirectory.getName();
+                for (File file : userFiles) {
+                    String name = file.getName();
+                    if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+                        continue;
+                    }
+                    filesCount++;
+                    try {
+                        int migrated = migrate(storage, username, file.toPath());
+                        if (migrated >= 0) {
+                            migratedCount++;
+                            entriesCount += migrated;
+                            if (deleteOldFiles) {
+                                FileUtils.deleteQuietly(file.toPath());
+                            }
+                        }
+                    } catch (Exception e) {
+                        System.out.println("Error migrating file " + file.getAbsolutePath() + ". Skipping.");
+                    }
+
+                    if (filesCount % 1000 == 0) {
+                        System.out.println("Visited " + filesCount + " files.");
+                    }
+                }
+                storage.flush();
+            }
+        }
+
+        System.out.println("Visited : " + filesCount + ". Migrated : " + migratedCount + ". Entries : " + entriesCount);
+    }
+
+    /**
+     * @return number of migrated entries or -1 in case pin was already migrated.
+     */
+    private static int migrate(ColumnarReportingStorage storage, String username, Path file) throws Exception {
+        //history_<dashId>[-<deviceId>]_<pinType><pin>_<type>.bin
+        String name = file.getFileName().toString();
+        String[] parts = name.substring(PREFIX.length(), name.length() - SUFFIX.length()).split("_");
+
+        String dashIdDeviceId = parts[0];
+        int separatorIndex = dashIdDeviceId.indexOf(DEVICE_SEPARATOR);
+        int dashId;
+        int deviceId = 0;
+        if (separatorIndex == -1) {
+            dashId = Integer.parseInt(dashIdDeviceId);
+        } else {
+            dashId = Integer.parseInt(dashIdDeviceId.substring(0, separatorIndex));
+            deviceId = Integer.parseInt(dashIdDeviceId.substring(separatorIndex + 1));
+        }
+
+        PinType pinType = PinType.getPinType(parts[1].charAt(0));
+        byte pin = Byte.parseByte(parts[1].substring(1));
+        GraphType type = parseType(parts[2]);
+        AggregationFunction function = AggregationFunction.AVG;
+        if (parts.length > 3) {
+            function = AggregationFunction.getBySuffix(parts[3]);
+            if (function == null) {
+                throw new IllegalArgumentException("Unknown reporting function " + parts[3]);
+            }
+        }
+
+        if (storage.read(username, dashId, deviceId, pinType, pin, 1, type, function) != null) {
+            return -1;
+        }
+
+        int count = (int) (Files.size(file) / 16);
+        ByteBuffer data = FileUtils.read(file, count);
+        data.flip();
+        while (data.remaining() >= 16) {
+            double value = data.getDouble();
+            long ts = data.getLong();
+            storage.append(username, dashId, deviceId, pinType.pintTypeChar, pin, type, function, value, ts);
+        }
+        return count;
+    }
+
+    private static GraphType parseType(String type) {
+        switch (type) {
+            case "minute" :
+                return GraphType.MINUTE;
+            case "hourly" :
+                return GraphType.HOURLY;
+            case "daily" :
+                return GraphType.DAILY;
+            default :
+                throw new IllegalArgumentException("Unknown reporting type " + type);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package cc.blynk.server.tools;
+
+import cc.blynk.server.core.dao.ReportingDao;
+import cc.blynk.server.core.model.enums.GraphType;
+import cc.blynk.server.core.model.enums.PinType;
+import cc.blynk.server.core.reporting.storage.ColumnarReportingStorage;
+import cc.blynk.utils.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static cc.blynk.server.tools.ReportingDataCleanerTest.deleteDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReportingStorageMigratorTest {
+
+    private static Path reportingPath = Paths.get("/tmp/test_reporting_migration");
+    private static Path userPath = Paths.get("/tmp/test_reporting_migration/test@test.gmail.com");
+    private static String username = "test@test.gmail.com";
+
+    @Before
+    public void init() throws Exception {
+        deleteDirectory(reportingPath.toFile());
+        Files.createDirectories(userPath);
+    }
+
+    @Test
+    public void testMigrateAndReadBack() throws Exception {
+        Path minuteFile = Paths.get(userPath.toString(), ReportingDao.generateFilename(1, 2, 'v', (byte) 3, GraphType.MINUTE));
+        Path hourlyFile = Paths.get(userPath.toString(), ReportingDao.generateFilename(1, 0, 'a', (byte) 7, GraphType.HOURLY));
+        fillWithData(minuteFile, 600);
+        fillWithData(hourlyFile, 10);
+
+        ReportingStorageMigrator.main(new String[] {reportingPath.toString(), "--delete"});
+
+        assertFalse(Files.exists(minuteFile));
+        assertFalse(Files.exists(hourlyFile));
+
+        try (ColumnarReportingStorage storage = new ColumnarReportingStorage(reportingPath.toString(), false)) {
+            //fits one block, served as slice of segment
+            ByteBuffer data = storage.read(username, 1, 0, PinType.ANALOG, (byte) 7, 5, GraphType.HOURLY);
+            assertNotNull(data);
+            data.flip();
+            assertEquals(5 * 16, data.remaining());
+            for (int i = 5; i < 10; i++) {
+                assertEquals(i, data.getDouble(), 0.0001);
+                assertEquals(i, data.getLong());
+            }
+
+            //spans several blocks
+            data = storage.read(username, 1, 2, PinType.VIRTUAL, (byte) 3, 1000, GraphType.MINUTE);
+            assertNotNull(data);
+            data.flip();
+            assertEquals(600 * 16, data.remaining());
+            for (int i = 0; i < 600; i++) {
+                assertEquals(i, data.getDouble(), 0.0001);
+                assertEquals(i, data.getLong());
+            }
+
+            assertNull(storage.read(username, 1, 2, PinType.VIRTUAL, (byte) 3, 10, GraphType.DAILY));
+
+            storage.delete(username, 1, 2, PinType.VIRTUAL, (byte) 3);
+            assertNull(storage.read(username, 1, 2, PinType.VIRTUAL, (byte) 3, 10, GraphType.MINUTE));
+        }
+    }
+
+    @Test
+    public void testAppendAfterMigration() throws Exception {
+        Path minuteFile = Paths.get(userPath.toString(), ReportingDao.generateFilename(1, 0, 'v', (byte) 1, GraphType.MINUTE));
+        fillWithData(minuteFile, 256);
+
+        ReportingStorageMigrator.main(new String[] {reportingPath.toString()});
+        //second run should skip already migrated pins
+        ReportingStorageMigrator.main(new String[] {reportingPath.toString()});
+        assertTrue(Files.exists(minuteFile));
+
+        try (ColumnarReportingStorage storage = new ColumnarReportingStorage(reportingPath.toString(), false)) {
+            storage.append(username, 1, 0, 'v', (byte) 1, GraphType.MINUTE, 256, 256);
+            storage.flush();
+        }
+
+        try (ColumnarReportingStorage storage = new ColumnarReportingStorage(reportingPath.toString(), false)) {
+            ByteBuffer data = storage.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 2, GraphType.MINUTE);
+            assertNotNull(data);
+            data.flip();
+            assertEquals(255, data.getDouble(), 0.0001);
+            assertEquals(255, data.getLong());
+            assertEquals(256, data.getDouble(), 0.0001);
+            assertEquals(256, data.getLong());
+
+            data = storage.read(username, 1, 0, PinType.VIRTUAL, (byte) 1, 1000, GraphType.MINUTE);
+            assertNotNull(data);
+            assertEquals(257 * 16, data.position());
+        }
+    }
+
+    private static void fillWithData(Path path, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            FileUtils.write(path, (double) i, (long) i);
+        }
+    }
+
+}
@@ -31,7 +31,8 @@ public class WebSocketSSLServer extends BaseServer {
     private final ChannelInitializer<SocketChannel> channelInitializer;
 
     public WebSocketSSLServer(Holder holder) {
-        super(holder.props.getIntProperty("ssl.websocket.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("ssl.websocket.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.httpProfile);
 
         final int hardTimeoutSecs = holder.props.getIntProperty("hard.socket.idle.timeout", 0);
         final HardwareLoginHandler hardwareLoginHandler = new HardwareLoginHandler(holder, port);
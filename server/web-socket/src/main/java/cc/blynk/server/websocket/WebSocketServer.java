@@ -28,7 +28,8 @@ public class WebSocketServer extends BaseServer {
     public static final String WEBSOCKET_PATH = "/websocket";
 
     public WebSocketServer(Holder holder) {
-        super(holder.props.getIntProperty("tcp.websocket.port"), holder.transportTypeHolder);
+        super(holder.props.getIntProperty("tcp.websocket.port"),
+                holder.transportTypeHolder, holder.transportTypeHolder.httpProfile);
 
         final int hardTimeoutSecs = holder.props.getIntProperty("hard.socket.idle.timeout", 0);
         final HardwareLoginHandler hardwareLoginHandler = new HardwareLoginHandler(holder, port);